@@ -0,0 +1,110 @@
+package Bank;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import Bank.LoanTerms.PaymentFrequency;
+
+/**
+ * Binary form of an account, used by stores that keep accounts outside the
+ * heap. The owner is the store's key and is not part of the record.
+ *
+ * Layout: balance, outstanding balance, a schedule flag and, for an account
+ * with a payment schedule, the loan terms, the schedule's progress and the
+ * payment, interest, principal and balance of every period in use, followed
+ * by the currency code. Records written before the currency was added end
+ * after the schedule and are read in the default currency.
+ *
+ * The schedule part is also encoded on its own, for the change events and
+ * checkpoints that carry an account's payment schedule.
+ */
+final class AccountCodec {
+
+    private static final int FIXED_SIZE = 8 + 8 + 1; // Balance, outstanding, schedule flag
+    private static final int TERMS_SIZE = 8 + 8 + 4 + 1 + 4 + 4; // Terms and progress
+
+    private AccountCodec() {
+    }
+
+    static byte[] encode(BankAccount account) {
+        Outstanding outstanding = account.peekOutstanding();
+        AmortizationSchedule schedule = outstanding == null ? null : outstanding.getSchedule();
+        byte[] terms = schedule == null ? null : schedule.encoded();
+        byte[] currency = account.getCurrency().getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buf = ByteBuffer.allocate(FIXED_SIZE + (terms == null ? 0 : terms.length) + 1 + currency.length);
+        buf.putDouble(account.getCurrentBalance());
+        buf.putDouble(account.getCurrentOutstandingBalance());
+        buf.put((byte) (schedule == null ? 0 : 1));
+        if (terms != null) {
+            buf.put(terms);
+        }
+        buf.put((byte) currency.length);
+        buf.put(currency);
+        return buf.array();
+    }
+
+    /**
+     * Encodes a payment schedule: its terms, its progress and every period in
+     * use.
+     */
+    static byte[] encodeSchedule(AmortizationSchedule schedule) {
+        int periods = schedule.getPeriods();
+        ByteBuffer buf = ByteBuffer.allocate(TERMS_SIZE + periods * 32);
+        LoanTerms terms = schedule.getTerms();
+        buf.putDouble(terms.getPrincipal());
+        buf.putDouble(terms.getAnnualRate());
+        buf.putInt(terms.getTermPeriods());
+        buf.put((byte) terms.getFrequency().ordinal());
+        buf.putInt(schedule.getNextPeriod());
+        buf.putInt(periods);
+        for (int period = 0; period < periods; period++) {
+            buf.putDouble(schedule.getPayment(period));
+            buf.putDouble(schedule.getInterest(period));
+            buf.putDouble(schedule.getPrincipal(period));
+            buf.putDouble(schedule.getBalance(period));
+        }
+        return buf.array();
+    }
+
+    /**
+     * Decodes a payment schedule written by {@link #encodeSchedule}, starting
+     * at the buffer's position.
+     */
+    static AmortizationSchedule decodeSchedule(String accountOwner, ByteBuffer buf) {
+        LoanTerms terms;
+        try {
+            terms = new LoanTerms(buf.getDouble(), buf.getDouble(), buf.getInt(),
+                    PaymentFrequency.values()[buf.get()]);
+        } catch (Exception e) {
+            throw new IllegalStateException("Stored loan terms are invalid for " + accountOwner, e);
+        }
+        int nextPeriod = buf.getInt();
+        int periods = buf.getInt();
+        AmortizationSchedule schedule = new AmortizationSchedule(terms);
+        for (int period = 0; period < periods; period++) {
+            schedule.setPeriod(period, buf.getDouble(), buf.getDouble(), buf.getDouble(), buf.getDouble());
+        }
+        schedule.restoreProgress(nextPeriod, periods);
+        return schedule;
+    }
+
+    static BankAccount decode(String accountOwner, byte[] record) {
+        ByteBuffer buf = ByteBuffer.wrap(record);
+        double balance = buf.getDouble();
+        double outstanding = buf.getDouble();
+        boolean scheduled = buf.get() != 0;
+        AmortizationSchedule schedule = scheduled ? decodeSchedule(accountOwner, buf) : null;
+        String currency = BankAccount.DEFAULT_CURRENCY;
+        if (buf.hasRemaining()) {
+            byte[] code = new byte[buf.get() & 0xFF];
+            buf.get(code);
+            currency = new String(code, StandardCharsets.US_ASCII);
+        }
+        BankAccount account = new BankAccount(accountOwner, balance, currency);
+        account.setOutstandingBalance(outstanding); // Only borrowers get an outstanding
+        if (schedule != null) {
+            account.getOutstanding().attachSchedule(schedule);
+        }
+        return account;
+    }
+}
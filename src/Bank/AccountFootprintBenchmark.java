@@ -0,0 +1,169 @@
+package Bank;
+
+/**
+ * Benchmark of the heap an account takes in a {@link BankApp} with the
+ * default in-memory store.
+ *
+ * The benchmark opens a number of accounts in a fresh bank, grants an
+ * outstanding (Loan) to a share of them, and measures the used heap after a
+ * full collection before the bank is created, after the accounts are opened
+ * and after the grants. The report gives the heap per account, and the extra
+ * heap per borrowing account, which is what every account paid when the
+ * outstanding was allocated up front.
+ *
+ * Heap figures come from {@link Runtime} and include everything the bank
+ * keeps per account: the account, its owner name, the store's map entry and
+ * the outstanding of borrowers. Run it on an otherwise idle JVM, such as
+ * {@link #main(String[])} in a process of its own; other threads allocating at
+ * the same time make the figures noisy.
+ */
+public class AccountFootprintBenchmark {
+
+    private int accounts = 100000; // Number of accounts opened
+    private double borrowerShare = 0.1; // Share of accounts granted an outstanding
+    private double startingDeposit = 1000.0; // Balance each account is opened with
+    private double loanAmount = 500.0; // Outstanding granted to each borrower
+
+    /**
+     * Sets the number of accounts opened.
+     */
+    public void setAccounts(int accounts) {
+        if (accounts <= 0) {
+            throw new IllegalArgumentException("Number of accounts must be positive.");
+        }
+        this.accounts = accounts;
+    }
+
+    /**
+     * Sets the share of accounts granted an outstanding (Loan), between 0 and
+     * 1.
+     */
+    public void setBorrowerShare(double borrowerShare) {
+        if (!(borrowerShare >= 0.0 && borrowerShare <= 1.0)) {
+            throw new IllegalArgumentException("Borrower share must be between 0 and 1.");
+        }
+        this.borrowerShare = borrowerShare;
+    }
+
+    /**
+     * Opens the accounts, grants the loans and reports the heap they take.
+     */
+    public Report run() throws Exception {
+        long empty = usedHeap();
+        BankApp bank = new BankApp(startingDeposit, startingDeposit, loanAmount);
+        bank.appendToBankOperatingFunds(loanAmount * accounts);
+        String[] owners = new String[accounts];
+        for (int i = 0; i < accounts; i++) {
+            owners[i] = String.format("account-%07d", i);
+            bank.appendOwnerAccount(owners[i], startingDeposit);
+        }
+        long opened = usedHeap();
+
+        int borrowers = 0;
+        for (int i = 0; i < accounts; i++) {
+            if ((long) ((i + 1) * borrowerShare) > (long) (i * borrowerShare)) { // Spread evenly over the accounts
+                bank.grantOutstanding(owners[i], loanAmount);
+                borrowers++;
+            }
+        }
+        long granted = usedHeap();
+
+        int outstandings = 0;
+        for (BankAccount account : bank.getBankAccountOwners()) {
+            if (account.hasOutstanding()) {
+                outstandings++;
+            }
+        }
+        return new Report(accounts, borrowers, outstandings, opened - empty, granted - opened);
+    }
+
+    /**
+     * Runs the benchmark in its own process and prints the report.
+     * Arguments: optionally the number of accounts and the borrower share.
+     */
+    public static void main(String[] args) throws Exception {
+        AccountFootprintBenchmark benchmark = new AccountFootprintBenchmark();
+        if (args.length > 0) {
+            benchmark.setAccounts(Integer.parseInt(args[0]));
+        }
+        if (args.length > 1) {
+            benchmark.setBorrowerShare(Double.parseDouble(args[1]));
+        }
+        System.out.println(benchmark.run());
+    }
+
+    // Used heap after a full collection; the lowest of a few readings, as a
+    // collection may still be finishing in the background
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    /**
+     * The heap taken by the accounts of one run.
+     */
+    public static final class Report {
+        private final int accounts;
+        private final int borrowers;
+        private final int outstandings;
+        private final long accountBytes;
+        private final long loanBytes;
+
+        Report(int accounts, int borrowers, int outstandings, long accountBytes, long loanBytes) {
+            this.accounts = accounts;
+            this.borrowers = borrowers;
+            this.outstandings = outstandings;
+            this.accountBytes = accountBytes;
+            this.loanBytes = loanBytes;
+        }
+
+        public int getAccounts() {
+            return accounts;
+        }
+
+        public int getBorrowers() {
+            return borrowers;
+        }
+
+        /**
+         * Retrieves the number of accounts holding an outstanding (Loan) at the
+         * end of the run.
+         */
+        public int getOutstandings() {
+            return outstandings;
+        }
+
+        /**
+         * Retrieves the heap per account before any loan was granted.
+         */
+        public double getBytesPerAccount() {
+            return (double) accountBytes / accounts;
+        }
+
+        /**
+         * Retrieves the extra heap per account granted a loan.
+         */
+        public double getBytesPerLoan() {
+            return borrowers == 0 ? 0.0 : (double) loanBytes / borrowers;
+        }
+
+        /**
+         * Retrieves the heap per account with the loans included.
+         */
+        public double getBytesPerAccountWithLoans() {
+            return (double) (accountBytes + loanBytes) / accounts;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d accounts, %d borrowers: %.1f bytes per account, %.1f more per loan, "
+                    + "%.1f per account with loans", accounts, borrowers, getBytesPerAccount(), getBytesPerLoan(),
+                    getBytesPerAccountWithLoans());
+        }
+    }
+}
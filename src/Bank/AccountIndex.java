@@ -0,0 +1,245 @@
+package Bank;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Sorted secondary indexes on the balances and outstanding balances (Loan) of
+ * a {@link BankApp}'s accounts, for range and top-K queries that do not scan
+ * every account.
+ *
+ * Get the index with {@link BankApp#getAccountIndex()}. It is built from the
+ * accounts once, and then kept up to date by the bank's balance changes, one
+ * removal and one insertion per changed value. Each index is a skip list
+ * sorted by currency, value and owner, so a query takes logarithmic time plus
+ * the number of accounts it returns. Amounts in different currencies are not
+ * compared; every query is for one currency.
+ *
+ * Queries do not take the bank's monitor and may run on any thread while the
+ * bank is in use. Like the concurrent collections they are weakly consistent:
+ * an account changed while a query runs may be missed or seen with its old
+ * value, but a query never fails. The outstanding index only holds accounts
+ * that owe something.
+ */
+public final class AccountIndex implements BalanceChangeListener {
+
+    private final String baseCurrency; // Currency of the queries without one
+    private final ConcurrentSkipListSet<Entry> balances = new ConcurrentSkipListSet<>();
+    private final ConcurrentSkipListSet<Entry> outstandings = new ConcurrentSkipListSet<>();
+    // Indexed entries per owner, so an old value can be found and removed.
+    // Only changed by the bank's balance changes, under its monitor.
+    private final Map<String, Entry[]> indexed = new HashMap<>();
+
+    AccountIndex(String baseCurrency, List<BankAccount> accounts) {
+        this.baseCurrency = baseCurrency;
+        rebuild(accounts);
+    }
+
+    // Index the given accounts, dropping everything indexed before
+    void rebuild(List<BankAccount> accounts) {
+        balances.clear();
+        outstandings.clear();
+        indexed.clear();
+        for (BankAccount account : accounts) {
+            index(account.getAccountOwner(), account.getCurrency(), account.getCurrentBalance(),
+                    account.getCurrentOutstandingBalance());
+        }
+    }
+
+    @Override
+    public void onBalanceChange(BalanceChangeEvent event) {
+        String owner = event.getAccountOwner();
+        if (owner == null) {
+            return; // Capital change, no account
+        }
+        unindex(owner);
+        if (event.getType() != BalanceChangeEvent.Type.CLOSE) {
+            index(owner, event.getCurrency(), event.getBalanceAfter(), event.getOutstandingAfter());
+        }
+    }
+
+    /**
+     * Retrieves the accounts in the base currency with a balance above the
+     * given amount, lowest first.
+     */
+    public List<Entry> getBalancesAbove(double amount) {
+        return collect(balances.subSet(new Entry(baseCurrency, amount, null), false,
+                new Entry(baseCurrency, Double.POSITIVE_INFINITY, null), true), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Retrieves the accounts with a balance from low to high, both included,
+     * lowest first.
+     */
+    public List<Entry> getBalancesBetween(String currency, double low, double high) {
+        return collect(range(balances, currency, low, high), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Retrieves the accounts in the base currency with the highest balances,
+     * highest first.
+     */
+    public List<Entry> getTopBalances(int count) {
+        return getTopBalances(baseCurrency, count);
+    }
+
+    public List<Entry> getTopBalances(String currency, int count) {
+        return collect(all(balances, currency).descendingSet(), count);
+    }
+
+    /**
+     * Retrieves the accounts with an outstanding balance (Loan) from low to
+     * high, both included, lowest first. Accounts that owe nothing are not
+     * indexed, so a range starting at zero starts at the smallest debt.
+     */
+    public List<Entry> getOutstandingBetween(String currency, double low, double high) {
+        return collect(range(outstandings, currency, low, high), Integer.MAX_VALUE);
+    }
+
+    public List<Entry> getOutstandingBetween(double low, double high) {
+        return getOutstandingBetween(baseCurrency, low, high);
+    }
+
+    /**
+     * Retrieves the accounts in the base currency with the highest outstanding
+     * balances (Loan), highest first.
+     */
+    public List<Entry> getTopBorrowers(int count) {
+        return getTopBorrowers(baseCurrency, count);
+    }
+
+    public List<Entry> getTopBorrowers(String currency, int count) {
+        return collect(all(outstandings, currency).descendingSet(), count);
+    }
+
+    /**
+     * Retrieves the number of accounts in the balance index.
+     */
+    public int getIndexedAccounts() {
+        return balances.size();
+    }
+
+    /**
+     * Retrieves the number of accounts in the outstanding index.
+     */
+    public int getIndexedBorrowers() {
+        return outstandings.size();
+    }
+
+    private void index(String owner, String currency, double balance, double outstanding) {
+        Entry balanceEntry = new Entry(currency, balance, owner);
+        Entry outstandingEntry = outstanding > 0 ? new Entry(currency, outstanding, owner) : null;
+        balances.add(balanceEntry);
+        if (outstandingEntry != null) {
+            outstandings.add(outstandingEntry);
+        }
+        indexed.put(owner, new Entry[] { balanceEntry, outstandingEntry });
+    }
+
+    private void unindex(String owner) {
+        Entry[] entries = indexed.remove(owner);
+        if (entries != null) {
+            balances.remove(entries[0]);
+            if (entries[1] != null) {
+                outstandings.remove(entries[1]);
+            }
+        }
+    }
+
+    // Entries of one currency with a value from low to high, both included
+    private static NavigableSet<Entry> range(ConcurrentSkipListSet<Entry> index, String currency, double low,
+            double high) {
+        if (low > high) {
+            throw new IllegalArgumentException("Range must not end below its start.");
+        }
+        return index.subSet(new Entry(currency, low, ""), true, new Entry(currency, high, null), true);
+    }
+
+    // Every entry of one currency
+    private static NavigableSet<Entry> all(ConcurrentSkipListSet<Entry> index, String currency) {
+        return range(index, currency, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+    }
+
+    private static List<Entry> collect(NavigableSet<Entry> entries, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Count must not be negative.");
+        }
+        List<Entry> found = new ArrayList<>();
+        Iterator<Entry> iterator = entries.iterator();
+        while (found.size() < count && iterator.hasNext()) {
+            found.add(iterator.next());
+        }
+        return found;
+    }
+
+    /**
+     * One indexed value of an account. Entries are ordered by currency, value
+     * and owner; an entry without an owner is a query bound that follows every
+     * account with the same value.
+     */
+    public static final class Entry implements Comparable<Entry> {
+        private final String currency;
+        private final double value;
+        private final String accountOwner;
+
+        Entry(String currency, double value, String accountOwner) {
+            this.currency = currency;
+            this.value = value;
+            this.accountOwner = accountOwner;
+        }
+
+        public String getAccountOwner() {
+            return accountOwner;
+        }
+
+        /**
+         * Retrieves the indexed balance or outstanding balance.
+         */
+        public double getValue() {
+            return value;
+        }
+
+        public String getCurrency() {
+            return currency;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int order = currency.compareTo(other.currency);
+            if (order == 0) {
+                order = Double.compare(value, other.value);
+            }
+            if (order == 0 && accountOwner != other.accountOwner) {
+                if (accountOwner == null) {
+                    return 1;
+                }
+                if (other.accountOwner == null) {
+                    return -1;
+                }
+                order = accountOwner.compareTo(other.accountOwner);
+            }
+            return order;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Entry && compareTo((Entry) other) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return (currency.hashCode() * 31 + Double.hashCode(value)) * 31
+                    + (accountOwner == null ? 0 : accountOwner.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return accountOwner + ": " + value + " " + currency;
+        }
+    }
+}
@@ -0,0 +1,573 @@
+package Bank;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Ad-hoc filters and aggregates over the accounts of a {@link BankApp}.
+ *
+ * A query filters the accounts of one currency by owner prefix, balance range
+ * and outstanding balance (Loan) range or presence, and counts them and sums
+ * and averages their balances and outstanding balances, optionally grouped
+ * into buckets of balance or outstanding. Build one with {@link #builder()},
+ * or from its textual form with {@link #parse(String)}:
+ *
+ * <pre>
+ * where owner starts with 'owner-0' and balance between 100 and 500
+ *     and has outstanding group by balance 100 currency EUR
+ * </pre>
+ *
+ * Every filter is compiled to a lower and upper bound on the balance and on
+ * the outstanding, plus the owner prefix, so an account is checked with four
+ * comparisons and a prefix test, whichever filters were given.
+ *
+ * A run copies the candidate accounts into primitive arrays while holding the
+ * bank's monitor, so it sees one consistent state of the bank, and then filters
+ * and aggregates the copy in parallel chunks on a fork-join pool. If the bank's
+ * {@link AccountIndex} has been built and the query bounds the outstanding or
+ * the balance, only the accounts in that range of the index are copied;
+ * otherwise every account of the currency is.
+ */
+public final class AccountQuery {
+
+    private static final int CHUNK_SIZE = 4096; // Accounts filtered by one task
+
+    /**
+     * Value the groups of a query are bucketed by.
+     */
+    public enum GroupBy {
+        NONE, BALANCE, OUTSTANDING
+    }
+
+    private final String currency; // Null for the bank's base currency
+    private final String ownerPrefix;
+    private final double minBalance;
+    private final double maxBalance;
+    private final double minOutstanding;
+    private final double maxOutstanding;
+    private final GroupBy groupBy;
+    private final double bucketWidth;
+
+    private AccountQuery(Builder builder) {
+        currency = builder.currency;
+        ownerPrefix = builder.ownerPrefix;
+        minBalance = builder.minBalance;
+        maxBalance = builder.maxBalance;
+        minOutstanding = builder.minOutstanding;
+        maxOutstanding = builder.maxOutstanding;
+        groupBy = builder.groupBy;
+        bucketWidth = builder.bucketWidth;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Parses a query from its textual form. Keywords are not case sensitive;
+     * every part is optional:
+     *
+     * <pre>
+     * [where condition {and condition}] [group by (balance | outstanding) width] [currency code]
+     *
+     * condition: owner starts with 'prefix'
+     *          | (balance | outstanding) between low and high
+     *          | (balance | outstanding) (&gt;= | &lt;=) amount
+     *          | has outstanding
+     *          | no outstanding
+     * </pre>
+     *
+     * @throws IllegalArgumentException if the text is not a valid query
+     */
+    public static AccountQuery parse(String text) {
+        return new Parser(text).parse();
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public GroupBy getGroupBy() {
+        return groupBy;
+    }
+
+    /**
+     * Runs the query on the common fork-join pool.
+     */
+    public Result run(BankApp bank) {
+        return run(bank, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Runs the query, filtering and aggregating on the given pool.
+     */
+    public Result run(BankApp bank, ForkJoinPool pool) {
+        String code = currency != null ? currency : bank.getBaseCurrency();
+        if (minBalance > maxBalance || minOutstanding > maxOutstanding) {
+            return new Result(groupBy, bucketWidth, 0, false, new HashMap<>()); // Nothing can match
+        }
+        Candidates candidates = copyCandidates(bank, code);
+        Map<Long, double[]> groups = pool.invoke(new ChunkTask(candidates, 0, candidates.size));
+        return new Result(groupBy, bucketWidth, candidates.size, candidates.indexed, groups);
+    }
+
+    // Copy the accounts that may match, using the index when it narrows them
+    private Candidates copyCandidates(BankApp bank, String code) {
+        synchronized (bank) {
+            AccountIndex index = bank.peekAccountIndex();
+            List<AccountIndex.Entry> entries = null;
+            if (index != null && minOutstanding > 0) {
+                entries = index.getOutstandingBetween(code, minOutstanding, maxOutstanding);
+            } else if (index != null && (minBalance > Double.NEGATIVE_INFINITY
+                    || maxBalance < Double.POSITIVE_INFINITY)) {
+                entries = index.getBalancesBetween(code, minBalance, maxBalance);
+            }
+            if (entries != null) {
+                Candidates candidates = new Candidates(entries.size(), true);
+                for (AccountIndex.Entry entry : entries) {
+                    try {
+                        candidates.add(bank.getOwnerAccount(entry.getAccountOwner()));
+                    } catch (BankAccount.AccountOwnerNotFoundErrors e) {
+                        // The index only holds open accounts; nothing to copy
+                    }
+                }
+                return candidates;
+            }
+            List<BankAccount> accounts = bank.getBankAccountOwners();
+            Candidates candidates = new Candidates(accounts.size(), false);
+            for (BankAccount account : accounts) {
+                if (account.getCurrency().equals(code)) {
+                    candidates.add(account);
+                }
+            }
+            return candidates;
+        }
+    }
+
+    /**
+     * The accounts a run filters, copied column by column.
+     */
+    private static final class Candidates {
+        private final String[] owners;
+        private final double[] balances;
+        private final double[] outstanding;
+        private final boolean indexed; // Narrowed by the account index
+        private int size;
+
+        Candidates(int capacity, boolean indexed) {
+            owners = new String[capacity];
+            balances = new double[capacity];
+            outstanding = new double[capacity];
+            this.indexed = indexed;
+        }
+
+        void add(BankAccount account) {
+            owners[size] = account.getAccountOwner();
+            balances[size] = account.getCurrentBalance();
+            outstanding[size++] = account.getCurrentOutstandingBalance();
+        }
+    }
+
+    /**
+     * Filters and aggregates a range of candidates, splitting it in halves.
+     * The aggregates are count, balance sum and outstanding sum per bucket.
+     */
+    private final class ChunkTask extends RecursiveTask<Map<Long, double[]>> {
+        private final Candidates candidates;
+        private final int from; // First candidate, inclusive
+        private final int to; // Last candidate, exclusive
+
+        ChunkTask(Candidates candidates, int from, int to) {
+            this.candidates = candidates;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Map<Long, double[]> compute() {
+            if (to - from <= CHUNK_SIZE) {
+                return aggregate();
+            }
+            int middle = (from + to) >>> 1;
+            ChunkTask left = new ChunkTask(candidates, from, middle);
+            left.fork();
+            Map<Long, double[]> groups = new ChunkTask(candidates, middle, to).compute();
+            for (Map.Entry<Long, double[]> other : left.join().entrySet()) {
+                double[] sums = groups.computeIfAbsent(other.getKey(), key -> new double[3]);
+                for (int i = 0; i < 3; i++) {
+                    sums[i] += other.getValue()[i];
+                }
+            }
+            return groups;
+        }
+
+        private Map<Long, double[]> aggregate() {
+            Map<Long, double[]> groups = new HashMap<>();
+            String[] owners = candidates.owners;
+            double[] balances = candidates.balances;
+            double[] outstanding = candidates.outstanding;
+            double[] last = null; // Sums of the previous account's bucket
+            long lastBucket = 0;
+            for (int i = from; i < to; i++) {
+                double balance = balances[i];
+                double owed = outstanding[i];
+                if (balance < minBalance || balance > maxBalance || owed < minOutstanding || owed > maxOutstanding
+                        || (ownerPrefix != null && !owners[i].startsWith(ownerPrefix))) {
+                    continue;
+                }
+                long bucket = groupBy == GroupBy.NONE ? 0
+                        : (long) Math.floor((groupBy == GroupBy.BALANCE ? balance : owed) / bucketWidth);
+                if (last == null || bucket != lastBucket) {
+                    last = groups.computeIfAbsent(bucket, key -> new double[3]);
+                    lastBucket = bucket;
+                }
+                last[0]++;
+                last[1] += balance;
+                last[2] += owed;
+            }
+            return groups;
+        }
+    }
+
+    /**
+     * Builds a query. Without any filter it matches every account of the
+     * currency.
+     */
+    public static final class Builder {
+        private String currency;
+        private String ownerPrefix;
+        private double minBalance = Double.NEGATIVE_INFINITY;
+        private double maxBalance = Double.POSITIVE_INFINITY;
+        private double minOutstanding = Double.NEGATIVE_INFINITY;
+        private double maxOutstanding = Double.POSITIVE_INFINITY;
+        private GroupBy groupBy = GroupBy.NONE;
+        private double bucketWidth;
+
+        private Builder() {
+        }
+
+        /**
+         * Queries the accounts of a currency instead of the base currency.
+         */
+        public Builder currency(String currency) {
+            this.currency = currency;
+            return this;
+        }
+
+        public Builder ownerPrefix(String ownerPrefix) {
+            this.ownerPrefix = ownerPrefix;
+            return this;
+        }
+
+        /**
+         * Keeps the accounts with a balance from low to high, both included.
+         * Bounds given more than once narrow each other.
+         */
+        public Builder balanceBetween(double low, double high) {
+            checkRange(low, high);
+            minBalance = Math.max(minBalance, low);
+            maxBalance = Math.min(maxBalance, high);
+            return this;
+        }
+
+        /**
+         * Keeps the accounts with an outstanding balance (Loan) from low to
+         * high, both included.
+         */
+        public Builder outstandingBetween(double low, double high) {
+            checkRange(low, high);
+            minOutstanding = Math.max(minOutstanding, low);
+            maxOutstanding = Math.min(maxOutstanding, high);
+            return this;
+        }
+
+        /**
+         * Keeps the accounts that owe something, or those that owe nothing.
+         */
+        public Builder hasOutstanding(boolean hasOutstanding) {
+            return hasOutstanding ? outstandingBetween(Double.MIN_VALUE, Double.POSITIVE_INFINITY)
+                    : outstandingBetween(Double.NEGATIVE_INFINITY, 0.0);
+        }
+
+        /**
+         * Groups the accounts into buckets of a value, each starting at a
+         * multiple of the width.
+         */
+        public Builder groupBy(GroupBy groupBy, double bucketWidth) {
+            if (groupBy != GroupBy.NONE && !(bucketWidth > 0)) {
+                throw new IllegalArgumentException("Bucket width must be positive.");
+            }
+            this.groupBy = groupBy;
+            this.bucketWidth = bucketWidth;
+            return this;
+        }
+
+        public AccountQuery build() {
+            return new AccountQuery(this);
+        }
+
+        private static void checkRange(double low, double high) {
+            if (Double.isNaN(low) || Double.isNaN(high) || low > high) {
+                throw new IllegalArgumentException("Range must not end below its start.");
+            }
+        }
+    }
+
+    /**
+     * Reads the textual form of a query, one word or quoted string at a time.
+     */
+    private static final class Parser {
+        private final List<String> tokens = new ArrayList<>();
+        private final Builder builder = new Builder();
+        private int position;
+
+        Parser(String text) {
+            int i = 0;
+            while (i < text.length()) {
+                char c = text.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (c == '\'') {
+                    int end = text.indexOf('\'', i + 1);
+                    if (end < 0) {
+                        throw new IllegalArgumentException("Unterminated string in query: " + text);
+                    }
+                    tokens.add(text.substring(i, end + 1)); // Quotes kept to tell it from a keyword
+                    i = end + 1;
+                } else {
+                    int end = i;
+                    while (end < text.length() && !Character.isWhitespace(text.charAt(end))
+                            && text.charAt(end) != '\'') {
+                        end++;
+                    }
+                    tokens.add(text.substring(i, end));
+                    i = end;
+                }
+            }
+        }
+
+        AccountQuery parse() {
+            if (accept("where")) {
+                do {
+                    condition();
+                } while (accept("and"));
+            }
+            if (accept("group")) {
+                expect("by");
+                GroupBy groupBy = accept("balance") ? GroupBy.BALANCE : null;
+                if (groupBy == null) {
+                    expect("outstanding");
+                    groupBy = GroupBy.OUTSTANDING;
+                }
+                builder.groupBy(groupBy, number());
+            }
+            if (accept("currency")) {
+                builder.currency(next().toUpperCase(Locale.ROOT));
+            }
+            if (position < tokens.size()) {
+                throw new IllegalArgumentException("Unexpected '" + tokens.get(position) + "' in query.");
+            }
+            return builder.build();
+        }
+
+        private void condition() {
+            if (accept("owner")) {
+                expect("starts");
+                expect("with");
+                String prefix = next();
+                if (prefix.length() < 2 || prefix.charAt(0) != '\'') {
+                    throw new IllegalArgumentException("Owner prefix must be quoted: " + prefix);
+                }
+                builder.ownerPrefix(prefix.substring(1, prefix.length() - 1));
+            } else if (accept("has")) {
+                expect("outstanding");
+                builder.hasOutstanding(true);
+            } else if (accept("no")) {
+                expect("outstanding");
+                builder.hasOutstanding(false);
+            } else {
+                boolean balance = accept("balance");
+                if (!balance) {
+                    expect("outstanding");
+                }
+                double low = Double.NEGATIVE_INFINITY;
+                double high = Double.POSITIVE_INFINITY;
+                if (accept("between")) {
+                    low = number();
+                    expect("and");
+                    high = number();
+                } else if (accept(">=")) {
+                    low = number();
+                } else {
+                    expect("<=");
+                    high = number();
+                }
+                if (balance) {
+                    builder.balanceBetween(low, high);
+                } else {
+                    builder.outstandingBetween(low, high);
+                }
+            }
+        }
+
+        private boolean accept(String keyword) {
+            if (position < tokens.size() && tokens.get(position).equalsIgnoreCase(keyword)) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(String keyword) {
+            if (!accept(keyword)) {
+                throw new IllegalArgumentException("Expected '" + keyword + "' in query"
+                        + (position < tokens.size() ? " but found '" + tokens.get(position) + "'." : "."));
+            }
+        }
+
+        private String next() {
+            if (position >= tokens.size()) {
+                throw new IllegalArgumentException("Query ends too early.");
+            }
+            return tokens.get(position++);
+        }
+
+        private double number() {
+            String token = next();
+            try {
+                return Double.parseDouble(token);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Expected a number in query but found '" + token + "'.");
+            }
+        }
+    }
+
+    /**
+     * The aggregates of the accounts a query matched.
+     */
+    public static final class Result {
+        private final long scanned;
+        private final boolean indexed;
+        private final Group total;
+        private final List<Group> groups = new ArrayList<>();
+
+        Result(GroupBy groupBy, double bucketWidth, long scanned, boolean indexed, Map<Long, double[]> sums) {
+            this.scanned = scanned;
+            this.indexed = indexed;
+            double[] all = new double[3];
+            for (Map.Entry<Long, double[]> entry : new TreeMap<>(sums).entrySet()) {
+                double[] bucket = entry.getValue();
+                for (int i = 0; i < 3; i++) {
+                    all[i] += bucket[i];
+                }
+                if (groupBy != GroupBy.NONE) {
+                    groups.add(new Group(entry.getKey() * bucketWidth, bucket));
+                }
+            }
+            total = new Group(Double.NaN, all);
+        }
+
+        /**
+         * Retrieves the aggregates of every matched account.
+         */
+        public Group getTotal() {
+            return total;
+        }
+
+        /**
+         * Retrieves the non-empty buckets, lowest first, or an empty list if
+         * the query is not grouped.
+         */
+        public List<Group> getGroups() {
+            return groups;
+        }
+
+        /**
+         * Retrieves the number of accounts the filters were checked against.
+         */
+        public long getScanned() {
+            return scanned;
+        }
+
+        /**
+         * Retrieves whether the account index narrowed the accounts scanned.
+         */
+        public boolean isIndexed() {
+            return indexed;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(total.toString());
+            for (Group group : groups) {
+                text.append('\n').append(group);
+            }
+            return text.toString();
+        }
+    }
+
+    /**
+     * Count, sums and averages of the accounts in one bucket, or of all the
+     * matched accounts.
+     */
+    public static final class Group {
+        private final double bucket;
+        private final long count;
+        private final double balanceSum;
+        private final double outstandingSum;
+
+        Group(double bucket, double[] sums) {
+            this.bucket = bucket;
+            this.count = (long) sums[0];
+            this.balanceSum = sums[1];
+            this.outstandingSum = sums[2];
+        }
+
+        /**
+         * Retrieves the lowest value of the bucket, or NaN for the total.
+         */
+        public double getBucket() {
+            return bucket;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getBalanceSum() {
+            return balanceSum;
+        }
+
+        public double getOutstandingSum() {
+            return outstandingSum;
+        }
+
+        /**
+         * Retrieves the average balance, or zero if the group is empty.
+         */
+        public double getBalanceAverage() {
+            return count == 0 ? 0.0 : balanceSum / count;
+        }
+
+        /**
+         * Retrieves the average outstanding balance (Loan), or zero if the
+         * group is empty.
+         */
+        public double getOutstandingAverage() {
+            return count == 0 ? 0.0 : outstandingSum / count;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d accounts, balance %.2f (avg %.2f), outstanding %.2f (avg %.2f)",
+                    Double.isNaN(bucket) ? "total" : String.format("from %.2f", bucket), count, balanceSum,
+                    getBalanceAverage(), outstandingSum, getOutstandingAverage());
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package Bank;
+
+import java.util.List;
+
+/**
+ * Storage for the accounts of a {@link BankApp}.
+ *
+ * The bank looks accounts up through the store and hands every changed
+ * account back with {@link #update(BankAccount)} once the change is complete.
+ * A store that keeps the accounts in memory can ignore the update, while a
+ * store that keeps them elsewhere writes the new state back. Accounts
+ * returned by such a store are copies, so changes made to them outside the
+ * bank are not stored.
+ *
+ * Stores report storage failures with {@link java.io.UncheckedIOException}.
+ */
+public interface AccountStore extends AutoCloseable {
+
+    /**
+     * Returns the account of the owner, or null if there is none.
+     */
+    BankAccount find(String accountOwner);
+
+    /**
+     * Adds a new account. The owner must not have an account yet.
+     */
+    void insert(BankAccount account);
+
+    /**
+     * Stores the current state of an account that was changed.
+     */
+    void update(BankAccount account);
+
+    /**
+     * Removes the account of the owner.
+     *
+     * @return true if there was an account to remove
+     */
+    boolean remove(String accountOwner);
+
+    /**
+     * Returns the number of accounts.
+     */
+    int size();
+
+    /**
+     * Returns a snapshot of every account, in the store's order.
+     */
+    List<BankAccount> list();
+
+    /**
+     * Makes every change so far durable. Stores kept in memory do nothing.
+     */
+    default void flush() {
+    }
+
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,364 @@
+package Bank;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import Bank.AsyncBankApp.BankOperation;
+
+/**
+ * Admission control and load shedding in front of a {@link BankApp}.
+ *
+ * At most a limited number of operations run against the bank at once. The
+ * limit adapts to the bank's latency with AIMD: every operation that finishes
+ * within the target latency raises the limit by 1 / limit, so by about one per
+ * full window, and an operation slower than the target cuts it by a tenth,
+ * never below the minimum. The limit is cut at most once per window: an
+ * operation that started before the last cut does not cut it again, so a
+ * burst of slow operations that were all in flight together counts once. When the limit is reached, callers wait in a
+ * bounded queue for at most the queue timeout. A caller that finds the queue
+ * full, or times out in it, is refused at once with
+ * {@link BankOverloadedErrors} instead of adding to the pile-up.
+ *
+ * Balance queries degrade last: they may run a quarter above the limit (at
+ * least one more), and they may use the whole queue, while updates are shed
+ * once the queue is three quarters full.
+ *
+ * Every decision is counted; see {@link Stats}.
+ */
+public class AdmissionController {
+
+    /**
+     * Kinds of operation, in the order they are shed.
+     */
+    public enum Priority {
+        UPDATE, // Changes balances, shed first
+        QUERY // Read-only balance queries, shed last
+    }
+
+    private final BankApp bank; // The protected bank
+    private final int minimumLimit; // Lowest concurrency limit
+    private final int maximumLimit; // Highest concurrency limit
+    private final int queueCapacity; // Callers that may wait for a slot
+    private final long targetLatencyNanos; // Latency above which the limit is cut
+    private final long queueTimeoutNanos; // Longest wait in the queue
+
+    private final ReentrantLock lock = new ReentrantLock(); // Guards the counters below
+    private final Condition slotFreed = lock.newCondition();
+    private double limit; // Current concurrency limit, fractional while increasing
+    private int inFlight; // Operations running against the bank
+    private int queued; // Callers waiting for a slot
+    private final long[] admitted = new long[Priority.values().length];
+    private final long[] rejectedQueueFull = new long[Priority.values().length];
+    private final long[] rejectedTimeout = new long[Priority.values().length];
+    private long limitDecreases;
+    private long lastDecreaseNanos; // Time of the last cut, operations started before it do not cut again
+
+    /**
+     * Creates a controller.
+     *
+     * @param initialLimit  concurrency limit to start from
+     * @param minimumLimit  lowest the limit may be cut to
+     * @param maximumLimit  highest the limit may grow to
+     * @param queueCapacity callers that may wait for a slot
+     * @param targetLatency operation latency above which the limit is cut
+     * @param queueTimeout  longest a caller waits for a slot
+     */
+    public AdmissionController(BankApp bank, int initialLimit, int minimumLimit, int maximumLimit,
+            int queueCapacity, Duration targetLatency, Duration queueTimeout) {
+        if (minimumLimit <= 0 || minimumLimit > initialLimit || initialLimit > maximumLimit || queueCapacity < 0) {
+            throw new IllegalArgumentException("Limits must satisfy 0 < minimum <= initial <= maximum.");
+        }
+        this.bank = bank;
+        this.limit = initialLimit;
+        this.minimumLimit = minimumLimit;
+        this.maximumLimit = maximumLimit;
+        this.queueCapacity = queueCapacity;
+        this.targetLatencyNanos = targetLatency.toNanos();
+        this.queueTimeoutNanos = queueTimeout.toNanos();
+        this.lastDecreaseNanos = System.nanoTime();
+    }
+
+    /**
+     * Deposits into an account if the bank is not overloaded. See
+     * {@link BankApp#deposit}.
+     */
+    public void deposit(String accountOwner, double amount) throws Exception {
+        execute(Priority.UPDATE, b -> {
+            b.deposit(accountOwner, amount);
+            return null;
+        });
+    }
+
+    /**
+     * Withdraws from an account if the bank is not overloaded. See
+     * {@link BankApp#withdraw}.
+     */
+    public void withdraw(String accountOwner, double amount) throws Exception {
+        execute(Priority.UPDATE, b -> {
+            b.withdraw(accountOwner, amount);
+            return null;
+        });
+    }
+
+    /**
+     * Grants an outstanding (Loan) if the bank is not overloaded. See
+     * {@link BankApp#grantOutstanding(String, double)}.
+     */
+    public void grantOutstanding(String accountOwner, double outstandingAmount) throws Exception {
+        execute(Priority.UPDATE, b -> {
+            b.grantOutstanding(accountOwner, outstandingAmount);
+            return null;
+        });
+    }
+
+    /**
+     * Repays an outstanding (Loan) if the bank is not overloaded. See
+     * {@link BankApp#repayOutstanding}.
+     */
+    public void repayOutstanding(String accountOwner, double repaymentAmount) throws Exception {
+        execute(Priority.UPDATE, b -> {
+            b.repayOutstanding(accountOwner, repaymentAmount);
+            return null;
+        });
+    }
+
+    /**
+     * Retrieves an account's balance; shed only after updates are.
+     */
+    public double getOwnerAccountBalance(String accountOwner) throws Exception {
+        return execute(Priority.QUERY, b -> b.getOwnerAccountBalance(accountOwner));
+    }
+
+    /**
+     * Retrieves an account's outstanding balance (Loan); shed only after
+     * updates are.
+     */
+    public double getOutstandingBalance(String accountOwner) throws Exception {
+        return execute(Priority.QUERY, b -> b.getOutstandingBalance(accountOwner));
+    }
+
+    /**
+     * Runs an operation against the bank once a slot is free. The operation
+     * holds the bank's monitor while it runs.
+     *
+     * @throws BankOverloadedErrors if the queue is full or no slot freed up
+     *                              within the queue timeout
+     */
+    public <T> T execute(Priority priority, BankOperation<T> operation) throws Exception {
+        admit(priority);
+        long start = System.nanoTime();
+        try {
+            synchronized (bank) {
+                return operation.apply(bank);
+            }
+        } finally {
+            release(start, System.nanoTime());
+        }
+    }
+
+    /**
+     * Retrieves a snapshot of the controller's state and decisions.
+     */
+    public Stats getStats() {
+        lock.lock();
+        try {
+            return new Stats(limit, inFlight, queued, admitted.clone(), rejectedQueueFull.clone(),
+                    rejectedTimeout.clone(), limitDecreases);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Take a slot, waiting in the queue if there is room for this priority
+    private void admit(Priority priority) throws BankOverloadedErrors, InterruptedException {
+        int index = priority.ordinal();
+        lock.lock();
+        try {
+            if (inFlight < slots(priority)) {
+                inFlight++;
+                admitted[index]++;
+                return;
+            }
+            int room = priority == Priority.QUERY ? queueCapacity : queueCapacity * 3 / 4;
+            if (queued >= room) {
+                rejectedQueueFull[index]++;
+                throw new BankOverloadedErrors(priority, (int) limit, inFlight, queued);
+            }
+            queued++;
+            try {
+                long remaining = queueTimeoutNanos;
+                while (inFlight >= slots(priority)) {
+                    if (remaining <= 0) {
+                        rejectedTimeout[index]++;
+                        throw new BankOverloadedErrors(priority, (int) limit, inFlight, queued - 1);
+                    }
+                    remaining = slotFreed.awaitNanos(remaining);
+                }
+            } finally {
+                queued--;
+            }
+            inFlight++;
+            admitted[index]++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Free a slot and adapt the limit to the operation's latency
+    private void release(long startNanos, long endNanos) {
+        lock.lock();
+        try {
+            inFlight--;
+            if (endNanos - startNanos <= targetLatencyNanos) {
+                limit = Math.min(maximumLimit, limit + 1.0 / limit); // Additive increase
+            } else if (startNanos - lastDecreaseNanos > 0) { // Started after the last cut
+                double cut = Math.max(minimumLimit, limit * 0.9); // Multiplicative decrease
+                if (cut < limit) {
+                    limit = cut;
+                    limitDecreases++;
+                    lastDecreaseNanos = endNanos;
+                }
+            }
+            slotFreed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Operations of a priority that may run at once; queries get extra headroom
+    private int slots(Priority priority) {
+        int base = (int) limit;
+        return priority == Priority.QUERY ? base + Math.max(1, base / 4) : base;
+    }
+
+    /**
+     * The controller's state and the decisions it made, at the time they were
+     * taken.
+     */
+    public static final class Stats {
+        private final double limit;
+        private final int inFlight;
+        private final int queued;
+        private final long[] admitted;
+        private final long[] rejectedQueueFull;
+        private final long[] rejectedTimeout;
+        private final long limitDecreases;
+
+        Stats(double limit, int inFlight, int queued, long[] admitted, long[] rejectedQueueFull,
+                long[] rejectedTimeout, long limitDecreases) {
+            this.limit = limit;
+            this.inFlight = inFlight;
+            this.queued = queued;
+            this.admitted = admitted;
+            this.rejectedQueueFull = rejectedQueueFull;
+            this.rejectedTimeout = rejectedTimeout;
+            this.limitDecreases = limitDecreases;
+        }
+
+        /**
+         * Retrieves the concurrency limit for updates.
+         */
+        public double getLimit() {
+            return limit;
+        }
+
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        public int getQueued() {
+            return queued;
+        }
+
+        public long getAdmitted(Priority priority) {
+            return admitted[priority.ordinal()];
+        }
+
+        /**
+         * Retrieves the operations refused because the queue had no room.
+         */
+        public long getRejectedQueueFull(Priority priority) {
+            return rejectedQueueFull[priority.ordinal()];
+        }
+
+        /**
+         * Retrieves the operations refused after waiting the whole queue
+         * timeout.
+         */
+        public long getRejectedTimeout(Priority priority) {
+            return rejectedTimeout[priority.ordinal()];
+        }
+
+        public long getRejected(Priority priority) {
+            return getRejectedQueueFull(priority) + getRejectedTimeout(priority);
+        }
+
+        /**
+         * Retrieves how many times a slow operation cut the limit.
+         */
+        public long getLimitDecreases() {
+            return limitDecreases;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(String.format("limit %.1f, %d in flight, %d queued, %d cuts",
+                    limit, inFlight, queued, limitDecreases));
+            for (Priority priority : Priority.values()) {
+                text.append(String.format("; %s: %d admitted, %d queue full, %d timed out",
+                        priority.name().toLowerCase(), getAdmitted(priority), getRejectedQueueFull(priority),
+                        getRejectedTimeout(priority)));
+            }
+            return text.toString();
+        }
+    }
+
+    // Error class for operations refused because the bank is overloaded
+    public static class BankOverloadedErrors extends Exception {
+
+        private final Priority priority; // Kind of the refused operation
+        private final int limit; // Concurrency limit when it was refused
+        private final int inFlight; // Operations running when it was refused
+        private final int queued; // Callers waiting when it was refused
+
+        /**
+         * Constructor for BankOverloadedErrors.
+         * This error is thrown when an operation is shed instead of being queued
+         * behind the operations already waiting.
+         *
+         * @param priority the kind of operation refused
+         * @param limit    the concurrency limit at the time
+         * @param inFlight the operations running at the time
+         * @param queued   the callers waiting at the time
+         */
+        public BankOverloadedErrors(Priority priority, int limit, int inFlight, int queued) {
+            // Call the parent error class constructor with a custom error message
+            super("Bank overloaded, " + priority.name().toLowerCase() + " refused. Limit: " + limit
+                    + ", In flight: " + inFlight + ", Queued: " + queued);
+            this.priority = priority;
+            this.limit = limit;
+            this.inFlight = inFlight;
+            this.queued = queued;
+            // Print the error message to the console for debugging purposes
+            System.out.println(getMessage());
+        }
+
+        public Priority getPriority() {
+            return priority;
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        public int getQueued() {
+            return queued;
+        }
+    }
+}
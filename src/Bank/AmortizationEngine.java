@@ -0,0 +1,94 @@
+package Bank;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Computes amortization schedules for outstanding (Loan) terms.
+ *
+ * Single schedules are built period by period. Portfolios are processed in
+ * parallel across the fork-join common pool, and level payments for a whole
+ * portfolio can be computed straight from primitive arrays without building
+ * any schedule objects.
+ */
+public final class AmortizationEngine {
+
+    static final double EPSILON = 1e-9; // Tolerance for comparing amounts
+
+    private AmortizationEngine() {
+    }
+
+    /**
+     * Builds the full schedule for the terms, with level payments.
+     */
+    public static AmortizationSchedule schedule(LoanTerms terms) {
+        AmortizationSchedule schedule = new AmortizationSchedule(terms);
+        amortize(schedule, 0, terms.getPrincipal());
+        return schedule;
+    }
+
+    /**
+     * Builds the schedules of a portfolio in parallel.
+     *
+     * @return the schedules, in the same order as the terms
+     */
+    public static List<AmortizationSchedule> schedulePortfolio(List<LoanTerms> portfolio) {
+        return portfolio.parallelStream()
+                .map(AmortizationEngine::schedule)
+                .toList();
+    }
+
+    /**
+     * Computes the level payment of every loan in a portfolio in parallel.
+     * All the arrays must have the same length.
+     *
+     * @param principals    amount owed per loan
+     * @param periodicRates interest rate per period per loan, as a fraction
+     * @param periods       number of payments left per loan
+     * @param payments      receives the level payment per loan
+     */
+    public static void levelPayments(double[] principals, double[] periodicRates, int[] periods,
+            double[] payments) {
+        if (principals.length != periodicRates.length || principals.length != periods.length
+                || principals.length != payments.length) {
+            throw new IllegalArgumentException("Portfolio arrays must have the same length.");
+        }
+        Arrays.parallelSetAll(payments, i -> levelPayment(principals[i], periodicRates[i], periods[i]));
+    }
+
+    /**
+     * Returns the payment that clears the principal in the given number of equal
+     * payments.
+     */
+    public static double levelPayment(double principal, double periodicRate, int periods) {
+        if (periods <= 0) {
+            return principal;
+        }
+        if (periodicRate == 0) {
+            return principal / periods;
+        }
+        return principal * periodicRate / (1 - Math.pow(1 + periodicRate, -periods));
+    }
+
+    /**
+     * Re-amortizes a schedule from a period on, for example after a
+     * prepayment. The earlier periods are left untouched, so the cost depends
+     * only on the number of periods that change.
+     *
+     * @param fromPeriod     first period to recompute
+     * @param openingBalance balance owed at the start of that period
+     */
+    static void amortize(AmortizationSchedule schedule, int fromPeriod, double openingBalance) {
+        int periods = schedule.getCapacity();
+        double rate = schedule.getPeriodicRate();
+        double level = levelPayment(openingBalance, rate, periods - fromPeriod);
+        double remaining = openingBalance;
+        for (int period = fromPeriod; period < periods; period++) {
+            double periodInterest = remaining * rate;
+            double periodPrincipal = period == periods - 1 ? remaining : level - periodInterest;
+            remaining = Math.max(0.0, remaining - periodPrincipal);
+            schedule.setPeriod(period, periodInterest + periodPrincipal, periodInterest, periodPrincipal,
+                    remaining);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package Bank;
+
+import Bank.Outstanding.InadequateOutstandingAmountErrors;
+
+/**
+ * Payment schedule of an amortizing outstanding (Loan).
+ *
+ * For every period the schedule holds the payment, its interest and principal
+ * parts, and the balance left after it. The periods are kept in primitive
+ * arrays so that large portfolios stay compact. Payments are recorded against
+ * the next due period, and a payment that differs from the scheduled one
+ * re-amortizes only the periods after it.
+ */
+public class AmortizationSchedule {
+
+    private final LoanTerms terms; // The terms the schedule was built from
+    private final double periodicRate; // Interest rate per period as a fraction
+    private final double[] payment; // Scheduled payment per period
+    private final double[] interest; // Interest part of each payment
+    private final double[] principal; // Principal part of each payment
+    private final double[] balance; // Balance left after each period
+    private int nextPeriod; // Index of the next period due
+    private int lastPeriod; // Number of periods in use, smaller after an early payoff
+    private byte[] encoded; // Cached binary form, dropped on every change
+
+    /**
+     * Creates an empty schedule for the terms. Use
+     * {@link AmortizationEngine#schedule(LoanTerms)} to build a filled one.
+     */
+    AmortizationSchedule(LoanTerms terms) {
+        int periods = terms.getTermPeriods();
+        this.terms = terms;
+        this.periodicRate = terms.getPeriodicRate();
+        this.payment = new double[periods];
+        this.interest = new double[periods];
+        this.principal = new double[periods];
+        this.balance = new double[periods];
+        this.lastPeriod = periods;
+    }
+
+    public LoanTerms getTerms() {
+        return terms;
+    }
+
+    /**
+     * Retrieves the number of periods in the schedule.
+     */
+    public int getPeriods() {
+        return lastPeriod;
+    }
+
+    /**
+     * Retrieves the index of the next period due, equal to getPeriods() once the
+     * loan is paid off.
+     */
+    public int getNextPeriod() {
+        return nextPeriod;
+    }
+
+    public double getPayment(int period) {
+        return payment[checkPeriod(period)];
+    }
+
+    public double getInterest(int period) {
+        return interest[checkPeriod(period)];
+    }
+
+    public double getPrincipal(int period) {
+        return principal[checkPeriod(period)];
+    }
+
+    /**
+     * Retrieves the balance left after the given period.
+     */
+    public double getBalance(int period) {
+        return balance[checkPeriod(period)];
+    }
+
+    /**
+     * Retrieves the balance owed before the next period's payment.
+     */
+    public double getRemainingBalance() {
+        return openingBalance(nextPeriod);
+    }
+
+    /**
+     * Retrieves the interest that the next payment has to cover.
+     */
+    public double getInterestDue() {
+        return nextPeriod >= lastPeriod ? 0.0 : openingBalance(nextPeriod) * periodicRate;
+    }
+
+    /**
+     * Returns true once every period has been paid.
+     */
+    public boolean isPaidOff() {
+        return nextPeriod >= lastPeriod;
+    }
+
+    /**
+     * Records a payment against the next due period.
+     * The payment first covers the period's interest and the rest reduces the
+     * balance. If the principal part differs from the scheduled one, the later
+     * periods are re-amortized from the new balance. A payment that clears the
+     * balance ends the schedule early, and the payment of the last period must
+     * clear it, as no period is left to re-amortize into.
+     *
+     * @return the interest part of the payment
+     * @throws InadequateOutstandingAmountErrors if the payment does not cover the
+     *                                           interest due, exceeds the
+     *                                           balance owed, or is the last
+     *                                           payment and leaves a balance
+     */
+    public double recordPayment(double amount) throws InadequateOutstandingAmountErrors {
+        if (isPaidOff()) {
+            throw new InadequateOutstandingAmountErrors(amount, "The loan schedule is already paid off.");
+        }
+        double opening = openingBalance(nextPeriod);
+        double interestDue = opening * periodicRate;
+        if (amount < interestDue) {
+            throw new InadequateOutstandingAmountErrors(amount, "Repayment does not cover the interest due");
+        }
+        if (amount > opening + interestDue + AmortizationEngine.EPSILON) {
+            throw new InadequateOutstandingAmountErrors(amount, "Repayment amount exceeds outstanding balance");
+        }
+        double principalPaid = amount - interestDue;
+        double closing = Math.max(0.0, opening - principalPaid);
+        if (nextPeriod == lastPeriod - 1 && closing > AmortizationEngine.EPSILON) {
+            throw new InadequateOutstandingAmountErrors(amount,
+                    "The last payment must clear the balance owed of " + (opening + interestDue));
+        }
+        boolean onSchedule = Math.abs(principalPaid - principal[nextPeriod]) <= AmortizationEngine.EPSILON;
+
+        payment[nextPeriod] = amount;
+        interest[nextPeriod] = interestDue;
+        principal[nextPeriod] = principalPaid;
+        balance[nextPeriod] = closing;
+        nextPeriod++;
+        encoded = null;
+
+        if (closing <= AmortizationEngine.EPSILON) {
+            lastPeriod = nextPeriod; // Paid off early, drop the remaining periods
+        } else if (!onSchedule) {
+            AmortizationEngine.amortize(this, nextPeriod, closing); // Only the later periods change
+        }
+        return interestDue;
+    }
+
+    // Balance owed at the start of a period
+    double openingBalance(int period) {
+        return period == 0 ? terms.getPrincipal() : balance[period - 1];
+    }
+
+    double getPeriodicRate() {
+        return periodicRate;
+    }
+
+    int getCapacity() {
+        return payment.length;
+    }
+
+    // Write one period, used by the engine
+    void setPeriod(int period, double periodPayment, double periodInterest, double periodPrincipal,
+            double closingBalance) {
+        payment[period] = periodPayment;
+        interest[period] = periodInterest;
+        principal[period] = periodPrincipal;
+        balance[period] = closingBalance;
+        encoded = null;
+    }
+
+    // Restore the progress of a stored schedule whose periods were written with
+    // setPeriod
+    void restoreProgress(int nextPeriod, int lastPeriod) {
+        if (lastPeriod < 0 || lastPeriod > payment.length || nextPeriod < 0 || nextPeriod > lastPeriod) {
+            throw new IllegalArgumentException("Invalid schedule progress: " + nextPeriod + "/" + lastPeriod);
+        }
+        this.nextPeriod = nextPeriod;
+        this.lastPeriod = lastPeriod;
+        encoded = null;
+    }
+
+    // Binary form carried by change events and checkpoints, encoded once per
+    // change of the schedule. Callers must not modify the returned array.
+    byte[] encoded() {
+        if (encoded == null) {
+            encoded = AccountCodec.encodeSchedule(this);
+        }
+        return encoded;
+    }
+
+    private int checkPeriod(int period) {
+        if (period < 0 || period >= lastPeriod) {
+            throw new IndexOutOfBoundsException("No such period: " + period);
+        }
+        return period;
+    }
+}
@@ -0,0 +1,233 @@
+package Bank;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asynchronous facade over a {@link BankApp}.
+ * Every operation is handed to an executor and returns a
+ * {@link CompletableFuture}. A failed operation completes the future
+ * exceptionally with the same error type the synchronous method throws, for
+ * example {@link BankAccount.InadequateFundsErrors}.
+ */
+public class AsyncBankApp implements AutoCloseable {
+
+    /**
+     * A unit of work run against the bank on the executor.
+     * It may throw any of the bank's checked errors.
+     */
+    @FunctionalInterface
+    public interface BankOperation<T> {
+        T apply(BankApp bank) throws Exception;
+    }
+
+    private final BankApp bank; // The bank the operations are run against
+    private final ExecutorService executor; // Executor that runs the operations
+    private final boolean ownsExecutor; // True if close() should shut the executor down
+
+    /**
+     * Creates the facade on a caller supplied executor.
+     * The executor is not shut down when the facade is closed.
+     */
+    public AsyncBankApp(BankApp bank, ExecutorService executor) {
+        this(bank, executor, false);
+    }
+
+    private AsyncBankApp(BankApp bank, ExecutorService executor, boolean ownsExecutor) {
+        this.bank = bank;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    /**
+     * Creates the facade on a virtual thread per task executor.
+     * Each operation gets its own lightweight thread, so callers never wait for
+     * a free worker.
+     *
+     * Every operation runs inside synchronized (bank). Up to JDK 23 a
+     * virtual thread blocked on a monitor pins its carrier thread, so under
+     * contention each waiting operation holds a carrier and the rest of the
+     * program's virtual threads can starve. Prefer
+     * {@link #withBoundedPool(BankApp, int, int)} when the bank is contended.
+     */
+    public static AsyncBankApp withVirtualThreads(BankApp bank) {
+        return new AsyncBankApp(bank, Executors.newVirtualThreadPerTaskExecutor(), true);
+    }
+
+    /**
+     * Creates the facade on a fixed size pool with a bounded queue.
+     * When the queue is full the returned future completes exceptionally with a
+     * {@link RejectedExecutionException} instead of blocking the caller.
+     *
+     * @param threads       number of worker threads
+     * @param queueCapacity maximum number of operations waiting for a thread
+     */
+    public static AsyncBankApp withBoundedPool(BankApp bank, int threads, int queueCapacity) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity));
+        return new AsyncBankApp(bank, pool, true);
+    }
+
+    /**
+     * Retrieves the bank this facade runs against.
+     */
+    public BankApp getBank() {
+        return bank;
+    }
+
+    /**
+     * Opens a new account asynchronously. See {@link BankApp#appendOwnerAccount}.
+     */
+    public CompletableFuture<Void> appendOwnerAccount(String accountOwner, double startingDeposit) {
+        return submit(b -> {
+            b.appendOwnerAccount(accountOwner, startingDeposit);
+            return null;
+        });
+    }
+
+    /**
+     * Closes an account asynchronously. See {@link BankApp#removeOwnerAccount}.
+     */
+    public CompletableFuture<Void> removeOwnerAccount(String accountOwner) {
+        return submit(b -> {
+            b.removeOwnerAccount(accountOwner);
+            return null;
+        });
+    }
+
+    /**
+     * Deposits into an account asynchronously. See {@link BankApp#deposit}.
+     */
+    public CompletableFuture<Void> deposit(String accountOwner, double amount) {
+        return submit(b -> {
+            b.deposit(accountOwner, amount);
+            return null;
+        });
+    }
+
+    /**
+     * Withdraws from an account asynchronously. See {@link BankApp#withdraw}.
+     */
+    public CompletableFuture<Void> withdraw(String accountOwner, double amount) {
+        return submit(b -> {
+            b.withdraw(accountOwner, amount);
+            return null;
+        });
+    }
+
+    /**
+     * Grants an outstanding (Loan) asynchronously. See
+     * {@link BankApp#grantOutstanding}.
+     */
+    public CompletableFuture<Void> grantOutstanding(String accountOwner, double outstandingAmount) {
+        return submit(b -> {
+            b.grantOutstanding(accountOwner, outstandingAmount);
+            return null;
+        });
+    }
+
+    /**
+     * Repays an outstanding (Loan) asynchronously. See
+     * {@link BankApp#repayOutstanding}.
+     */
+    public CompletableFuture<Void> repayOutstanding(String accountOwner, double repaymentAmount) {
+        return submit(b -> {
+            b.repayOutstanding(accountOwner, repaymentAmount);
+            return null;
+        });
+    }
+
+    /**
+     * Fetches the current balance of an account asynchronously.
+     */
+    public CompletableFuture<Double> getOwnerAccountBalance(String accountOwner) {
+        return submit(b -> b.getOwnerAccountBalance(accountOwner));
+    }
+
+    /**
+     * Fetches the outstanding balance of an account asynchronously. (Loan)
+     */
+    public CompletableFuture<Double> getOutstandingBalance(String accountOwner) {
+        return submit(b -> b.getOutstandingBalance(accountOwner));
+    }
+
+    /**
+     * Fetches the bank operating funds asynchronously.
+     */
+    public CompletableFuture<Double> getBankOperatingFunds() {
+        return submit(BankApp::getBankOperatingFunds);
+    }
+
+    /**
+     * Runs an arbitrary operation against the bank on the executor.
+     * The operation holds the bank's monitor while it runs, so an operation made
+     * of several bank calls happens as one.
+     */
+    public <T> CompletableFuture<T> submit(BankOperation<T> operation) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                synchronized (bank) {
+                    run(operation, result);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e); // The executor is saturated or shut down
+        }
+        return result;
+    }
+
+    /**
+     * Runs a batch of operations as a single task on the executor.
+     * The bank is locked once for the whole batch and the operations run in
+     * order. Each operation completes its own future, so one failed operation
+     * does not fail the rest of the batch.
+     *
+     * @return one future per operation, in the same order as the batch
+     */
+    public <T> List<CompletableFuture<T>> submitBatch(List<? extends BankOperation<T>> operations) {
+        List<CompletableFuture<T>> results = new ArrayList<>(operations.size());
+        for (int i = 0; i < operations.size(); i++) {
+            results.add(new CompletableFuture<>());
+        }
+        try {
+            executor.execute(() -> {
+                synchronized (bank) {
+                    for (int i = 0; i < operations.size(); i++) {
+                        run(operations.get(i), results.get(i));
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            results.forEach(r -> r.completeExceptionally(e));
+        }
+        return results;
+    }
+
+    // Run one operation and complete its future with the result or the error
+    private <T> void run(BankOperation<T> operation, CompletableFuture<T> result) {
+        try {
+            result.complete(operation.apply(bank));
+        } catch (Throwable e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Shuts down the executor if it was created by this facade.
+     * Operations already submitted are allowed to finish.
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.close();
+        }
+    }
+}
@@ -0,0 +1,818 @@
+package Bank;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Account store that keeps the accounts in a page-based B+tree file, so the
+ * number of accounts is not limited by the heap.
+ *
+ * The file is split into fixed-size pages read and written through a
+ * {@link FileChannel}. Page 0 is the header; the other pages are tree nodes
+ * keyed by owner, overflow pages for records too large to sit in a leaf, or
+ * free pages waiting to be reused. Leaves are linked in key order, so
+ * {@link #list()} returns the accounts sorted by owner.
+ *
+ * Decoded pages are kept in a page cache with a fixed number of frames. When
+ * the cache is full the clock algorithm picks the victim: every frame has a
+ * reference bit that is set on use, and the clock hand clears bits until it
+ * finds a frame that was not used since its last pass. Hot accounts therefore
+ * stay in memory while cold ones are read from disk when needed. Changed pages
+ * are written when they are evicted and on {@link #flush()}.
+ *
+ * Deleting an account does not merge leaves; space in a leaf is reused by
+ * later inserts, and freed overflow pages are reused for new records.
+ *
+ * Pages are written in place: evicted pages and freed pages go to the file
+ * as soon as they leave the cache, and the header with the root only on
+ * {@link #flush()}. The file is therefore only valid after a flush with no
+ * change since, or a clean {@link #close()}. The first write after a flush
+ * marks the header as not clean, and opening a file that is not clean fails
+ * instead of reading pages the header no longer describes. After a crash,
+ * rebuild the store from a {@link ChangeDataCaptureLog} or a
+ * {@link BankCheckpointer} checkpoint.
+ */
+public class BTreeAccountStore implements AccountStore {
+
+    public static final int DEFAULT_PAGE_SIZE = 4096; // Bytes per page
+    public static final int DEFAULT_CACHE_PAGES = 1024; // Pages kept in memory
+
+    private static final int MAGIC = 0x42414E4B; // "BANK"
+    private static final int VERSION = 2; // Format of the file
+    private static final int MINIMUM_PAGE_SIZE = 512;
+    private static final int MAXIMUM_PAGE_SIZE = 65536; // Lengths inside a page are stored as shorts
+
+    // Page types, stored in the first byte of every page
+    private static final byte LEAF = 1;
+    private static final byte INTERNAL = 2;
+    private static final byte OVERFLOW = 3;
+    private static final byte FREE = 4;
+
+    private static final int NODE_HEADER = 1 + 2 + 4; // Type, entry count, next leaf or first child
+    private static final int OVERFLOW_HEADER = 1 + 4 + 4; // Type, next page, bytes used
+
+    private final FileChannel channel; // The store file
+    private final int pageSize; // Bytes per page
+    private final int inlineLimit; // Largest record kept inside a leaf
+    private final int maximumKeyBytes; // Longest owner name, in UTF-8 bytes
+    private final PageCache cache; // Decoded pages, bounded
+
+    private int rootPage; // Root of the tree
+    private int pageCount; // Pages in the file, including the header
+    private int freeListHead = -1; // First free page, or -1
+    private int size; // Number of accounts
+    private boolean clean; // The header on disk says the file is clean
+
+    /**
+     * Opens or creates a store with the default page size and cache.
+     */
+    public BTreeAccountStore(Path file) throws IOException {
+        this(file, DEFAULT_PAGE_SIZE, DEFAULT_CACHE_PAGES);
+    }
+
+    /**
+     * Opens or creates a store.
+     *
+     * @param pageSize   bytes per page for a new file; an existing file must
+     *                   have been created with the same size
+     * @param cachePages number of pages the cache keeps in memory
+     */
+    public BTreeAccountStore(Path file, int pageSize, int cachePages) throws IOException {
+        if (pageSize < MINIMUM_PAGE_SIZE || pageSize > MAXIMUM_PAGE_SIZE) {
+            throw new IllegalArgumentException(
+                    "Page size must be between " + MINIMUM_PAGE_SIZE + " and " + MAXIMUM_PAGE_SIZE + " bytes.");
+        }
+        if (cachePages < 8) {
+            throw new IllegalArgumentException("The page cache needs at least 8 pages.");
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.pageSize = pageSize;
+        this.inlineLimit = pageSize / 4;
+        this.maximumKeyBytes = pageSize / 16;
+        this.cache = new PageCache(cachePages);
+        try {
+            if (channel.size() == 0) {
+                rootPage = 1;
+                pageCount = 2;
+                writePage(new Leaf(rootPage));
+                writeHeader(true);
+            } else {
+                readHeader();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized BankAccount find(String accountOwner) {
+        try {
+            int page = rootPage;
+            while (true) {
+                Page node = cache.pin(page);
+                try {
+                    if (node instanceof Internal) {
+                        page = ((Internal) node).childFor(accountOwner);
+                        continue;
+                    }
+                    Leaf leaf = (Leaf) node;
+                    int index = leaf.search(accountOwner);
+                    return index < 0 ? null : AccountCodec.decode(accountOwner, readRecord(leaf.entries.get(index)));
+                } finally {
+                    cache.unpin(node);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void insert(BankAccount account) {
+        put(account);
+    }
+
+    @Override
+    public synchronized void update(BankAccount account) {
+        put(account);
+    }
+
+    @Override
+    public synchronized boolean remove(String accountOwner) {
+        try {
+            int page = rootPage;
+            while (true) {
+                Page node = cache.pin(page);
+                try {
+                    if (node instanceof Internal) {
+                        page = ((Internal) node).childFor(accountOwner);
+                        continue;
+                    }
+                    Leaf leaf = (Leaf) node;
+                    int index = leaf.search(accountOwner);
+                    if (index < 0) {
+                        return false;
+                    }
+                    freeRecord(leaf.entries.remove(index));
+                    leaf.dirty = true;
+                    size--;
+                    return true;
+                } finally {
+                    cache.unpin(node);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized List<BankAccount> list() {
+        List<BankAccount> accounts = new ArrayList<>(size);
+        try {
+            int page = rootPage;
+            while (true) { // Find the leftmost leaf
+                Page node = cache.pin(page);
+                cache.unpin(node);
+                if (node instanceof Leaf) {
+                    break;
+                }
+                page = ((Internal) node).children.get(0);
+            }
+            while (page >= 0) { // Walk the leaves in key order
+                Leaf leaf = (Leaf) cache.pin(page);
+                try {
+                    for (LeafEntry entry : leaf.entries) {
+                        accounts.add(AccountCodec.decode(entry.key, readRecord(entry)));
+                    }
+                    page = leaf.next;
+                } finally {
+                    cache.unpin(leaf);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return accounts;
+    }
+
+    @Override
+    public synchronized void flush() {
+        try {
+            cache.writeDirtyPages();
+            channel.force(true); // Every page is on disk before the header says so
+            writeHeader(true);
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            flush();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the number of page lookups served from the cache.
+     */
+    public synchronized long getCacheHits() {
+        return cache.hits;
+    }
+
+    /**
+     * Retrieves the number of page lookups that had to read the file.
+     */
+    public synchronized long getCacheMisses() {
+        return cache.misses;
+    }
+
+    /**
+     * Retrieves the number of pages currently held by the cache.
+     */
+    public synchronized int getCachedPages() {
+        return cache.frames.size();
+    }
+
+    /**
+     * Retrieves the number of pages in the file, including the header and free
+     * pages.
+     */
+    public synchronized int getPageCount() {
+        return pageCount;
+    }
+
+    // Insert or replace the record of an account
+    private void put(BankAccount account) {
+        String key = account.getAccountOwner();
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > maximumKeyBytes) {
+            throw new IllegalArgumentException("Account owner name is too long for the store: " + key);
+        }
+        try {
+            Split split = insert(rootPage, key, keyBytes, AccountCodec.encode(account));
+            if (split != null) { // The root split, grow the tree by one level
+                Internal root = new Internal(allocatePage());
+                root.children.add(rootPage);
+                root.keys.add(split.key);
+                root.keyBytes.add(split.keyBytes);
+                root.children.add(split.rightPage);
+                cache.add(root);
+                rootPage = root.id;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Insert below a page, returns the split to add to the parent, if any
+    private Split insert(int page, String key, byte[] keyBytes, byte[] record) throws IOException {
+        Page node = cache.pin(page);
+        try {
+            if (node instanceof Internal) {
+                Internal internal = (Internal) node;
+                int child = internal.childIndex(key);
+                Split split = insert(internal.children.get(child), key, keyBytes, record);
+                if (split == null) {
+                    return null;
+                }
+                internal.keys.add(child, split.key);
+                internal.keyBytes.add(child, split.keyBytes);
+                internal.children.add(child + 1, split.rightPage);
+                internal.dirty = true;
+                return internal.encodedSize() > pageSize ? splitInternal(internal) : null;
+            }
+            Leaf leaf = (Leaf) node;
+            int index = leaf.search(key);
+            if (index >= 0) {
+                freeRecord(leaf.entries.get(index)); // Free first so the new record can reuse the pages
+                leaf.entries.set(index, storeRecord(key, keyBytes, record));
+            } else {
+                leaf.entries.add(-index - 1, storeRecord(key, keyBytes, record));
+                size++;
+            }
+            leaf.dirty = true;
+            return leaf.encodedSize() > pageSize ? splitLeaf(leaf) : null;
+        } finally {
+            cache.unpin(node);
+        }
+    }
+
+    // Move the upper half of a full leaf, by bytes, to a new leaf
+    private Split splitLeaf(Leaf leaf) throws IOException {
+        int half = leaf.encodedSize() / 2;
+        int used = NODE_HEADER;
+        int middle = 0;
+        while (middle < leaf.entries.size() - 1 && used < half) {
+            used += leaf.entries.get(middle).encodedSize();
+            middle++;
+        }
+        middle = Math.max(1, middle);
+        Leaf right = new Leaf(allocatePage());
+        List<LeafEntry> moved = leaf.entries.subList(middle, leaf.entries.size());
+        right.entries.addAll(moved);
+        moved.clear();
+        right.next = leaf.next;
+        leaf.next = right.id;
+        leaf.dirty = true;
+        cache.add(right);
+        LeafEntry first = right.entries.get(0);
+        return new Split(first.key, first.keyBytes, right.id);
+    }
+
+    // Move the upper half of a full internal node to a new node and promote the
+    // middle key
+    private Split splitInternal(Internal node) throws IOException {
+        int middle = node.keys.size() / 2;
+        Internal right = new Internal(allocatePage());
+        String promoted = node.keys.get(middle);
+        byte[] promotedBytes = node.keyBytes.get(middle);
+        right.keys.addAll(node.keys.subList(middle + 1, node.keys.size()));
+        right.keyBytes.addAll(node.keyBytes.subList(middle + 1, node.keyBytes.size()));
+        right.children.addAll(node.children.subList(middle + 1, node.children.size()));
+        node.keys.subList(middle, node.keys.size()).clear();
+        node.keyBytes.subList(middle, node.keyBytes.size()).clear();
+        node.children.subList(middle + 1, node.children.size()).clear();
+        node.dirty = true;
+        cache.add(right);
+        return new Split(promoted, promotedBytes, right.id);
+    }
+
+    // Keep a record inline, or write it to a chain of overflow pages
+    private LeafEntry storeRecord(String key, byte[] keyBytes, byte[] record) throws IOException {
+        if (record.length <= inlineLimit) {
+            return new LeafEntry(key, keyBytes, record, -1, record.length);
+        }
+        int capacity = pageSize - OVERFLOW_HEADER;
+        int pages = (record.length + capacity - 1) / capacity;
+        int[] ids = new int[pages];
+        for (int i = 0; i < pages; i++) {
+            ids[i] = allocatePage();
+        }
+        for (int i = 0; i < pages; i++) {
+            int from = i * capacity;
+            Overflow overflow = new Overflow(ids[i]);
+            overflow.data = Arrays.copyOfRange(record, from, Math.min(record.length, from + capacity));
+            overflow.next = i + 1 < pages ? ids[i + 1] : -1;
+            cache.add(overflow);
+        }
+        return new LeafEntry(key, keyBytes, null, ids[0], record.length);
+    }
+
+    private byte[] readRecord(LeafEntry entry) throws IOException {
+        if (entry.record != null) {
+            return entry.record;
+        }
+        byte[] record = new byte[entry.length];
+        int position = 0;
+        int page = entry.overflowPage;
+        while (page >= 0) {
+            Overflow overflow = (Overflow) cache.pin(page);
+            try {
+                System.arraycopy(overflow.data, 0, record, position, overflow.data.length);
+                position += overflow.data.length;
+                page = overflow.next;
+            } finally {
+                cache.unpin(overflow);
+            }
+        }
+        return record;
+    }
+
+    // Release the overflow pages of a record that is replaced or removed
+    private void freeRecord(LeafEntry entry) throws IOException {
+        int page = entry.overflowPage;
+        while (page >= 0) {
+            Overflow overflow = (Overflow) cache.pin(page);
+            cache.unpin(overflow);
+            freePage(page);
+            page = overflow.next;
+        }
+    }
+
+    private int allocatePage() throws IOException {
+        if (freeListHead < 0) {
+            return pageCount++;
+        }
+        int page = freeListHead;
+        ByteBuffer buf = readRaw(page);
+        if (buf.get(0) != FREE) {
+            throw new IOException("Free list of the account store is corrupt at page " + page);
+        }
+        freeListHead = buf.getInt(1);
+        return page;
+    }
+
+    private void freePage(int page) throws IOException {
+        cache.drop(page);
+        ByteBuffer buf = ByteBuffer.allocate(pageSize);
+        buf.put(FREE).putInt(freeListHead);
+        buf.clear();
+        writeRaw(page, buf);
+        freeListHead = page;
+    }
+
+    private void readHeader() throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(32);
+        readFully(buf, 0);
+        buf.flip();
+        if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+            throw new IOException("Not an account store file, or an unknown version");
+        }
+        int storedPageSize = buf.getInt();
+        if (storedPageSize != pageSize) {
+            throw new IOException("Account store was created with page size " + storedPageSize);
+        }
+        rootPage = buf.getInt();
+        pageCount = buf.getInt();
+        freeListHead = buf.getInt();
+        size = buf.getInt();
+        if (buf.getInt() != 1) {
+            throw new IOException("Account store was not closed cleanly; rebuild it from the change log");
+        }
+        clean = true;
+    }
+
+    private void writeHeader(boolean clean) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(pageSize);
+        buf.putInt(MAGIC).putInt(VERSION).putInt(pageSize).putInt(rootPage).putInt(pageCount)
+                .putInt(freeListHead).putInt(size).putInt(clean ? 1 : 0);
+        buf.clear();
+        writeRaw(0, buf);
+        this.clean = clean;
+    }
+
+    private Page readPage(int page) throws IOException {
+        ByteBuffer buf = readRaw(page);
+        byte type = buf.get();
+        int count = Short.toUnsignedInt(buf.getShort());
+        switch (type) {
+            case LEAF: {
+                Leaf leaf = new Leaf(page);
+                leaf.next = buf.getInt();
+                for (int i = 0; i < count; i++) {
+                    byte[] keyBytes = new byte[buf.getShort()];
+                    buf.get(keyBytes);
+                    String key = new String(keyBytes, StandardCharsets.UTF_8);
+                    if (buf.get() == 0) {
+                        byte[] record = new byte[Short.toUnsignedInt(buf.getShort())];
+                        buf.get(record);
+                        leaf.entries.add(new LeafEntry(key, keyBytes, record, -1, record.length));
+                    } else {
+                        int first = buf.getInt();
+                        leaf.entries.add(new LeafEntry(key, keyBytes, null, first, buf.getInt()));
+                    }
+                }
+                return leaf;
+            }
+            case INTERNAL: {
+                Internal internal = new Internal(page);
+                internal.children.add(buf.getInt());
+                for (int i = 0; i < count; i++) {
+                    byte[] keyBytes = new byte[buf.getShort()];
+                    buf.get(keyBytes);
+                    internal.keys.add(new String(keyBytes, StandardCharsets.UTF_8));
+                    internal.keyBytes.add(keyBytes);
+                    internal.children.add(buf.getInt());
+                }
+                return internal;
+            }
+            case OVERFLOW: {
+                buf.position(1);
+                Overflow overflow = new Overflow(page);
+                overflow.next = buf.getInt();
+                overflow.data = new byte[buf.getInt()];
+                buf.get(overflow.data);
+                return overflow;
+            }
+            default:
+                throw new IOException("Unexpected page type " + type + " at page " + page);
+        }
+    }
+
+    private void writePage(Page page) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(pageSize);
+        if (page instanceof Leaf) {
+            Leaf leaf = (Leaf) page;
+            buf.put(LEAF).putShort((short) leaf.entries.size()).putInt(leaf.next);
+            for (LeafEntry entry : leaf.entries) {
+                buf.putShort((short) entry.keyBytes.length).put(entry.keyBytes);
+                if (entry.record != null) {
+                    buf.put((byte) 0).putShort((short) entry.record.length).put(entry.record);
+                } else {
+                    buf.put((byte) 1).putInt(entry.overflowPage).putInt(entry.length);
+                }
+            }
+        } else if (page instanceof Internal) {
+            Internal internal = (Internal) page;
+            buf.put(INTERNAL).putShort((short) internal.keys.size()).putInt(internal.children.get(0));
+            for (int i = 0; i < internal.keys.size(); i++) {
+                byte[] keyBytes = internal.keyBytes.get(i);
+                buf.putShort((short) keyBytes.length).put(keyBytes).putInt(internal.children.get(i + 1));
+            }
+        } else {
+            Overflow overflow = (Overflow) page;
+            buf.put(OVERFLOW).putInt(overflow.next).putInt(overflow.data.length).put(overflow.data);
+        }
+        buf.clear();
+        writeRaw(page.id, buf);
+        page.dirty = false;
+    }
+
+    private ByteBuffer readRaw(int page) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(pageSize);
+        readFully(buf, (long) page * pageSize);
+        buf.flip();
+        return buf;
+    }
+
+    private void readFully(ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int read = channel.read(buf, position + buf.position());
+            if (read < 0) {
+                throw new IOException("Account store file ends inside page at " + position);
+            }
+        }
+    }
+
+    private void writeRaw(int page, ByteBuffer buf) throws IOException {
+        if (clean && page != 0) {
+            writeHeader(false); // The pages are about to stop matching the header
+            channel.force(false);
+        }
+        long position = (long) page * pageSize;
+        while (buf.hasRemaining()) {
+            channel.write(buf, position + buf.position());
+        }
+    }
+
+    /**
+     * A page in the cache, decoded.
+     */
+    private abstract static class Page {
+        final int id; // Page number in the file
+        boolean dirty; // Changed since it was last written
+
+        Page(int id) {
+            this.id = id;
+        }
+    }
+
+    /**
+     * An account in a leaf: the owner and the record, either inline or as the
+     * first page of an overflow chain.
+     */
+    private static final class LeafEntry {
+        final String key;
+        final byte[] keyBytes;
+        final byte[] record; // Null if the record is in overflow pages
+        final int overflowPage; // First overflow page, or -1
+        final int length; // Length of the record
+
+        LeafEntry(String key, byte[] keyBytes, byte[] record, int overflowPage, int length) {
+            this.key = key;
+            this.keyBytes = keyBytes;
+            this.record = record;
+            this.overflowPage = overflowPage;
+            this.length = length;
+        }
+
+        int encodedSize() {
+            return 2 + keyBytes.length + 1 + (record != null ? 2 + record.length : 8);
+        }
+    }
+
+    private static final class Leaf extends Page {
+        final List<LeafEntry> entries = new ArrayList<>(); // Sorted by key
+        int next = -1; // Next leaf in key order, or -1
+
+        Leaf(int id) {
+            super(id);
+        }
+
+        // Index of the key, or -(insertion point) - 1
+        int search(String key) {
+            int low = 0;
+            int high = entries.size() - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int compare = entries.get(middle).key.compareTo(key);
+                if (compare < 0) {
+                    low = middle + 1;
+                } else if (compare > 0) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -low - 1;
+        }
+
+        int encodedSize() {
+            int bytes = NODE_HEADER;
+            for (LeafEntry entry : entries) {
+                bytes += entry.encodedSize();
+            }
+            return bytes;
+        }
+    }
+
+    private static final class Internal extends Page {
+        final List<String> keys = new ArrayList<>(); // Separators, sorted
+        final List<byte[]> keyBytes = new ArrayList<>(); // The separators in UTF-8
+        final List<Integer> children = new ArrayList<>(); // One more than keys
+
+        Internal(int id) {
+            super(id);
+        }
+
+        // Index of the child that holds the key: the number of separators not
+        // greater than it
+        int childIndex(String key) {
+            int low = 0;
+            int high = keys.size();
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (keys.get(middle).compareTo(key) <= 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        int childFor(String key) {
+            return children.get(childIndex(key));
+        }
+
+        int encodedSize() {
+            int bytes = NODE_HEADER;
+            for (byte[] key : keyBytes) {
+                bytes += 2 + key.length + 4;
+            }
+            return bytes;
+        }
+    }
+
+    private static final class Overflow extends Page {
+        int next = -1; // Next page of the chain, or -1
+        byte[] data; // Part of the record held by this page
+
+        Overflow(int id) {
+            super(id);
+        }
+    }
+
+    /**
+     * Result of splitting a node: the separator and the new right node.
+     */
+    private static final class Split {
+        final String key;
+        final byte[] keyBytes;
+        final int rightPage;
+
+        Split(String key, byte[] keyBytes, int rightPage) {
+            this.key = key;
+            this.keyBytes = keyBytes;
+            this.rightPage = rightPage;
+        }
+    }
+
+    /**
+     * Bounded cache of decoded pages with clock eviction.
+     * Pages in use by an operation are pinned and never evicted; if every
+     * frame is pinned the cache grows past its capacity until pages are
+     * released.
+     */
+    private final class PageCache {
+        private final int capacity; // Frames kept when nothing is pinned
+        private final Map<Integer, Frame> frames = new HashMap<>(); // Frames by page number
+        private final List<Frame> ring = new ArrayList<>(); // Frames in clock order
+        private int hand; // Next frame the clock looks at
+        private long hits;
+        private long misses;
+
+        PageCache(int capacity) {
+            this.capacity = capacity;
+        }
+
+        // Return the page, reading it if needed, and keep it until unpin
+        Page pin(int page) throws IOException {
+            Frame frame = frames.get(page);
+            if (frame == null) {
+                misses++;
+                makeRoom();
+                frame = new Frame(readPage(page));
+                frames.put(page, frame);
+                ring.add(frame);
+            } else {
+                hits++;
+            }
+            frame.referenced = true;
+            frame.pins++;
+            return frame.page;
+        }
+
+        void unpin(Page page) {
+            Frame frame = frames.get(page.id);
+            if (frame != null) {
+                frame.pins--;
+            }
+        }
+
+        // Add a page that was just created; it is written on eviction or flush
+        void add(Page page) throws IOException {
+            makeRoom();
+            page.dirty = true;
+            Frame frame = new Frame(page);
+            frame.referenced = true;
+            frames.put(page.id, frame);
+            ring.add(frame);
+        }
+
+        // Forget a page that was freed, without writing it
+        void drop(int page) {
+            Frame frame = frames.remove(page);
+            if (frame != null) {
+                int index = ring.indexOf(frame);
+                removeFromRing(index);
+            }
+        }
+
+        void writeDirtyPages() throws IOException {
+            for (Frame frame : ring) {
+                if (frame.page.dirty) {
+                    writePage(frame.page);
+                }
+            }
+        }
+
+        // Evict frames until there is room for one more
+        private void makeRoom() throws IOException {
+            int steps = 0;
+            while (frames.size() >= capacity && steps < 2 * ring.size() + 1) {
+                steps++;
+                if (hand >= ring.size()) {
+                    hand = 0;
+                }
+                Frame frame = ring.get(hand);
+                if (frame.pins > 0) {
+                    hand++;
+                } else if (frame.referenced) {
+                    frame.referenced = false; // Second chance
+                    hand++;
+                } else {
+                    if (frame.page.dirty) {
+                        writePage(frame.page);
+                    }
+                    frames.remove(frame.page.id);
+                    removeFromRing(hand);
+                    steps = 0;
+                }
+            }
+        }
+
+        // Remove a frame from the ring by moving the last frame into its slot
+        private void removeFromRing(int index) {
+            int last = ring.size() - 1;
+            ring.set(index, ring.get(last));
+            ring.remove(last);
+        }
+    }
+
+    private static final class Frame {
+        final Page page;
+        boolean referenced; // Used since the clock hand last passed
+        int pins; // Operations currently using the page
+
+        Frame(Page page) {
+            this.page = page;
+        }
+    }
+}
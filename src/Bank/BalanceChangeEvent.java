@@ -0,0 +1,133 @@
+package Bank;
+
+/**
+ * A committed change to an account, published by {@link BankApp} after each
+ * successful mutation.
+ * The event carries the amount of the change and the account state right after
+ * it, so a consumer never has to read the account back. For an account with
+ * a payment schedule the state includes the schedule in binary form.
+ */
+public final class BalanceChangeEvent {
+
+    /**
+     * The kind of mutation that produced the event.
+     */
+    public enum Type {
+        OPEN, // Account opened with a starting deposit
+        CLOSE, // Account closed, remaining balance paid out
+        DEPOSIT, // Deposit into the account
+        WITHDRAW, // Withdrawal from the account
+        GRANT, // Outstanding granted (Loan)
+        REPAY, // Outstanding repaid (Loan)
+        INTEREST, // Interest applied to the outstanding balance (Loan)
+        FEE, // Fee charged to the account by the bank
+        CAPITAL // Bank capital added to or taken out of the operating funds, no account owner
+    }
+
+    private final long sequence; // Position of the event in the bank's change order
+    private final Type type; // The kind of mutation
+    private final String accountOwner; // The owner of the changed account, null for CAPITAL
+    private final double amount; // The amount of the change
+    private final double balanceAfter; // Current balance after the change
+    private final double outstandingAfter; // Outstanding balance after the change (Loan)
+    private final long timestamp; // Wall clock time of the change in milliseconds
+    private final String currency; // Currency of the account, or of the fund for CAPITAL
+    private final byte[] schedule; // Payment schedule after the change, encoded, or null without one
+
+    /**
+     * Creates a balance change event in the default currency.
+     *
+     * @param sequence         position of the event in the bank's change order
+     * @param type             the kind of mutation
+     * @param accountOwner     the owner of the changed account
+     * @param amount           the amount of the change
+     * @param balanceAfter     current balance after the change
+     * @param outstandingAfter outstanding balance after the change
+     * @param timestamp        wall clock time of the change in milliseconds
+     */
+    public BalanceChangeEvent(long sequence, Type type, String accountOwner, double amount,
+            double balanceAfter, double outstandingAfter, long timestamp) {
+        this(sequence, type, accountOwner, amount, balanceAfter, outstandingAfter, timestamp,
+                BankAccount.DEFAULT_CURRENCY);
+    }
+
+    /**
+     * Creates a balance change event. The amounts are in the currency of the
+     * account, or of the operating fund for a CAPITAL change.
+     *
+     * @param currency three letter code of the currency of the amounts
+     */
+    public BalanceChangeEvent(long sequence, Type type, String accountOwner, double amount,
+            double balanceAfter, double outstandingAfter, long timestamp, String currency) {
+        this(sequence, type, accountOwner, amount, balanceAfter, outstandingAfter, timestamp, currency, null);
+    }
+
+    /**
+     * Creates a balance change event for an account with a payment schedule.
+     *
+     * @param schedule the schedule after the change as written by
+     *                 {@link AccountCodec#encodeSchedule}, or null
+     */
+    BalanceChangeEvent(long sequence, Type type, String accountOwner, double amount, double balanceAfter,
+            double outstandingAfter, long timestamp, String currency, byte[] schedule) {
+        this.sequence = sequence;
+        this.type = type;
+        this.accountOwner = accountOwner;
+        this.amount = amount;
+        this.balanceAfter = balanceAfter;
+        this.outstandingAfter = outstandingAfter;
+        this.timestamp = timestamp;
+        this.currency = currency;
+        this.schedule = schedule;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getAccountOwner() {
+        return accountOwner;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    public double getBalanceAfter() {
+        return balanceAfter;
+    }
+
+    public double getOutstandingAfter() {
+        return outstandingAfter;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    /**
+     * Returns true if the account has a payment schedule after the change.
+     */
+    public boolean hasSchedule() {
+        return schedule != null;
+    }
+
+    // The encoded schedule, shared with the account and not to be modified
+    byte[] getEncodedSchedule() {
+        return schedule;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + sequence + " " + type + " " + accountOwner + " " + amount + " " + currency
+                + " (balance " + balanceAfter + ", outstanding " + outstandingAfter + ")";
+    }
+}
@@ -0,0 +1,16 @@
+package Bank;
+
+/**
+ * Receives every committed account change made through {@link BankApp}.
+ * Listeners are called on the thread that made the change, so they should hand
+ * the event off quickly and must not throw.
+ */
+@FunctionalInterface
+public interface BalanceChangeListener {
+
+    /**
+     * Called once for each committed change, after the account and the bank
+     * operating funds have been updated.
+     */
+    void onBalanceChange(BalanceChangeEvent event);
+}
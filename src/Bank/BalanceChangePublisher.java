@@ -0,0 +1,278 @@
+package Bank;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes {@link BalanceChangeEvent}s from a {@link BankApp} to
+ * {@link Flow.Subscriber}s with demand based backpressure.
+ *
+ * On the mutation path the only work is one lock-free enqueue onto an inbound
+ * queue. The events are fanned out to the subscribers on the executor. Every
+ * subscriber has its own bounded buffer, and events are only delivered while
+ * the subscriber has outstanding demand. When a slow subscriber's buffer is
+ * full, the configured {@link OverflowPolicy} decides what happens.
+ */
+public class BalanceChangePublisher implements Flow.Publisher<BalanceChangeEvent>, BalanceChangeListener,
+        AutoCloseable {
+
+    /**
+     * What to do when a subscriber's buffer is full.
+     */
+    public enum OverflowPolicy {
+        DROP_OLDEST, // Discard the oldest buffered event to make room
+        DROP_NEWEST, // Discard the incoming event
+        CANCEL // Fail the subscriber with SubscriberOverflowErrors and stop delivering
+    }
+
+    private final Executor executor; // Runs the fan-out and the deliveries
+    private final int bufferCapacity; // Maximum number of buffered events per subscriber
+    private final OverflowPolicy overflowPolicy; // Policy for slow subscribers
+
+    private final ConcurrentLinkedQueue<BalanceChangeEvent> inbound = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger fanOutWork = new AtomicInteger(); // Work in progress counter for the fan-out
+    private final CopyOnWriteArrayList<BufferedSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final AtomicLong droppedEvents = new AtomicLong(); // Events discarded by the overflow policy
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * Creates a publisher.
+     *
+     * @param executor       runs the fan-out and the deliveries
+     * @param bufferCapacity maximum number of buffered events per subscriber
+     * @param overflowPolicy what to do when a subscriber's buffer is full
+     */
+    public BalanceChangePublisher(Executor executor, int bufferCapacity, OverflowPolicy overflowPolicy) {
+        if (bufferCapacity <= 0) {
+            throw new IllegalArgumentException("Buffer capacity must be positive.");
+        }
+        this.executor = executor;
+        this.bufferCapacity = bufferCapacity;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Receives an event from the bank.
+     * The event is enqueued and the fan-out is scheduled if it is not already
+     * running.
+     */
+    @Override
+    public void onBalanceChange(BalanceChangeEvent event) {
+        if (closed.get()) {
+            return;
+        }
+        inbound.offer(event);
+        scheduleFanOut();
+    }
+
+    /**
+     * Registers a subscriber. Nothing is delivered until it requests events.
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super BalanceChangeEvent> subscriber) {
+        BufferedSubscription subscription = new BufferedSubscription(subscriber);
+        if (closed.get()) {
+            subscriber.onSubscribe(subscription);
+            subscription.complete();
+            return;
+        }
+        subscriptions.add(subscription);
+        subscriber.onSubscribe(subscription);
+    }
+
+    /**
+     * Retrieves the number of active subscribers.
+     */
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * Retrieves the number of events discarded across all subscribers because
+     * their buffers were full.
+     */
+    public long getDroppedEventCount() {
+        return droppedEvents.get();
+    }
+
+    /**
+     * Stops accepting events and completes every subscriber once its buffer has
+     * been delivered.
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            scheduleFanOut(); // The fan-out completes the subscribers once the inbound queue is empty
+        }
+    }
+
+    // Start the fan-out on the executor unless it is already running
+    private void scheduleFanOut() {
+        if (fanOutWork.getAndIncrement() == 0) {
+            executor.execute(this::fanOut);
+        }
+    }
+
+    // Move the inbound events into the subscriber buffers
+    private void fanOut() {
+        int missed = 1;
+        while (true) {
+            BalanceChangeEvent event;
+            while ((event = inbound.poll()) != null) {
+                for (BufferedSubscription subscription : subscriptions) {
+                    subscription.offer(event);
+                }
+            }
+            if (closed.get()) {
+                for (BufferedSubscription subscription : subscriptions) {
+                    subscription.complete();
+                }
+            }
+            missed = fanOutWork.addAndGet(-missed);
+            if (missed == 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * A subscription with its own bounded buffer and demand counter.
+     * Deliveries to one subscriber are always serialised.
+     */
+    private final class BufferedSubscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super BalanceChangeEvent> subscriber;
+        private final ArrayDeque<BalanceChangeEvent> buffer = new ArrayDeque<>();
+        private final AtomicLong demand = new AtomicLong(); // Events requested and not yet delivered
+        private final AtomicInteger drainWork = new AtomicInteger(); // Work in progress counter for deliveries
+        private volatile boolean done; // True once cancelled, failed or completed
+        private volatile boolean completing; // True once the publisher has closed
+        private volatile Throwable failure; // Error to signal instead of completion
+
+        BufferedSubscription(Flow.Subscriber<? super BalanceChangeEvent> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                failure = new IllegalArgumentException("Demand must be positive: " + n); // Reactive Streams rule 3.9
+                completing = true;
+            } else {
+                demand.getAndAccumulate(n, (current, add) -> {
+                    long sum = current + add;
+                    return sum < 0 ? Long.MAX_VALUE : sum; // Cap unbounded demand
+                });
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            done = true;
+            subscriptions.remove(this);
+        }
+
+        // Buffer one event for this subscriber, applying the overflow policy
+        void offer(BalanceChangeEvent event) {
+            if (done) {
+                return;
+            }
+            synchronized (buffer) {
+                if (buffer.size() >= bufferCapacity) {
+                    droppedEvents.incrementAndGet();
+                    switch (overflowPolicy) {
+                        case DROP_OLDEST:
+                            buffer.pollFirst();
+                            break;
+                        case DROP_NEWEST:
+                            return;
+                        case CANCEL:
+                            failure = new SubscriberOverflowErrors(bufferCapacity);
+                            completing = true;
+                            subscriptions.remove(this);
+                            buffer.clear();
+                            break;
+                    }
+                }
+                if (!completing) {
+                    buffer.offerLast(event);
+                }
+            }
+            drain();
+        }
+
+        // Signal completion once the buffer has been delivered
+        void complete() {
+            completing = true;
+            drain();
+        }
+
+        // Schedule a delivery run unless one is already in progress
+        private void drain() {
+            if (drainWork.getAndIncrement() == 0) {
+                executor.execute(this::deliver);
+            }
+        }
+
+        // Deliver buffered events while there is demand
+        private void deliver() {
+            int missed = 1;
+            while (true) {
+                while (!done && demand.get() > 0) {
+                    BalanceChangeEvent event;
+                    synchronized (buffer) {
+                        event = buffer.pollFirst();
+                    }
+                    if (event == null) {
+                        break;
+                    }
+                    if (demand.get() != Long.MAX_VALUE) {
+                        demand.decrementAndGet();
+                    }
+                    subscriber.onNext(event);
+                }
+                if (!done && completing && (failure != null || isBufferEmpty())) {
+                    done = true;
+                    subscriptions.remove(this);
+                    if (failure != null) {
+                        subscriber.onError(failure);
+                    } else {
+                        subscriber.onComplete();
+                    }
+                }
+                missed = drainWork.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        private boolean isBufferEmpty() {
+            synchronized (buffer) {
+                return buffer.isEmpty();
+            }
+        }
+    }
+
+    // Error signalled to a subscriber that fell too far behind under the CANCEL
+    // policy
+    public static class SubscriberOverflowErrors extends Exception {
+        /**
+         * Constructor for SubscriberOverflowErrors.
+         * This error is signalled when a subscriber does not request events fast
+         * enough and its buffer overflows.
+         *
+         * @param bufferCapacity the capacity of the subscriber's buffer
+         */
+        public SubscriberOverflowErrors(int bufferCapacity) {
+            super("Subscriber buffer overflow. Capacity: " + bufferCapacity);
+        }
+    }
+}
@@ -1,16 +1,35 @@
 package Bank;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 import Bank.Outstanding.InadequateOutstandingAmountErrors;
 
 /**
  * Bank account for a customer, with deposit,
  * withdraw, and outstanding (loan) balances features.
+ * The balance methods are synchronized, so a withdrawal's check and deduction
+ * happen as one step even when the account is used directly. The outstanding
+ * is guarded by the bank that owns the account.
+ *
+ * Most accounts never borrow, so the outstanding (Loan) is only allocated
+ * when it is first needed and released by the bank once it is repaid to zero.
+ * Until then the outstanding balance reads as zero without allocating.
+ * Currency codes are shared between accounts, so accounts read back from a
+ * store or a checkpoint do not each hold their own copy.
  */
 public class BankAccount {
 
-    private String accountOwner; // The name of the account owner
+    /**
+     * The currency of accounts and banks created without one.
+     */
+    public static final String DEFAULT_CURRENCY = "EUR";
+
+    private static final ConcurrentHashMap<String, String> CURRENCY_CODES = new ConcurrentHashMap<>();
+
+    private final String accountOwner; // The name of the account owner
     private double currentBalance; // The current balance in the account
-    private Outstanding outstanding; // Outstanding information for the account (Loan)
+    private Outstanding outstanding; // Outstanding information for the account (Loan), null until borrowed
+    private final String currency; // Currency of the balance and the outstanding
 
     /**
      * account owner's name with balance.
@@ -19,9 +38,26 @@ public class BankAccount {
      * @param currentBalance Balance in the owner's account
      */
     public BankAccount(String accountOwner, double currentBalance) {
+        this(accountOwner, currentBalance, DEFAULT_CURRENCY);
+    }
+
+    /**
+     * account owner's name with balance in a currency.
+     *
+     * @param accountOwner   Account owner's name
+     * @param currentBalance Balance in the owner's account
+     * @param currency       Three letter code of the account's currency
+     */
+    public BankAccount(String accountOwner, double currentBalance, String currency) {
         this.accountOwner = accountOwner;
         this.currentBalance = currentBalance;
-        this.outstanding = new Outstanding(); // Initialize the outstanding balance information (Loan)
+        this.currency = sharedCurrencyCode(currency);
+    }
+
+    // The one instance of a currency code all accounts refer to
+    private static String sharedCurrencyCode(String currency) {
+        String shared = CURRENCY_CODES.putIfAbsent(currency, currency);
+        return shared == null ? currency : shared;
     }
 
     /**
@@ -32,10 +68,17 @@ public class BankAccount {
         return accountOwner;
     }
 
+    /**
+     * Recieve the currency of the account's balance and outstanding.
+     */
+    public String getCurrency() {
+        return currency;
+    }
+
     /**
      * Recieve the account owner's balance
      */
-    public double getCurrentBalance() {
+    public synchronized double getCurrentBalance() {
         return currentBalance;
     }
 
@@ -45,7 +88,7 @@ public class BankAccount {
      * If the requested withdrawal amount is greater than the current balance, an
      * error is returned.
      */
-    public void checkCurrentAmountInAccount(double amount)
+    public synchronized void checkCurrentAmountInAccount(double amount)
             throws InadequateFundsErrors {
         if (currentBalance < amount)
             // error if the withdrawal amount is greater than the current balance.
@@ -58,7 +101,10 @@ public class BankAccount {
      * This method increase the account owner's current balance by the amount they
      * put in.
      */
-    public void deposit(double amount) {
+    public synchronized void deposit(double amount) {
+        if (!(amount > 0)) { // A negative deposit would take money out without a withdrawal
+            throw new IllegalArgumentException("A deposit must be positive: " + amount);
+        }
         // Append the amount to the current balance.
         currentBalance += amount;
     }
@@ -71,12 +117,20 @@ public class BankAccount {
      * If the withdrawal amount is greater than the current balance, an error is
      * activated.
      */
-    public void withdraw(double amount)
+    public synchronized void withdraw(double amount)
             throws InadequateFundsErrors {
         checkCurrentAmountInAccount(amount); // Verify that the account owner has enough funds.
         currentBalance -= amount; // Reduce the funds from the current balance.
     }
 
+    /**
+     * Sets the balance to a value copied from another bank, for example by a
+     * replication follower.
+     */
+    synchronized void setCurrentBalance(double balance) {
+        currentBalance = balance;
+    }
+
     /**
      * Return the total Outstanding balance. (Loan)
      * 
@@ -84,8 +138,8 @@ public class BankAccount {
      * in connection to the account.
      */
     public double getCurrentOutstandingBalance() {
-        return outstanding.getCurrentOutstandingBalance(); // Retrieve the current outstanding balance from the
-                                                           // Outstanding class.
+        // Retrieve the current outstanding balance from the Outstanding class, zero if never borrowed
+        return outstanding == null ? 0.0 : outstanding.getCurrentOutstandingBalance();
     }
 
     /**
@@ -99,6 +153,11 @@ public class BankAccount {
      */
     public void checkCurrentAmountInOutstandingBalance(double amount)
             throws InadequateOutstandingAmountErrors {
+        if (outstanding == null) { // Nothing owed, checked without allocating the outstanding
+            if (amount > 0)
+                throw new InadequateOutstandingAmountErrors(amount, "Repayment amount exceeds outstanding balance");
+            return;
+        }
         outstanding.checkCurrentAmountInOutstandingBalance(amount); // Hand over to the Outstanding class
     }
 
@@ -113,7 +172,7 @@ public class BankAccount {
      * @throws InadequateOutstandingAmountErrors if the operation is not possible.
      */
     public void appendToOutstandingBalance(double amount) throws InadequateOutstandingAmountErrors {
-        outstanding.appendToOutstandingBalance(amount); // Hand over to the Outstanding class
+        getOutstanding().appendToOutstandingBalance(amount); // Hand over to the Outstanding class
     }
 
     /**
@@ -129,23 +188,90 @@ public class BankAccount {
      */
     public void minusFromOutstandingBalance(double amount)
             throws InadequateOutstandingAmountErrors {
-        outstanding.minusFromOutstandingBalance(amount); // Hand over to the Outstanding class
+        getOutstanding().minusFromOutstandingBalance(amount); // Hand over to the Outstanding class
     }
 
     /**
      * Access to the Outstanding class.
      * 
      * This allows other classes to access and interact with the 'Outstanding' class
-     * directly.
+     * directly. The outstanding is allocated on first access.
      * 
      * @return the Outstanding instance associated with the account.
      */
     public Outstanding getOutstanding() {
+        if (outstanding == null) {
+            outstanding = new Outstanding(); // First loan of the account
+        }
         return outstanding; // Return the Outstanding class link to this account.
     }
 
+    /**
+     * Returns true if the account holds an outstanding (Loan), that is one was
+     * granted and not yet released.
+     */
+    public boolean hasOutstanding() {
+        return outstanding != null;
+    }
+
+    /**
+     * Retrieves the outstanding (Loan) without allocating it, or null if the
+     * account holds none.
+     */
+    Outstanding peekOutstanding() {
+        return outstanding;
+    }
+
+    /**
+     * Sets the outstanding balance to a value copied from elsewhere, allocating
+     * the outstanding only for a balance that is not zero.
+     */
+    void setOutstandingBalance(double balance) {
+        if (outstanding == null && balance == 0.0) {
+            return;
+        }
+        getOutstanding().setBalance(balance);
+        releaseSettledOutstanding();
+    }
+
+    /**
+     * Sets the outstanding balance and payment schedule to values copied from
+     * elsewhere. A null schedule detaches the current one.
+     */
+    void setOutstanding(double balance, AmortizationSchedule schedule) {
+        if (schedule != null) {
+            getOutstanding().attachSchedule(schedule);
+        } else if (outstanding != null) {
+            outstanding.attachSchedule(null);
+        }
+        setOutstandingBalance(balance);
+    }
+
+    /**
+     * Retrieves the binary form of the payment schedule, or null if the account
+     * has none. The array is shared and must not be modified.
+     */
+    byte[] encodedSchedule() {
+        AmortizationSchedule schedule = outstanding == null ? null : outstanding.getSchedule();
+        return schedule == null ? null : schedule.encoded();
+    }
+
+    /**
+     * Releases the outstanding (Loan) once it is repaid to zero, unless it
+     * carries a payment schedule whose history is kept with the account.
+     */
+    void releaseSettledOutstanding() {
+        if (outstanding != null && outstanding.getCurrentOutstandingBalance() == 0.0
+                && outstanding.getSchedule() == null) {
+            outstanding = null;
+        }
+    }
+
     // Custom error class for when an account owner is not found in the system
     public static class AccountOwnerNotFoundErrors extends Exception {
+
+        private final String accountOwner; // The account owner that was not found
+
         /**
          * Constructor for AccountOwnerNotFoundErrors.
          * This constructor creates an error with a message indicating that an
@@ -156,12 +282,24 @@ public class BankAccount {
         public AccountOwnerNotFoundErrors(String accountOwner) {
             // Call the error class constructor with a custom message
             super("No account found: " + accountOwner);
+            this.accountOwner = accountOwner;
             // Print the error message to the console
             System.out.println(getMessage());
         }
+
+        /**
+         * Retrieves the name of the account owner that was not found.
+         */
+        public String getAccountOwner() {
+            return accountOwner;
+        }
     }
 
     public static class InadequateFundsErrors extends Exception {
+
+        private final double withdrawAmount; // The amount requested
+        private final double availableBalance; // The balance when the withdrawal was refused
+
         /**
          * Constructor for InadequateFundsErrors.
          * This constructor creates an error when a withdrawal is attempted with
@@ -174,9 +312,19 @@ public class BankAccount {
             // Call the error class constructor with a custom error message
             super("Inadequate funds for withdrawal. Requested: " + withdrawAmount
                     + ", Available: " + availableBalance);
+            this.withdrawAmount = withdrawAmount;
+            this.availableBalance = availableBalance;
             // Print the error message to the console for debugging
             System.out.println(getMessage());
         }
+
+        public double getWithdrawAmount() {
+            return withdrawAmount;
+        }
+
+        public double getAvailableBalance() {
+            return availableBalance;
+        }
     }
 
 }
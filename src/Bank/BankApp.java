@@ -1,31 +1,105 @@
 package Bank;
 
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Collections;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import Bank.BankAccount.AccountOwnerNotFoundErrors;
 import Bank.BankAccount.InadequateFundsErrors;
 import Bank.Outstanding.InadequateOutstandingAmountErrors;
+import Bank.Outstanding.OutstandingInterestError;
 
 /**
  * Represents a bank with functionality to manage accounts, deposits,
  * withdrawals, outstanding, and bank operating funds.
  * Provides checks and constraints to ensure valid operations within defined
  * limits.
+ *
+ * The bank is safe to use from several threads. Every operation that reads or
+ * changes the accounts or the operating funds holds the bank's monitor, so a
+ * check and the change it guards can never interleave with another operation.
+ * Callers that need several operations to happen as one, or that iterate over
+ * getBankAccountOwners, synchronize on the bank themselves; the monitor is
+ * reentrant, so the operations can still be called inside such a block.
+ * Listeners are notified while the monitor is held.
+ *
+ * Every account has a currency, and the bank keeps separate operating funds
+ * and capital per currency. Operations without a currency use the bank's base
+ * currency. Deposits in another currency than the account's, and transfers
+ * between accounts of different currencies, are converted with the bank's
+ * {@link FxRates}. Deposit and withdraw limits can be set per currency; a
+ * currency without its own limit uses the base currency's limit converted at
+ * the current rate.
+ *
+ * The operating funds of each currency are an {@link EscrowFund}: per-core
+ * slices that each operation credits or debits locally, borrowing from the
+ * other slices only when its own runs low. The exact total is summed on
+ * demand, and a debit is never allowed to take the total below zero.
+ *
+ * Closing an account pays out its balance and leaves a tombstone: the account
+ * is at once invisible to lookups and listings, but stays in the store and
+ * can be reopened until its grace period is over. Compaction then removes the
+ * closed accounts from the store a small batch at a time, releasing the
+ * monitor between batches, so live operations interleave with it. With no
+ * grace period and no background compaction, which is the default, nothing
+ * could reopen or remove a tombstone later, so the account is removed from
+ * the store when it is closed.
  */
 public class BankApp {
 
-    private double maximumWithdrawLimit; // Maximum withdrawal amount
-    private double maximumDepositLimit; // Maximum deposit amount
-    private double maximumOutstandingLimit; // Maximum oustanding amount (Loan)
-    private double bankOperatingFund = 0.0; // Represents the total operating funds available in the bank. The value is
-                                            // initialized to 0.0 and increases or decreases as deposits, withdrawals,
-                                            // or outstanding are processed.
+    private static final int COMPACTION_BATCH = 256; // Closed accounts removed per hold of the monitor
+    // Refusal of an amount that is not positive, which no rule set can allow
+    private static final String POSITIVE_AMOUNT = "Amount must be positive.";
 
-    // A list to store all the bank accounts.
+    private volatile double maximumWithdrawLimit; // Maximum withdrawal amount
+    private volatile double maximumDepositLimit; // Maximum deposit amount
+    private volatile double maximumOutstandingLimit; // Maximum oustanding amount (Loan)
+    private final String baseCurrency; // Currency of the limits and funds used when no currency is given
+    // Operating funds and bank capital per currency. Each account's money moves
+    // in and out of the fund of its own currency. The base currency's fund
+    // always exists.
+    private final Map<String, CurrencyFund> operatingFunds = new HashMap<>();
+    private final CurrencyFund baseFund;
+    // Deposit and withdraw limits set for currencies other than the base currency
+    private final Map<String, Double> depositLimits = new ConcurrentHashMap<>();
+    private final Map<String, Double> withdrawLimits = new ConcurrentHashMap<>();
+    private volatile FxRates fxRates; // Rates for cross-currency deposits and transfers, may be null
+    private Duration rebalanceInterval; // Interval of the background fund rebalancing, null if stopped
+    private volatile BankTracer tracer; // Traces sampled operations, may be null
+    // Closed accounts still in the store, in closing order
+    private final Map<String, Tombstone> tombstones = new LinkedHashMap<>();
+    private long closureGracePeriodNanos; // How long a closed account can be reopened
+    private ScheduledExecutorService compactor; // Removes closed accounts in the background, or null
+    private AccountIndex accountIndex; // Sorted balances and outstanding, null until first asked for
+
+    // The store holding all the bank accounts.
     // Each account represents a owner's banking information, including balance and
     // outstanding. (Loan)
-    private List<BankAccount> Bankaccounts = new ArrayList<>();
+    private final AccountStore accounts;
+
+    // Listeners notified of every committed account change, and the sequence
+    // number given to the next change.
+    private final List<BalanceChangeListener> balanceChangeListeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong balanceChangeSequence = new AtomicLong();
+
+    // Rules checked before deposits, withdrawals and outstanding, replaced as a
+    // whole so a check never sees half a rule set
+    private volatile ValidationRules validationRules = ValidationRules.defaults();
 
     /**
      * Constructs a Bank instance with specified operational limits.
@@ -33,6 +107,41 @@ public class BankApp {
      * in the bank.
      */
     public BankApp(double maximumWithdrawLimit, double maximumDepositLimit, double maximumOutstandingLimit) {
+        this(maximumWithdrawLimit, maximumDepositLimit, maximumOutstandingLimit, new InMemoryAccountStore());
+    }
+
+    /**
+     * Constructs a Bank instance with specified operational limits whose accounts
+     * are kept in the given store, for example a {@link BTreeAccountStore} when
+     * there are more accounts than fit in memory. The store must be empty; the
+     * bank's operating funds always start at zero, so they could not match the
+     * accounts of a reopened store. Restore those from a {@link BankCheckpointer}
+     * checkpoint instead.
+     *
+     * @throws IllegalArgumentException if the store holds accounts
+     */
+    public BankApp(double maximumWithdrawLimit, double maximumDepositLimit, double maximumOutstandingLimit,
+            AccountStore accounts) {
+        this(maximumWithdrawLimit, maximumDepositLimit, maximumOutstandingLimit, accounts,
+                BankAccount.DEFAULT_CURRENCY);
+    }
+
+    /**
+     * Constructs a Bank instance whose limits and operating funds are in the
+     * given base currency, with its accounts kept in the given store.
+     *
+     * @param baseCurrency three letter code of the base currency
+     */
+    public BankApp(double maximumWithdrawLimit, double maximumDepositLimit, double maximumOutstandingLimit,
+            AccountStore accounts, String baseCurrency) {
+        if (accounts.size() != 0) {
+            throw new IllegalArgumentException("The account store must be empty; it holds " + accounts.size()
+                    + " accounts.");
+        }
+        this.accounts = accounts;
+        this.baseCurrency = baseCurrency;
+        this.baseFund = new CurrencyFund();
+        operatingFunds.put(baseCurrency, baseFund);
         this.maximumWithdrawLimit = maximumWithdrawLimit; // Initialize the maximum withdraw limit for the bank.
         this.maximumDepositLimit = maximumDepositLimit; // Initialize the maximum deposit limit for the bank.
         this.maximumOutstandingLimit = maximumOutstandingLimit; // Initialize the maximum outstanding limit for the
@@ -42,10 +151,40 @@ public class BankApp {
     /**
      * Retrieves the list of accounts in the bank.
      * Each account in the list contains information such as the account owner's
-     * name and current balance.
+     * name and current balance. The list is a snapshot taken from the account
+     * store, so it does not change when accounts are opened or closed.
+     */
+    public synchronized List<BankAccount> getBankAccountOwners() {
+        List<BankAccount> listed = accounts.list(); // A list of bank accounts.
+        if (!tombstones.isEmpty()) {
+            listed.removeIf(account -> tombstones.containsKey(account.getAccountOwner())); // Leave out closed ones
+        }
+        return listed;
+    }
+
+    /**
+     * Retrieves the sorted indexes on the account balances and outstanding
+     * balances (Loan), building them on the first call. From then on every
+     * change to an account updates them. See {@link AccountIndex}.
+     */
+    public synchronized AccountIndex getAccountIndex() {
+        if (accountIndex == null) {
+            accountIndex = new AccountIndex(baseCurrency, getBankAccountOwners());
+            addBalanceChangeListener(accountIndex);
+        }
+        return accountIndex;
+    }
+
+    // The account index, or null if nobody has asked for it yet
+    synchronized AccountIndex peekAccountIndex() {
+        return accountIndex;
+    }
+
+    /**
+     * Retrieves the number of accounts in the bank without listing them.
      */
-    public List<BankAccount> getBankAccountOwners() {
-        return Bankaccounts; // A list of bank accounts.
+    public synchronized int getAccountCount() {
+        return accounts.size() - tombstones.size();
     }
 
     /**
@@ -77,8 +216,193 @@ public class BankApp {
      * This bank operating funds are used to support operations such as approving
      * outstanding.
      */
-    public double getBankOperatingFunds() {
-        return bankOperatingFund; // The current operating funds of the bank.
+    public synchronized double getBankOperatingFunds() {
+        return baseFund.operatingFund.getTotal(); // The current operating funds of the bank.
+    }
+
+    /**
+     * Retrieves the operating funds held in a currency, zero for a currency the
+     * bank has never held.
+     */
+    public synchronized double getBankOperatingFunds(String currency) {
+        CurrencyFund fund = operatingFunds.get(currency);
+        return fund == null ? 0.0 : fund.operatingFund.getTotal();
+    }
+
+    /**
+     * Attaches a tracer that records the phases of sampled deposits,
+     * withdrawals, grants and repayments, or detaches it with null.
+     */
+    public void setTracer(BankTracer tracer) {
+        this.tracer = tracer;
+    }
+
+    public BankTracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * Spreads the operating funds of every currency evenly over their escrow
+     * slices in the background, so each core keeps a share it can debit
+     * without borrowing from the others. See {@link EscrowFund}.
+     */
+    public synchronized void startOperatingFundRebalancing(Duration interval) {
+        rebalanceInterval = interval;
+        for (CurrencyFund fund : operatingFunds.values()) {
+            fund.operatingFund.startRebalancing(interval);
+        }
+    }
+
+    /**
+     * Sets how long a closed account can be reopened. Compaction only removes
+     * accounts closed longer ago than this.
+     */
+    public synchronized void setClosureGracePeriod(Duration gracePeriod) {
+        if (gracePeriod.isNegative()) {
+            throw new IllegalArgumentException("Grace period must not be negative.");
+        }
+        closureGracePeriodNanos = gracePeriod.toNanos();
+    }
+
+    public synchronized Duration getClosureGracePeriod() {
+        return Duration.ofNanos(closureGracePeriodNanos);
+    }
+
+    /**
+     * Retrieves the number of closed accounts not yet removed from the store.
+     */
+    public synchronized int getClosedAccountCount() {
+        return tombstones.size();
+    }
+
+    /**
+     * Removes the accounts whose grace period is over from the store. The
+     * monitor is taken for one batch of accounts at a time, so operations on
+     * other accounts run between the batches.
+     *
+     * @return the number of accounts removed
+     */
+    public int compactClosedAccounts() {
+        int removed = 0;
+        while (true) {
+            synchronized (this) {
+                long now = System.nanoTime();
+                Iterator<Tombstone> closed = tombstones.values().iterator();
+                int batch = 0;
+                while (batch < COMPACTION_BATCH && closed.hasNext()) {
+                    Tombstone tombstone = closed.next();
+                    if (now - tombstone.closedAt < closureGracePeriodNanos) {
+                        return removed + batch; // Closed in closing order, so the rest are younger
+                    }
+                    accounts.remove(tombstone.account.getAccountOwner());
+                    closed.remove();
+                    batch++;
+                }
+                removed += batch;
+                if (!closed.hasNext()) {
+                    return removed;
+                }
+            }
+        }
+    }
+
+    /**
+     * Compacts the closed accounts in the background at a fixed interval. See
+     * {@link #compactClosedAccounts()}.
+     */
+    public synchronized void startClosedAccountCompaction(Duration interval) {
+        if (compactor != null) {
+            return;
+        }
+        compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "closed-account-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long millis = Math.max(1, interval.toMillis());
+        compactor.scheduleWithFixedDelay(this::compactClosedAccounts, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background compaction of closed accounts.
+     */
+    public synchronized void stopClosedAccountCompaction() {
+        if (compactor != null) {
+            compactor.shutdown();
+            compactor = null;
+        }
+    }
+
+    /**
+     * Stops the background rebalancing of the operating funds.
+     */
+    public synchronized void stopOperatingFundRebalancing() {
+        rebalanceInterval = null;
+        for (CurrencyFund fund : operatingFunds.values()) {
+            fund.operatingFund.close();
+        }
+    }
+
+    /**
+     * Retrieves the currency used when an operation does not name one.
+     */
+    public String getBaseCurrency() {
+        return baseCurrency;
+    }
+
+    /**
+     * Retrieves the currencies the bank holds operating funds in, in
+     * alphabetical order.
+     */
+    public synchronized Set<String> getCurrencies() {
+        return Collections.unmodifiableSet(new TreeSet<>(operatingFunds.keySet()));
+    }
+
+    /**
+     * Retrieves the rates used for cross-currency deposits and transfers, or
+     * null if none are set.
+     */
+    public FxRates getFxRates() {
+        return fxRates;
+    }
+
+    /**
+     * Sets the rates used for cross-currency deposits and transfers, and for
+     * the limits of currencies that have no limit of their own.
+     */
+    public void setFxRates(FxRates fxRates) {
+        this.fxRates = fxRates;
+    }
+
+    /**
+     * Registers a listener that is notified after every committed account
+     * change, such as deposits, withdrawals, outstanding grants and repayments.
+     */
+    public void addBalanceChangeListener(BalanceChangeListener listener) {
+        balanceChangeListeners.add(listener);
+    }
+
+    /**
+     * Removes a listener registered with addBalanceChangeListener.
+     */
+    public void removeBalanceChangeListener(BalanceChangeListener listener) {
+        balanceChangeListeners.remove(listener);
+    }
+
+    /**
+     * Retrieves the rules checked before deposits, withdrawals and outstanding.
+     */
+    public ValidationRules getValidationRules() {
+        return validationRules;
+    }
+
+    /**
+     * Replaces the rules checked before deposits, withdrawals and outstanding.
+     * The swap is atomic: every check uses either the old or the new rules, and
+     * checks in progress are not held up.
+     */
+    public void setValidationRules(ValidationRules validationRules) {
+        this.validationRules = validationRules;
     }
 
     /**
@@ -99,6 +423,62 @@ public class BankApp {
         this.maximumWithdrawLimit = maximumWithdrawLimit; // The new maximum withdraw limit.
     }
 
+    /**
+     * Sets the maximum deposit for a currency, in that currency. The limit of
+     * the base currency is the one set by setMaxDeposit(double).
+     */
+    public void setMaxDeposit(String currency, double maximumDepositLimit) {
+        if (currency.equals(baseCurrency)) {
+            setMaxDeposit(maximumDepositLimit);
+        } else {
+            depositLimits.put(currency, maximumDepositLimit);
+        }
+    }
+
+    /**
+     * Sets the maximum withdrawal for a currency, in that currency. The limit
+     * of the base currency is the one set by setMaximumWithdrawLimit(double).
+     */
+    public void setMaximumWithdrawLimit(String currency, double maximumWithdrawLimit) {
+        if (currency.equals(baseCurrency)) {
+            setMaximumWithdrawLimit(maximumWithdrawLimit);
+        } else {
+            withdrawLimits.put(currency, maximumWithdrawLimit);
+        }
+    }
+
+    /**
+     * Retrieves the maximum deposit in a currency: its own limit if one was
+     * set, otherwise the base currency's limit converted at the current rate.
+     */
+    public double getMaximumDepositLimit(String currency) {
+        return limitIn(currency, maximumDepositLimit, depositLimits);
+    }
+
+    /**
+     * Retrieves the maximum withdrawal in a currency: its own limit if one was
+     * set, otherwise the base currency's limit converted at the current rate.
+     */
+    public double getMaximumWithdrawLimit(String currency) {
+        return limitIn(currency, maximumWithdrawLimit, withdrawLimits);
+    }
+
+    // A currency's own limit, or the base limit converted into the currency
+    private double limitIn(String currency, double baseLimit, Map<String, Double> limits) {
+        if (currency.equals(baseCurrency)) {
+            return baseLimit;
+        }
+        Double own = limits.get(currency);
+        if (own != null) {
+            return own;
+        }
+        FxRates rates = fxRates;
+        if (rates != null && rates.hasCurrency(baseCurrency) && rates.hasCurrency(currency)) {
+            return rates.convert(baseLimit, baseCurrency, currency);
+        }
+        return baseLimit;
+    }
+
     /**
      * Sets the maximum oustanding limit in the bank.
      * This method determines the highest posssible amount of oustanding that can be
@@ -112,45 +492,61 @@ public class BankApp {
     /**
      * Before accepting a deposit, this method checks whether the amount is within
      * the allowed limits.
-     * If the deposit exceeds the maximum allowable deposit or is non-positive, an
-     * error is thrown.
+     * If the deposit breaks one of the validation rules, by default when it is
+     * non-positive or exceeds the maximum allowable deposit, an error is thrown.
      */
     public void checkAdequateDeposit(double amount) throws InadequateDepositAmountErrors {
-        // Verifies if the deposit amount is valid (positive and within limits)
-        // Check if the deposit amount is positive
-        boolean mustPositive = amount > 0;
-        // Check if the deposit amount exceeds the maximum deposit limit
-        boolean reachLimit = amount > maximumDepositLimit;
-        // If the deposit is not positive, throw an error with a message
-        if (!mustPositive) {
-            throw new InadequateDepositAmountErrors(amount, "Amount must be positive.");
-        }
-        // If the deposit exceeds the maximum limit, throw an error with a different
-        // message
-        if (reachLimit) {
-            throw new InadequateDepositAmountErrors(amount, "Deposit amount exceeds the limit.");
+        checkAdequateDeposit(amount, baseCurrency);
+    }
+
+    /**
+     * Checks a deposit made in a currency against the rules, using the
+     * currency's deposit limit.
+     */
+    public void checkAdequateDeposit(double amount, String currency) throws InadequateDepositAmountErrors {
+        ValidationRules rules = validationRules; // One rule set for the whole check
+        if (!(amount > 0)) { // Always checked, whatever the rules say
+            rules.refuseNonPositive(ValidationRules.Operation.DEPOSIT);
+            throw new InadequateDepositAmountErrors(amount, POSITIVE_AMOUNT);
+        }
+        // Find the first rule the deposit breaks, if any
+        ValidationRules.Rule broken = rules.check(ValidationRules.Operation.DEPOSIT, amount,
+                getMaximumDepositLimit(currency));
+        // If a rule is broken, throw an error with its message
+        if (broken != null) {
+            throw new InadequateDepositAmountErrors(amount, broken.getMessage());
         }
         // Otherwise, deposit is valid and no errors are thrown.
         System.out.println("Deposit of " + amount + " is valid.");
     }
 
     /**
-     * This method checks that the requested withdrawal amount is valid, ensuring
-     * that the amount is positive and does not exceed the maximum withdrawal limt.
+     * This method checks that the requested withdrawal amount is valid, by default
+     * ensuring that the amount is positive and does not exceed the maximum
+     * withdrawal limt.
      */
     public void checkAdequateWithdraw(double amount)
             throws InadequateWithdrawAmountErrors {
-        boolean hasPositive = amount > 0;
-        // Check if the deposit amount exceeds the maximum withdrawal limit
-        boolean theLimit = amount > maximumWithdrawLimit;
-        // If the withdraw is not positive, throw an error with a message
-        if (!hasPositive) {
-            throw new InadequateWithdrawAmountErrors(amount, "Amount must be positive.");
-        }
-        // If the withdraw exceeds the maximum limit, throw an error with a different
-        // message
-        if (theLimit) {
-            throw new InadequateWithdrawAmountErrors(amount, "Withdrawal amount exceeds the limit.");
+        checkAdequateWithdraw(amount, baseCurrency);
+    }
+
+    /**
+     * Checks a withdrawal made in a currency against the rules, using the
+     * currency's withdraw limit.
+     */
+    public void checkAdequateWithdraw(double amount, String currency)
+            throws InadequateWithdrawAmountErrors {
+        ValidationRules rules = validationRules; // One rule set for the whole check
+        if (!(amount > 0)) { // Always checked, whatever the rules say
+            rules.refuseNonPositive(ValidationRules.Operation.WITHDRAW);
+            throw new InadequateWithdrawAmountErrors(amount, POSITIVE_AMOUNT);
+        }
+        // Find the first rule the withdrawal breaks, if any
+        ValidationRules.Rule broken = rules.check(ValidationRules.Operation.WITHDRAW, amount,
+                getMaximumWithdrawLimit(currency));
+        // If a rule is broken, throw an error with its message
+        if (broken != null) {
+            throw new InadequateWithdrawAmountErrors(amount, broken.getMessage());
         }
         // Withdraw is valid and no errors are thrown.
         System.out.println("Withdraw of " + amount + " is valid.");
@@ -159,22 +555,30 @@ public class BankApp {
     /**
      * Before granting outstanding (Loan), this method ensures that the requested
      * outstanding amount is within the allowable limits.
-     * If the amount is negative or exceeds the maximum outstanding limit, it throws
-     * an error to prevent invalid outstanding amount from being granted.
+     * If the amount breaks one of the validation rules, by default when it is
+     * negative or exceeds the maximum outstanding limit, it throws an error to
+     * prevent invalid outstanding amount from being granted.
      */
     public void checkAdequateOutstanding(double amount)
             throws InadequateOutstandingAmountErrors {
-        boolean shouldPositive = amount > 0;
-        // Check if the outstanding amount exceeds the maximum outstanding limit
-        boolean exceedsLimit = amount > maximumOutstandingLimit;
-        // If the outstanding is not positive, throw an error with a message
-        if (!shouldPositive) {
-            throw new InadequateOutstandingAmountErrors(amount, "Amount must be positive.");
-        }
-        // If the outstanding exceeds the maximum limit, throw an error with a different
-        // message
-        if (exceedsLimit) {
-            throw new InadequateOutstandingAmountErrors(amount, "Outstanding amount exceeds the limit.");
+        checkAdequateOutstanding(amount, baseCurrency);
+    }
+
+    // Check an outstanding in a currency, against the outstanding limit converted
+    // into that currency
+    private void checkAdequateOutstanding(double amount, String currency)
+            throws InadequateOutstandingAmountErrors {
+        ValidationRules rules = validationRules; // One rule set for the whole check
+        if (!(amount > 0)) { // Always checked, whatever the rules say
+            rules.refuseNonPositive(ValidationRules.Operation.OUTSTANDING);
+            throw new InadequateOutstandingAmountErrors(amount, POSITIVE_AMOUNT);
+        }
+        // Find the first rule the outstanding breaks, if any
+        ValidationRules.Rule broken = rules.check(ValidationRules.Operation.OUTSTANDING, amount,
+                limitIn(currency, maximumOutstandingLimit, Collections.emptyMap()));
+        // If a rule is broken, throw an error with its message
+        if (broken != null) {
+            throw new InadequateOutstandingAmountErrors(amount, broken.getMessage());
         }
         // Outstanding is valid and no errors are thrown.
         System.out.println("Outstanding of " + amount + " is valid.");
@@ -183,21 +587,87 @@ public class BankApp {
     /**
      * This method decreases the bank operating funds by the given amount.
      * Before performing the operation, it verifies that the bank operating funds
-     * are available.
+     * are available. The amount is taken out of the bank's own capital, since it
+     * does not belong to any account.
+     */
+    public synchronized void minusFromBankOperatingFunds(double amount)
+            throws InadequateBankOperatingFundsErrors {
+        minusFromBankOperatingFunds(amount, baseCurrency);
+    }
+
+    /**
+     * Decreases the operating funds of a currency by the given amount, taken
+     * out of the bank's capital in that currency.
      */
-    public void minusFromBankOperatingFunds(double amount)
+    public synchronized void minusFromBankOperatingFunds(double amount, String currency)
             throws InadequateBankOperatingFundsErrors {
-        checkAdequateBankOperatingFunds(amount); // Verify that the bank operating funds are available
-        bankOperatingFund -= amount; // Reduces the bank operating funds by the amount
+        CurrencyFund fund = fundOf(currency);
+        debitBankOperatingFunds(fund, amount); // Verify and reduce the bank operating funds
+        fund.capital -= amount; // The bank's own money leaves the fund
+        publishCapitalChange(-amount, currency);
     }
 
     /**
      * This method increases the bank operating funds by the given amount.
-     * It is used when the bank recieves the additional amount, such as deposits,
-     * that increase the amount of available bank operating funds.
+     * It is used when the bank recieves additional capital that does not belong
+     * to any account. Deposits and repayments are added by the bank itself.
+     */
+    public synchronized void appendToBankOperatingFunds(double amount) {
+        appendToBankOperatingFunds(amount, baseCurrency);
+    }
+
+    /**
+     * Increases the operating funds of a currency by capital the bank receives
+     * in that currency.
      */
-    public void appendToBankOperatingFunds(double amount) {
-        bankOperatingFund += amount; // Increases the current bank operating funds by the amount.
+    public synchronized void appendToBankOperatingFunds(double amount, String currency) {
+        CurrencyFund fund = fundOf(currency);
+        creditBankOperatingFunds(fund, amount); // Increases the current bank operating funds by the amount.
+        fund.capital += amount; // The bank's own money enters the fund
+        publishCapitalChange(amount, currency);
+    }
+
+    /**
+     * Retrieves the bank's own capital: the part of the operating funds that is
+     * not owed to account owners. It grows with capital added through
+     * appendToBankOperatingFunds, interest charged and fees, so that the
+     * operating funds always equal the account balances minus the outstanding
+     * balances plus this capital.
+     */
+    public synchronized double getBankCapital() {
+        return baseFund.capital;
+    }
+
+    /**
+     * Retrieves the bank's own capital in a currency, zero for a currency the
+     * bank has never held.
+     */
+    public synchronized double getBankCapital(String currency) {
+        CurrencyFund fund = operatingFunds.get(currency);
+        return fund == null ? 0.0 : fund.capital;
+    }
+
+    // The fund of a currency, created empty the first time the currency is used
+    private CurrencyFund fundOf(String currency) {
+        return operatingFunds.computeIfAbsent(currency, c -> {
+            CurrencyFund fund = new CurrencyFund();
+            if (rebalanceInterval != null) {
+                fund.operatingFund.startRebalancing(rebalanceInterval);
+            }
+            return fund;
+        });
+    }
+
+    // Add money that moves between an account and the fund, such as a deposit
+    private void creditBankOperatingFunds(CurrencyFund fund, double amount) {
+        fund.operatingFund.credit(amount);
+    }
+
+    // Take out money that moves between an account and the fund, such as a
+    // withdrawal
+    private void debitBankOperatingFunds(CurrencyFund fund, double amount)
+            throws InadequateBankOperatingFundsErrors {
+        fund.operatingFund.debit(amount); // Reduces the bank operating funds, fails if they are inadequate
     }
 
     /**
@@ -205,13 +675,24 @@ public class BankApp {
      * enough to cover the required operation. If it inadequate, an error is thrown
      * to prevent the operation from being performed.
      */
-    public void checkAdequateBankOperatingFunds(double amount) throws InadequateBankOperatingFundsErrors {
-        // Conditional checking, throwing an error if funds are inadequate.
-        boolean hasAdequateFunds = amount <= bankOperatingFund;
-        // If inadequate funds, throw the error.
-        if (!hasAdequateFunds) {
-            throw new InadequateBankOperatingFundsErrors(amount, bankOperatingFund);
-        }
+    public synchronized void checkAdequateBankOperatingFunds(double amount)
+            throws InadequateBankOperatingFundsErrors {
+        checkAdequateBankOperatingFunds(baseFund, amount);
+    }
+
+    /**
+     * Checks that the operating funds of a currency cover an amount in that
+     * currency.
+     */
+    public synchronized void checkAdequateBankOperatingFunds(double amount, String currency)
+            throws InadequateBankOperatingFundsErrors {
+        checkAdequateBankOperatingFunds(fundOf(currency), amount);
+    }
+
+    private void checkAdequateBankOperatingFunds(CurrencyFund fund, double amount)
+            throws InadequateBankOperatingFundsErrors {
+        // Throws an error if the exact total of the fund's slices is inadequate.
+        fund.operatingFund.checkAdequate(amount);
     }
 
     /**
@@ -219,19 +700,172 @@ public class BankApp {
      * It validates the deposit amount and adds the deposit to both the account and
      * bank operating funds.
      */
-    public void deposit(String accountOwner, double amount)
+    public synchronized void deposit(String accountOwner, double amount)
             throws InadequateDepositAmountErrors,
             AccountOwnerNotFoundErrors {
-        // Log the deposit request
-        System.out.println("Attempting to deposit " + amount + " into account: " + accountOwner);
+        BankTracer.Trace trace = beginTrace("deposit", accountOwner);
+        BankFlightEvents.Deposit event = new BankFlightEvents.Deposit();
+        event.begin();
+        try {
+            // Log the deposit request
+            System.out.println("Attempting to deposit " + amount + " into account: " + accountOwner);
+
+            BankAccount account = findOpenAccount(accountOwner); // Reported missing after the amount checks
+            mark(trace, BankTracer.Phase.LOOKUP);
+            checkAdequateDeposit(amount, limitCurrency(account)); // Check if the deposit is valid
+            System.out.println("Deposit amount is valid.");
+            requireAccount(account, accountOwner);
+            mark(trace, BankTracer.Phase.VALIDATE);
+            account.deposit(amount); // Add the deposit to the account
+            accounts.update(account);
+            System.out.println("Successfully deposited " + amount + " into " + accountOwner + "'s account.");
+            mark(trace, BankTracer.Phase.MUTATE);
+            creditBankOperatingFunds(fundOf(account.getCurrency()), amount); // Add the deposit to the bank funds
+            System.out.println("Deposited " + amount + " into the bank operating funds.");
+            mark(trace, BankTracer.Phase.FUND);
+            publishBalanceChange(BalanceChangeEvent.Type.DEPOSIT, account, amount);
+            mark(trace, BankTracer.Phase.PUBLISH);
+        } catch (Exception e) {
+            event.fail(e);
+            throw e;
+        } finally {
+            endTrace(trace);
+            event.finish(accountOwner, amount);
+        }
+    }
 
-        checkAdequateDeposit(amount); // Check if the deposit is valid
-        System.out.println("Deposit amount is valid.");
-        getOwnerAccount(accountOwner)
-                .deposit(amount); // Add the deposit to the account
-        System.out.println("Successfully deposited " + amount + " into " + accountOwner + "'s account.");
-        appendToBankOperatingFunds(amount); // Add the deposit to the bank operating funds
-        System.out.println("Deposited " + amount + " into the bank operating funds.");
+    /**
+     * Deposits an amount given in another currency than the account's.
+     * The amount is checked against the deposit limit of the currency it is
+     * given in, converted into the account's currency with the bank's FX rates,
+     * and added to the account and to the operating funds of the account's
+     * currency.
+     *
+     * @throws IllegalStateException    if the currencies differ and no FX rates
+     *                                  are set
+     * @throws IllegalArgumentException if a currency has no FX rate
+     */
+    public synchronized void deposit(String accountOwner, double amount, String currency)
+            throws InadequateDepositAmountErrors,
+            AccountOwnerNotFoundErrors {
+        BankTracer.Trace trace = beginTrace("deposit", accountOwner);
+        BankFlightEvents.Deposit event = new BankFlightEvents.Deposit();
+        event.begin();
+        try {
+            System.out.println("Attempting to deposit " + amount + " " + currency + " into account: " + accountOwner);
+            checkAdequateDeposit(amount, currency); // Check the amount in the currency it is given in
+            mark(trace, BankTracer.Phase.VALIDATE);
+            BankAccount account = getOwnerAccount(accountOwner);
+            mark(trace, BankTracer.Phase.LOOKUP);
+            double converted = convert(amount, currency, account.getCurrency());
+            account.deposit(converted);
+            accounts.update(account);
+            mark(trace, BankTracer.Phase.MUTATE);
+            creditBankOperatingFunds(fundOf(account.getCurrency()), converted);
+            System.out.println("Deposited " + converted + " " + account.getCurrency() + " into " + accountOwner
+                    + "'s account.");
+            mark(trace, BankTracer.Phase.FUND);
+            publishBalanceChange(BalanceChangeEvent.Type.DEPOSIT, account, converted);
+            mark(trace, BankTracer.Phase.PUBLISH);
+        } catch (Exception e) {
+            event.fail(e);
+            throw e;
+        } finally {
+            endTrace(trace);
+            event.finish(accountOwner, amount); // The amount as given, before conversion
+        }
+    }
+
+    /**
+     * Transfers an amount from one account to another, converting it when the
+     * accounts have different currencies. The amount is in the source account's
+     * currency and is checked like a withdrawal from it; the converted amount
+     * is checked like a deposit into the destination. The money leaves the
+     * operating funds of the source currency and enters those of the
+     * destination currency.
+     *
+     * @throws IllegalArgumentException if both owners are the same, or a
+     *                                  currency has no FX rate
+     * @throws IllegalStateException    if the currencies differ and no FX rates
+     *                                  are set
+     */
+    public synchronized void transfer(String fromOwner, String toOwner, double amount)
+            throws InadequateFundsErrors,
+            InadequateBankOperatingFundsErrors,
+            AccountOwnerNotFoundErrors,
+            InadequateWithdrawAmountErrors,
+            InadequateDepositAmountErrors {
+        if (fromOwner.equals(toOwner)) {
+            throw new IllegalArgumentException("Cannot transfer from an account to itself.");
+        }
+        BankTracer.Trace trace = beginTrace("transfer", fromOwner);
+        BankFlightEvents.Withdraw withdrawEvent = new BankFlightEvents.Withdraw();
+        BankFlightEvents.Deposit depositEvent = new BankFlightEvents.Deposit();
+        withdrawEvent.begin();
+        depositEvent.begin();
+        double converted = amount; // Recorded as given until the currencies are known
+        try {
+            BankAccount from = getOwnerAccount(fromOwner);
+            BankAccount to = getOwnerAccount(toOwner);
+            mark(trace, BankTracer.Phase.LOOKUP);
+            checkAdequateWithdraw(amount, from.getCurrency());
+            converted = convert(amount, from.getCurrency(), to.getCurrency());
+            checkAdequateDeposit(converted, to.getCurrency());
+            mark(trace, BankTracer.Phase.VALIDATE);
+            CurrencyFund source = fundOf(from.getCurrency());
+            debitBankOperatingFunds(source, amount); // Fails if the fund is too low, before anything changed
+            try {
+                from.withdraw(amount); // Fails if the balance is too low
+            } catch (InadequateFundsErrors e) {
+                creditBankOperatingFunds(source, amount);
+                throw e;
+            }
+            to.deposit(converted);
+            creditBankOperatingFunds(fundOf(to.getCurrency()), converted);
+            mark(trace, BankTracer.Phase.FUND);
+            accounts.update(from);
+            accounts.update(to);
+            System.out.println("Transferred " + amount + " " + from.getCurrency() + " from " + fromOwner + " to "
+                    + toOwner + " as " + converted + " " + to.getCurrency() + ".");
+            mark(trace, BankTracer.Phase.MUTATE);
+            publishBalanceChange(BalanceChangeEvent.Type.WITHDRAW, from, amount);
+            publishBalanceChange(BalanceChangeEvent.Type.DEPOSIT, to, converted);
+            mark(trace, BankTracer.Phase.PUBLISH);
+        } catch (Exception e) {
+            withdrawEvent.fail(e);
+            depositEvent.fail(e);
+            throw e;
+        } finally {
+            endTrace(trace);
+            withdrawEvent.finish(fromOwner, amount);
+            depositEvent.finish(toOwner, converted);
+        }
+    }
+
+    // Convert between currencies with the bank's rates
+    private double convert(double amount, String from, String to) {
+        if (from.equals(to)) {
+            return amount;
+        }
+        FxRates rates = fxRates;
+        if (rates == null) {
+            throw new IllegalStateException("No FX rates are set to convert " + from + " to " + to + ".");
+        }
+        return rates.convert(amount, from, to);
+    }
+
+    // The currency whose limits an amount is checked against: the account's, or
+    // the base currency if there is no such account, so an invalid amount is
+    // reported before a missing account
+    private String limitCurrency(BankAccount account) {
+        return account == null ? baseCurrency : account.getCurrency();
+    }
+
+    // Report an account that was looked up with findOpenAccount and not found
+    private static void requireAccount(BankAccount account, String accountOwner) throws AccountOwnerNotFoundErrors {
+        if (account == null) {
+            throw new AccountOwnerNotFoundErrors(accountOwner);
+        }
     }
 
     /**
@@ -239,24 +873,47 @@ public class BankApp {
      * It checks if the account has enough funds and if the bank has enough
      * operating funds before proceding with the withdrawal.
      */
-    public void withdraw(String accountOwner, double amount)
+    public synchronized void withdraw(String accountOwner, double amount)
             throws InadequateFundsErrors,
             InadequateBankOperatingFundsErrors,
             AccountOwnerNotFoundErrors,
             InadequateWithdrawAmountErrors {
-        // Log the withdrawal request
-        System.out.println("Attempting to withdraw " + amount + " from account: " + accountOwner);
+        BankTracer.Trace trace = beginTrace("withdraw", accountOwner);
+        BankFlightEvents.Withdraw event = new BankFlightEvents.Withdraw();
+        event.begin();
+        try {
+            // Log the withdrawal request
+            System.out.println("Attempting to withdraw " + amount + " from account: " + accountOwner);
 
-        checkAdequateWithdraw(amount); // Validate the withdrawal amount
-        System.out.println("Withdrawal amount is valid.");
-        checkAdequateBankOperatingFunds(amount); // Ensure the bank has enough operating funds
-        System.out.println("Bank has enough operating funds for the withdrawal.");
-        // Log the withdrawal from the account
-        getOwnerAccount(accountOwner)
-                .withdraw(amount); // Decrease the amount from the account balance
-        System.out.println("Successfully withdrew " + amount + " from " + accountOwner + "'s account.");
-        minusFromBankOperatingFunds(amount); // Decrease the amount from the bank operating funds
-        System.out.println("Deducted " + amount + " from the bank operating funds.");
+            BankAccount account = findOpenAccount(accountOwner); // Reported missing after the amount checks
+            mark(trace, BankTracer.Phase.LOOKUP);
+            checkAdequateWithdraw(amount, limitCurrency(account)); // Validate the withdrawal amount
+            System.out.println("Withdrawal amount is valid.");
+            requireAccount(account, accountOwner);
+            mark(trace, BankTracer.Phase.VALIDATE);
+            // Reserve the funds first; the debit is the check, so no exact total is summed here
+            CurrencyFund fund = fundOf(account.getCurrency());
+            debitBankOperatingFunds(fund, amount); // Decrease the amount from the bank operating funds
+            System.out.println("Deducted " + amount + " from the bank operating funds.");
+            mark(trace, BankTracer.Phase.FUND);
+            try {
+                account.withdraw(amount); // Decrease the amount from the account balance
+            } catch (InadequateFundsErrors e) {
+                creditBankOperatingFunds(fund, amount); // Give the reservation back
+                throw e;
+            }
+            accounts.update(account);
+            System.out.println("Successfully withdrew " + amount + " from " + accountOwner + "'s account.");
+            mark(trace, BankTracer.Phase.MUTATE);
+            publishBalanceChange(BalanceChangeEvent.Type.WITHDRAW, account, amount);
+            mark(trace, BankTracer.Phase.PUBLISH);
+        } catch (Exception e) {
+            event.fail(e);
+            throw e;
+        } finally {
+            endTrace(trace);
+            event.finish(accountOwner, amount);
+        }
     }
 
     /**
@@ -264,39 +921,62 @@ public class BankApp {
      * This method provides a outstanding to a particular account owner. it check if
      * the requested outstanding amount is valid, whether the account exists, and if
      * the bank has enough operating unds to grant the outstanding. If all
-     * conditions are
-     * met, the outstanding is added to the account's balance, and the bank
-     * operating funds are reduced.
+     * conditions are met, the outstanding is added to the account's balance, and
+     * the bank operating funds are reduced. An account repaying a scheduled loan
+     * is refused until the schedule is paid off, as the schedule would not
+     * know about the extra amount.
      */
-    // Use Outstanding class to validate outstanding against reserves
-    public void grantOutstanding(String accountOwner, double outstandingAmount)
+    public synchronized void grantOutstanding(String accountOwner, double outstandingAmount)
             throws InadequateBankOperatingFundsErrors, // if there's not enough Operating Funds
             AccountOwnerNotFoundErrors, // if the account owner is not found
             InadequateOutstandingAmountErrors { // if there's not enough Outstanding amount
-        // Log the request for granting an outstanding amount
-        System.out.println(
-                "Attempting to grant outstanding amount of " + outstandingAmount + " to account: " + accountOwner);
-
-        checkAdequateOutstanding(outstandingAmount); // Validate the outstanding amount
-        System.out.println("Outstanding amount is valid.");
-        getOwnerAccount(accountOwner)
-                .getOutstanding()
-                .confirmOutstandingAgainstBankOperatingFunds(outstandingAmount, bankOperatingFund);
-        System.out.println("Confirmed that the bank has enough funds to cover the outstanding amount.");
-
-        checkAdequateBankOperatingFunds(outstandingAmount); // Ensure the bank has enough funds for the outstanding
-        System.out.println("Bank has adequate operating funds to grant the outstanding.");
-
-        getOwnerAccount(accountOwner)
-                .appendToOutstandingBalance(outstandingAmount); // Add the outstanding amount to the account's
-                                                                // outstanding balance
-        System.out.println("Added outstanding amount of " + outstandingAmount + " to the account: " + accountOwner);
+        BankTracer.Trace trace = beginTrace("grantOutstanding", accountOwner);
+        BankFlightEvents.Grant event = new BankFlightEvents.Grant();
+        event.begin();
+        try {
+            BankAccount account = findOpenAccount(accountOwner); // Reported missing after the amount checks
+            mark(trace, BankTracer.Phase.LOOKUP);
+            // Validate the outstanding amount
+            checkAdequateOutstanding(outstandingAmount, limitCurrency(account));
+            requireAccount(account, accountOwner);
+            mark(trace, BankTracer.Phase.VALIDATE);
+            if (account.hasOutstanding() && account.getOutstanding().hasActiveSchedule()) {
+                // The schedule would not know about the extra amount
+                throw new InadequateOutstandingAmountErrors(outstandingAmount,
+                        "Account has a scheduled loan; grant more with new loan terms once it is paid off.");
+            }
+            grantOutstanding(account, outstandingAmount, null, trace);
+        } catch (Exception e) {
+            event.fail(e);
+            throw e;
+        } finally {
+            endTrace(trace);
+            event.finish(accountOwner, outstandingAmount);
+        }
+    }
 
-        minusFromBankOperatingFunds(outstandingAmount); // Deduct the outstanding amount from the bank's operating funds
-        System.out.println("Deducted outstanding amount of " + outstandingAmount + " from the bank's operating funds.");
-        // Log the successful granting of outstanding amount
-        System.out.println(
-                "Outstanding amount of " + outstandingAmount + " successfully granted to account: " + accountOwner);
+    /**
+     * Grants an already validated outstanding amount to a resolved account.
+     * The operating funds are checked and reduced in one step, and the
+     * outstanding is then committed to the account, so nothing is checked
+     * twice. A payment schedule, if given, is attached before the account is
+     * stored and the GRANT is published, so listeners see it with the loan.
+     */
+    private void grantOutstanding(BankAccount account, double outstandingAmount, AmortizationSchedule schedule,
+            BankTracer.Trace trace) throws InadequateBankOperatingFundsErrors {
+        // Reserve the funds, fails if they are inadequate
+        debitBankOperatingFunds(fundOf(account.getCurrency()), outstandingAmount);
+        mark(trace, BankTracer.Phase.FUND);
+        account.getOutstanding().commitGrantedAmount(outstandingAmount); // Commit the outstanding (Loan)
+        if (schedule != null) {
+            account.getOutstanding().attachSchedule(schedule);
+        }
+        accounts.update(account);
+        System.out.println("Outstanding amount of " + outstandingAmount + " successfully granted to account: "
+                + account.getAccountOwner());
+        mark(trace, BankTracer.Phase.MUTATE);
+        publishBalanceChange(BalanceChangeEvent.Type.GRANT, account, outstandingAmount);
+        mark(trace, BankTracer.Phase.PUBLISH);
     }
 
     /**
@@ -304,7 +984,7 @@ public class BankApp {
      * the account owner's name. If the account is not found, it throws an error.
      * (Loan)
      */
-    public double getOutstandingBalance(String accountOwner)
+    public synchronized double getOutstandingBalance(String accountOwner)
             throws AccountOwnerNotFoundErrors {
         return getOwnerAccount(accountOwner).getCurrentOutstandingBalance(); // Return the outstanding balance of the
                                                                              // account
@@ -315,25 +995,158 @@ public class BankApp {
      * outstanding balance. (Loan)
      * It checks if the repayment amount is valid, and if the account exists.
      * The repayment amount is then deducted from the outstanding balance and added
-     * to the bank operating funds.
+     * to the bank operating funds. If the outstanding was granted with loan
+     * terms, the repayment is applied against its payment schedule instead.
      */
-    public void repayOutstanding(String accountOwner, double repaymentAmount)
+    public synchronized void repayOutstanding(String accountOwner, double repaymentAmount)
             throws AccountOwnerNotFoundErrors,
             InadequateOutstandingAmountErrors,
             InadequateDepositAmountErrors {
-        // Fetch the account owner and deduct repayment from the outstanding balance
-        BankAccount account = getOwnerAccount(accountOwner); // Fetch account
-        System.out.println("Fetched account for owner: " + accountOwner);
+        BankTracer.Trace trace = beginTrace("repayOutstanding", accountOwner);
+        BankFlightEvents.Repay event = new BankFlightEvents.Repay();
+        event.begin();
+        try {
+            // Fetch the account owner and deduct repayment from the outstanding balance
+            BankAccount account = getOwnerAccount(accountOwner); // Fetch account
+            System.out.println("Fetched account for owner: " + accountOwner);
+            mark(trace, BankTracer.Phase.LOOKUP);
+
+            if (!account.hasOutstanding()) {
+                account.checkCurrentAmountInOutstandingBalance(repaymentAmount); // Fails before allocating one
+            }
+            Outstanding outstanding = account.getOutstanding();
+            double interestCharged = 0.0;
+            if (outstanding.hasActiveSchedule()) {
+                // Apply the repayment against the loan schedule, charging the period's interest
+                interestCharged = outstanding.minusScheduledRepayment(repaymentAmount);
+                System.out.println("Repayment of " + repaymentAmount + " applied against the loan schedule.");
+            } else {
+                outstanding.minusFromOutstandingBalance(repaymentAmount); // Deduct from loan balance
+                System.out.println("Repayment of " + repaymentAmount + " deducted from outstanding balance.");
+            }
+            account.releaseSettledOutstanding(); // Repaid to zero, the account no longer needs it
+            accounts.update(account);
+            mark(trace, BankTracer.Phase.MUTATE);
 
-        account.getOutstanding().minusFromOutstandingBalance(repaymentAmount); // Deduct from loan balance
-        System.out.println("Repayment of " + repaymentAmount + " deducted from outstanding balance.");
+            // Add repayment amount to the bank's operating funds
+            CurrencyFund fund = fundOf(account.getCurrency());
+            creditBankOperatingFunds(fund, repaymentAmount); // Increase bank reserves
+            fund.capital += interestCharged; // The interest part of the repayment is income
+            System.out.println("Added repayment of " + repaymentAmount + " to the bank's operating funds.");
+            mark(trace, BankTracer.Phase.FUND);
+
+            // log any additional logic after repayment
+            System.out.println("Repayment of " + repaymentAmount + " successfully processed for account: " + accountOwner);
+            if (interestCharged > 0) {
+                publishBalanceChange(BalanceChangeEvent.Type.INTEREST, account, interestCharged,
+                        account.getCurrentOutstandingBalance() + repaymentAmount);
+            }
+            publishBalanceChange(BalanceChangeEvent.Type.REPAY, account, repaymentAmount);
+            mark(trace, BankTracer.Phase.PUBLISH);
+        } catch (Exception e) {
+            event.fail(e);
+            throw e;
+        } finally {
+            endTrace(trace);
+            event.finish(accountOwner, repaymentAmount);
+        }
+    }
+
+    /**
+     * Grant an amortizing outstanding for an account. (Loan)
+     * The principal is granted like any other outstanding, and a payment
+     * schedule is built from the terms. Later repayments are applied against
+     * the schedule.
+     *
+     * @throws InadequateOutstandingAmountErrors if the account already has a
+     *                                           schedule that is not paid off,
+     *                                           owes a plain outstanding the
+     *                                           schedule would not cover, or
+     *                                           the principal is invalid
+     */
+    public synchronized void grantOutstanding(String accountOwner, LoanTerms terms)
+            throws InadequateBankOperatingFundsErrors,
+            AccountOwnerNotFoundErrors,
+            InadequateOutstandingAmountErrors {
+        BankTracer.Trace trace = beginTrace("grantOutstanding", accountOwner);
+        BankFlightEvents.Grant event = new BankFlightEvents.Grant();
+        event.begin();
+        try {
+            BankAccount account = findOpenAccount(accountOwner); // Reported missing after the principal check
+            mark(trace, BankTracer.Phase.LOOKUP);
+            checkAdequateOutstanding(terms.getPrincipal(), limitCurrency(account)); // Validate the principal
+            requireAccount(account, accountOwner);
+            if (account.hasOutstanding() && account.getOutstanding().hasActiveSchedule()) {
+                throw new InadequateOutstandingAmountErrors(terms.getPrincipal(),
+                        "Account already has a scheduled loan.");
+            }
+            if (account.getCurrentOutstandingBalance() > 0) {
+                // The schedule would only amortize the new principal
+                throw new InadequateOutstandingAmountErrors(terms.getPrincipal(),
+                        "Account owes an outstanding balance; repay it before a scheduled loan.");
+            }
+            mark(trace, BankTracer.Phase.VALIDATE);
+            grantOutstanding(account, terms.getPrincipal(), AmortizationEngine.schedule(terms), trace);
+        } catch (Exception e) {
+            event.fail(e);
+            throw e;
+        } finally {
+            endTrace(trace);
+            event.finish(accountOwner, terms.getPrincipal());
+        }
+    }
 
-        // Add repayment amount to the bank's operating funds
-        appendToBankOperatingFunds(repaymentAmount); // Increase bank reserves
-        System.out.println("Added repayment of " + repaymentAmount + " to the bank's operating funds.");
+    /**
+     * This method applies interest to the outstanding balance of a particular
+     * account. (Loan)
+     * The rate is validated by the Outstanding class, and the change is published
+     * to the balance change listeners like any other mutation.
+     *
+     * @param interestRate the interest rate to apply (as a percentage).
+     */
+    public synchronized void applyInterest(String accountOwner, double interestRate)
+            throws AccountOwnerNotFoundErrors,
+            OutstandingInterestError {
+        BankFlightEvents.Interest event = new BankFlightEvents.Interest();
+        event.begin();
+        double interest = 0.0;
+        try {
+            BankAccount account = getOwnerAccount(accountOwner); // Fetch account
+            double before = account.getCurrentOutstandingBalance();
+            try {
+                account.getOutstanding().applyInterest(interestRate); // Validate and apply the interest
+            } finally {
+                account.releaseSettledOutstanding(); // Nothing was owed, so nothing to keep
+            }
+            accounts.update(account);
+            interest = account.getCurrentOutstandingBalance() - before;
+            fundOf(account.getCurrency()).capital += interest; // Interest owed to the bank is income
+            publishBalanceChange(BalanceChangeEvent.Type.INTEREST, account, interest);
+        } catch (Exception e) {
+            event.fail(e);
+            throw e;
+        } finally {
+            event.interestRate = interestRate;
+            event.finish(accountOwner, interest);
+        }
+    }
 
-        // log any additional logic after repayment
-        System.out.println("Repayment of " + repaymentAmount + " successfully processed for account: " + accountOwner);
+    /**
+     * This method charges a fee to a particular account.
+     * The fee is taken from the account balance and kept by the bank, so the
+     * bank operating funds do not change.
+     */
+    public synchronized void applyFee(String accountOwner, double fee)
+            throws AccountOwnerNotFoundErrors,
+            InadequateFundsErrors {
+        if (fee <= 0) {
+            throw new IllegalArgumentException("Fee must be positive.");
+        }
+        BankAccount account = getOwnerAccount(accountOwner); // Fetch account
+        account.withdraw(fee); // Take the fee from the balance, fails if the balance is too low
+        accounts.update(account);
+        fundOf(account.getCurrency()).capital += fee; // The fee now belongs to the bank
+        publishBalanceChange(BalanceChangeEvent.Type.FEE, account, fee);
     }
 
     /**
@@ -341,17 +1154,15 @@ public class BankApp {
      * there's no account with the name, it throws an error to indicate that the
      * account does not exist.
      */
-    public BankAccount getOwnerAccount(String accountOwner)
+    public synchronized BankAccount getOwnerAccount(String accountOwner)
             throws AccountOwnerNotFoundErrors {
-        // Iterate over the list of accounts
-        for (BankAccount account : Bankaccounts) {
-            // Check if the account owner's name matches
-            if (account.getAccountOwner().equals(accountOwner)) {
-                return account; // Return the matching account
-            }
-        }
+        // Look the account up in the store
+        BankAccount account = findOpenAccount(accountOwner);
         // If no matching account is found, throw an exception
-        throw new AccountOwnerNotFoundErrors(accountOwner);
+        if (account == null) {
+            throw new AccountOwnerNotFoundErrors(accountOwner);
+        }
+        return account; // Return the matching account
     }
 
     /**
@@ -361,24 +1172,42 @@ public class BankApp {
      * added to the list of bank accounts, and the starting deposit is added to the
      * bank operating funds system.
      */
-    public void appendOwnerAccount(String accountOwner, double startingDeposit)
+    public synchronized void appendOwnerAccount(String accountOwner, double startingDeposit)
             throws InadequateDepositAmountErrors, MultipleAccountErrors {
-        // Validate the deposit amount using a helper method
-        checkAdequateDeposit(startingDeposit);
+        appendOwnerAccount(accountOwner, startingDeposit, baseCurrency);
+    }
 
-        for (BankAccount account : Bankaccounts) {
-            if (account.getAccountOwner().equals(accountOwner)) {
+    /**
+     * Opens an account in a currency, with a starting deposit in that currency
+     * that is added to the currency's operating funds.
+     */
+    public synchronized void appendOwnerAccount(String accountOwner, double startingDeposit, String currency)
+            throws InadequateDepositAmountErrors, MultipleAccountErrors {
+        BankFlightEvents.AccountOpen event = new BankFlightEvents.AccountOpen();
+        event.begin();
+        try {
+            // Validate the deposit amount using a helper method
+            checkAdequateDeposit(startingDeposit, currency);
+
+            if (findOpenAccount(accountOwner) != null) {
                 // If an account with the same owner exists, throw an exception
                 throw new MultipleAccountErrors(accountOwner);
             }
-        }
+            purgeClosedAccount(accountOwner); // A new account replaces a closed one
 
-        // Create a new BankAccount object and add it to the accounts list
-        BankAccount newAccount = new BankAccount(accountOwner, startingDeposit);
-        Bankaccounts.add(newAccount);
+            // Create a new BankAccount object and add it to the account store
+            BankAccount newAccount = new BankAccount(accountOwner, startingDeposit, currency);
+            accounts.insert(newAccount);
 
-        // Update the bank's operating funds to include the starting deposit
-        appendToBankOperatingFunds(startingDeposit);
+            // Update the bank's operating funds to include the starting deposit
+            creditBankOperatingFunds(fundOf(currency), startingDeposit);
+            publishBalanceChange(BalanceChangeEvent.Type.OPEN, newAccount, startingDeposit);
+        } catch (Exception e) {
+            event.fail(e);
+            throw e;
+        } finally {
+            event.finish(accountOwner, startingDeposit);
+        }
     }
 
     /**
@@ -387,19 +1216,86 @@ public class BankApp {
      * are adequate to handle the closure. If the conditions are met, the account is
      * removed,
      * and the balance is decreased from the bank operating funds.
+     * The account is hidden at once and removed from the store by
+     * {@link #compactClosedAccounts()}; until its grace period is over it can
+     * be reopened with {@link #reopenOwnerAccount(String)}. Without a grace
+     * period or background compaction it is removed from the store at once.
      */
-    public void removeOwnerAccount(String accountOwner)
+    public synchronized void removeOwnerAccount(String accountOwner)
             throws AccountOwnerNotFoundErrors,
             InadequateOutstandingAmountErrors,
             InadequateBankOperatingFundsErrors {
-        BankAccount account = getOwnerAccount(accountOwner); // Retrieve the account by owner name
-        double outstandingBalance = account.getCurrentOutstandingBalance(); /// Get the outstanding balance
-        if (outstandingBalance > 0)
-            throw new InadequateOutstandingAmountErrors(outstandingBalance,
-                    "Outstanding balance must be 0 to close account"); // Throw error if there's a outstanding balance
-        Bankaccounts.removeIf(a -> a.getAccountOwner().equals(accountOwner)); // Remove the account if it exists
-        minusFromBankOperatingFunds(account.getCurrentBalance()); // Decrease the account balance from the bank
-                                                                  // operating funds
+        BankFlightEvents.AccountClose event = new BankFlightEvents.AccountClose();
+        event.begin();
+        double paidOut = 0.0;
+        try {
+            BankAccount account = getOwnerAccount(accountOwner); // Retrieve the account by owner name
+            double outstandingBalance = account.getCurrentOutstandingBalance(); /// Get the outstanding balance
+            if (outstandingBalance > 0)
+                throw new InadequateOutstandingAmountErrors(outstandingBalance,
+                        "Outstanding balance must be 0 to close account"); // Error if there's an outstanding balance
+            paidOut = account.getCurrentBalance();
+            // Decrease the account balance from the bank operating funds
+            debitBankOperatingFunds(fundOf(account.getCurrency()), paidOut);
+            if (closureGracePeriodNanos == 0 && compactor == null) {
+                accounts.remove(accountOwner); // Nothing would remove a tombstone later
+            } else {
+                // Hide the account; compaction removes it from the store later
+                tombstones.put(accountOwner, new Tombstone(account, System.nanoTime()));
+            }
+            publishBalanceChange(BalanceChangeEvent.Type.CLOSE, account, paidOut);
+        } catch (Exception e) {
+            event.fail(e);
+            throw e;
+        } finally {
+            event.finish(accountOwner, paidOut);
+        }
+    }
+
+    /**
+     * Reopens an account closed within its grace period. The balance paid out
+     * at closing is paid back in, so the account is as it was when closed.
+     *
+     * @throws AccountOwnerNotFoundErrors if no account of the owner was closed
+     *                                    within the grace period
+     */
+    public synchronized void reopenOwnerAccount(String accountOwner) throws AccountOwnerNotFoundErrors {
+        BankFlightEvents.AccountOpen event = new BankFlightEvents.AccountOpen();
+        event.begin();
+        double balance = 0.0;
+        try {
+            Tombstone tombstone = tombstones.get(accountOwner);
+            if (tombstone == null || System.nanoTime() - tombstone.closedAt > closureGracePeriodNanos) {
+                throw new AccountOwnerNotFoundErrors(accountOwner);
+            }
+            tombstones.remove(accountOwner);
+            BankAccount account = tombstone.account;
+            balance = account.getCurrentBalance();
+            accounts.update(account);
+            creditBankOperatingFunds(fundOf(account.getCurrency()), balance);
+            System.out.println("Reopened account: " + accountOwner);
+            publishBalanceChange(BalanceChangeEvent.Type.OPEN, account, balance);
+        } catch (Exception e) {
+            event.fail(e);
+            throw e;
+        } finally {
+            event.finish(accountOwner, balance);
+        }
+    }
+
+    // The owner's account, or null if there is none or it was closed
+    private BankAccount findOpenAccount(String accountOwner) {
+        if (!tombstones.isEmpty() && tombstones.containsKey(accountOwner)) {
+            return null;
+        }
+        return accounts.find(accountOwner);
+    }
+
+    // Remove a closed account from the store before its grace period is over
+    private void purgeClosedAccount(String accountOwner) {
+        if (tombstones.remove(accountOwner) != null) {
+            accounts.remove(accountOwner);
+        }
     }
 
     /**
@@ -407,20 +1303,271 @@ public class BankApp {
      * owner's name.
      * If the account is not found, it throws an error.
      */
-    public double getOwnerAccountBalance(String accountOwner) throws AccountOwnerNotFoundErrors {
-        // Attempt to find the account by iterating over the list of bank accounts.
-        BankAccount account = Bankaccounts.stream()
-                .filter(acc -> acc.getAccountOwner().equals(accountOwner)) // Filter accounts by the owner's name
-                .findFirst() // Find the first matching account
-                .orElseThrow(() -> new AccountOwnerNotFoundErrors(accountOwner)); // If not found, throw error
+    public synchronized double getOwnerAccountBalance(String accountOwner) throws AccountOwnerNotFoundErrors {
+        // Find the account, throwing an error if it does not exist.
+        BankAccount account = getOwnerAccount(accountOwner);
 
         // Once the account is found, return its current balance.
         return account.getCurrentBalance();
     }
 
+    /**
+     * Retrieves the sequence number of the last published change.
+     */
+    synchronized long getBalanceChangeSequence() {
+        return balanceChangeSequence.get();
+    }
+
+    /**
+     * Loads recovered state into an empty bank without publishing any change.
+     * The operating funds of each currency are derived from its accounts and
+     * capital, and the next change continues after the given sequence number.
+     *
+     * @param images  currency, balance, outstanding and schedule per owner
+     * @param capital bank capital per currency
+     */
+    synchronized void restore(Map<String, AccountImage> images, Map<String, Double> capital, long sequence) {
+        if (accounts.size() > 0) {
+            throw new IllegalStateException("Only an empty bank can be restored.");
+        }
+        Map<String, Double> totals = new HashMap<>(capital);
+        for (CurrencyFund fund : operatingFunds.values()) {
+            fund.capital = 0.0;
+        }
+        for (Map.Entry<String, Double> entry : capital.entrySet()) {
+            fundOf(entry.getKey()).capital = entry.getValue();
+        }
+        for (Map.Entry<String, AccountImage> entry : images.entrySet()) {
+            AccountImage image = entry.getValue();
+            BankAccount account = new BankAccount(entry.getKey(), image.balance, image.currency);
+            account.setOutstanding(image.outstanding, image.schedule == null ? null
+                    : AccountCodec.decodeSchedule(entry.getKey(), ByteBuffer.wrap(image.schedule)));
+            accounts.insert(account);
+            totals.merge(image.currency, image.balance - image.outstanding, Double::sum);
+        }
+        for (String currency : operatingFunds.keySet()) {
+            totals.putIfAbsent(currency, 0.0);
+        }
+        for (Map.Entry<String, Double> entry : totals.entrySet()) {
+            fundOf(entry.getKey()).operatingFund.setTotal(entry.getValue());
+        }
+        balanceChangeSequence.set(sequence);
+        if (accountIndex != null) {
+            accountIndex.rebuild(getBankAccountOwners()); // Restored without publishing changes
+        }
+    }
+
+    /**
+     * Replaces every account and the capital with a newer image, without
+     * publishing any change. Used when a replication follower fell behind and
+     * the leader sent it a new snapshot.
+     *
+     * @param images  currency, balance and outstanding per owner
+     * @param capital bank capital per currency
+     */
+    synchronized void reload(Map<String, AccountImage> images, Map<String, Double> capital, long sequence) {
+        for (BankAccount account : accounts.list()) {
+            accounts.remove(account.getAccountOwner());
+        }
+        tombstones.clear();
+        restore(images, capital, sequence);
+    }
+
+    /**
+     * Applies a change committed by another bank, such as a replication leader,
+     * and publishes it to this bank's listeners with the same sequence number.
+     * The event is applied as an after-image, so a change already applied is
+     * ignored.
+     *
+     * @return false if the change was already applied
+     */
+    synchronized boolean applyReplicatedChange(BalanceChangeEvent event) {
+        if (event.getSequence() <= balanceChangeSequence.get()) {
+            return false;
+        }
+        double capitalChange = 0.0;
+        double accountChange = 0.0; // Change of balance minus outstanding
+        String owner = event.getAccountOwner();
+        switch (event.getType()) {
+            case CAPITAL:
+                capitalChange = event.getAmount();
+                break;
+            case OPEN: {
+                purgeClosedAccount(owner);
+                BankAccount account = new BankAccount(owner, event.getBalanceAfter(), event.getCurrency());
+                account.setOutstanding(event.getOutstandingAfter(), replicatedSchedule(account, event));
+                accounts.insert(account);
+                accountChange = event.getBalanceAfter() - event.getOutstandingAfter();
+                break;
+            }
+            case CLOSE: {
+                BankAccount account = findOpenAccount(owner);
+                if (account != null) {
+                    accountChange = account.getCurrentOutstandingBalance() - account.getCurrentBalance();
+                    accounts.remove(owner);
+                }
+                break;
+            }
+            default: {
+                if (event.getType() == BalanceChangeEvent.Type.INTEREST
+                        || event.getType() == BalanceChangeEvent.Type.FEE) {
+                    capitalChange = event.getAmount(); // Income of the bank
+                }
+                BankAccount account = findOpenAccount(owner);
+                if (account == null) {
+                    throw new IllegalStateException("Replicated change for a missing account: " + event);
+                }
+                accountChange = (event.getBalanceAfter() - event.getOutstandingAfter())
+                        - (account.getCurrentBalance() - account.getCurrentOutstandingBalance());
+                account.setCurrentBalance(event.getBalanceAfter());
+                account.setOutstanding(event.getOutstandingAfter(), replicatedSchedule(account, event));
+                accounts.update(account);
+                break;
+            }
+        }
+        CurrencyFund fund = fundOf(event.getCurrency());
+        fund.capital += capitalChange;
+        double fundChange = accountChange + capitalChange;
+        if (fundChange >= 0) {
+            fund.operatingFund.credit(fundChange);
+        } else {
+            try {
+                fund.operatingFund.debit(-fundChange);
+            } catch (InadequateBankOperatingFundsErrors e) {
+                throw new IllegalStateException("Replicated change overdraws the operating funds: " + event, e);
+            }
+        }
+        balanceChangeSequence.set(event.getSequence());
+        for (BalanceChangeListener listener : balanceChangeListeners) {
+            listener.onBalanceChange(event);
+        }
+        return true;
+    }
+
+    // The payment schedule of an account after a replicated change, reusing the
+    // account's schedule when the change left it as it was
+    private static AmortizationSchedule replicatedSchedule(BankAccount account, BalanceChangeEvent event) {
+        byte[] encoded = event.getEncodedSchedule();
+        if (encoded == null) {
+            return null;
+        }
+        Outstanding outstanding = account.peekOutstanding();
+        AmortizationSchedule current = outstanding == null ? null : outstanding.getSchedule();
+        if (current != null && Arrays.equals(current.encoded(), encoded)) {
+            return current;
+        }
+        return AccountCodec.decodeSchedule(account.getAccountOwner(), ByteBuffer.wrap(encoded));
+    }
+
+    // Start a trace of an operation, or return null if no tracer is attached or
+    // the operation is not sampled
+    private BankTracer.Trace beginTrace(String operation, String accountOwner) {
+        BankTracer current = tracer;
+        return current == null ? null : current.begin(operation, accountOwner);
+    }
+
+    private static void mark(BankTracer.Trace trace, BankTracer.Phase phase) {
+        if (trace != null) {
+            trace.mark(phase);
+        }
+    }
+
+    private static void endTrace(BankTracer.Trace trace) {
+        if (trace != null) {
+            trace.end();
+        }
+    }
+
+    /**
+     * Notifies the balance change listeners of a committed change to an account.
+     * Nothing is allocated when no listener is registered.
+     */
+    private void publishBalanceChange(BalanceChangeEvent.Type type, BankAccount account, double amount) {
+        publishBalanceChange(type, account, amount, account.getCurrentOutstandingBalance());
+    }
+
+    /**
+     * Notifies the balance change listeners of a change whose outstanding
+     * balance differs from the account's current one, such as the interest
+     * charged inside a scheduled repayment.
+     */
+    private void publishBalanceChange(BalanceChangeEvent.Type type, BankAccount account, double amount,
+            double outstandingAfter) {
+        if (balanceChangeListeners.isEmpty()) {
+            return;
+        }
+        BalanceChangeEvent event = new BalanceChangeEvent(balanceChangeSequence.incrementAndGet(), type,
+                account.getAccountOwner(), amount, account.getCurrentBalance(), outstandingAfter,
+                System.currentTimeMillis(), account.getCurrency(), account.encodedSchedule());
+        for (BalanceChangeListener listener : balanceChangeListeners) {
+            listener.onBalanceChange(event);
+        }
+    }
+
+    /**
+     * Notifies the balance change listeners of capital added to or taken out of
+     * the operating funds of a currency. The event has no account owner.
+     */
+    private void publishCapitalChange(double amount, String currency) {
+        if (balanceChangeListeners.isEmpty()) {
+            return;
+        }
+        BalanceChangeEvent event = new BalanceChangeEvent(balanceChangeSequence.incrementAndGet(),
+                BalanceChangeEvent.Type.CAPITAL, null, amount, 0.0, 0.0, System.currentTimeMillis(), currency);
+        for (BalanceChangeListener listener : balanceChangeListeners) {
+            listener.onBalanceChange(event);
+        }
+    }
+
+    /**
+     * Operating funds and bank capital held in one currency.
+     */
+    private static final class CurrencyFund {
+        final EscrowFund operatingFund = new EscrowFund(); // Money available to the bank in this currency
+        double capital; // The part of the operating funds owned by the bank itself
+    }
+
+    /**
+     * A closed account waiting in the store for compaction.
+     */
+    private static final class Tombstone {
+        final BankAccount account; // The account as it was closed
+        final long closedAt; // System.nanoTime() at closing
+
+        Tombstone(BankAccount account, long closedAt) {
+            this.account = account;
+            this.closedAt = closedAt;
+        }
+    }
+
+    /**
+     * State of one account as recovered from a checkpoint or a replication
+     * snapshot.
+     */
+    static final class AccountImage {
+        final String currency;
+        final double balance;
+        final double outstanding;
+        final byte[] schedule; // Encoded payment schedule, or null
+
+        AccountImage(String currency, double balance, double outstanding) {
+            this(currency, balance, outstanding, null);
+        }
+
+        AccountImage(String currency, double balance, double outstanding, byte[] schedule) {
+            this.currency = currency;
+            this.balance = balance;
+            this.outstanding = outstanding;
+            this.schedule = schedule;
+        }
+    }
+
     // Custom error class for handling cases where multiple accounts exist for the
     // same account owner
     public static class MultipleAccountErrors extends Exception {
+
+        private final String accountOwner; // The account owner that already has an account
+
         /**
          * Constructor for MultipleAccountErrors.
          * This constructor creates an error with a message indicating that an
@@ -432,15 +1579,26 @@ public class BankApp {
         public MultipleAccountErrors(String accountOwner) {
             // Call the parent Exception class constructor with a custom error message
             super("This account already exist: " + accountOwner);
+            this.accountOwner = accountOwner;
             // Print the exception message to the console for debugging purposes
             System.out.println(getMessage());
         }
 
+        /**
+         * Retrieves the name of the account owner that already has an account.
+         */
+        public String getAccountOwner() {
+            return accountOwner;
+        }
     }
 
     // Define the class for handling errors related to inadequate bank operating
     // funds
     public static class InadequateBankOperatingFundsErrors extends Exception {
+
+        private final double requestedAmount; // The amount requested
+        private final double availableOperatingFunds; // The operating funds when the request was refused
+
         /**
          * Constructor for InadequateBankOperatingFundsErrors.
          * This constructor creates an error when the requested amount exceeds the
@@ -453,13 +1611,27 @@ public class BankApp {
             // Call the parent error class constructor with a custom error message
             super("Inadequate operating funds. Requested: " + requestedAmount + ", Available: "
                     + availableOperatingFunds);
+            this.requestedAmount = requestedAmount;
+            this.availableOperatingFunds = availableOperatingFunds;
             // Print the error message to the console for debugging
             System.out.println(getMessage());
         }
+
+        public double getRequestedAmount() {
+            return requestedAmount;
+        }
+
+        public double getAvailableOperatingFunds() {
+            return availableOperatingFunds;
+        }
     }
 
     // Error class for handling errors related to invalid deposit amounts
     public static class InadequateDepositAmountErrors extends Exception {
+
+        private final double amount; // The deposit amount that caused the error
+        private final String info; // Why the amount was refused
+
         /**
          * Constructor for InadequateDepositAmountErrors.
          * This error is thrown when a deposit-related operation fails due to an invalid
@@ -471,13 +1643,27 @@ public class BankApp {
         public InadequateDepositAmountErrors(double amount, String info) {
             // Call the parent error class constructor with a custom error message
             super("Invalid deposit amount: " + amount + ". Information: " + info);
+            this.amount = amount;
+            this.info = info;
             // Print the error message to the console for debugging purposes
             System.out.println(getMessage());
         }
+
+        public double getAmount() {
+            return amount;
+        }
+
+        public String getInfo() {
+            return info;
+        }
     }
 
     // Error class for handling errors related to invalid withdrawal amounts
     public static class InadequateWithdrawAmountErrors extends Exception {
+
+        private final double amount; // The withdrawal amount that caused the error
+        private final String info; // Why the amount was refused
+
         /**
          * Constructor for InadequateWithdrawalAmountErrors.
          * This error is thrown when a withdrawal-related operation fails due to an
@@ -489,8 +1675,18 @@ public class BankApp {
         public InadequateWithdrawAmountErrors(double amount, String info) {
             // Call error class constructor with a custom error message
             super("Invalid withdrawal amount: " + amount + ". Information: " + info);
+            this.amount = amount;
+            this.info = info;
             // Print the error message to the console for debugging purposes
             System.out.println(getMessage());
         }
+
+        public double getAmount() {
+            return amount;
+        }
+
+        public String getInfo() {
+            return info;
+        }
     }
 }
@@ -0,0 +1,554 @@
+package Bank;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import Bank.BankApp.AccountImage;
+import Bank.ChangeDataCaptureLog.Record;
+
+/**
+ * Periodic incremental checkpoints of a {@link BankApp}, with compaction of
+ * the checkpoints and of the change data capture journal.
+ *
+ * The checkpointer starts from a full checkpoint of every account, then
+ * listens to the bank's changes and remembers which accounts they touched.
+ * Every checkpoint interval it writes an incremental checkpoint holding only
+ * those accounts, as they were after the last change it saw. Every few
+ * checkpoints the chain is merged into a new full checkpoint, the older files
+ * are deleted, and the journal segments that only hold changes covered by the
+ * full checkpoint are truncated.
+ *
+ * A checkpoint never takes the bank's monitor: the touched accounts are
+ * collected from the change events as they are published, and writing a
+ * checkpoint only swaps that collection out under the checkpointer's own lock.
+ * Deposits and withdrawals keep running while a checkpoint is written.
+ *
+ * To recover, {@link #recover(BankApp, Path, Path)} loads the latest full
+ * checkpoint, applies the incremental checkpoints that follow it, and then
+ * replays only the journal records after the last checkpoint. The journal
+ * must be registered on the same bank as the checkpointer.
+ *
+ * Each account is checkpointed with its currency and, for an outstanding
+ * (Loan) granted with loan terms, its payment schedule in the form written by
+ * {@link AccountCodec}. The schedule travels with every change event of the
+ * account, so a recovered loan keeps its schedule whether it was last seen in
+ * a checkpoint or in the journal. The bank capital is kept per currency.
+ * Checkpoints written before currencies existed are still read, with every
+ * account and the capital in the default currency, and checkpoints written
+ * before schedules were kept are read without them.
+ *
+ * Checkpoint files are named after the sequence number of the last change
+ * they include, and are written to a temporary file that is moved into place,
+ * so a crash never leaves a partly written checkpoint behind.
+ */
+public class BankCheckpointer implements BalanceChangeListener, AutoCloseable {
+
+    static final String FULL_SUFFIX = "-full.ckpt"; // File name ending of a full checkpoint
+    static final String INCREMENTAL_SUFFIX = "-incr.ckpt"; // File name ending of an incremental checkpoint
+    private static final int MAGIC = 0x424b4350; // "BKCP"
+    private static final int VERSION = 3; // Adds the payment schedule of each account
+    private static final int VERSION_NO_SCHEDULE = 2; // Adds the currency of each account and capital per currency
+    private static final int VERSION_SINGLE_CURRENCY = 1;
+
+    private final BankApp bank; // The bank being checkpointed
+    private final Path directory; // Directory holding the checkpoint files
+    private final ChangeDataCaptureLog journal; // Journal truncated by compaction, may be null
+    private final int checkpointsPerCompaction; // Incremental checkpoints between two compactions
+    private final ScheduledExecutorService scheduler; // Writes checkpoints in the background
+    private final Object fileLock = new Object(); // Orders checkpoints and compactions
+
+    // Changes seen since the last checkpoint: after-image per owner, null once closed
+    private Map<String, AccountImage> dirty = new HashMap<>();
+    private final Map<String, Double> capital = new HashMap<>(); // Bank capital per currency after the last change
+    private long lastSequence; // Sequence number of the last change seen
+
+    private long chainSequence; // Sequence number of the last checkpoint written
+    private int chainLength; // Incremental checkpoints written since the last full one
+    private long journalScanOffset; // Journal records before this offset are covered by a full checkpoint
+    private boolean closed;
+
+    /**
+     * Writes a full checkpoint of the bank and starts writing incremental
+     * checkpoints in the background.
+     *
+     * @param bank                     the bank to checkpoint
+     * @param directory                directory for the checkpoint files
+     * @param journal                  the bank's journal, truncated when
+     *                                 checkpoints are compacted, or null
+     * @param interval                 time between two checkpoints
+     * @param checkpointsPerCompaction incremental checkpoints between two
+     *                                 compactions
+     */
+    public BankCheckpointer(BankApp bank, Path directory, ChangeDataCaptureLog journal, Duration interval,
+            int checkpointsPerCompaction) throws IOException {
+        if (checkpointsPerCompaction <= 0) {
+            throw new IllegalArgumentException("Checkpoints per compaction must be positive.");
+        }
+        this.bank = bank;
+        this.directory = directory;
+        this.journal = journal;
+        this.checkpointsPerCompaction = checkpointsPerCompaction;
+        Files.createDirectories(directory);
+
+        // Copy every account and start listening at the same sequence number
+        Map<String, AccountImage> accounts = new HashMap<>();
+        synchronized (bank) {
+            for (BankAccount account : bank.getBankAccountOwners()) {
+                accounts.put(account.getAccountOwner(), new AccountImage(account.getCurrency(),
+                        account.getCurrentBalance(), account.getCurrentOutstandingBalance(),
+                        account.encodedSchedule()));
+            }
+            for (String currency : bank.getCurrencies()) {
+                capital.put(currency, bank.getBankCapital(currency));
+            }
+            lastSequence = bank.getBalanceChangeSequence();
+            bank.addBalanceChangeListener(this);
+        }
+        synchronized (fileLock) {
+            writeCheckpoint(true, lastSequence, lastSequence, new HashMap<>(capital), accounts);
+            deleteCheckpointsBefore(lastSequence);
+            chainSequence = lastSequence;
+        }
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "bank-checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = Math.max(1, interval.toMillis());
+        scheduler.scheduleWithFixedDelay(this::checkpointQuietly, intervalMillis, intervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Remembers the account touched by a change. Called by the bank.
+     */
+    @Override
+    public synchronized void onBalanceChange(BalanceChangeEvent event) {
+        switch (event.getType()) {
+            case CAPITAL:
+                capital.merge(event.getCurrency(), event.getAmount(), Double::sum);
+                break;
+            case CLOSE:
+                dirty.put(event.getAccountOwner(), null);
+                break;
+            case INTEREST:
+            case FEE:
+                capital.merge(event.getCurrency(), event.getAmount(), Double::sum); // Income of the bank
+                dirty.put(event.getAccountOwner(), imageOf(event));
+                break;
+            default:
+                dirty.put(event.getAccountOwner(), imageOf(event));
+                break;
+        }
+        lastSequence = event.getSequence();
+    }
+
+    /**
+     * Writes an incremental checkpoint of the accounts changed since the last
+     * checkpoint, and compacts the chain when it is long enough. Nothing is
+     * written if there was no change.
+     *
+     * @return the sequence number of the last change covered by the checkpoints
+     */
+    public long checkpoint() throws IOException {
+        synchronized (fileLock) {
+            Map<String, AccountImage> changes;
+            Map<String, Double> capitalAfter;
+            long sequence;
+            synchronized (this) {
+                if (lastSequence == chainSequence) {
+                    return chainSequence;
+                }
+                changes = dirty;
+                dirty = new HashMap<>();
+                capitalAfter = new HashMap<>(capital);
+                sequence = lastSequence;
+            }
+            writeCheckpoint(false, chainSequence, sequence, capitalAfter, changes);
+            chainSequence = sequence;
+            chainLength++;
+            if (chainLength >= checkpointsPerCompaction) {
+                compact();
+            }
+            return sequence;
+        }
+    }
+
+    /**
+     * Merges the checkpoint chain into one full checkpoint, deletes the older
+     * checkpoint files and truncates the journal segments it covers.
+     *
+     * @return the sequence number of the new full checkpoint
+     */
+    public long compact() throws IOException {
+        synchronized (fileLock) {
+            Chain chain = loadChain(directory);
+            if (chain == null) {
+                throw new IOException("No full checkpoint found in " + directory);
+            }
+            if (chain.files > 1) {
+                writeCheckpoint(true, chain.sequence, chain.sequence, chain.capital, chain.accounts);
+            }
+            deleteCheckpointsBefore(chain.sequence);
+            chainLength = 0;
+            if (journal != null) {
+                truncateJournal(chain.sequence);
+            }
+            return chain.sequence;
+        }
+    }
+
+    /**
+     * Retrieves the sequence number of the last change covered by a checkpoint
+     * file.
+     */
+    public long getCheckpointSequence() {
+        synchronized (fileLock) {
+            return chainSequence;
+        }
+    }
+
+    /**
+     * Retrieves the number of incremental checkpoints written since the last
+     * full one.
+     */
+    public int getChainLength() {
+        synchronized (fileLock) {
+            return chainLength;
+        }
+    }
+
+    /**
+     * Stops listening to the bank, waits for a background checkpoint in
+     * progress and writes a last checkpoint.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (fileLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES); // No checkpoint is written after close
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        bank.removeBalanceChangeListener(this);
+        synchronized (fileLock) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Restores an empty bank from a checkpoint directory and the tail of its
+     * journal.
+     *
+     * @param bank                an empty bank to restore into
+     * @param checkpointDirectory directory holding the checkpoint files
+     * @param journalDirectory    directory holding the journal segments, or
+     *                            null to restore from the checkpoints only
+     * @return the sequence number of the last change restored
+     * @throws IOException if no full checkpoint can be read
+     */
+    public static long recover(BankApp bank, Path checkpointDirectory, Path journalDirectory) throws IOException {
+        Chain chain = loadChain(checkpointDirectory);
+        if (chain == null) {
+            throw new IOException("No full checkpoint found in " + checkpointDirectory);
+        }
+        long sequence = chain.sequence;
+        Map<String, Double> capital = chain.capital;
+        Map<String, AccountImage> accounts = chain.accounts;
+        if (journalDirectory != null && Files.isDirectory(journalDirectory)) {
+            try (ChangeDataCaptureReader reader = new ChangeDataCaptureReader(journalDirectory, 0)) {
+                List<Record> records;
+                while (!(records = reader.poll(1024)).isEmpty()) {
+                    for (Record record : records) {
+                        BalanceChangeEvent event = record.getEvent();
+                        if (event.getSequence() <= sequence) {
+                            continue; // Already in the checkpoints
+                        }
+                        capital.merge(event.getCurrency(), apply(accounts, event), Double::sum);
+                        sequence = event.getSequence();
+                    }
+                }
+            }
+        }
+        bank.restore(accounts, capital, sequence);
+        return sequence;
+    }
+
+    // Apply a change as an after-image and return the change in bank capital
+    private static double apply(Map<String, AccountImage> accounts, BalanceChangeEvent event) {
+        String owner = event.getAccountOwner();
+        switch (event.getType()) {
+            case CAPITAL:
+                return event.getAmount();
+            case CLOSE:
+                accounts.remove(owner);
+                return 0.0;
+            case INTEREST:
+            case FEE:
+                accounts.put(owner, imageOf(event));
+                return event.getAmount();
+            default:
+                accounts.put(owner, imageOf(event));
+                return 0.0;
+        }
+    }
+
+    private static AccountImage imageOf(BalanceChangeEvent event) {
+        return new AccountImage(event.getCurrency(), event.getBalanceAfter(), event.getOutstandingAfter(),
+                event.getEncodedSchedule());
+    }
+
+    // Background checkpoint, a failure is retried at the next interval
+    private void checkpointQuietly() {
+        try {
+            checkpoint();
+        } catch (IOException e) {
+            System.out.println("Bank checkpoint failed: " + e.getMessage());
+        }
+    }
+
+    // Delete the journal segments whose changes are all covered by a full checkpoint
+    private void truncateJournal(long sequence) throws IOException {
+        long offset;
+        try (ChangeDataCaptureReader reader = new ChangeDataCaptureReader(journal.getDirectory(),
+                journalScanOffset)) {
+            offset = -1;
+            List<Record> records;
+            while (offset < 0 && !(records = reader.poll(1024)).isEmpty()) {
+                for (Record record : records) {
+                    if (record.getEvent().getSequence() > sequence) {
+                        offset = record.getOffset();
+                        break;
+                    }
+                }
+            }
+            if (offset < 0) {
+                offset = reader.getNextOffset(); // Every record on disk is covered
+            }
+        }
+        journal.truncateBefore(offset);
+        journalScanOffset = offset;
+    }
+
+    // Write a checkpoint file: header, entries, then a CRC of everything before it
+    private void writeCheckpoint(boolean full, long baseSequence, long sequence, Map<String, Double> capitalAfter,
+            Map<String, AccountImage> accounts) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeBoolean(full);
+        out.writeLong(baseSequence);
+        out.writeLong(sequence);
+        out.writeInt(capitalAfter.size());
+        for (Map.Entry<String, Double> entry : capitalAfter.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeDouble(entry.getValue());
+        }
+        out.writeInt(accounts.size());
+        for (Map.Entry<String, AccountImage> entry : accounts.entrySet()) {
+            out.writeUTF(entry.getKey());
+            AccountImage image = entry.getValue();
+            out.writeBoolean(image == null); // Closed since the previous checkpoint
+            if (image != null) {
+                out.writeUTF(image.currency);
+                out.writeDouble(image.balance);
+                out.writeDouble(image.outstanding);
+                out.writeInt(image.schedule == null ? -1 : image.schedule.length); // -1 without a schedule
+                if (image.schedule != null) {
+                    out.write(image.schedule);
+                }
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+        out.flush();
+
+        Path file = directory.resolve(checkpointName(full, sequence));
+        Path temporary = directory.resolve(file.getFileName() + ".tmp");
+        Files.write(temporary, bytes.toByteArray(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void deleteCheckpointsBefore(long sequence) throws IOException {
+        for (Path file : listCheckpoints(directory)) {
+            String name = file.getFileName().toString();
+            long fileSequence = sequenceOf(name);
+            if (fileSequence < sequence || (fileSequence == sequence && name.endsWith(INCREMENTAL_SUFFIX))) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    static String checkpointName(boolean full, long sequence) {
+        return String.format("%020d", sequence) + (full ? FULL_SUFFIX : INCREMENTAL_SUFFIX);
+    }
+
+    private static long sequenceOf(String name) {
+        return Long.parseLong(name.substring(0, 20));
+    }
+
+    // Checkpoint files sorted by sequence number, full before incremental
+    private static List<Path> listCheckpoints(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return files;
+        }
+        try (Stream<Path> stream = Files.list(directory)) {
+            stream.filter(path -> {
+                String name = path.getFileName().toString();
+                return name.endsWith(FULL_SUFFIX) || name.endsWith(INCREMENTAL_SUFFIX);
+            }).sorted().forEach(files::add);
+        }
+        return files;
+    }
+
+    // Load the latest full checkpoint and the incremental checkpoints chained to it
+    private static Chain loadChain(Path directory) throws IOException {
+        List<Path> files = listCheckpoints(directory);
+        Chain chain = null;
+        for (int i = files.size() - 1; i >= 0 && chain == null; i--) {
+            if (files.get(i).getFileName().toString().endsWith(FULL_SUFFIX)) {
+                Checkpoint full = readCheckpoint(files.get(i));
+                if (full != null) {
+                    chain = new Chain(full);
+                    for (int j = i + 1; j < files.size(); j++) {
+                        Checkpoint next = readCheckpoint(files.get(j));
+                        if (next == null || next.full || next.baseSequence != chain.sequence) {
+                            break; // The chain ends at a damaged or unrelated file
+                        }
+                        chain.apply(next);
+                    }
+                }
+            }
+        }
+        return chain;
+    }
+
+    // Read a checkpoint file, or return null if it is damaged
+    private static Checkpoint readCheckpoint(Path file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        if (bytes.length < Long.BYTES) {
+            return null;
+        }
+        int length = bytes.length - Long.BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        if (ByteBuffer.wrap(bytes, length, Long.BYTES).getLong() != crc.getValue()) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, length));
+        try {
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            int version = in.readInt();
+            if (version != VERSION && version != VERSION_NO_SCHEDULE && version != VERSION_SINGLE_CURRENCY) {
+                return null;
+            }
+            Checkpoint checkpoint = new Checkpoint();
+            checkpoint.full = in.readBoolean();
+            checkpoint.baseSequence = in.readLong();
+            checkpoint.sequence = in.readLong();
+            if (version == VERSION_SINGLE_CURRENCY) {
+                checkpoint.capital.put(BankAccount.DEFAULT_CURRENCY, in.readDouble());
+            } else {
+                int currencies = in.readInt();
+                for (int i = 0; i < currencies; i++) {
+                    checkpoint.capital.put(in.readUTF(), in.readDouble());
+                }
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String owner = in.readUTF();
+                if (in.readBoolean()) {
+                    checkpoint.accounts.put(owner, null);
+                    continue;
+                }
+                String currency = version == VERSION_SINGLE_CURRENCY ? BankAccount.DEFAULT_CURRENCY : in.readUTF();
+                double balance = in.readDouble();
+                double outstanding = in.readDouble();
+                byte[] schedule = null;
+                if (version == VERSION) {
+                    int scheduleLength = in.readInt();
+                    if (scheduleLength >= 0) {
+                        schedule = new byte[scheduleLength];
+                        in.readFully(schedule);
+                    }
+                }
+                checkpoint.accounts.put(owner, new AccountImage(currency, balance, outstanding, schedule));
+            }
+            return checkpoint;
+        } catch (IOException e) {
+            return null; // Truncated despite a matching checksum
+        }
+    }
+
+    /**
+     * The contents of one checkpoint file.
+     */
+    private static final class Checkpoint {
+        boolean full;
+        long baseSequence; // Sequence number of the checkpoint this one follows
+        long sequence; // Sequence number of the last change included
+        final Map<String, Double> capital = new HashMap<>();
+        final Map<String, AccountImage> accounts = new HashMap<>();
+    }
+
+    /**
+     * The state of the bank after a full checkpoint and the incremental
+     * checkpoints that follow it.
+     */
+    private static final class Chain {
+        final Map<String, AccountImage> accounts;
+        long sequence;
+        Map<String, Double> capital;
+        int files = 1; // Number of checkpoint files merged
+
+        Chain(Checkpoint full) {
+            accounts = full.accounts;
+            sequence = full.sequence;
+            capital = full.capital;
+        }
+
+        void apply(Checkpoint incremental) {
+            for (Map.Entry<String, AccountImage> entry : incremental.accounts.entrySet()) {
+                if (entry.getValue() == null) {
+                    accounts.remove(entry.getKey());
+                } else {
+                    accounts.put(entry.getKey(), entry.getValue());
+                }
+            }
+            sequence = incremental.sequence;
+            capital = incremental.capital;
+            files++;
+        }
+    }
+}
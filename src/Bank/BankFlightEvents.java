@@ -0,0 +1,146 @@
+package Bank;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder events for {@link BankApp} activity.
+ *
+ * Every account opening and closing, deposit, withdrawal, grant, repayment and
+ * interest application is one event with the account owner, the amount and the
+ * duration of the operation, and for money movements the outcome and, when it
+ * was declined, the type of the error. Every stage of an
+ * {@link EndOfDayPipeline} run is one bulk job event.
+ *
+ * The events are disabled unless a recording enables them, and are only filled
+ * in once {@code shouldCommit()} says the recording wants them, so a disabled
+ * event costs next to nothing. Two settings profiles ship in the {@code jfr}
+ * folder next to this class, to be combined with the JDK's own:
+ *
+ * <pre>
+ * -XX:StartFlightRecording:settings=default,src/Bank/jfr/bank-low-overhead.jfc
+ * -XX:StartFlightRecording:settings=profile,src/Bank/jfr/bank-diagnostic.jfc
+ * </pre>
+ *
+ * The low overhead profile records account lifecycle, bulk jobs and money
+ * movements slower than 10 ms, without stack traces. The diagnostic profile
+ * records every event with its stack trace.
+ */
+public final class BankFlightEvents {
+
+    private BankFlightEvents() {
+    }
+
+    /**
+     * Fields shared by the events of one operation on one account.
+     */
+    @Category({ "Bank", "Operations" })
+    @Enabled(false)
+    @StackTrace(false)
+    abstract static class OperationEvent extends Event {
+
+        @Label("Account Owner")
+        String accountOwner;
+
+        @Label("Amount")
+        double amount;
+
+        @Label("Outcome")
+        @Description("ok, declined when the bank refused the operation, or failed")
+        String outcome = "ok";
+
+        @Label("Error")
+        @Description("Simple name of the error the operation ended with")
+        String error;
+
+        /**
+         * Records the error the operation ends with.
+         */
+        void fail(Exception failure) {
+            outcome = failure instanceof RuntimeException ? "failed" : "declined";
+            error = failure.getClass().getSimpleName();
+        }
+
+        /**
+         * Ends the event and commits it if the recording wants it.
+         */
+        void finish(String accountOwner, double amount) {
+            end();
+            if (shouldCommit()) {
+                this.accountOwner = accountOwner;
+                this.amount = amount;
+                commit();
+            }
+        }
+    }
+
+    @Name("Bank.AccountOpen")
+    @Label("Account Open")
+    @Description("An account opened with its starting deposit")
+    static final class AccountOpen extends OperationEvent {
+    }
+
+    @Name("Bank.AccountClose")
+    @Label("Account Close")
+    @Description("An account closed with its remaining balance paid out")
+    static final class AccountClose extends OperationEvent {
+    }
+
+    @Name("Bank.Deposit")
+    @Label("Deposit")
+    static final class Deposit extends OperationEvent {
+    }
+
+    @Name("Bank.Withdraw")
+    @Label("Withdraw")
+    static final class Withdraw extends OperationEvent {
+    }
+
+    @Name("Bank.Grant")
+    @Label("Grant Outstanding")
+    @Description("An outstanding (Loan) granted from the operating funds")
+    static final class Grant extends OperationEvent {
+    }
+
+    @Name("Bank.Repay")
+    @Label("Repay Outstanding")
+    @Description("A repayment of an outstanding (Loan)")
+    static final class Repay extends OperationEvent {
+    }
+
+    @Name("Bank.Interest")
+    @Label("Interest")
+    @Description("Interest applied to an outstanding (Loan); the amount is the interest charged")
+    static final class Interest extends OperationEvent {
+
+        @Label("Interest Rate")
+        @Description("Interest rate applied, as a percentage")
+        double interestRate;
+    }
+
+    @Name("Bank.BulkJob")
+    @Label("Bulk Job")
+    @Description("One stage of a batch run over every account")
+    @Category({ "Bank", "Batch" })
+    @Enabled(false)
+    @StackTrace(false)
+    static final class BulkJob extends Event {
+
+        @Label("Job")
+        String job;
+
+        @Label("Stage")
+        String stage;
+
+        @Label("Processed")
+        long processed;
+
+        @Label("Skipped")
+        long skipped;
+    }
+}
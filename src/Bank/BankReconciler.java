@@ -0,0 +1,339 @@
+package Bank;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Checks that the bank operating funds still equal the account balances minus
+ * the outstanding balances plus the bank's own capital.
+ *
+ * A full run copies the accounts into primitive arrays while holding the bank
+ * monitor and then sums and compares them in parallel on a fork-join pool.
+ * Besides the total drift it pinpoints the accounts whose balances changed
+ * without going through the bank, by comparing each account with a shadow
+ * ledger built from the bank's balance change events.
+ *
+ * Between full runs, {@link #verifyIncremental()} checks the same equation in
+ * constant time against running totals kept up to date by the events.
+ *
+ * The equation holds separately for every currency the bank holds: the funds
+ * of a currency against the accounts and the capital in that currency. The
+ * totals of a {@link Result} are those of the bank's base currency.
+ */
+public class BankReconciler implements BalanceChangeListener, AutoCloseable {
+
+    private final BankApp bank; // The bank being checked
+    private final ForkJoinPool pool; // Runs the parallel part of a full run
+    private final double tolerance; // Largest difference treated as rounding
+
+    // Shadow ledger: balance and outstanding per owner as last reported by an
+    // event, and the running totals of both per currency. Guarded by this.
+    private final Map<String, double[]> shadow = new HashMap<>();
+    private final Map<String, double[]> runningTotals = new HashMap<>();
+
+    /**
+     * Creates a reconciler and starts following the bank's changes.
+     * The current state of the accounts is taken as the starting point of the
+     * shadow ledger.
+     *
+     * @param pool      runs the parallel part of a full run
+     * @param tolerance largest difference treated as rounding
+     */
+    public BankReconciler(BankApp bank, ForkJoinPool pool, double tolerance) {
+        this.bank = bank;
+        this.pool = pool;
+        this.tolerance = tolerance;
+        synchronized (bank) {
+            synchronized (this) {
+                for (BankAccount account : bank.getBankAccountOwners()) {
+                    record(account.getAccountOwner(), account.getCurrency(), account.getCurrentBalance(),
+                            account.getCurrentOutstandingBalance());
+                }
+            }
+            bank.addBalanceChangeListener(this);
+        }
+    }
+
+    /**
+     * Updates the shadow ledger and the running totals from a change.
+     */
+    @Override
+    public synchronized void onBalanceChange(BalanceChangeEvent event) {
+        if (event.getType() == BalanceChangeEvent.Type.CAPITAL) {
+            return; // Capital is read from the bank directly
+        }
+        if (event.getType() == BalanceChangeEvent.Type.CLOSE) {
+            double[] last = shadow.remove(event.getAccountOwner());
+            if (last != null) {
+                double[] totals = runningTotals.get(event.getCurrency());
+                totals[0] -= last[0];
+                totals[1] -= last[1];
+            }
+            return;
+        }
+        record(event.getAccountOwner(), event.getCurrency(), event.getBalanceAfter(), event.getOutstandingAfter());
+    }
+
+    /**
+     * Checks the equation against the running totals without looking at the
+     * accounts. This only notices changes to the operating funds or capital made
+     * outside the account operations; use {@link #reconcile()} to find accounts
+     * changed behind the bank's back.
+     *
+     * @return true if the operating funds of every currency match within the
+     *         tolerance
+     */
+    public boolean verifyIncremental() {
+        synchronized (bank) {
+            synchronized (this) {
+                Set<String> currencies = new TreeSet<>(bank.getCurrencies());
+                currencies.addAll(runningTotals.keySet());
+                for (String currency : currencies) {
+                    double[] totals = runningTotals.getOrDefault(currency, new double[2]);
+                    double expected = totals[0] - totals[1] + bank.getBankCapital(currency);
+                    if (!(Math.abs(bank.getBankOperatingFunds(currency) - expected) <= tolerance)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Runs a full reconciliation over a snapshot of every account.
+     */
+    public Result reconcile() {
+        long start = System.nanoTime();
+        String[] owners;
+        String[] currencies;
+        double[] balances;
+        double[] outstanding;
+        double[] shadowBalances;
+        double[] shadowOutstanding;
+        Map<String, Double> funds = new TreeMap<>();
+        Map<String, Double> capital = new TreeMap<>();
+        synchronized (bank) {
+            List<BankAccount> accounts = bank.getBankAccountOwners();
+            int count = accounts.size();
+            owners = new String[count];
+            currencies = new String[count];
+            balances = new double[count];
+            outstanding = new double[count];
+            shadowBalances = new double[count];
+            shadowOutstanding = new double[count];
+            synchronized (this) {
+                for (int i = 0; i < count; i++) {
+                    BankAccount account = accounts.get(i);
+                    owners[i] = account.getAccountOwner();
+                    currencies[i] = account.getCurrency();
+                    balances[i] = account.getCurrentBalance();
+                    outstanding[i] = account.getCurrentOutstandingBalance();
+                    double[] last = shadow.get(owners[i]);
+                    shadowBalances[i] = last == null ? Double.NaN : last[0];
+                    shadowOutstanding[i] = last == null ? Double.NaN : last[1];
+                }
+            }
+            for (String currency : bank.getCurrencies()) {
+                funds.put(currency, bank.getBankOperatingFunds(currency));
+                capital.put(currency, bank.getBankCapital(currency));
+            }
+        }
+        String base = bank.getBaseCurrency();
+
+        // The snapshot is private to this run, so the rest runs without any lock
+        return pool.submit(() -> {
+            Map<String, Double> drift = new TreeMap<>();
+            double totalBalances = 0.0;
+            double totalOutstanding = 0.0;
+            for (Map.Entry<String, Double> fund : funds.entrySet()) {
+                String currency = fund.getKey();
+                double currencyBalances;
+                double currencyOutstanding;
+                if (funds.size() == 1) {
+                    currencyBalances = Arrays.stream(balances).parallel().sum();
+                    currencyOutstanding = Arrays.stream(outstanding).parallel().sum();
+                } else {
+                    currencyBalances = IntStream.range(0, owners.length).parallel()
+                            .filter(i -> currencies[i].equals(currency)).mapToDouble(i -> balances[i]).sum();
+                    currencyOutstanding = IntStream.range(0, owners.length).parallel()
+                            .filter(i -> currencies[i].equals(currency)).mapToDouble(i -> outstanding[i]).sum();
+                }
+                drift.put(currency, fund.getValue() - (currencyBalances - currencyOutstanding
+                        + capital.get(currency)));
+                if (currency.equals(base)) {
+                    totalBalances = currencyBalances;
+                    totalOutstanding = currencyOutstanding;
+                }
+            }
+            List<AccountDrift> drifted = IntStream.range(0, owners.length).parallel()
+                    .filter(i -> !(Math.abs(balances[i] - shadowBalances[i]) <= tolerance
+                            && Math.abs(outstanding[i] - shadowOutstanding[i]) <= tolerance))
+                    .mapToObj(i -> new AccountDrift(owners[i], shadowBalances[i], balances[i],
+                            shadowOutstanding[i], outstanding[i]))
+                    .toList();
+            double expectedFund = totalBalances - totalOutstanding + capital.get(base);
+            return new Result(owners.length, funds.get(base), expectedFund, totalBalances, totalOutstanding,
+                    new ArrayList<>(drifted), drift, System.nanoTime() - start, tolerance);
+        }).join();
+    }
+
+    /**
+     * Stops following the bank's changes.
+     */
+    @Override
+    public void close() {
+        bank.removeBalanceChangeListener(this);
+    }
+
+    // Replace an owner's shadow entry and move the running totals by the
+    // difference
+    private void record(String owner, String currency, double balance, double outstanding) {
+        double[] last = shadow.computeIfAbsent(owner, k -> new double[2]);
+        double[] totals = runningTotals.computeIfAbsent(currency, k -> new double[2]);
+        totals[0] += balance - last[0];
+        totals[1] += outstanding - last[1];
+        last[0] = balance;
+        last[1] = outstanding;
+    }
+
+    /**
+     * An account whose balances differ from what the bank's changes say they
+     * should be.
+     */
+    public static final class AccountDrift {
+        private final String accountOwner;
+        private final double expectedBalance; // NaN if the bank never reported the account
+        private final double actualBalance;
+        private final double expectedOutstanding; // NaN if the bank never reported the account
+        private final double actualOutstanding;
+
+        AccountDrift(String accountOwner, double expectedBalance, double actualBalance, double expectedOutstanding,
+                double actualOutstanding) {
+            this.accountOwner = accountOwner;
+            this.expectedBalance = expectedBalance;
+            this.actualBalance = actualBalance;
+            this.expectedOutstanding = expectedOutstanding;
+            this.actualOutstanding = actualOutstanding;
+        }
+
+        public String getAccountOwner() {
+            return accountOwner;
+        }
+
+        public double getExpectedBalance() {
+            return expectedBalance;
+        }
+
+        public double getActualBalance() {
+            return actualBalance;
+        }
+
+        public double getExpectedOutstanding() {
+            return expectedOutstanding;
+        }
+
+        public double getActualOutstanding() {
+            return actualOutstanding;
+        }
+
+        @Override
+        public String toString() {
+            return accountOwner + ": balance " + actualBalance + " (expected " + expectedBalance
+                    + "), outstanding " + actualOutstanding + " (expected " + expectedOutstanding + ")";
+        }
+    }
+
+    /**
+     * Outcome of a full reconciliation.
+     */
+    public static final class Result {
+        private final int accountsChecked;
+        private final double operatingFunds; // Operating funds reported by the bank
+        private final double expectedOperatingFunds; // Balances minus outstanding plus capital
+        private final double totalBalances;
+        private final double totalOutstanding;
+        private final List<AccountDrift> driftedAccounts;
+        private final Map<String, Double> driftByCurrency; // Operating funds minus expected, per currency
+        private final long elapsedNanos;
+        private final double tolerance;
+
+        Result(int accountsChecked, double operatingFunds, double expectedOperatingFunds, double totalBalances,
+                double totalOutstanding, List<AccountDrift> driftedAccounts, Map<String, Double> driftByCurrency,
+                long elapsedNanos, double tolerance) {
+            this.accountsChecked = accountsChecked;
+            this.operatingFunds = operatingFunds;
+            this.expectedOperatingFunds = expectedOperatingFunds;
+            this.totalBalances = totalBalances;
+            this.totalOutstanding = totalOutstanding;
+            this.driftedAccounts = driftedAccounts;
+            this.driftByCurrency = driftByCurrency;
+            this.elapsedNanos = elapsedNanos;
+            this.tolerance = tolerance;
+        }
+
+        /**
+         * Returns true if the operating funds of every currency match and no
+         * account drifted.
+         */
+        public boolean isConsistent() {
+            for (double drift : driftByCurrency.values()) {
+                if (!(Math.abs(drift) <= tolerance)) {
+                    return false;
+                }
+            }
+            return driftedAccounts.isEmpty();
+        }
+
+        /**
+         * Returns the operating funds minus what they should be, in the base
+         * currency.
+         */
+        public double getDrift() {
+            return operatingFunds - expectedOperatingFunds;
+        }
+
+        /**
+         * Returns the operating funds of a currency minus what they should be.
+         */
+        public double getDrift(String currency) {
+            return driftByCurrency.getOrDefault(currency, 0.0);
+        }
+
+        public int getAccountsChecked() {
+            return accountsChecked;
+        }
+
+        public double getOperatingFunds() {
+            return operatingFunds;
+        }
+
+        public double getExpectedOperatingFunds() {
+            return expectedOperatingFunds;
+        }
+
+        public double getTotalBalances() {
+            return totalBalances;
+        }
+
+        public double getTotalOutstanding() {
+            return totalOutstanding;
+        }
+
+        public List<AccountDrift> getDriftedAccounts() {
+            return driftedAccounts;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package Bank;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sampled span tracing of {@link BankApp} operations.
+ *
+ * Attach a tracer with {@link BankApp#setTracer(BankTracer)}. Each deposit,
+ * withdrawal, transfer, grant and repayment then decides up front (head sampling)
+ * whether it is traced, and a traced operation records when each of its
+ * phases ended: validation, account lookup, the mutation of the account, the
+ * operating fund update, and publishing to the listeners, which includes
+ * journaling and replication. Without a tracer, or when the operation is not
+ * sampled, the operation allocates nothing and pays a null check at its start,
+ * at each phase mark and at its end, about seven predictable branches.
+ *
+ * Trace records are allocated once, up front. A sampled operation that finds
+ * no free record is not traced and counted as dropped; {@link #flush()}
+ * writes the finished traces to the trace file and frees their records.
+ *
+ * The file uses the Trace Event Format's JSON array form, which may be
+ * appended to and does not need a closing bracket, so it can be opened at
+ * any time in chrome://tracing or Perfetto. Each operation is one complete
+ * event with its owner and outcome, and each phase a complete event nested
+ * inside it on the same thread.
+ */
+public final class BankTracer implements AutoCloseable {
+
+    /**
+     * Phases of a traced operation.
+     */
+    public enum Phase {
+        VALIDATE, // Amount, limit and operating fund checks
+        LOOKUP, // Finding the account
+        MUTATE, // Changing the account and storing it
+        FUND, // Updating the operating funds
+        PUBLISH // Notifying the listeners: journal, replication, checkpoints
+    }
+
+    private static final int MAX_PHASES = 8; // Phase marks one record holds
+
+    private final Path file; // Trace output
+    private final ArrayBlockingQueue<Trace> free; // Records ready for a new trace
+    private final ArrayBlockingQueue<Trace> finished; // Records waiting to be written
+    private final long epochNanos = System.nanoTime(); // Time zero of the trace file
+    private final long pid = ProcessHandle.current().pid();
+    private final LongAdder sampled = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private volatile double sampleRate; // Share of operations traced, 0 to 1
+    private BufferedWriter writer; // Open trace file, created on the first flush
+    private ScheduledExecutorService flusher; // Writes finished traces in the background, or null
+
+    /**
+     * Creates a tracer.
+     *
+     * @param file       file the traces are appended to
+     * @param sampleRate share of operations traced, from 0 to 1
+     * @param capacity   trace records allocated up front
+     */
+    public BankTracer(Path file, double sampleRate, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Trace capacity must be positive.");
+        }
+        this.file = file;
+        setSampleRate(sampleRate);
+        free = new ArrayBlockingQueue<>(capacity);
+        finished = new ArrayBlockingQueue<>(capacity);
+        for (int i = 0; i < capacity; i++) {
+            free.add(new Trace(this));
+        }
+    }
+
+    /**
+     * Sets the share of operations traced, from 0 (none) to 1 (all).
+     */
+    public void setSampleRate(double sampleRate) {
+        if (!(sampleRate >= 0.0 && sampleRate <= 1.0)) {
+            throw new IllegalArgumentException("Sample rate must be between 0 and 1.");
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Retrieves the number of operations traced.
+     */
+    public long getSampled() {
+        return sampled.sum();
+    }
+
+    /**
+     * Retrieves the number of sampled operations not traced because every
+     * record was in use.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Starts a trace if the operation is sampled and a record is free.
+     *
+     * @return the trace, or null if the operation is not traced
+     */
+    Trace begin(String operation, String accountOwner) {
+        double rate = sampleRate;
+        if (rate < 1.0 && ThreadLocalRandom.current().nextDouble() >= rate) {
+            return null;
+        }
+        Trace trace = free.poll();
+        if (trace == null) {
+            dropped.increment();
+            return null;
+        }
+        sampled.increment();
+        trace.start(operation, accountOwner);
+        return trace;
+    }
+
+    /**
+     * Writes every finished trace to the file and frees its record.
+     *
+     * @return the number of traces written
+     */
+    public synchronized int flush() throws IOException {
+        List<Trace> batch = new ArrayList<>();
+        finished.drainTo(batch);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        if (writer == null) {
+            boolean fresh = !Files.exists(file) || Files.size(file) == 0;
+            writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+            if (fresh) {
+                writer.write("[\n");
+            }
+        }
+        StringBuilder text = new StringBuilder(256);
+        for (Trace trace : batch) {
+            text.setLength(0);
+            trace.appendEvents(text);
+            writer.write(text.toString());
+            free.add(trace);
+        }
+        writer.flush();
+        return batch.size();
+    }
+
+    /**
+     * Writes the finished traces in the background at a fixed interval.
+     */
+    public synchronized void startAutoFlush(Duration interval) {
+        if (flusher != null) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "bank-tracer-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long millis = Math.max(1, interval.toMillis());
+        flusher.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (IOException e) {
+                System.out.println("Trace flush failed: " + e.getMessage());
+            }
+        }, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background flush, writes the finished traces and closes the
+     * file.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdownNow();
+            flusher = null;
+        }
+        flush();
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    private void finish(Trace trace) {
+        finished.add(trace); // Never full: there are only as many records as it holds
+    }
+
+    // Nanoseconds written as microseconds, the unit of the trace file
+    private static void appendMicros(StringBuilder text, long nanos) {
+        text.append(nanos / 1000).append('.');
+        long fraction = nanos % 1000;
+        if (fraction < 100) {
+            text.append('0');
+        }
+        if (fraction < 10) {
+            text.append('0');
+        }
+        text.append(fraction);
+    }
+
+    private static void appendString(StringBuilder text, String value) {
+        text.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                text.append('\\').append(c);
+            } else if (c < 0x20) {
+                text.append(String.format("\\u%04x", (int) c));
+            } else {
+                text.append(c);
+            }
+        }
+        text.append('"');
+    }
+
+    /**
+     * One traced operation: its start and the end of each phase it reached.
+     * Records are reused, so nothing is allocated while tracing.
+     */
+    static final class Trace {
+        private final BankTracer tracer;
+        private final Phase[] phases = new Phase[MAX_PHASES];
+        private final long[] phaseEnds = new long[MAX_PHASES];
+        private int count; // Phases marked
+        private String operation;
+        private String accountOwner;
+        private long threadId;
+        private long startNanos;
+        private long endNanos;
+
+        Trace(BankTracer tracer) {
+            this.tracer = tracer;
+        }
+
+        void start(String operation, String accountOwner) {
+            this.operation = operation;
+            this.accountOwner = accountOwner;
+            this.threadId = Thread.currentThread().threadId();
+            this.count = 0;
+            this.startNanos = System.nanoTime();
+        }
+
+        /**
+         * Records that a phase ended now. The phase began where the previous
+         * one ended.
+         */
+        void mark(Phase phase) {
+            if (count < MAX_PHASES) {
+                phases[count] = phase;
+                phaseEnds[count++] = System.nanoTime();
+            }
+        }
+
+        /**
+         * Ends the trace. An operation that did not reach its publish phase
+         * failed.
+         */
+        void end() {
+            endNanos = System.nanoTime();
+            tracer.finish(this);
+        }
+
+        void appendEvents(StringBuilder text) {
+            boolean completed = count > 0 && phases[count - 1] == Phase.PUBLISH;
+            appendEvent(text, operation, startNanos, endNanos);
+            text.append(",\"args\":{\"owner\":");
+            appendString(text, accountOwner);
+            text.append(",\"outcome\":\"").append(completed ? "ok" : "error").append("\"}},\n");
+            long from = startNanos;
+            for (int i = 0; i < count; i++) {
+                appendEvent(text, phases[i].name().toLowerCase(), from, phaseEnds[i]);
+                text.append("},\n");
+                from = phaseEnds[i];
+            }
+        }
+
+        private void appendEvent(StringBuilder text, String name, long from, long to) {
+            text.append("{\"name\":\"").append(name).append("\",\"cat\":\"bank\",\"ph\":\"X\",\"ts\":");
+            appendMicros(text, from - tracer.epochNanos); // Time since the tracer was created
+            text.append(",\"dur\":");
+            appendMicros(text, to - from);
+            text.append(",\"pid\":").append(tracer.pid).append(",\"tid\":").append(threadId);
+        }
+    }
+}
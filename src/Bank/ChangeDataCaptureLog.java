@@ -0,0 +1,368 @@
+package Bank;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Change data capture (CDC) log of every committed account mutation.
+ *
+ * Register the log as a {@link BalanceChangeListener} on a {@link BankApp} and
+ * every open, close, deposit, withdraw, grant, repay and interest change is
+ * appended to rolling segment files in a directory, encoded with
+ * {@link ChangeEventCodec}. Each record gets a log offset that never changes,
+ * so another process can tail the log with a {@link ChangeDataCaptureReader}
+ * and resume from the last offset it saw.
+ *
+ * Records are collected into batches and written with one write and one force
+ * per batch. A batch is written when it reaches the batch size, and a
+ * background task writes partial batches every flush interval. Segments roll
+ * when they reach the maximum size or age, and are named after the offset of
+ * their first record.
+ *
+ * A listener must not throw into the bank, so a write that fails while
+ * capturing a change is recorded rather than thrown: it is returned by
+ * {@link #getFailure()}, and every later append fails, so the log never
+ * holds a gap after the failed write.
+ */
+public class ChangeDataCaptureLog implements BalanceChangeListener, AutoCloseable {
+
+    /**
+     * A record read back from the log: the event and its log offset.
+     */
+    public static final class Record {
+        private final long offset; // Position of the record in the log
+        private final BalanceChangeEvent event; // The captured change
+
+        public Record(long offset, BalanceChangeEvent event) {
+            this.offset = offset;
+            this.event = event;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public BalanceChangeEvent getEvent() {
+            return event;
+        }
+
+        /**
+         * Returns the number of bytes the record takes in a segment.
+         */
+        public int getEncodedSize() {
+            return ChangeEventCodec.encodedSize(event);
+        }
+    }
+
+    static final String SEGMENT_SUFFIX = ".cdc"; // File extension of the segments
+
+    private final Path directory; // Directory holding the segments
+    private final long maxSegmentBytes; // Segment size that triggers a roll
+    private final long maxSegmentAgeMillis; // Segment age that triggers a roll
+    private final int batchSize; // Number of records per write
+    private final ScheduledExecutorService flusher; // Writes partial batches and rolls old segments
+
+    private FileChannel segment; // The segment being appended to
+    private long segmentBaseOffset; // Offset of the first record in the segment
+    private long segmentBytes; // Bytes already written to the segment
+    private long segmentOpenedAt; // Time the segment was created
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024); // Encoded records not written yet
+    private int pendingRecords; // Number of records in the pending buffer
+    private long nextOffset; // Offset given to the next record
+    private boolean closed;
+    private IOException failure; // First failed write, after which appends fail
+
+    /**
+     * Opens the log in a directory, continuing from the last complete record
+     * if the directory already holds segments.
+     *
+     * @param directory       directory for the segment files
+     * @param maxSegmentBytes segment size that triggers a roll
+     * @param maxSegmentAge   segment age that triggers a roll
+     * @param batchSize       number of records written together
+     * @param flushInterval   longest time a record waits in a partial batch
+     */
+    public ChangeDataCaptureLog(Path directory, long maxSegmentBytes, Duration maxSegmentAge, int batchSize,
+            Duration flushInterval) throws IOException {
+        if (maxSegmentBytes <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("Segment size and batch size must be positive.");
+        }
+        this.directory = directory;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.maxSegmentAgeMillis = maxSegmentAge.toMillis();
+        this.batchSize = batchSize;
+        Files.createDirectories(directory);
+        recover();
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cdc-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = Math.max(1, flushInterval.toMillis());
+        flusher.scheduleWithFixedDelay(this::flushQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Appends a change to the log. A failed write is recorded, see
+     * {@link #getFailure()}.
+     */
+    @Override
+    public void onBalanceChange(BalanceChangeEvent event) {
+        try {
+            append(event);
+        } catch (IOException e) {
+            System.out.println("Change data capture append failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Appends a change to the log and returns the offset it was given.
+     * The record is durable once its batch has been written.
+     */
+    public synchronized long append(BalanceChangeEvent event) throws IOException {
+        if (closed) {
+            throw new IOException("Change data capture log is closed.");
+        }
+        if (failure != null) {
+            throw new IOException("Change data capture log stopped after a failed write.", failure);
+        }
+        int size = ChangeEventCodec.encodedSize(event);
+        boolean segmentFull = segmentBytes + pending.position() + size > maxSegmentBytes;
+        if ((segmentFull || isSegmentTooOld()) && segmentBytes + pending.position() > 0) {
+            flush();
+            roll();
+        }
+        if (pending.remaining() < size) {
+            flush();
+            if (pending.capacity() < size) {
+                pending = ByteBuffer.allocate(size);
+            }
+        }
+        long offset = nextOffset++;
+        ChangeEventCodec.encode(offset, event, pending);
+        if (++pendingRecords >= batchSize) {
+            flush();
+        }
+        return offset;
+    }
+
+    /**
+     * Writes the pending batch to the current segment and forces it to disk.
+     */
+    public synchronized void flush() throws IOException {
+        if (pending.position() == 0) {
+            return;
+        }
+        if (failure != null) {
+            throw new IOException("Change data capture log stopped after a failed write.", failure);
+        }
+        pending.flip();
+        try {
+            while (pending.hasRemaining()) {
+                segmentBytes += segment.write(pending);
+            }
+            segment.force(false);
+        } catch (IOException e) {
+            failure = e;
+            throw e;
+        }
+        pending.clear();
+        pendingRecords = 0;
+    }
+
+    /**
+     * Retrieves the failed write that stopped the log, or null if every write
+     * succeeded.
+     */
+    public synchronized IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Retrieves the directory holding the segments.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Retrieves the offset the next record will be given.
+     */
+    public synchronized long getNextOffset() {
+        return nextOffset;
+    }
+
+    /**
+     * Retrieves the base offsets of the segments on disk, oldest first.
+     */
+    public List<Long> getSegmentBaseOffsets() throws IOException {
+        return listSegments(directory);
+    }
+
+    /**
+     * Deletes the segments whose records all have offsets below the given
+     * offset. The segment being appended to is never deleted.
+     *
+     * @return the number of segments deleted
+     */
+    public synchronized int truncateBefore(long offset) throws IOException {
+        List<Long> bases = listSegments(directory);
+        int deleted = 0;
+        for (int i = 0; i + 1 < bases.size(); i++) {
+            if (bases.get(i + 1) > offset || bases.get(i) == segmentBaseOffset) {
+                break;
+            }
+            Files.deleteIfExists(segmentPath(directory, bases.get(i)));
+            deleted++;
+        }
+        return deleted;
+    }
+
+    /**
+     * Writes the pending batch and closes the current segment.
+     */
+    @Override
+    public void close() throws IOException {
+        flusher.shutdown();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            try {
+                if (failure == null) {
+                    flush();
+                }
+            } finally {
+                segment.close();
+                closed = true;
+            }
+        }
+    }
+
+    // Background flush, also rolls a segment that has been open too long
+    private synchronized void flushQuietly() {
+        if (closed || failure != null) {
+            return;
+        }
+        try {
+            flush();
+            if (isSegmentTooOld() && segmentBytes > 0) {
+                roll();
+            }
+        } catch (IOException e) {
+            System.out.println("Change data capture flush failed: " + e.getMessage());
+        }
+    }
+
+    private boolean isSegmentTooOld() {
+        return System.currentTimeMillis() - segmentOpenedAt >= maxSegmentAgeMillis;
+    }
+
+    // Close the current segment and start a new one at the next offset
+    private void roll() throws IOException {
+        try {
+            segment.close();
+            openSegment(nextOffset);
+        } catch (IOException e) {
+            failure = e;
+            throw e;
+        }
+    }
+
+    private void openSegment(long baseOffset) throws IOException {
+        segment = FileChannel.open(segmentPath(directory, baseOffset), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.READ);
+        segmentBaseOffset = baseOffset;
+        segmentBytes = segment.size();
+        segment.position(segmentBytes);
+        segmentOpenedAt = System.currentTimeMillis();
+    }
+
+    // Find the end of the last segment and cut off a partly written record
+    private void recover() throws IOException {
+        List<Long> bases = listSegments(directory);
+        if (bases.isEmpty()) {
+            nextOffset = 0;
+            openSegment(0);
+            return;
+        }
+        long base = bases.get(bases.size() - 1);
+        nextOffset = base;
+        try (FileChannel channel = FileChannel.open(segmentPath(directory, base), StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            long position = 0;
+            Record record;
+            while ((record = readRecord(channel, position)) != null) {
+                position += record.getEncodedSize();
+                nextOffset = record.getOffset() + 1;
+            }
+            if (position < channel.size()) {
+                channel.truncate(position); // Drop the torn tail of an interrupted batch
+            }
+        }
+        openSegment(base);
+    }
+
+    /**
+     * Reads the complete record at a position in a segment.
+     *
+     * @return the record, or null at the end of the segment or at a record that
+     *         is not completely written yet
+     */
+    static Record readRecord(FileChannel channel, long position) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(ChangeEventCodec.HEADER_BYTES);
+        if (readFully(channel, header, position) < ChangeEventCodec.HEADER_BYTES) {
+            return null;
+        }
+        header.flip();
+        int length = ChangeEventCodec.bodyLength(header);
+        if (length < 0) {
+            return null;
+        }
+        ByteBuffer record = ByteBuffer.allocate(ChangeEventCodec.HEADER_BYTES + length);
+        if (readFully(channel, record, position) < record.capacity()) {
+            return null;
+        }
+        record.flip();
+        return ChangeEventCodec.decode(record);
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    static Path segmentPath(Path directory, long baseOffset) {
+        return directory.resolve(String.format("%020d", baseOffset) + SEGMENT_SUFFIX);
+    }
+
+    static List<Long> listSegments(Path directory) throws IOException {
+        List<Long> bases = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(p -> p.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .forEach(name -> bases.add(Long.parseLong(name.substring(0,
+                            name.length() - SEGMENT_SUFFIX.length()))));
+        }
+        bases.sort(null);
+        return bases;
+    }
+}
@@ -0,0 +1,117 @@
+package Bank;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import Bank.ChangeDataCaptureLog.Record;
+
+/**
+ * Tails a {@link ChangeDataCaptureLog} directory by offset.
+ *
+ * The reader can run in another process than the writer. It only returns
+ * records that are completely written, and moves on to the next segment when
+ * the writer rolls. To resume after a restart, store {@link #getNextOffset()}
+ * and pass it to the constructor.
+ */
+public class ChangeDataCaptureReader implements AutoCloseable {
+
+    private final Path directory; // Directory holding the segments
+    private FileChannel segment; // Segment being read, or null before the first segment exists
+    private long segmentBaseOffset; // Offset of the first record in the segment
+    private long position; // File position of the next record in the segment
+    private long nextOffset; // Offset of the next record to return
+
+    /**
+     * Opens a reader that starts at the given offset.
+     * If the segments holding that offset have already been truncated, the
+     * reader starts at the oldest record still on disk.
+     */
+    public ChangeDataCaptureReader(Path directory, long startOffset) throws IOException {
+        this.directory = directory;
+        this.nextOffset = startOffset;
+        List<Long> bases = ChangeDataCaptureLog.listSegments(directory);
+        long base = -1;
+        for (long candidate : bases) {
+            if (candidate <= startOffset || base < 0) {
+                base = candidate;
+            }
+        }
+        if (base >= 0) {
+            openSegment(base);
+            nextOffset = Math.max(startOffset, base);
+        }
+    }
+
+    /**
+     * Returns up to maxRecords records from the current offset on.
+     * An empty list means the reader has caught up with the writer.
+     */
+    public List<Record> poll(int maxRecords) throws IOException {
+        List<Record> records = new ArrayList<>();
+        if (segment == null) {
+            long first = nextSegmentBase();
+            if (first < 0) {
+                return records;
+            }
+            openSegment(first);
+        }
+        while (records.size() < maxRecords) {
+            Record record = ChangeDataCaptureLog.readRecord(segment, position);
+            if (record == null) {
+                long next = nextSegmentBase();
+                if (next < 0) {
+                    break; // Caught up with the writer
+                }
+                // The writer has rolled, so this segment is complete. Read once more in
+                // case its last batch landed after the first attempt.
+                record = ChangeDataCaptureLog.readRecord(segment, position);
+                if (record == null) {
+                    segment.close();
+                    openSegment(next);
+                    continue;
+                }
+            }
+            position += record.getEncodedSize();
+            if (record.getOffset() >= nextOffset) { // Skip records before the start offset
+                records.add(record);
+                nextOffset = record.getOffset() + 1;
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Retrieves the offset of the next record this reader will return.
+     */
+    public long getNextOffset() {
+        return nextOffset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (segment != null) {
+            segment.close();
+        }
+    }
+
+    // Base offset of the segment after the current one, or -1 if the writer has
+    // not rolled yet
+    private long nextSegmentBase() throws IOException {
+        for (long base : ChangeDataCaptureLog.listSegments(directory)) {
+            if (segment == null || base > segmentBaseOffset) {
+                return base;
+            }
+        }
+        return -1;
+    }
+
+    private void openSegment(long baseOffset) throws IOException {
+        segment = FileChannel.open(ChangeDataCaptureLog.segmentPath(directory, baseOffset), StandardOpenOption.READ);
+        segmentBaseOffset = baseOffset;
+        position = 0;
+    }
+}
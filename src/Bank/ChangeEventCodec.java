@@ -0,0 +1,171 @@
+package Bank;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Binary encoding of {@link BalanceChangeEvent}s used by the change data
+ * capture log.
+ *
+ * Every record is length-prefixed and checksummed:
+ *
+ * <pre>
+ * int    length of everything after the checksum
+ * int    CRC32 of everything after the checksum
+ * long   log offset
+ * long   event sequence
+ * long   timestamp
+ * byte   event type
+ * double amount
+ * double balance after
+ * double outstanding after
+ * short  owner length, followed by the owner in UTF-8, or 0xFFFF without
+ *        an owner (a change of the bank capital)
+ * byte   currency length, followed by the currency code
+ * int    schedule length, followed by the encoded payment schedule, only for
+ *        an account with a schedule
+ * </pre>
+ *
+ * Records written before the currency was added end after the owner and are
+ * read in the default currency.
+ */
+public final class ChangeEventCodec {
+
+    public static final int HEADER_BYTES = 8; // Length and checksum
+    private static final int FIXED_BODY_BYTES = 8 + 8 + 8 + 1 + 8 + 8 + 8 + 2; // Body without the owner name
+    private static final int NO_OWNER = 0xFFFF; // Owner length of an event without an owner
+    private static final int MAX_SCHEDULE_BYTES = 1 << 20; // Largest encoded payment schedule
+    private static final BalanceChangeEvent.Type[] TYPES = BalanceChangeEvent.Type.values();
+
+    private ChangeEventCodec() {
+    }
+
+    /**
+     * Returns the number of bytes the encoded record will take, header included.
+     */
+    public static int encodedSize(BalanceChangeEvent event) {
+        return HEADER_BYTES + FIXED_BODY_BYTES + ownerBytes(event).length + 1 + currencyBytes(event).length
+                + scheduleBytes(event);
+    }
+
+    /**
+     * Writes one record at the buffer's position.
+     *
+     * @param offset the log offset assigned to the record
+     */
+    public static void encode(long offset, BalanceChangeEvent event, ByteBuffer buffer) {
+        byte[] owner = ownerBytes(event);
+        byte[] currency = currencyBytes(event);
+        byte[] schedule = event.getEncodedSchedule();
+        int length = FIXED_BODY_BYTES + owner.length + 1 + currency.length + scheduleBytes(event);
+        int start = buffer.position();
+        buffer.putInt(length);
+        buffer.putInt(0); // Checksum placeholder, filled in below
+        buffer.putLong(offset);
+        buffer.putLong(event.getSequence());
+        buffer.putLong(event.getTimestamp());
+        buffer.put((byte) event.getType().ordinal());
+        buffer.putDouble(event.getAmount());
+        buffer.putDouble(event.getBalanceAfter());
+        buffer.putDouble(event.getOutstandingAfter());
+        buffer.putShort((short) (event.getAccountOwner() == null ? NO_OWNER : owner.length));
+        buffer.put(owner);
+        buffer.put((byte) currency.length);
+        buffer.put(currency);
+        if (schedule != null) {
+            buffer.putInt(schedule.length);
+            buffer.put(schedule);
+        }
+        buffer.putInt(start + 4, checksum(buffer, start + HEADER_BYTES, length));
+    }
+
+    /**
+     * Reads the body length from a record header, or -1 if the header is not a
+     * plausible record.
+     */
+    public static int bodyLength(ByteBuffer header) {
+        int length = header.getInt(header.position());
+        return length < FIXED_BODY_BYTES || length > FIXED_BODY_BYTES + 0xFFFF + 1 + 0xFF + 4 + MAX_SCHEDULE_BYTES ? -1 : length;
+    }
+
+    /**
+     * Verifies the checksum of a complete record and decodes it.
+     *
+     * @param record the header and the body, positioned at the header
+     * @return the decoded record, or null if the checksum does not match (for
+     *         example a record that was only partly written)
+     */
+    public static ChangeDataCaptureLog.Record decode(ByteBuffer record) {
+        int start = record.position();
+        int length = record.getInt(start);
+        int expected = record.getInt(start + 4);
+        if (checksum(record, start + HEADER_BYTES, length) != expected) {
+            return null;
+        }
+        ByteBuffer body = record.duplicate();
+        body.position(start + HEADER_BYTES);
+        long offset = body.getLong();
+        long sequence = body.getLong();
+        long timestamp = body.getLong();
+        BalanceChangeEvent.Type type = TYPES[body.get()];
+        double amount = body.getDouble();
+        double balanceAfter = body.getDouble();
+        double outstandingAfter = body.getDouble();
+        int ownerLength = body.getShort() & 0xFFFF;
+        byte[] owner = new byte[ownerLength == NO_OWNER ? 0 : ownerLength];
+        body.get(owner);
+        int end = start + HEADER_BYTES + length;
+        String currency = BankAccount.DEFAULT_CURRENCY;
+        if (body.position() < end) {
+            byte[] code = new byte[body.get() & 0xFF];
+            body.get(code);
+            currency = new String(code, StandardCharsets.US_ASCII);
+        }
+        byte[] schedule = null;
+        if (body.position() < end) {
+            schedule = new byte[body.getInt()];
+            body.get(schedule);
+        }
+        return new ChangeDataCaptureLog.Record(offset, new BalanceChangeEvent(sequence, type,
+                ownerLength == NO_OWNER ? null : new String(owner, StandardCharsets.UTF_8), amount, balanceAfter, outstandingAfter, timestamp,
+                currency, schedule));
+    }
+
+    private static byte[] ownerBytes(BalanceChangeEvent event) {
+        byte[] owner = event.getAccountOwner() == null ? new byte[0]
+                : event.getAccountOwner().getBytes(StandardCharsets.UTF_8);
+        if (owner.length >= NO_OWNER) {
+            throw new IllegalArgumentException("Account owner name is too long to encode.");
+        }
+        return owner;
+    }
+
+    private static byte[] currencyBytes(BalanceChangeEvent event) {
+        byte[] currency = event.getCurrency().getBytes(StandardCharsets.US_ASCII);
+        if (currency.length > 0xFF) {
+            throw new IllegalArgumentException("Currency code is too long to encode.");
+        }
+        return currency;
+    }
+
+    // Bytes taken by the schedule and its length, 0 without a schedule
+    private static int scheduleBytes(BalanceChangeEvent event) {
+        byte[] schedule = event.getEncodedSchedule();
+        if (schedule == null) {
+            return 0;
+        }
+        if (schedule.length > MAX_SCHEDULE_BYTES) {
+            throw new IllegalArgumentException("Payment schedule is too long to encode.");
+        }
+        return 4 + schedule.length;
+    }
+
+    private static int checksum(ByteBuffer buffer, int from, int length) {
+        CRC32 crc = new CRC32();
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(from + length).position(from);
+        crc.update(slice);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,252 @@
+package Bank;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import Bank.BankApp.InadequateBankOperatingFundsErrors;
+
+/**
+ * Routing client for a bank that spans several {@link ClusterNode}s.
+ *
+ * Owners are hash-partitioned: the node of an owner is
+ * {@link #partitionOf(String, int)} of the owner and the number of nodes, so
+ * every client with the same node list sends an owner to the same node. The
+ * account operations are forwarded to the owning node with the
+ * {@link ClusterProtocol} and throw the same errors as {@link BankApp}.
+ *
+ * Connections to each node are pooled: a caller borrows one for a request and
+ * returns it, so several threads can use the client at once. A connection
+ * that fails is dropped and the error is reported as an IOException.
+ *
+ * If a {@link ClusterFundCoordinator} is attached, an outstanding grant that a
+ * node refuses for lack of operating funds asks the coordinator for the
+ * missing funds and is tried once more.
+ */
+public class ClusterClient implements AutoCloseable {
+
+    private final List<InetSocketAddress> nodes; // Node addresses, indexed by partition
+    private final List<LinkedBlockingQueue<Connection>> idle = new ArrayList<>(); // Pooled connections per node
+    private volatile ClusterFundCoordinator fundCoordinator; // Supplies operating funds to nodes, may be null
+    private volatile boolean closed;
+
+    /**
+     * Creates a client for the nodes at the given addresses, listed in
+     * partition order.
+     */
+    public ClusterClient(List<InetSocketAddress> nodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("A cluster needs at least one node.");
+        }
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+        for (int i = 0; i < nodes.size(); i++) {
+            idle.add(new LinkedBlockingQueue<>());
+        }
+    }
+
+    /**
+     * Returns the partition of an owner in a cluster of the given size.
+     * The hash is the owner's String hash code, which is the same in every
+     * JVM, spread so that similar names land on different nodes.
+     */
+    public static int partitionOf(String accountOwner, int nodeCount) {
+        int hash = accountOwner.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return Math.floorMod(hash, nodeCount);
+    }
+
+    /**
+     * Retrieves the node that holds an owner's account.
+     */
+    public int nodeOf(String accountOwner) {
+        return partitionOf(accountOwner, nodes.size());
+    }
+
+    /**
+     * Retrieves the number of nodes in the cluster.
+     */
+    public int getNodeCount() {
+        return nodes.size();
+    }
+
+    /**
+     * Attaches the coordinator asked for operating funds when a grant is
+     * refused for lack of them.
+     */
+    public void setFundCoordinator(ClusterFundCoordinator fundCoordinator) {
+        this.fundCoordinator = fundCoordinator;
+    }
+
+    /**
+     * Opens an account on its owner's node. See {@link BankApp#appendOwnerAccount}.
+     */
+    public void appendOwnerAccount(String accountOwner, double startingDeposit) throws Exception {
+        call(nodeOf(accountOwner), ClusterProtocol.OPEN, accountOwner, startingDeposit);
+    }
+
+    /**
+     * Closes an account on its owner's node. See {@link BankApp#removeOwnerAccount}.
+     */
+    public void removeOwnerAccount(String accountOwner) throws Exception {
+        call(nodeOf(accountOwner), ClusterProtocol.CLOSE, accountOwner, 0.0);
+    }
+
+    /**
+     * Deposits into an account on its owner's node. See {@link BankApp#deposit}.
+     */
+    public void deposit(String accountOwner, double amount) throws Exception {
+        call(nodeOf(accountOwner), ClusterProtocol.DEPOSIT, accountOwner, amount);
+    }
+
+    /**
+     * Withdraws from an account on its owner's node. See {@link BankApp#withdraw}.
+     */
+    public void withdraw(String accountOwner, double amount) throws Exception {
+        call(nodeOf(accountOwner), ClusterProtocol.WITHDRAW, accountOwner, amount);
+    }
+
+    /**
+     * Grants an outstanding amount (Loan) on the owner's node. If the node does
+     * not have the operating funds and a coordinator is attached, the missing
+     * funds are allocated to the node and the grant is tried once more.
+     * See {@link BankApp#grantOutstanding(String, double)}.
+     */
+    public void grantOutstanding(String accountOwner, double outstandingAmount) throws Exception {
+        int node = nodeOf(accountOwner);
+        try {
+            call(node, ClusterProtocol.GRANT, accountOwner, outstandingAmount);
+        } catch (InadequateBankOperatingFundsErrors e) {
+            ClusterFundCoordinator coordinator = fundCoordinator;
+            if (coordinator == null) {
+                throw e;
+            }
+            coordinator.allocate(node, e.getRequestedAmount() - e.getAvailableOperatingFunds());
+            call(node, ClusterProtocol.GRANT, accountOwner, outstandingAmount);
+        }
+    }
+
+    /**
+     * Repays an outstanding amount (Loan) on the owner's node.
+     * See {@link BankApp#repayOutstanding}.
+     */
+    public void repayOutstanding(String accountOwner, double repaymentAmount) throws Exception {
+        call(nodeOf(accountOwner), ClusterProtocol.REPAY, accountOwner, repaymentAmount);
+    }
+
+    /**
+     * Retrieves an owner's balance from its node.
+     */
+    public double getOwnerAccountBalance(String accountOwner) throws Exception {
+        return call(nodeOf(accountOwner), ClusterProtocol.BALANCE, accountOwner, 0.0);
+    }
+
+    /**
+     * Retrieves an owner's outstanding balance (Loan) from its node.
+     */
+    public double getOutstandingBalance(String accountOwner) throws Exception {
+        return call(nodeOf(accountOwner), ClusterProtocol.OUTSTANDING, accountOwner, 0.0);
+    }
+
+    /**
+     * Retrieves the operating funds of one node.
+     */
+    public double getNodeOperatingFunds(int node) throws Exception {
+        return call(node, ClusterProtocol.FUNDS, null, 0.0);
+    }
+
+    /**
+     * Retrieves the bank capital held by one node.
+     */
+    public double getNodeCapital(int node) throws Exception {
+        return call(node, ClusterProtocol.CAPITAL, null, 0.0);
+    }
+
+    /**
+     * Retrieves the number of accounts on one node.
+     */
+    public int getNodeAccountCount(int node) throws Exception {
+        return (int) call(node, ClusterProtocol.ACCOUNTS, null, 0.0);
+    }
+
+    // Move bank capital into or out of a node, used by the coordinator
+    void addNodeCapital(int node, double amount) throws Exception {
+        call(node, ClusterProtocol.ADD_CAPITAL, null, amount);
+    }
+
+    void removeNodeCapital(int node, double amount) throws Exception {
+        call(node, ClusterProtocol.REMOVE_CAPITAL, null, amount);
+    }
+
+    /**
+     * Closes every pooled connection.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (LinkedBlockingQueue<Connection> pool : idle) {
+            Connection connection;
+            while ((connection = pool.poll()) != null) {
+                connection.close();
+            }
+        }
+    }
+
+    // Send one request to a node on a pooled connection and read its response
+    private double call(int node, byte operation, String owner, double amount) throws Exception {
+        if (closed) {
+            throw new IOException("Cluster client is closed.");
+        }
+        Connection connection = idle.get(node).poll();
+        if (connection == null) {
+            connection = new Connection(nodes.get(node));
+        }
+        double value;
+        try {
+            ClusterProtocol.writeRequest(connection.out, operation, owner, amount);
+            value = ClusterProtocol.readResponse(connection.in);
+        } catch (IOException e) {
+            connection.close(); // The stream may be out of step, never reuse it
+            throw e;
+        } catch (Exception e) {
+            idle.get(node).add(connection); // The bank's error was read completely
+            throw e;
+        }
+        idle.get(node).add(connection);
+        return value;
+    }
+
+    /**
+     * An open connection to one node.
+     */
+    private static final class Connection {
+        final Socket socket;
+        final DataInputStream in;
+        final DataOutputStream out;
+
+        Connection(InetSocketAddress address) throws IOException {
+            socket = new Socket();
+            socket.connect(address);
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already broken
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package Bank;
+
+import Bank.BankApp.InadequateBankOperatingFundsErrors;
+
+/**
+ * Allocates the bank's capital across the nodes of a cluster.
+ *
+ * Every {@link ClusterNode} grants outstanding amounts (Loan) from its own
+ * operating funds, so the bank's capital has to be spread over the nodes. The
+ * coordinator keeps the capital that is not allocated to any node in a
+ * reserve. It allocates capital to a node on request, for example when a
+ * {@link ClusterClient} grant is refused for lack of funds, and
+ * {@link #rebalance()} tops up nodes below the low water mark and takes back
+ * capital from nodes above the high water mark.
+ *
+ * Only the bank's own capital is moved; customers' deposits stay on the node
+ * of their account. The coordinator's methods are synchronized, so allocations
+ * never overdraw the reserve.
+ */
+public class ClusterFundCoordinator {
+
+    private final ClusterClient client; // Reaches the nodes
+    private final double lowWater; // Operating funds a node is topped up to
+    private final double highWater; // Operating funds above which capital is taken back
+    private double reserve; // Capital not allocated to any node
+
+    /**
+     * Creates a coordinator and attaches it to the client.
+     *
+     * @param client    client for the cluster's nodes
+     * @param reserve   capital available for allocation
+     * @param lowWater  operating funds every node should have
+     * @param highWater operating funds above which a node gives capital back
+     */
+    public ClusterFundCoordinator(ClusterClient client, double reserve, double lowWater, double highWater) {
+        if (reserve < 0 || lowWater < 0 || highWater < lowWater) {
+            throw new IllegalArgumentException("Reserve and water marks must satisfy 0 <= low <= high.");
+        }
+        this.client = client;
+        this.reserve = reserve;
+        this.lowWater = lowWater;
+        this.highWater = highWater;
+        client.setFundCoordinator(this);
+    }
+
+    /**
+     * Retrieves the capital not allocated to any node.
+     */
+    public synchronized double getReserve() {
+        return reserve;
+    }
+
+    /**
+     * Retrieves the operating funds of the whole bank: the reserve and the
+     * operating funds of every node.
+     */
+    public synchronized double getTotalOperatingFunds() throws Exception {
+        double total = reserve;
+        for (int node = 0; node < client.getNodeCount(); node++) {
+            total += client.getNodeOperatingFunds(node);
+        }
+        return total;
+    }
+
+    /**
+     * Moves capital from the reserve to a node.
+     *
+     * @throws InadequateBankOperatingFundsErrors if the reserve does not hold
+     *                                            the amount
+     */
+    public synchronized void allocate(int node, double amount) throws Exception {
+        if (amount <= 0) {
+            return;
+        }
+        if (amount > reserve) {
+            throw new InadequateBankOperatingFundsErrors(amount, reserve);
+        }
+        client.addNodeCapital(node, amount);
+        reserve -= amount;
+    }
+
+    /**
+     * Takes capital back from nodes above the high water mark, down to the low
+     * water mark, and tops up nodes below the low water mark from the reserve.
+     * A node never gives back more than its own capital.
+     *
+     * @return the capital moved in total
+     */
+    public synchronized double rebalance() throws Exception {
+        int count = client.getNodeCount();
+        double[] funds = new double[count];
+        double moved = 0.0;
+        for (int node = 0; node < count; node++) {
+            funds[node] = client.getNodeOperatingFunds(node);
+            if (funds[node] > highWater) {
+                double surplus = Math.min(funds[node] - lowWater, client.getNodeCapital(node));
+                if (surplus > 0) {
+                    client.removeNodeCapital(node, surplus);
+                    reserve += surplus;
+                    funds[node] -= surplus;
+                    moved += surplus;
+                }
+            }
+        }
+        for (int node = 0; node < count; node++) {
+            double shortfall = Math.min(lowWater - funds[node], reserve);
+            if (shortfall > 0) {
+                client.addNodeCapital(node, shortfall);
+                reserve -= shortfall;
+                moved += shortfall;
+            }
+        }
+        return moved;
+    }
+}
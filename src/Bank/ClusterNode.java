@@ -0,0 +1,202 @@
+package Bank;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * One partition of a bank that spans several JVMs.
+ *
+ * A node serves the accounts whose owners hash to its partition (see
+ * {@link ClusterClient#partitionOf(String, int)}) from its own
+ * {@link BankApp}, and answers {@link ClusterClient} requests on a socket with
+ * the {@link ClusterProtocol}. Each connection is served on its own virtual
+ * thread. A request for an owner of another partition is refused, so a client
+ * with a different node list cannot silently split an account across nodes.
+ *
+ * Each node has its own operating funds; a {@link ClusterFundCoordinator}
+ * moves bank capital between the nodes.
+ *
+ * Run {@code java Bank.ClusterNode <index> <count> [port]} to start a node in
+ * its own process. It prints the port it listens on and stops when its
+ * standard input is closed.
+ */
+public class ClusterNode implements AutoCloseable {
+
+    private final BankApp bank; // The accounts of this partition
+    private final int nodeIndex; // The partition served by this node
+    private final int nodeCount; // Number of partitions in the cluster
+    private final ServerSocket server; // Accepts client connections
+    private final ExecutorService connections = Executors.newVirtualThreadPerTaskExecutor();
+    private volatile boolean closed;
+
+    /**
+     * Starts serving a partition on the loopback interface.
+     *
+     * @param bank      the bank holding the accounts of this partition
+     * @param port      local port to listen on, 0 for any free port
+     * @param nodeIndex the partition served by this node, from 0
+     * @param nodeCount number of partitions in the cluster
+     */
+    public ClusterNode(BankApp bank, int port, int nodeIndex, int nodeCount) throws IOException {
+        if (nodeIndex < 0 || nodeIndex >= nodeCount) {
+            throw new IllegalArgumentException("Node index must be between 0 and " + (nodeCount - 1) + ".");
+        }
+        this.bank = bank;
+        this.nodeIndex = nodeIndex;
+        this.nodeCount = nodeCount;
+        this.server = new ServerSocket();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        Thread acceptor = new Thread(this::accept, "cluster-node-" + nodeIndex);
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Retrieves the bank holding the accounts of this partition.
+     */
+    public BankApp getBank() {
+        return bank;
+    }
+
+    /**
+     * Retrieves the port the node listens on.
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Stops accepting requests and closes the open connections.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+        connections.shutdownNow();
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                connections.submit(() -> serve(socket));
+            } catch (IOException e) {
+                if (!closed) {
+                    System.out.println("Cluster node " + nodeIndex + " stopped accepting: " + e.getMessage());
+                }
+                return;
+            }
+        }
+    }
+
+    // Answer the requests of one connection until the client closes it
+    private void serve(Socket socket) {
+        try (socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            while (true) {
+                byte operation;
+                try {
+                    operation = in.readByte();
+                } catch (EOFException e) {
+                    return;
+                }
+                String owner = in.readUTF();
+                double amount = in.readDouble();
+                if (!owner.isEmpty() && ClusterClient.partitionOf(owner, nodeCount) != nodeIndex) {
+                    ClusterProtocol.writeError(out, ClusterProtocol.WRONG_NODE,
+                            owner + " is not served by node " + nodeIndex, 0, 0);
+                    continue;
+                }
+                try {
+                    ClusterProtocol.writeValue(out, execute(operation, owner, amount));
+                } catch (IOException e) {
+                    throw e;
+                } catch (Exception e) {
+                    ClusterProtocol.writeError(out, e);
+                }
+            }
+        } catch (IOException e) {
+            // The client went away; its next request opens a new connection
+        }
+    }
+
+    private double execute(byte operation, String owner, double amount) throws Exception {
+        switch (operation) {
+            case ClusterProtocol.OPEN:
+                bank.appendOwnerAccount(owner, amount);
+                return 0.0;
+            case ClusterProtocol.CLOSE:
+                bank.removeOwnerAccount(owner);
+                return 0.0;
+            case ClusterProtocol.DEPOSIT:
+                bank.deposit(owner, amount);
+                return 0.0;
+            case ClusterProtocol.WITHDRAW:
+                bank.withdraw(owner, amount);
+                return 0.0;
+            case ClusterProtocol.GRANT:
+                bank.grantOutstanding(owner, amount);
+                return 0.0;
+            case ClusterProtocol.REPAY:
+                bank.repayOutstanding(owner, amount);
+                return 0.0;
+            case ClusterProtocol.BALANCE:
+                return bank.getOwnerAccountBalance(owner);
+            case ClusterProtocol.OUTSTANDING:
+                return bank.getOutstandingBalance(owner);
+            case ClusterProtocol.FUNDS:
+                return bank.getBankOperatingFunds();
+            case ClusterProtocol.CAPITAL:
+                return bank.getBankCapital();
+            case ClusterProtocol.ADD_CAPITAL:
+                bank.appendToBankOperatingFunds(amount);
+                return 0.0;
+            case ClusterProtocol.REMOVE_CAPITAL:
+                bank.minusFromBankOperatingFunds(amount);
+                return 0.0;
+            case ClusterProtocol.ACCOUNTS:
+                return bank.getAccountCount();
+            default:
+                throw new IllegalArgumentException("Unknown cluster operation " + operation);
+        }
+    }
+
+    /**
+     * Starts a node in its own process.
+     * Arguments: node index, node count, and optionally the port (default any
+     * free port). Limits are the withdraw, deposit and outstanding limits of
+     * the bank, read from the system properties bank.maxWithdraw,
+     * bank.maxDeposit and bank.maxOutstanding.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: ClusterNode <index> <count> [port]");
+            return;
+        }
+        int index = Integer.parseInt(args[0]);
+        int count = Integer.parseInt(args[1]);
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+        BankApp bank = new BankApp(Double.parseDouble(System.getProperty("bank.maxWithdraw", "6000")),
+                Double.parseDouble(System.getProperty("bank.maxDeposit", "10000")),
+                Double.parseDouble(System.getProperty("bank.maxOutstanding", "20000")));
+        try (ClusterNode node = new ClusterNode(bank, port, index, count)) {
+            System.out.println("ClusterNode " + index + " listening on port " + node.getPort());
+            System.out.flush();
+            while (System.in.read() >= 0) {
+                // Keep serving until standard input is closed
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package Bank;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import Bank.BankAccount.AccountOwnerNotFoundErrors;
+import Bank.BankAccount.InadequateFundsErrors;
+import Bank.BankApp.InadequateBankOperatingFundsErrors;
+import Bank.BankApp.InadequateDepositAmountErrors;
+import Bank.BankApp.InadequateWithdrawAmountErrors;
+import Bank.BankApp.MultipleAccountErrors;
+import Bank.Outstanding.InadequateOutstandingAmountErrors;
+
+/**
+ * Binary protocol between a {@link ClusterClient} and the
+ * {@link ClusterNode}s.
+ *
+ * Every request is one frame, answered by one frame on the same connection:
+ *
+ * <pre>
+ * request:  byte operation, UTF owner (empty if none), double amount
+ * response: byte status 0, double value
+ *           byte error code, UTF owner or information, double first, double second
+ * </pre>
+ *
+ * The bank's errors are sent with the values they were created from, so the
+ * client throws the same error type with the same message as the node.
+ */
+final class ClusterProtocol {
+
+    // Operations
+    static final byte OPEN = 1;
+    static final byte CLOSE = 2;
+    static final byte DEPOSIT = 3;
+    static final byte WITHDRAW = 4;
+    static final byte GRANT = 5;
+    static final byte REPAY = 6;
+    static final byte BALANCE = 7;
+    static final byte OUTSTANDING = 8;
+    static final byte FUNDS = 9;
+    static final byte CAPITAL = 10;
+    static final byte ADD_CAPITAL = 11;
+    static final byte REMOVE_CAPITAL = 12;
+    static final byte ACCOUNTS = 13;
+
+    // Response statuses
+    static final byte OK = 0;
+    static final byte NOT_FOUND = 1;
+    static final byte MULTIPLE_ACCOUNTS = 2;
+    static final byte INADEQUATE_FUNDS = 3;
+    static final byte INADEQUATE_OPERATING_FUNDS = 4;
+    static final byte INVALID_DEPOSIT = 5;
+    static final byte INVALID_WITHDRAW = 6;
+    static final byte INVALID_OUTSTANDING = 7;
+    static final byte WRONG_NODE = 8;
+    static final byte FAILED = 9;
+
+    private ClusterProtocol() {
+    }
+
+    static void writeRequest(DataOutputStream out, byte operation, String owner, double amount)
+            throws IOException {
+        out.writeByte(operation);
+        out.writeUTF(owner == null ? "" : owner);
+        out.writeDouble(amount);
+        out.flush();
+    }
+
+    static void writeValue(DataOutputStream out, double value) throws IOException {
+        out.writeByte(OK);
+        out.writeDouble(value);
+        out.flush();
+    }
+
+    static void writeError(DataOutputStream out, byte status, String text, double first, double second)
+            throws IOException {
+        out.writeByte(status);
+        out.writeUTF(text == null ? "" : text);
+        out.writeDouble(first);
+        out.writeDouble(second);
+        out.flush();
+    }
+
+    /**
+     * Writes the error a node's bank threw, or a generic failure for anything
+     * that is not one of the bank's errors.
+     */
+    static void writeError(DataOutputStream out, Exception error) throws IOException {
+        if (error instanceof AccountOwnerNotFoundErrors) {
+            writeError(out, NOT_FOUND, ((AccountOwnerNotFoundErrors) error).getAccountOwner(), 0, 0);
+        } else if (error instanceof MultipleAccountErrors) {
+            writeError(out, MULTIPLE_ACCOUNTS, ((MultipleAccountErrors) error).getAccountOwner(), 0, 0);
+        } else if (error instanceof InadequateFundsErrors) {
+            InadequateFundsErrors funds = (InadequateFundsErrors) error;
+            writeError(out, INADEQUATE_FUNDS, "", funds.getWithdrawAmount(), funds.getAvailableBalance());
+        } else if (error instanceof InadequateBankOperatingFundsErrors) {
+            InadequateBankOperatingFundsErrors funds = (InadequateBankOperatingFundsErrors) error;
+            writeError(out, INADEQUATE_OPERATING_FUNDS, "", funds.getRequestedAmount(),
+                    funds.getAvailableOperatingFunds());
+        } else if (error instanceof InadequateDepositAmountErrors) {
+            InadequateDepositAmountErrors deposit = (InadequateDepositAmountErrors) error;
+            writeError(out, INVALID_DEPOSIT, deposit.getInfo(), deposit.getAmount(), 0);
+        } else if (error instanceof InadequateWithdrawAmountErrors) {
+            InadequateWithdrawAmountErrors withdraw = (InadequateWithdrawAmountErrors) error;
+            writeError(out, INVALID_WITHDRAW, withdraw.getInfo(), withdraw.getAmount(), 0);
+        } else if (error instanceof InadequateOutstandingAmountErrors) {
+            InadequateOutstandingAmountErrors outstanding = (InadequateOutstandingAmountErrors) error;
+            writeError(out, INVALID_OUTSTANDING, outstanding.getInfo(), outstanding.getAmount(), 0);
+        } else {
+            writeError(out, FAILED, String.valueOf(error.getMessage()), 0, 0);
+        }
+    }
+
+    /**
+     * Reads a response and returns its value, or throws the error it carries.
+     *
+     * @throws IOException for a failure that is not one of the bank's errors,
+     *                     or a request sent to the wrong node
+     */
+    static double readResponse(DataInputStream in) throws Exception {
+        byte status = in.readByte();
+        if (status == OK) {
+            return in.readDouble();
+        }
+        String text = in.readUTF();
+        double first = in.readDouble();
+        double second = in.readDouble();
+        switch (status) {
+            case NOT_FOUND:
+                throw new AccountOwnerNotFoundErrors(text);
+            case MULTIPLE_ACCOUNTS:
+                throw new MultipleAccountErrors(text);
+            case INADEQUATE_FUNDS:
+                throw new InadequateFundsErrors(first, second);
+            case INADEQUATE_OPERATING_FUNDS:
+                throw new InadequateBankOperatingFundsErrors(first, second);
+            case INVALID_DEPOSIT:
+                throw new InadequateDepositAmountErrors(first, text);
+            case INVALID_WITHDRAW:
+                throw new InadequateWithdrawAmountErrors(first, text);
+            case INVALID_OUTSTANDING:
+                throw new InadequateOutstandingAmountErrors(first, text);
+            case WRONG_NODE:
+                throw new IOException("Request routed to the wrong node: " + text);
+            default:
+                throw new IOException("Cluster node failed: " + text);
+        }
+    }
+}
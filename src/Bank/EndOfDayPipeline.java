@@ -0,0 +1,511 @@
+package Bank;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+
+import Bank.BankAccount.AccountOwnerNotFoundErrors;
+import Bank.BankAccount.InadequateFundsErrors;
+import Bank.Outstanding.OutstandingInterestError;
+
+/**
+ * End-of-day batch run over every account of a {@link BankApp}.
+ *
+ * The run has four stages, in order: interest on every outstanding (Loan), fee
+ * application, limit re-evaluation and totals. Each stage splits the accounts
+ * into chunks that run on a fork-join pool.
+ *
+ * The owner snapshot the run works on is written once to the checkpoint file,
+ * with the chunk size, and a resumed run splits the accounts the same way
+ * whatever chunk size its pipeline was created with.
+ * Progress is appended to a log next to it: a record after every account the
+ * interest and fee stages changed, and one when a chunk finishes. A run that
+ * crashed resumes every chunk after the last account it recorded, so interest
+ * and fees are not charged twice. Only an account whose step was applied but
+ * not yet recorded when the process died is applied again, at most one per
+ * worker.
+ *
+ * The interest and fee stages change each account while holding the bank's
+ * monitor, the same lock {@link AsyncBankApp} uses, so live deposits and
+ * withdrawals made through it interleave with the run one account at a time
+ * and never see a half applied step. Those two stages are therefore serial;
+ * the workers only overlap the lookups and the progress log. The limit and
+ * totals stages copy each chunk's figures under the monitor and evaluate the
+ * copy outside it, so they run in parallel.
+ */
+public class EndOfDayPipeline {
+
+    private static final int CHECKPOINT_VERSION = 2; // Format of the checkpoint file, adds the chunk size
+    private static final int CHECKPOINT_VERSION_NO_CHUNK_SIZE = 1;
+    private static final String[] STAGE_NAMES = { "interest", "fees", "limits", "totals" };
+
+    private final BankApp bank; // The bank being processed
+    private final Path checkpointFile; // Progress of an unfinished run
+    private final int chunkSize; // Number of accounts per chunk
+    private final ForkJoinPool pool; // Runs the chunks
+
+    private double interestRate = 0.0; // Interest applied to each outstanding, as a percentage
+    private double accountFee = 0.0; // Fee charged to each account
+
+    /**
+     * Creates a pipeline.
+     *
+     * @param bank           the bank to process
+     * @param checkpointFile file used to record progress of a run
+     * @param chunkSize      number of accounts per chunk of a new run, a
+     *                       resumed run keeps the chunk size it started with
+     * @param pool           pool that runs the chunks
+     */
+    public EndOfDayPipeline(BankApp bank, Path checkpointFile, int chunkSize, ForkJoinPool pool) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive.");
+        }
+        this.bank = bank;
+        this.checkpointFile = checkpointFile;
+        this.chunkSize = chunkSize;
+        this.pool = pool;
+    }
+
+    /**
+     * Sets the interest rate, as a percentage, applied to every outstanding
+     * balance that is not repaid on a schedule. Zero skips the stage.
+     */
+    public void setInterestRate(double interestRate) {
+        this.interestRate = interestRate;
+    }
+
+    /**
+     * Sets the fee charged to every account. Zero skips the stage.
+     */
+    public void setAccountFee(double accountFee) {
+        this.accountFee = accountFee;
+    }
+
+    /**
+     * Returns true if a previous run left a checkpoint to resume from.
+     */
+    public boolean hasCheckpoint() {
+        return Files.exists(checkpointFile);
+    }
+
+    /**
+     * Runs the pipeline, resuming from the checkpoint if there is one.
+     * The checkpoint is deleted once all stages have finished.
+     */
+    public Report run() throws IOException {
+        Report report = new Report();
+        try (Checkpoint checkpoint = hasCheckpoint() ? Checkpoint.load(checkpointFile, chunkSize) : startRun()) {
+            for (int stage = 0; stage < STAGE_NAMES.length; stage++) {
+                if (stage < checkpoint.stage) {
+                    continue; // Finished before the crash
+                }
+                if (stage > checkpoint.stage) {
+                    checkpoint.startStage(stage);
+                }
+                report.stages.add(runStage(stage, checkpoint, report));
+            }
+        }
+        Files.deleteIfExists(checkpointFile);
+        Files.deleteIfExists(Checkpoint.logFile(checkpointFile));
+        return report;
+    }
+
+    // Take the owner snapshot the whole run works on
+    private Checkpoint startRun() throws IOException {
+        List<String> owners = new ArrayList<>();
+        synchronized (bank) {
+            for (BankAccount account : bank.getBankAccountOwners()) {
+                owners.add(account.getAccountOwner());
+            }
+        }
+        return Checkpoint.create(checkpointFile, owners, chunkSize);
+    }
+
+    private StageReport runStage(int stage, Checkpoint checkpoint, Report report) {
+        List<String> owners = checkpoint.owners;
+        int chunkSize = checkpoint.chunkSize; // The positions recorded so far assume this split
+        int chunks = (owners.size() + chunkSize - 1) / chunkSize;
+        AtomicLong processed = new AtomicLong();
+        AtomicLong skipped = new AtomicLong();
+        AtomicBoolean failed = new AtomicBoolean(); // Stops the remaining chunks after a failure
+        BankFlightEvents.BulkJob event = new BankFlightEvents.BulkJob();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            pool.invoke(new ChunkTask(0, chunks, chunk -> {
+                int from = chunk * chunkSize;
+                int to = Math.min(owners.size(), from + chunkSize);
+                if (stage >= 2) {
+                    // The limit and totals stages only read, so they always run in full to
+                    // rebuild their results
+                    evaluateChunk(stage, owners.subList(from, to), report, processed, skipped);
+                    return;
+                }
+                int resume = checkpoint.resumePosition(chunk, from);
+                if (failed.get() || resume >= to) {
+                    return;
+                }
+                try {
+                    for (int i = resume; i < to; i++) {
+                        if (changeAccount(stage, owners.get(i), checkpoint, chunk, i + 1)) {
+                            processed.incrementAndGet();
+                        } else {
+                            skipped.incrementAndGet();
+                        }
+                    }
+                    checkpoint.record(chunk, to);
+                } catch (IOException e) {
+                    failed.set(true);
+                    throw new UncheckedIOException(e);
+                } catch (RuntimeException | Error e) {
+                    failed.set(true); // Leave the rest of the stage to the resumed run
+                    throw e;
+                }
+            }));
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.job = "end-of-day";
+                event.stage = STAGE_NAMES[stage];
+                event.processed = processed.get();
+                event.skipped = skipped.get();
+                event.commit();
+            }
+        }
+        return new StageReport(STAGE_NAMES[stage], processed.get(), skipped.get(), System.nanoTime() - start);
+    }
+
+    // Apply interest or the fee to one account and record it, returns false if
+    // the account was skipped
+    private boolean changeAccount(int stage, String owner, Checkpoint checkpoint, int chunk, int next)
+            throws IOException {
+        synchronized (bank) {
+            try {
+                if (stage == 0) {
+                    BankAccount account = bank.getOwnerAccount(owner);
+                    if (interestRate == 0 || account.getCurrentOutstandingBalance() <= 0
+                            || account.getOutstanding().hasActiveSchedule()) {
+                        return false;
+                    }
+                    bank.applyInterest(owner, interestRate);
+                } else {
+                    if (accountFee <= 0) {
+                        return false;
+                    }
+                    bank.applyFee(owner, accountFee);
+                }
+            } catch (AccountOwnerNotFoundErrors | InadequateFundsErrors | OutstandingInterestError e) {
+                return false; // Closed since the snapshot, or the fee exceeds the balance
+            }
+            checkpoint.record(chunk, next); // Before any other thread can change the account
+            return true;
+        }
+    }
+
+    // Copy a chunk's figures under the monitor, then check the limits or add
+    // up the totals outside it
+    private void evaluateChunk(int stage, List<String> chunkOwners, Report report, AtomicLong processed,
+            AtomicLong skipped) {
+        int count = chunkOwners.size();
+        String[] found = new String[count];
+        double[] balances = new double[count];
+        double[] outstanding = new double[count];
+        double limit;
+        synchronized (bank) {
+            limit = bank.getMaximumOutstandingLimit();
+            for (int i = 0; i < count; i++) {
+                try {
+                    BankAccount account = bank.getOwnerAccount(chunkOwners.get(i));
+                    found[i] = account.getAccountOwner();
+                    balances[i] = account.getCurrentBalance();
+                    outstanding[i] = account.getCurrentOutstandingBalance();
+                } catch (AccountOwnerNotFoundErrors e) {
+                    // Closed since the snapshot
+                }
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            if (found[i] == null) {
+                skipped.incrementAndGet();
+                continue;
+            }
+            if (stage == 2 && outstanding[i] > limit) {
+                report.accountsOverLimit.add(found[i]);
+            } else if (stage == 3) {
+                report.totalBalances.add(balances[i]);
+                report.totalOutstanding.add(outstanding[i]);
+            }
+            processed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Work done for one chunk.
+     */
+    @FunctionalInterface
+    private interface ChunkWork {
+        void run(int chunk);
+    }
+
+    /**
+     * Splits a range of chunks in half until a single chunk is left.
+     */
+    private static final class ChunkTask extends RecursiveAction {
+        private final int from; // First chunk, inclusive
+        private final int to; // Last chunk, exclusive
+        private final ChunkWork work; // Work done per chunk
+
+        ChunkTask(int from, int to, ChunkWork work) {
+            this.from = from;
+            this.to = to;
+            this.work = work;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                if (from < to) {
+                    work.run(from);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ChunkTask(from, middle, work), new ChunkTask(middle, to, work));
+        }
+    }
+
+    /**
+     * Progress of a run: the owner snapshot and chunk size, written once, and a log of
+     * progress records appended to as the run goes. Each record is the stage,
+     * the chunk and the position in the snapshot the chunk resumes from; a
+     * record without a chunk starts a stage.
+     */
+    private static final class Checkpoint implements Closeable {
+        private static final int RECORD_BYTES = 12; // Stage, chunk and position
+
+        private final List<String> owners;
+        private final int chunkSize; // Accounts per chunk, fixed for the whole run
+        private int stage;
+        private final Map<Integer, Integer> resumeFrom = new HashMap<>(); // Chunk to position, this stage
+        private final FileChannel log; // Progress records
+        private final ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+
+        private Checkpoint(List<String> owners, int chunkSize, int stage, FileChannel log) {
+            this.owners = owners;
+            this.chunkSize = chunkSize;
+            this.stage = stage;
+            this.log = log;
+        }
+
+        static Path logFile(Path file) {
+            return file.resolveSibling(file.getFileName() + ".log");
+        }
+
+        // Write the snapshot to a temporary file, move it in place atomically
+        // and start an empty log
+        static Checkpoint create(Path file, List<String> owners, int chunkSize) throws IOException {
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(CHECKPOINT_VERSION);
+                out.writeInt(chunkSize);
+                out.writeInt(owners.size());
+                for (String owner : owners) {
+                    out.writeUTF(owner);
+                }
+            }
+            FileChannel log = FileChannel.open(logFile(file), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return new Checkpoint(owners, chunkSize, 0, log);
+        }
+
+        // Read the snapshot and replay the log. A checkpoint written before the
+        // chunk size was kept is resumed with the given one.
+        static Checkpoint load(Path file, int defaultChunkSize) throws IOException {
+            List<String> owners;
+            int chunkSize;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                int version = in.readInt();
+                if (version == CHECKPOINT_VERSION) {
+                    chunkSize = in.readInt();
+                    if (chunkSize <= 0) {
+                        throw new IOException("Invalid chunk size in end of day checkpoint: " + file);
+                    }
+                } else if (version == CHECKPOINT_VERSION_NO_CHUNK_SIZE) {
+                    chunkSize = defaultChunkSize;
+                } else {
+                    throw new IOException("Unknown end of day checkpoint format: " + file);
+                }
+                int count = in.readInt();
+                owners = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    owners.add(in.readUTF());
+                }
+            }
+            Path logFile = logFile(file);
+            Checkpoint checkpoint = new Checkpoint(owners, chunkSize, 0, FileChannel.open(logFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE));
+            long complete = 0; // Length of the log up to its last whole record
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(logFile)))) {
+                while (true) {
+                    int stage = in.readInt();
+                    int chunk = in.readInt();
+                    int position = in.readInt();
+                    if (stage > checkpoint.stage) {
+                        checkpoint.stage = stage;
+                        checkpoint.resumeFrom.clear();
+                    }
+                    if (chunk >= 0) {
+                        checkpoint.resumeFrom.put(chunk, position);
+                    }
+                    complete += RECORD_BYTES;
+                }
+            } catch (EOFException e) {
+                // End of the log; a record cut short by the crash is dropped
+            }
+            checkpoint.log.truncate(complete);
+            checkpoint.log.position(complete);
+            return checkpoint;
+        }
+
+        synchronized void startStage(int stage) throws IOException {
+            this.stage = stage;
+            resumeFrom.clear();
+            append(-1, 0);
+        }
+
+        /**
+         * Retrieves where a chunk of the current stage resumes, or its first
+         * position if it has not started.
+         */
+        synchronized int resumePosition(int chunk, int first) {
+            return resumeFrom.getOrDefault(chunk, first);
+        }
+
+        /**
+         * Records that a chunk of the current stage resumes from a position.
+         */
+        synchronized void record(int chunk, int position) throws IOException {
+            resumeFrom.put(chunk, position);
+            append(chunk, position);
+        }
+
+        // One write per record, so a crash cuts off at most the last one
+        private void append(int chunk, int position) throws IOException {
+            record.clear();
+            record.putInt(stage).putInt(chunk).putInt(position).flip();
+            while (record.hasRemaining()) {
+                log.write(record);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            log.close();
+        }
+    }
+
+    /**
+     * Throughput of one stage.
+     */
+    public static final class StageReport {
+        private final String name; // Name of the stage
+        private final long processed; // Accounts the stage changed or read
+        private final long skipped; // Accounts the stage did not apply to
+        private final long elapsedNanos; // Time the stage took
+
+        StageReport(String name, long processed, long skipped, long elapsedNanos) {
+            this.name = name;
+            this.processed = processed;
+            this.skipped = skipped;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getProcessed() {
+            return processed;
+        }
+
+        public long getSkipped() {
+            return skipped;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * Returns the accounts handled per second, processed and skipped.
+         */
+        public double getAccountsPerSecond() {
+            return elapsedNanos == 0 ? 0.0 : (processed + skipped) * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d processed, %d skipped, %.0f accounts/s", name, processed, skipped,
+                    getAccountsPerSecond());
+        }
+    }
+
+    /**
+     * Result of a run: per stage throughput, the accounts over the outstanding
+     * limit and the totals.
+     */
+    public static final class Report {
+        private final List<StageReport> stages = new ArrayList<>();
+        private final ConcurrentLinkedQueue<String> accountsOverLimit = new ConcurrentLinkedQueue<>();
+        private final DoubleAdder totalBalances = new DoubleAdder();
+        private final DoubleAdder totalOutstanding = new DoubleAdder();
+
+        /**
+         * Retrieves the stages run, in order. Stages finished before a crash are
+         * not included.
+         */
+        public List<StageReport> getStages() {
+            return Collections.unmodifiableList(stages);
+        }
+
+        /**
+         * Retrieves the owners whose outstanding balance exceeds the bank's
+         * maximum outstanding limit.
+         */
+        public List<String> getAccountsOverLimit() {
+            return new ArrayList<>(accountsOverLimit);
+        }
+
+        public double getTotalBalances() {
+            return totalBalances.sum();
+        }
+
+        public double getTotalOutstanding() {
+            return totalOutstanding.sum();
+        }
+    }
+}
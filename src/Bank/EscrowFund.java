@@ -0,0 +1,305 @@
+package Bank;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import Bank.BankApp.InadequateBankOperatingFundsErrors;
+
+/**
+ * Operating funds split into escrow slices, one per core.
+ *
+ * Each thread credits and debits the slice picked by its thread id, so
+ * threads on different cores update different slices instead of one shared
+ * field. A debit that its own slice cannot cover borrows the missing amount
+ * from the other slices, one slice at a time, holding the locks of both
+ * slices while the money moves so it is never outside a slice, where
+ * {@link #getTotal()} would miss it. Only if that still falls short
+ * are all slices locked together and the debit decided on the exact total, so
+ * a debit is never refused while the total covers it, and no slice, and so
+ * the total, ever goes negative.
+ *
+ * {@link #getTotal()} locks every slice in order and returns the exact sum.
+ * {@link #rebalance()} spreads the total evenly over the slices again. A debit
+ * that had to borrow asks for a rebalance, which runs in the background on a
+ * single daemon thread shared by every fund, so the debits that follow find
+ * their own slice stocked again. {@link #startRebalancing(Duration)} also
+ * rebalances at a fixed interval.
+ */
+public final class EscrowFund implements AutoCloseable {
+
+    // Runs the rebalances debits ask for, for every fund
+    private static final ScheduledExecutorService BACKGROUND = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "escrow-fund-rebalancer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Slice[] slices; // One per core, rounded up to a power of two
+    private final int mask; // Slice index mask
+    private final AtomicBoolean rebalanceRequested = new AtomicBoolean(); // A background rebalance is queued
+    private final AtomicLong rebalances = new AtomicLong(); // Rebalances run
+    private ScheduledExecutorService rebalancer; // Spreads the funds in the background, or null
+
+    /**
+     * Creates an empty fund with one slice per available processor.
+     */
+    public EscrowFund() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates an empty fund with at least the given number of slices.
+     */
+    public EscrowFund(int sliceCount) {
+        int count = Integer.highestOneBit(Math.max(1, sliceCount - 1) << 1);
+        slices = new Slice[count];
+        for (int i = 0; i < count; i++) {
+            slices[i] = new Slice(); // Padded, see Slice
+        }
+        mask = count - 1;
+    }
+
+    /**
+     * Retrieves the number of slices.
+     */
+    public int getSliceCount() {
+        return slices.length;
+    }
+
+    /**
+     * Adds money to the calling thread's slice.
+     */
+    public void credit(double amount) {
+        Slice slice = localSlice();
+        slice.lock();
+        try {
+            slice.balance += amount;
+        } finally {
+            slice.unlock();
+        }
+    }
+
+    /**
+     * Takes money out of the fund, from the calling thread's slice first and
+     * borrowing from the other slices when it runs low.
+     *
+     * @throws InadequateBankOperatingFundsErrors if the whole fund does not
+     *                                            cover the amount
+     */
+    public void debit(double amount) throws InadequateBankOperatingFundsErrors {
+        int home = localIndex();
+        Slice local = slices[home];
+        local.lock();
+        try {
+            if (amount <= local.balance) {
+                local.balance -= amount;
+                return;
+            }
+        } finally {
+            local.unlock();
+        }
+
+        // Borrow from the other slices into this one, one slice at a time, with
+        // both slices locked in index order
+        for (int i = 1; i < slices.length; i++) {
+            int index = (home + i) & mask;
+            Slice other = slices[index];
+            Slice first = index < home ? other : local;
+            Slice second = index < home ? local : other;
+            first.lock();
+            second.lock();
+            try {
+                local.balance += other.balance;
+                other.balance = 0.0;
+                if (amount <= local.balance) {
+                    local.balance -= amount;
+                    requestRebalance(); // The slices borrowed from are now empty
+                    return;
+                }
+            } finally {
+                second.unlock();
+                first.unlock();
+            }
+        }
+
+        // Debits borrowing at the same time may have moved the rest into slices
+        // already visited; decide on the exact total
+        lockAll();
+        try {
+            double total = sum();
+            if (!(amount <= total)) {
+                throw new InadequateBankOperatingFundsErrors(amount, total);
+            }
+            double remaining = amount;
+            for (int i = 0; i < slices.length && remaining > 0; i++) {
+                Slice slice = slices[(home + i) & mask];
+                double taken = Math.min(slice.balance, remaining);
+                slice.balance -= taken;
+                remaining -= taken;
+            }
+        } finally {
+            unlockAll();
+        }
+        requestRebalance();
+    }
+
+    // Queue one background rebalance; requests made before it runs share it
+    private void requestRebalance() {
+        if (rebalanceRequested.compareAndSet(false, true)) {
+            BACKGROUND.execute(() -> {
+                rebalanceRequested.set(false);
+                rebalance();
+            });
+        }
+    }
+
+    /**
+     * Checks that the fund covers an amount right now.
+     *
+     * @throws InadequateBankOperatingFundsErrors if it does not
+     */
+    public void checkAdequate(double amount) throws InadequateBankOperatingFundsErrors {
+        double total = getTotal();
+        if (!(amount <= total)) {
+            throw new InadequateBankOperatingFundsErrors(amount, total);
+        }
+    }
+
+    /**
+     * Returns the exact sum of every slice.
+     */
+    public double getTotal() {
+        lockAll();
+        try {
+            return sum();
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Replaces the whole fund with the given total, spread evenly.
+     */
+    void setTotal(double total) {
+        lockAll();
+        try {
+            spread(total);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Spreads the total evenly over the slices, so every core starts with a
+     * share it can debit without borrowing.
+     */
+    public void rebalance() {
+        lockAll();
+        try {
+            spread(sum());
+        } finally {
+            unlockAll();
+        }
+        rebalances.incrementAndGet();
+    }
+
+    /**
+     * Retrieves the number of rebalances run, on request, in the background or
+     * after a debit borrowed.
+     */
+    public long getRebalances() {
+        return rebalances.get();
+    }
+
+    /**
+     * Rebalances the slices in the background at a fixed interval.
+     */
+    public synchronized void startRebalancing(Duration interval) {
+        if (rebalancer != null) {
+            return;
+        }
+        rebalancer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "escrow-fund-rebalancer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long millis = Math.max(1, interval.toMillis());
+        rebalancer.scheduleWithFixedDelay(this::rebalance, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background rebalancing.
+     */
+    @Override
+    public synchronized void close() {
+        if (rebalancer != null) {
+            rebalancer.shutdownNow();
+            rebalancer = null;
+        }
+    }
+
+    // Every slice must be locked by the caller
+    private double sum() {
+        double total = 0.0;
+        for (Slice slice : slices) {
+            total += slice.balance;
+        }
+        return total;
+    }
+
+    // Every slice must be locked by the caller. The last slice takes the
+    // rounding remainder so the total is kept
+    private void spread(double total) {
+        double share = total / slices.length;
+        for (int i = 0; i < slices.length - 1; i++) {
+            slices[i].balance = share;
+        }
+        slices[slices.length - 1].balance = Math.max(0.0, total - share * (slices.length - 1));
+    }
+
+    // Slices are always locked in index order, by lockAll() and by a debit
+    // borrowing from another slice, so no two holders can deadlock
+    private void lockAll() {
+        for (Slice slice : slices) {
+            slice.lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (int i = slices.length - 1; i >= 0; i--) {
+            slices[i].unlock();
+        }
+    }
+
+    private int localIndex() {
+        long id = Thread.currentThread().threadId();
+        return (int) (id ^ (id >>> 16)) & mask;
+    }
+
+    private Slice localSlice() {
+        return slices[localIndex()];
+    }
+
+    /**
+     * One escrow slice and the lock guarding it.
+     *
+     * The slices are small objects allocated one after another, each followed
+     * by its lock's state, so without padding the balances of neighbouring
+     * slices would share a cache line and every update would invalidate the
+     * other cores' copies. The unused longs on both sides keep each balance,
+     * and the lock state allocated after it, at least a cache line away from
+     * the next slice. {@code @Contended} would do the same but is not open to
+     * code outside the JDK.
+     */
+    @SuppressWarnings("unused")
+    private static final class Slice extends ReentrantLock {
+        private long p0, p1, p2, p3, p4, p5, p6, p7; // Padding before the balance
+        double balance; // Never negative
+        private long q0, q1, q2, q3, q4, q5, q6, q7; // Padding after the balance
+    }
+}
@@ -0,0 +1,280 @@
+package Bank;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of foreign exchange rates read from a local rates file.
+ *
+ * The file gives the units of each currency that one unit of the base
+ * currency buys, one currency per line:
+ *
+ * <pre>
+ * # Rates of 2024-05-02
+ * base EUR
+ * USD 1.0712
+ * GBP 0.8551
+ * JPY 165.12
+ * </pre>
+ *
+ * Loading the file precomputes the rate of every pair of currencies as a
+ * 32.32 fixed-point factor that already includes the difference in minor
+ * units (cents, yen) between the two currencies. Converting an amount is then
+ * one lookup and one multiply of its minor units, without division or
+ * rounding drift from repeated floating-point operations.
+ *
+ * The table is immutable and replaced as a whole by {@link #refresh()}, so a
+ * conversion always uses rates from a single version of the file, and
+ * conversions in progress are never held up by a refresh.
+ */
+public final class FxRates implements AutoCloseable {
+
+    private static final int FRACTION_BITS = 32; // Fixed-point fraction of the pair factors
+
+    private final Path file; // The rates file
+    private volatile Table table; // Current rates, replaced as a whole
+    private ScheduledExecutorService refresher; // Reloads the file when it changes, or null
+
+    /**
+     * Loads the rates from a file.
+     *
+     * @throws IllegalArgumentException if a line is not a valid rate
+     */
+    public FxRates(Path file) throws IOException {
+        this.file = file;
+        this.table = read(file);
+    }
+
+    /**
+     * Reads the file again if it changed since it was last read, and swaps the
+     * new rates in atomically. A file that cannot be parsed leaves the current
+     * rates in place.
+     *
+     * @return true if new rates were loaded
+     * @throws IllegalArgumentException if the changed file is not valid
+     */
+    public synchronized boolean refresh() throws IOException {
+        if (Files.getLastModifiedTime(file).equals(table.modified) && Files.size(file) == table.size) {
+            return false;
+        }
+        table = read(file);
+        return true;
+    }
+
+    /**
+     * Refreshes the rates in the background at a fixed interval.
+     */
+    public synchronized void startAutoRefresh(Duration interval) {
+        if (refresher != null) {
+            return;
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "fx-rates-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long millis = Math.max(1, interval.toMillis());
+        refresher.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (IOException | IllegalArgumentException e) {
+                System.out.println("FX rates refresh failed: " + e.getMessage());
+            }
+        }, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background refresh.
+     */
+    @Override
+    public synchronized void close() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+    }
+
+    /**
+     * Retrieves the currency the rates are quoted against.
+     */
+    public String getBaseCurrency() {
+        return table.base;
+    }
+
+    /**
+     * Retrieves every currency that has a rate, the base currency included.
+     */
+    public Set<String> getCurrencies() {
+        return table.index.keySet();
+    }
+
+    /**
+     * Returns true if the currency has a rate.
+     */
+    public boolean hasCurrency(String currency) {
+        return table.index.containsKey(currency);
+    }
+
+    /**
+     * Retrieves the units of the target currency that one unit of the source
+     * currency buys.
+     *
+     * @throws IllegalArgumentException if either currency has no rate
+     */
+    public double getRate(String from, String to) {
+        Table current = table;
+        return current.perBase[current.indexOf(to)] / current.perBase[current.indexOf(from)];
+    }
+
+    /**
+     * Converts an amount between currencies. The amount is taken in minor units
+     * of the source currency, multiplied by the precomputed pair factor and
+     * rounded to minor units of the target currency.
+     *
+     * @throws IllegalArgumentException if either currency has no rate
+     */
+    public double convert(double amount, String from, String to) {
+        Table current = table;
+        int source = current.indexOf(from);
+        int target = current.indexOf(to);
+        if (source == target) {
+            return amount;
+        }
+        long minor = Math.round(amount * current.minorUnits[source]);
+        long factor = current.factors[source * current.perBase.length + target];
+        // 64 x 64 bit product, keeping the integer part of the 32.32 result rounded half up
+        long high = Math.multiplyHigh(minor, factor);
+        long low = minor * factor;
+        long converted = (high << (64 - FRACTION_BITS)) | (low >>> FRACTION_BITS);
+        converted += (low >>> (FRACTION_BITS - 1)) & 1;
+        return (double) converted / current.minorUnits[target];
+    }
+
+    private static Table read(Path file) throws IOException {
+        FileTime modified = Files.getLastModifiedTime(file);
+        long size = Files.size(file);
+        return parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8), modified, size);
+    }
+
+    private static Table parse(String text, FileTime modified, long size) {
+        String base = null;
+        Map<String, Double> rates = new LinkedHashMap<>();
+        String[] lines = text.split("\r?\n");
+        for (int number = 1; number <= lines.length; number++) {
+            String line = lines[number - 1].trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split("\\s+");
+            if (parts.length != 2) {
+                throw invalid(number, "expected '<currency> <rate>' or 'base <currency>'");
+            }
+            if (parts[0].equals("base")) {
+                base = checkCode(parts[1], number);
+                continue;
+            }
+            double rate;
+            try {
+                rate = Double.parseDouble(parts[1]);
+            } catch (NumberFormatException e) {
+                throw invalid(number, "rate must be a number");
+            }
+            if (!(rate > 0) || Double.isInfinite(rate)) {
+                throw invalid(number, "rate must be positive");
+            }
+            rates.put(checkCode(parts[0], number), rate);
+        }
+        if (base == null) {
+            throw new IllegalArgumentException("Invalid FX rates: no 'base <currency>' line.");
+        }
+        rates.put(base, 1.0);
+        return new Table(base, rates, modified, size);
+    }
+
+    private static String checkCode(String code, int number) {
+        if (!code.matches("[A-Z]{3}")) {
+            throw invalid(number, "currency must be a three letter code");
+        }
+        return code;
+    }
+
+    private static IllegalArgumentException invalid(int line, String info) {
+        return new IllegalArgumentException("Invalid FX rate on line " + line + ": " + info);
+    }
+
+    /**
+     * Returns the number of minor units in one unit of a currency, for example
+     * 100 for EUR and 1 for JPY. Codes unknown to the JDK use 100.
+     */
+    static long minorUnits(String currency) {
+        int digits;
+        try {
+            digits = java.util.Currency.getInstance(currency).getDefaultFractionDigits();
+        } catch (IllegalArgumentException e) {
+            digits = 2;
+        }
+        long units = 1;
+        for (int i = 0; i < Math.max(0, digits); i++) {
+            units *= 10;
+        }
+        return units;
+    }
+
+    /**
+     * One version of the rates file with its precomputed pair factors.
+     */
+    private static final class Table {
+        final String base;
+        final Map<String, Integer> index; // Currency code to position in the arrays
+        final double[] perBase; // Units per one unit of the base currency
+        final long[] minorUnits; // Minor units per unit
+        final long[] factors; // 32.32 fixed-point factor per (source, target), minor units to minor units
+        final FileTime modified; // Modification time of the file read
+        final long size; // Size of the file read
+
+        Table(String base, Map<String, Double> rates, FileTime modified, long size) {
+            this.base = base;
+            this.modified = modified;
+            this.size = size;
+            int count = rates.size();
+            Map<String, Integer> positions = new HashMap<>();
+            perBase = new double[count];
+            minorUnits = new long[count];
+            int i = 0;
+            for (Map.Entry<String, Double> entry : rates.entrySet()) {
+                positions.put(entry.getKey(), i);
+                perBase[i] = entry.getValue();
+                minorUnits[i] = minorUnits(entry.getKey());
+                i++;
+            }
+            index = Collections.unmodifiableMap(positions);
+            factors = new long[count * count];
+            for (int source = 0; source < count; source++) {
+                for (int target = 0; target < count; target++) {
+                    double factor = perBase[target] / perBase[source] * minorUnits[target] / minorUnits[source];
+                    factors[source * count + target] = Math.round(factor * (1L << FRACTION_BITS));
+                }
+            }
+        }
+
+        int indexOf(String currency) {
+            Integer position = index.get(currency);
+            if (position == null) {
+                throw new IllegalArgumentException("No FX rate for currency: " + currency);
+            }
+            return position;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package Bank;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Account store that keeps every account on the heap, keyed by owner.
+ * Accounts are listed in the order they were opened. This is the store a
+ * {@link BankApp} uses unless it is given another one.
+ */
+public class InMemoryAccountStore implements AccountStore {
+
+    private final Map<String, BankAccount> accounts = new LinkedHashMap<>(); // Accounts by owner, in opening order
+
+    @Override
+    public BankAccount find(String accountOwner) {
+        return accounts.get(accountOwner);
+    }
+
+    @Override
+    public void insert(BankAccount account) {
+        accounts.put(account.getAccountOwner(), account);
+    }
+
+    @Override
+    public void update(BankAccount account) {
+        // The stored account is the one that was changed
+    }
+
+    @Override
+    public boolean remove(String accountOwner) {
+        return accounts.remove(accountOwner) != null;
+    }
+
+    @Override
+    public int size() {
+        return accounts.size();
+    }
+
+    @Override
+    public List<BankAccount> list() {
+        return new ArrayList<>(accounts.values());
+    }
+}
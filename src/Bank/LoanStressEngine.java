@@ -0,0 +1,399 @@
+package Bank;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Stress scenarios for the loan book, run against a snapshot of a
+ * {@link BankApp} so the live accounts and operating funds are never changed.
+ *
+ * A {@link Snapshot} copies the balances and outstanding balances (Loan) of
+ * one currency into primitive arrays while holding the bank's monitor. Each
+ * {@link Scenario} is then projected over the snapshot on a fork-join pool:
+ * the scenarios run in parallel, and each splits the accounts into chunks
+ * that are summed in parallel, with no allocation per account.
+ *
+ * Over the stress horizon of a scenario, for every account:
+ * <ul>
+ * <li>depositors withdraw the scenario's share of their balances;</li>
+ * <li>a borrower owes interest on its outstanding at the scenario's rate, and
+ * defaults if it is among the scenario's share of defaulting borrowers, or if
+ * the balance left after the withdrawal cannot cover that interest;</li>
+ * <li>a performing borrower repays the interest and the scenario's share of
+ * its outstanding into the operating funds, as {@link BankApp#repayOutstanding}
+ * would;</li>
+ * <li>a defaulted borrower repays nothing within the horizon, and the loss
+ * given default of its outstanding is lost to the bank's capital; the interest
+ * it did not pay was never counted as income, so it is not a loss.</li>
+ * </ul>
+ * Which borrowers default is decided by a hash of the scenario name and the
+ * account's position in the snapshot, so a run is repeatable.
+ *
+ * The projected operating funds are the snapshot's funds plus the repayments
+ * less the withdrawals; the shortfall is how far they fall below zero.
+ */
+public class LoanStressEngine {
+
+    // Positions of the running totals summed over the accounts
+    private static final int REPAYMENTS = 0;
+    private static final int WITHDRAWALS = 1;
+    private static final int INTEREST = 2;
+    private static final int LOSSES = 3;
+    private static final int DEFAULTS = 4;
+    private static final int BORROWERS = 5;
+    private static final int TOTALS = 6;
+
+    private final ForkJoinPool pool; // Runs the scenarios and their chunks
+    private final int chunkSize; // Accounts summed by one task
+
+    /**
+     * Creates an engine.
+     *
+     * @param pool      pool that runs the scenarios and their chunks
+     * @param chunkSize number of accounts summed by one task
+     */
+    public LoanStressEngine(ForkJoinPool pool, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive.");
+        }
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Takes a snapshot of the bank's accounts and funds in its base currency.
+     */
+    public static Snapshot snapshot(BankApp bank) {
+        return snapshot(bank, bank.getBaseCurrency());
+    }
+
+    /**
+     * Takes a snapshot of the bank's accounts and funds in a currency.
+     */
+    public static Snapshot snapshot(BankApp bank, String currency) {
+        synchronized (bank) {
+            List<BankAccount> accounts = bank.getBankAccountOwners();
+            int count = 0;
+            for (BankAccount account : accounts) {
+                if (account.getCurrency().equals(currency)) {
+                    count++;
+                }
+            }
+            double[] balances = new double[count];
+            double[] outstanding = new double[count];
+            int i = 0;
+            for (BankAccount account : accounts) {
+                if (account.getCurrency().equals(currency)) {
+                    balances[i] = account.getCurrentBalance();
+                    outstanding[i++] = account.getCurrentOutstandingBalance();
+                }
+            }
+            return new Snapshot(currency, balances, outstanding, bank.getBankOperatingFunds(currency),
+                    bank.getBankCapital(currency));
+        }
+    }
+
+    /**
+     * Projects every scenario over the snapshot, in parallel.
+     *
+     * @return one result per scenario, in the order given
+     */
+    public List<Result> run(Snapshot snapshot, List<Scenario> scenarios) {
+        int chunks = (int) ((snapshot.balances.length + (long) chunkSize - 1) / chunkSize);
+        List<ScenarioTask> tasks = new ArrayList<>();
+        for (Scenario scenario : scenarios) {
+            tasks.add(new ScenarioTask(snapshot, scenario, chunks));
+        }
+        return pool.invoke(new RecursiveTask<List<Result>>() {
+            @Override
+            protected List<Result> compute() {
+                invokeAll(tasks);
+                List<Result> results = new ArrayList<>();
+                for (ScenarioTask task : tasks) {
+                    results.add(task.join());
+                }
+                return results;
+            }
+        });
+    }
+
+    // A uniform number in [0, 1) for an account of a scenario, the SplitMix64
+    // finalizer over the seed and the position
+    private static double uniform(long seed, int index) {
+        long z = seed + (index + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z ^= z >>> 31;
+        return (z >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Projects one scenario by summing its chunks.
+     */
+    private final class ScenarioTask extends RecursiveTask<Result> {
+        private final Snapshot snapshot;
+        private final Scenario scenario;
+        private final int chunks;
+
+        ScenarioTask(Snapshot snapshot, Scenario scenario, int chunks) {
+            this.snapshot = snapshot;
+            this.scenario = scenario;
+            this.chunks = chunks;
+        }
+
+        @Override
+        protected Result compute() {
+            double[] totals = new ChunkTask(snapshot, scenario, 0, chunks).compute();
+            return new Result(scenario, snapshot, totals);
+        }
+    }
+
+    /**
+     * Sums the totals of a range of chunks, splitting it in halves.
+     */
+    private final class ChunkTask extends RecursiveTask<double[]> {
+        private final Snapshot snapshot;
+        private final Scenario scenario;
+        private final int from; // First chunk, inclusive
+        private final int to; // Last chunk, exclusive
+
+        ChunkTask(Snapshot snapshot, Scenario scenario, int from, int to) {
+            this.snapshot = snapshot;
+            this.scenario = scenario;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (to - from <= 1) {
+                double[] totals = new double[TOTALS];
+                if (from < to) {
+                    sumChunk(from, totals);
+                }
+                return totals;
+            }
+            int middle = (from + to) >>> 1;
+            ChunkTask left = new ChunkTask(snapshot, scenario, from, middle);
+            left.fork();
+            double[] totals = new ChunkTask(snapshot, scenario, middle, to).compute();
+            double[] other = left.join();
+            for (int i = 0; i < TOTALS; i++) {
+                totals[i] += other[i];
+            }
+            return totals;
+        }
+
+        private void sumChunk(int chunk, double[] totals) {
+            double[] balances = snapshot.balances;
+            double[] outstanding = snapshot.outstanding;
+            int start = (int) ((long) chunk * chunkSize);
+            int end = (int) Math.min(balances.length, (chunk + 1L) * chunkSize);
+            for (int i = start; i < end; i++) {
+                double withdrawn = balances[i] * scenario.withdrawalShare;
+                totals[WITHDRAWALS] += withdrawn;
+                double owed = outstanding[i];
+                if (owed <= 0) {
+                    continue;
+                }
+                totals[BORROWERS]++;
+                double interest = owed * scenario.interestRate / 100;
+                if (uniform(scenario.seed, i) < scenario.defaultRate || balances[i] - withdrawn < interest) {
+                    totals[DEFAULTS]++;
+                    totals[LOSSES] += owed * scenario.lossGivenDefault; // Unpaid interest was never income
+                } else {
+                    totals[REPAYMENTS] += interest + owed * scenario.repaymentShare;
+                    totals[INTEREST] += interest;
+                }
+            }
+        }
+    }
+
+    /**
+     * Balances, outstanding balances (Loan), operating funds and capital of one
+     * currency at the time the snapshot was taken.
+     */
+    public static final class Snapshot {
+        private final String currency;
+        private final double[] balances;
+        private final double[] outstanding;
+        private final double operatingFunds;
+        private final double capital;
+
+        Snapshot(String currency, double[] balances, double[] outstanding, double operatingFunds, double capital) {
+            this.currency = currency;
+            this.balances = balances;
+            this.outstanding = outstanding;
+            this.operatingFunds = operatingFunds;
+            this.capital = capital;
+        }
+
+        public String getCurrency() {
+            return currency;
+        }
+
+        public int getAccounts() {
+            return balances.length;
+        }
+
+        public double getOperatingFunds() {
+            return operatingFunds;
+        }
+
+        public double getCapital() {
+            return capital;
+        }
+    }
+
+    /**
+     * A stress scenario over the horizon it projects.
+     */
+    public static final class Scenario {
+        private final String name;
+        private final double interestRate;
+        private final double defaultRate;
+        private final double lossGivenDefault;
+        private final double repaymentShare;
+        private final double withdrawalShare;
+        private final long seed; // Picks the defaulting borrowers
+
+        /**
+         * Creates a scenario. Shares are between 0 and 1.
+         *
+         * @param name             name of the scenario, also picks the
+         *                         defaulting borrowers
+         * @param interestRate     interest charged on the outstanding over the
+         *                         horizon, as a percentage
+         * @param defaultRate      share of borrowers that default regardless of
+         *                         the interest
+         * @param lossGivenDefault share of a defaulted outstanding that is lost
+         * @param repaymentShare   share of its outstanding a performing
+         *                         borrower repays over the horizon
+         * @param withdrawalShare  share of their balances depositors withdraw
+         */
+        public Scenario(String name, double interestRate, double defaultRate, double lossGivenDefault,
+                double repaymentShare, double withdrawalShare) {
+            if (interestRate < 0) {
+                throw new IllegalArgumentException("Interest rate must not be negative.");
+            }
+            checkShare(defaultRate, "Default rate");
+            checkShare(lossGivenDefault, "Loss given default");
+            checkShare(repaymentShare, "Repayment share");
+            checkShare(withdrawalShare, "Withdrawal share");
+            this.name = name;
+            this.interestRate = interestRate;
+            this.defaultRate = defaultRate;
+            this.lossGivenDefault = lossGivenDefault;
+            this.repaymentShare = repaymentShare;
+            this.withdrawalShare = withdrawalShare;
+            this.seed = name.hashCode() * 0x9E3779B97F4A7C15L;
+        }
+
+        private static void checkShare(double share, String what) {
+            if (!(share >= 0.0 && share <= 1.0)) {
+                throw new IllegalArgumentException(what + " must be between 0 and 1.");
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getInterestRate() {
+            return interestRate;
+        }
+
+        public double getDefaultRate() {
+            return defaultRate;
+        }
+
+        public double getLossGivenDefault() {
+            return lossGivenDefault;
+        }
+
+        public double getRepaymentShare() {
+            return repaymentShare;
+        }
+
+        public double getWithdrawalShare() {
+            return withdrawalShare;
+        }
+    }
+
+    /**
+     * The projection of one scenario.
+     */
+    public static final class Result {
+        private final Scenario scenario;
+        private final double operatingFunds; // Operating funds in the snapshot
+        private final double capital; // Capital in the snapshot
+        private final double[] totals;
+
+        Result(Scenario scenario, Snapshot snapshot, double[] totals) {
+            this.scenario = scenario;
+            this.operatingFunds = snapshot.operatingFunds;
+            this.capital = snapshot.capital;
+            this.totals = totals;
+        }
+
+        public Scenario getScenario() {
+            return scenario;
+        }
+
+        /**
+         * Retrieves the operating funds at the end of the horizon.
+         */
+        public double getProjectedOperatingFunds() {
+            return operatingFunds + totals[REPAYMENTS] - totals[WITHDRAWALS];
+        }
+
+        /**
+         * Retrieves how far the projected operating funds fall below zero, or
+         * zero if they do not.
+         */
+        public double getShortfall() {
+            return Math.max(0.0, -getProjectedOperatingFunds());
+        }
+
+        /**
+         * Retrieves the bank's capital at the end of the horizon, after the
+         * interest earned and the credit losses.
+         */
+        public double getProjectedCapital() {
+            return capital + totals[INTEREST] - totals[LOSSES];
+        }
+
+        public double getRepayments() {
+            return totals[REPAYMENTS];
+        }
+
+        public double getWithdrawals() {
+            return totals[WITHDRAWALS];
+        }
+
+        public double getInterestIncome() {
+            return totals[INTEREST];
+        }
+
+        public double getCreditLosses() {
+            return totals[LOSSES];
+        }
+
+        public long getDefaults() {
+            return (long) totals[DEFAULTS];
+        }
+
+        public long getBorrowers() {
+            return (long) totals[BORROWERS];
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: funds %.2f, shortfall %.2f, capital %.2f, %d of %d borrowers defaulted, "
+                    + "losses %.2f", scenario.name, getProjectedOperatingFunds(), getShortfall(),
+                    getProjectedCapital(), getDefaults(), getBorrowers(), getCreditLosses());
+        }
+    }
+}
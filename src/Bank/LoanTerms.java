@@ -0,0 +1,87 @@
+package Bank;
+
+import Bank.Outstanding.InadequateOutstandingAmountErrors;
+import Bank.Outstanding.OutstandingInterestError;
+
+/**
+ * The terms of an amortizing outstanding (Loan): principal, yearly interest
+ * rate, number of payments and how often they fall due.
+ */
+public final class LoanTerms {
+
+    /**
+     * How often a payment falls due.
+     */
+    public enum PaymentFrequency {
+        WEEKLY(52),
+        MONTHLY(12),
+        QUARTERLY(4),
+        ANNUALLY(1);
+
+        private final int periodsPerYear; // Number of payments in a year
+
+        PaymentFrequency(int periodsPerYear) {
+            this.periodsPerYear = periodsPerYear;
+        }
+
+        public int getPeriodsPerYear() {
+            return periodsPerYear;
+        }
+    }
+
+    private final double principal; // Amount lent
+    private final double annualRate; // Yearly interest rate as a percentage
+    private final int termPeriods; // Number of payments
+    private final PaymentFrequency frequency; // How often a payment falls due
+
+    /**
+     * Creates loan terms.
+     *
+     * @param principal   amount lent, must be positive
+     * @param annualRate  yearly interest rate as a percentage, between 0% and
+     *                    1000%
+     * @param termPeriods number of payments, must be positive
+     * @param frequency   how often a payment falls due
+     * @throws InadequateOutstandingAmountErrors if the principal is not positive
+     * @throws OutstandingInterestError          if the rate is out of range
+     */
+    public LoanTerms(double principal, double annualRate, int termPeriods, PaymentFrequency frequency)
+            throws InadequateOutstandingAmountErrors, OutstandingInterestError {
+        if (principal <= 0) {
+            throw new InadequateOutstandingAmountErrors(principal, "Principal must be positive.");
+        }
+        if (annualRate < 0 || annualRate > 1000) {
+            throw new OutstandingInterestError(annualRate, "Loan rate must be between 0% and 1000%");
+        }
+        if (termPeriods <= 0) {
+            throw new IllegalArgumentException("Loan term must have at least one payment.");
+        }
+        this.principal = principal;
+        this.annualRate = annualRate;
+        this.termPeriods = termPeriods;
+        this.frequency = frequency;
+    }
+
+    public double getPrincipal() {
+        return principal;
+    }
+
+    public double getAnnualRate() {
+        return annualRate;
+    }
+
+    public int getTermPeriods() {
+        return termPeriods;
+    }
+
+    public PaymentFrequency getFrequency() {
+        return frequency;
+    }
+
+    /**
+     * Returns the interest rate for one payment period as a fraction.
+     */
+    public double getPeriodicRate() {
+        return annualRate / 100 / frequency.getPeriodsPerYear();
+    }
+}
@@ -5,6 +5,7 @@ import Bank.BankApp.InadequateBankOperatingFundsErrors;
 public class Outstanding {
 
     private double outstandingBalance; // Tracks the current outstanding balance (Loan)
+    private AmortizationSchedule schedule; // Payment schedule when granted with loan terms, otherwise null
 
     /**
      * Constructor that initializes the outstanding balance to zero. (Loan)
@@ -37,6 +38,18 @@ public class Outstanding {
         System.out.println("Amount of " + amount + " added to outstanding balance.");
     }
 
+    /**
+     * Adds a granted amount to the outstanding balance. (Loan)
+     * The bank has already validated the amount and reserved the operating
+     * funds for it; only its sign is checked again, as a last guard.
+     */
+    void commitGrantedAmount(double amount) {
+        if (!(amount > 0)) {
+            throw new IllegalArgumentException("A granted amount must be positive: " + amount);
+        }
+        outstandingBalance += amount; // Increase the outstanding balance by the granted amount
+    }
+
     /**
      * This method allows the account owner to make a repayment on the outstanding
      * by reducing the outstanding balance.
@@ -105,9 +118,13 @@ public class Outstanding {
      *
      * @param interestRate the interest rate to apply (as a percentage).
      * @throws OutstandingInterestError if the interest rate is not within a valid
-     *                                  range
+     *                                  range, or the outstanding is repaid on a
+     *                                  schedule that charges its own interest
      */
     public void applyInterest(double interestRate) throws OutstandingInterestError {
+        if (hasActiveSchedule()) { // The schedule would keep charging on its own, lower balance
+            throw new OutstandingInterestError(interestRate, "Interest on a scheduled loan is charged by its schedule");
+        }
         // Check if the interest rate is within valid limits
         if (interestRate > 1000 || interestRate < -100) { // If the interest rate is out of bounds
             System.out.println("Invalid interest rate: " + interestRate);
@@ -130,6 +147,50 @@ public class Outstanding {
 
     }
 
+    /**
+     * Retrieves the payment schedule of the outstanding, or null if it was not
+     * granted with loan terms.
+     */
+    public AmortizationSchedule getSchedule() {
+        return schedule;
+    }
+
+    /**
+     * Returns true if repayments are applied against a payment schedule that is
+     * not paid off yet.
+     */
+    public boolean hasActiveSchedule() {
+        return schedule != null && !schedule.isPaidOff();
+    }
+
+    /**
+     * Attaches the payment schedule that later repayments are applied against.
+     */
+    public void attachSchedule(AmortizationSchedule schedule) {
+        this.schedule = schedule;
+    }
+
+    /**
+     * Applies a repayment against the payment schedule. (Loan)
+     * The interest due for the period is added to the outstanding balance and
+     * the repayment is then deducted from it. A repayment above the scheduled
+     * payment is a prepayment and re-amortizes the rest of the schedule.
+     *
+     * @return the interest charged for the period
+     * @throws InadequateOutstandingAmountErrors if the repayment does not cover
+     *                                           the interest due or exceeds the
+     *                                           balance owed
+     */
+    public double minusScheduledRepayment(double amount) throws InadequateOutstandingAmountErrors {
+        double interestCharged = schedule.recordPayment(amount); // Validates before changing the schedule
+        outstandingBalance += interestCharged - amount; // Charge the interest, then deduct the repayment
+        if (Math.abs(outstandingBalance) < 1e-6) {
+            outstandingBalance = 0.0; // Clear rounding left over from the interest calculation
+        }
+        System.out.println("New outstanding balance: " + outstandingBalance);
+        return interestCharged;
+    }
+
     /*
      * Sets the outstanding balance to a specified value.
      * This method allows for directly setting the outstanding balance to a specific
@@ -141,6 +202,10 @@ public class Outstanding {
 
     // Exception class for handling errors related to invalid outstanding amounts
     public static class InadequateOutstandingAmountErrors extends Exception {
+
+        private final double amount; // The outstanding amount that caused the error
+        private final String info; // Why the amount was refused
+
         /**
          * Constructor for InadequateOutstandingAmountErrors.
          * This error is thrown when a outstanding operation fails due to an invalid
@@ -153,10 +218,19 @@ public class Outstanding {
         public InadequateOutstandingAmountErrors(double amount, String info) {
             // Call the error class constructor with a custom error message
             super("Invalid outstanding amount: " + amount + ". Information " + info);
+            this.amount = amount;
+            this.info = info;
             // Print the error message to the console for debugging purposes
             System.out.println(getMessage());
         }
 
+        public double getAmount() {
+            return amount;
+        }
+
+        public String getInfo() {
+            return info;
+        }
     }
 
     // Error class for handling errors related to invalid interest rates
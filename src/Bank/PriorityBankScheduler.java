@@ -0,0 +1,419 @@
+package Bank;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import Bank.AsyncBankApp.BankOperation;
+import Bank.WorkloadGenerator.LatencyHistogram;
+
+/**
+ * Scheduler in front of a {@link BankApp} that keeps heavy work from delaying
+ * routine traffic.
+ *
+ * Operations are queued in one of three lanes: {@link Lane#RETAIL} for
+ * deposits and withdrawals, {@link Lane#LENDING} for outstanding grants and
+ * repayments (Loan), and {@link Lane#BATCH} for interest runs and other
+ * maintenance. A fixed set of worker threads takes the next operation with a
+ * smooth weighted round robin over the lanes that have work: with weights
+ * 8, 3 and 1 a busy retail lane gets 8 of every 12 dispatches, but a lane
+ * with work never waits more than one round. An idle lane's share goes to the
+ * others.
+ *
+ * Each lane has a bounded queue; an operation submitted to a full lane
+ * completes exceptionally with a {@link RejectedExecutionException}, the way
+ * {@link AsyncBankApp#withBoundedPool} does. Every lane reports its queue
+ * depth and the time its operations waited and took, see {@link LaneStats}.
+ *
+ * Like {@link AsyncBankApp}, each operation holds the bank's monitor while it
+ * runs, so an operation made of several bank calls happens as one. A worker
+ * takes its next operation only once it holds the monitor, so operations run
+ * in the order the round robin picks them, however many workers wait for the
+ * bank; the order is never left to which waiting thread gets the monitor.
+ */
+public class PriorityBankScheduler implements AutoCloseable {
+
+    /**
+     * The lanes operations are queued in.
+     */
+    public enum Lane {
+        RETAIL, // Deposits and withdrawals
+        LENDING, // Outstanding grants and repayments (Loan)
+        BATCH // Interest runs and maintenance
+    }
+
+    private final BankApp bank; // The bank the operations run against
+    private final int queueCapacity; // Largest number of operations waiting in one lane
+    private final ReentrantLock lock = new ReentrantLock(); // Guards the lanes and their metrics
+    private final Condition workAvailable = lock.newCondition();
+    private final Map<Lane, LaneState> lanes = new EnumMap<>(Lane.class);
+    private final List<Thread> workers = new ArrayList<>();
+    private int queued; // Operations waiting in every lane
+    private boolean closed;
+
+    /**
+     * Creates a scheduler with weights 8 for retail, 3 for lending and 1 for
+     * batch, and starts its workers.
+     *
+     * @param workers       number of worker threads
+     * @param queueCapacity largest number of operations waiting in one lane
+     */
+    public PriorityBankScheduler(BankApp bank, int workers, int queueCapacity) {
+        if (workers <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("Workers and queue capacity must be positive.");
+        }
+        this.bank = bank;
+        this.queueCapacity = queueCapacity;
+        lanes.put(Lane.RETAIL, new LaneState(8));
+        lanes.put(Lane.LENDING, new LaneState(3));
+        lanes.put(Lane.BATCH, new LaneState(1));
+        for (int i = 0; i < workers; i++) {
+            Thread worker = new Thread(this::work, "bank-lane-worker-" + i);
+            worker.setDaemon(true);
+            this.workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Sets the share of dispatches a lane gets while it has work, relative to
+     * the weights of the other lanes with work.
+     */
+    public void setWeight(Lane lane, int weight) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("Lane weight must be positive.");
+        }
+        lock.lock();
+        try {
+            lanes.get(lane).weight = weight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deposits into an account on the retail lane. See {@link BankApp#deposit}.
+     */
+    public CompletableFuture<Void> deposit(String accountOwner, double amount) {
+        return submit(Lane.RETAIL, b -> {
+            b.deposit(accountOwner, amount);
+            return null;
+        });
+    }
+
+    /**
+     * Withdraws from an account on the retail lane. See {@link BankApp#withdraw}.
+     */
+    public CompletableFuture<Void> withdraw(String accountOwner, double amount) {
+        return submit(Lane.RETAIL, b -> {
+            b.withdraw(accountOwner, amount);
+            return null;
+        });
+    }
+
+    /**
+     * Grants an outstanding (Loan) on the lending lane. See
+     * {@link BankApp#grantOutstanding(String, double)}.
+     */
+    public CompletableFuture<Void> grantOutstanding(String accountOwner, double outstandingAmount) {
+        return submit(Lane.LENDING, b -> {
+            b.grantOutstanding(accountOwner, outstandingAmount);
+            return null;
+        });
+    }
+
+    /**
+     * Repays an outstanding (Loan) on the lending lane. See
+     * {@link BankApp#repayOutstanding}.
+     */
+    public CompletableFuture<Void> repayOutstanding(String accountOwner, double repaymentAmount) {
+        return submit(Lane.LENDING, b -> {
+            b.repayOutstanding(accountOwner, repaymentAmount);
+            return null;
+        });
+    }
+
+    /**
+     * Applies interest to an outstanding (Loan) on the batch lane. See
+     * {@link BankApp#applyInterest}.
+     */
+    public CompletableFuture<Void> applyInterest(String accountOwner, double interestRate) {
+        return submit(Lane.BATCH, b -> {
+            b.applyInterest(accountOwner, interestRate);
+            return null;
+        });
+    }
+
+    /**
+     * Queues an operation in a lane.
+     *
+     * @return a future completed with the operation's result or error, or with
+     *         a {@link RejectedExecutionException} if the lane is full or the
+     *         scheduler is closed
+     */
+    public <T> CompletableFuture<T> submit(Lane lane, BankOperation<T> operation) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        lock.lock();
+        try {
+            LaneState state = lanes.get(lane);
+            if (closed || state.queue.size() >= queueCapacity) {
+                state.rejected++;
+                result.completeExceptionally(new RejectedExecutionException(
+                        closed ? "Scheduler is closed." : "The " + lane.name().toLowerCase() + " lane is full."));
+                return result;
+            }
+            state.queue.add(new Task<>(lane, operation, result, System.nanoTime()));
+            state.maximumDepth = Math.max(state.maximumDepth, state.queue.size());
+            queued++;
+            workAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Retrieves the number of operations waiting in a lane.
+     */
+    public int getQueueDepth(Lane lane) {
+        lock.lock();
+        try {
+            return lanes.get(lane).queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves a snapshot of a lane's metrics.
+     */
+    public LaneStats getStats(Lane lane) {
+        lock.lock();
+        try {
+            LaneState state = lanes.get(lane);
+            return new LaneStats(lane, state.queue.size(), state.maximumDepth, state.completed, state.rejected,
+                    state.waits.percentile(50), state.waits.percentile(99), state.latencies.percentile(50),
+                    state.latencies.percentile(99), state.latencies.getMaximum());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting operations, lets the workers finish the ones already
+     * queued and waits for them. If the caller is interrupted it stops
+     * waiting, the workers still finish the queue, and its interrupt flag is
+     * set again.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void work() {
+        while (true) {
+            lock.lock();
+            try {
+                while (queued == 0 && !closed) {
+                    workAvailable.awaitUninterruptibly();
+                }
+                if (queued == 0) {
+                    return; // Closed and drained
+                }
+            } finally {
+                lock.unlock();
+            }
+            Task<?> task;
+            long started;
+            synchronized (bank) { // Pick the next operation only once it can run
+                lock.lock();
+                try {
+                    if (queued == 0) {
+                        continue; // Another worker took it
+                    }
+                    task = next();
+                } finally {
+                    lock.unlock();
+                }
+                started = System.nanoTime();
+                task.run(bank);
+            }
+            long finished = System.nanoTime();
+            lock.lock();
+            try {
+                LaneState state = lanes.get(task.lane);
+                state.completed++;
+                state.waits.record(started - task.queuedAt);
+                state.latencies.record(finished - task.queuedAt);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Smooth weighted round robin over the lanes with work: every such lane
+    // gains its weight, the richest is picked and pays back the total weight
+    private Task<?> next() {
+        LaneState chosen = null;
+        int total = 0;
+        for (LaneState state : lanes.values()) {
+            if (!state.queue.isEmpty()) {
+                state.current += state.weight;
+                total += state.weight;
+                if (chosen == null || state.current > chosen.current) {
+                    chosen = state;
+                }
+            }
+        }
+        chosen.current -= total;
+        queued--;
+        return chosen.queue.poll();
+    }
+
+    /**
+     * Queue, weight and metrics of one lane.
+     */
+    private static final class LaneState {
+        final ArrayDeque<Task<?>> queue = new ArrayDeque<>();
+        final LatencyHistogram waits = new LatencyHistogram(); // Time from queued to started
+        final LatencyHistogram latencies = new LatencyHistogram(); // Time from queued to finished
+        int weight;
+        int current; // Round robin credit
+        int maximumDepth;
+        long completed;
+        long rejected;
+
+        LaneState(int weight) {
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * A queued operation and the future it completes.
+     */
+    private static final class Task<T> {
+        final Lane lane;
+        final BankOperation<T> operation;
+        final CompletableFuture<T> result;
+        final long queuedAt;
+
+        Task(Lane lane, BankOperation<T> operation, CompletableFuture<T> result, long queuedAt) {
+            this.lane = lane;
+            this.operation = operation;
+            this.result = result;
+            this.queuedAt = queuedAt;
+        }
+
+        // Called with the bank's monitor held
+        void run(BankApp bank) {
+            try {
+                result.complete(operation.apply(bank));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Metrics of one lane at the time they were taken. Times are in
+     * nanoseconds and measured from the moment the operation was queued.
+     */
+    public static final class LaneStats {
+        private final Lane lane;
+        private final int queueDepth;
+        private final int maximumQueueDepth;
+        private final long completed;
+        private final long rejected;
+        private final long medianWait;
+        private final long p99Wait;
+        private final long medianLatency;
+        private final long p99Latency;
+        private final long maximumLatency;
+
+        LaneStats(Lane lane, int queueDepth, int maximumQueueDepth, long completed, long rejected, long medianWait,
+                long p99Wait, long medianLatency, long p99Latency, long maximumLatency) {
+            this.lane = lane;
+            this.queueDepth = queueDepth;
+            this.maximumQueueDepth = maximumQueueDepth;
+            this.completed = completed;
+            this.rejected = rejected;
+            this.medianWait = medianWait;
+            this.p99Wait = p99Wait;
+            this.medianLatency = medianLatency;
+            this.p99Latency = p99Latency;
+            this.maximumLatency = maximumLatency;
+        }
+
+        public Lane getLane() {
+            return lane;
+        }
+
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        public int getMaximumQueueDepth() {
+            return maximumQueueDepth;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * Retrieves the median time operations waited in the queue.
+         */
+        public long getMedianWait() {
+            return medianWait;
+        }
+
+        public long getP99Wait() {
+            return p99Wait;
+        }
+
+        /**
+         * Retrieves the median time from queued to finished.
+         */
+        public long getMedianLatency() {
+            return medianLatency;
+        }
+
+        public long getP99Latency() {
+            return p99Latency;
+        }
+
+        public long getMaximumLatency() {
+            return maximumLatency;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: depth %d (max %d), %d done, %d rejected, wait p50 %.1f us p99 %.1f us, "
+                    + "latency p50 %.1f us p99 %.1f us", lane.name().toLowerCase(), queueDepth, maximumQueueDepth,
+                    completed, rejected, medianWait / 1e3, p99Wait / 1e3, medianLatency / 1e3, p99Latency / 1e3);
+        }
+    }
+}
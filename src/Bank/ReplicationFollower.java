@@ -0,0 +1,291 @@
+package Bank;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import Bank.BankApp.AccountImage;
+import Bank.ChangeDataCaptureLog.Record;
+
+/**
+ * Follower side of hot-standby replication by log shipping.
+ *
+ * The follower connects to a {@link ReplicationLeader}, loads the leader's
+ * snapshot into its own empty {@link BankApp}, and then applies every shipped
+ * change in order. Each change is published again to the follower bank's own
+ * listeners with the leader's sequence number, so a journal or a checkpointer
+ * registered on the follower keeps working after a promotion. After each
+ * batch the follower acknowledges the last change it applied. A follower that
+ * falls too far behind is sent a new snapshot, which replaces its state.
+ *
+ * The follower bank must not be changed directly until it is promoted. Call
+ * {@link #promote(long, Duration)} to take over from the leader: it waits for
+ * the follower to catch up to the given lag, stops replicating and hands the
+ * bank over for writes.
+ */
+public class ReplicationFollower implements AutoCloseable {
+
+    private final BankApp bank; // The standby bank the changes are applied to
+    private final Socket socket; // Connection to the leader
+    private final Thread receiver; // Applies the leader's frames
+
+    private final Object progressLock = new Object(); // Guards waits on the applied sequence
+    private volatile long appliedSequence; // Last change applied to the follower bank
+    private volatile long leaderSequence; // Last change committed by the leader, as last reported
+    private volatile long lastContactMillis; // Time the last frame was received
+    private volatile boolean snapshotLoaded;
+    private volatile boolean connected = true;
+    private volatile boolean promoted;
+
+    /**
+     * Connects to a leader and starts applying its changes.
+     *
+     * @param bank   an empty bank that becomes the standby
+     * @param leader address the leader listens on
+     */
+    public ReplicationFollower(BankApp bank, InetSocketAddress leader) throws IOException {
+        if (bank.getAccountCount() > 0) {
+            throw new IllegalArgumentException("A follower starts from an empty bank.");
+        }
+        this.bank = bank;
+        this.socket = new Socket();
+        socket.connect(leader);
+        socket.setTcpNoDelay(true);
+        this.receiver = new Thread(this::receive, "replication-follower");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    /**
+     * Retrieves the standby bank.
+     */
+    public BankApp getBank() {
+        return bank;
+    }
+
+    /**
+     * Retrieves the sequence number of the last change applied to the follower
+     * bank.
+     */
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    /**
+     * Retrieves the number of changes the leader committed that the follower
+     * has not applied, as far as the follower knows.
+     */
+    public long getLag() {
+        return Math.max(0, leaderSequence - appliedSequence);
+    }
+
+    /**
+     * Retrieves the time since the last frame was received from the leader.
+     */
+    public Duration getTimeSinceContact() {
+        return Duration.ofMillis(System.currentTimeMillis() - lastContactMillis);
+    }
+
+    /**
+     * Returns true while the connection to the leader is open.
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Returns true once the follower has been promoted.
+     */
+    public boolean isPromoted() {
+        return promoted;
+    }
+
+    /**
+     * Waits until a change has been applied to the follower bank.
+     *
+     * @return true if the change was applied within the timeout
+     */
+    public boolean awaitApplied(long sequence, Duration timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout.toMillis();
+        synchronized (progressLock) {
+            while (!snapshotLoaded || appliedSequence < sequence) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                progressLock.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Promotes the follower so its bank can take over from the leader.
+     * The follower keeps applying changes for up to the catch-up time while its
+     * lag is above the maximum, then stops replicating. If the leader is gone,
+     * the lag is measured against the last sequence number it reported.
+     *
+     * @param maxLag       largest number of the leader's changes that may be
+     *                     missing from the promoted bank
+     * @param catchUpTime  longest time to wait for the lag to shrink
+     * @return the promoted bank
+     * @throws ReplicationLagErrors if the lag is still above the maximum, in
+     *                              which case the follower keeps replicating
+     */
+    public BankApp promote(long maxLag, Duration catchUpTime) throws ReplicationLagErrors, InterruptedException {
+        long deadline = System.currentTimeMillis() + catchUpTime.toMillis();
+        synchronized (progressLock) {
+            while ((!snapshotLoaded || getLag() > maxLag) && connected) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
+                progressLock.wait(remaining);
+            }
+        }
+        if (!snapshotLoaded) {
+            throw new ReplicationLagErrors("no snapshot has been received from the leader");
+        }
+        long lag = getLag();
+        if (lag > maxLag) {
+            throw new ReplicationLagErrors(lag + " changes behind the leader, at most " + maxLag + " allowed");
+        }
+        close();
+        promoted = true;
+        System.out.println("Follower promoted at change " + appliedSequence + " with a lag of " + lag + ".");
+        return bank;
+    }
+
+    /**
+     * Disconnects from the leader and waits for the last frame to be applied.
+     */
+    @Override
+    public void close() {
+        try {
+            socket.close();
+            receiver.join();
+        } catch (IOException e) {
+            // Closing an already broken connection
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Apply the leader's frames until the connection ends
+    private void receive() {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            while (true) {
+                byte frame = in.readByte();
+                lastContactMillis = System.currentTimeMillis();
+                switch (frame) {
+                    case ReplicationLeader.SNAPSHOT:
+                        loadSnapshot(in);
+                        break;
+                    case ReplicationLeader.BATCH:
+                        applyBatch(in);
+                        break;
+                    case ReplicationLeader.HEARTBEAT:
+                        leaderSequence = Math.max(leaderSequence, in.readLong());
+                        signalProgress();
+                        continue; // Nothing to acknowledge
+                    default:
+                        throw new IOException("Unknown replication frame " + frame);
+                }
+                out.writeLong(appliedSequence);
+                out.flush();
+            }
+        } catch (IOException e) {
+            if (!socket.isClosed()) {
+                System.out.println("Replication from the leader stopped: " + e.getMessage());
+            }
+        } finally {
+            connected = false;
+            signalProgress();
+        }
+    }
+
+    private void loadSnapshot(DataInputStream in) throws IOException {
+        long sequence = in.readLong();
+        Map<String, Double> capital = new LinkedHashMap<>();
+        int currencies = in.readInt();
+        for (int i = 0; i < currencies; i++) {
+            capital.put(in.readUTF(), in.readDouble());
+        }
+        int count = in.readInt();
+        Map<String, AccountImage> accounts = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            String owner = in.readUTF();
+            String currency = in.readUTF();
+            double balance = in.readDouble();
+            double outstanding = in.readDouble();
+            byte[] schedule = null;
+            int length = in.readInt();
+            if (length >= 0) {
+                schedule = new byte[length];
+                in.readFully(schedule);
+            }
+            accounts.put(owner, new AccountImage(currency, balance, outstanding, schedule));
+        }
+        if (snapshotLoaded) {
+            bank.reload(accounts, capital, sequence); // The leader dropped changes this follower had not received
+        } else {
+            bank.restore(accounts, capital, sequence);
+        }
+        appliedSequence = sequence;
+        leaderSequence = Math.max(leaderSequence, sequence);
+        snapshotLoaded = true;
+        signalProgress();
+    }
+
+    private void applyBatch(DataInputStream in) throws IOException {
+        leaderSequence = Math.max(leaderSequence, in.readLong());
+        int count = in.readInt();
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        for (int i = 0; i < count; i++) {
+            int length = ChangeEventCodec.HEADER_BYTES + ChangeEventCodec.bodyLength(buffer);
+            ByteBuffer slice = buffer.duplicate();
+            slice.limit(buffer.position() + length);
+            Record record = ChangeEventCodec.decode(slice);
+            if (record == null) {
+                throw new IOException("Damaged change in a replication batch.");
+            }
+            bank.applyReplicatedChange(record.getEvent());
+            appliedSequence = record.getEvent().getSequence();
+            buffer.position(buffer.position() + length);
+        }
+        signalProgress();
+    }
+
+    private void signalProgress() {
+        synchronized (progressLock) {
+            progressLock.notifyAll();
+        }
+    }
+
+    // Custom error class for promotions refused because the follower is too far
+    // behind the leader
+    public static class ReplicationLagErrors extends Exception {
+        /**
+         * Constructor for ReplicationLagErrors.
+         * This error is thrown when a follower cannot be promoted within the
+         * allowed lag.
+         *
+         * @param info the reason the promotion was refused
+         */
+        public ReplicationLagErrors(String info) {
+            super("Follower cannot be promoted: " + info + ".");
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package Bank;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Leader side of hot-standby replication by log shipping.
+ *
+ * Register the leader as a {@link BalanceChangeListener} on the bank that
+ * serves clients. It listens on a local socket for one
+ * {@link ReplicationFollower}. When a follower connects, the leader sends it a
+ * snapshot of every account and then streams every committed change in order.
+ * Changes are sent in batches of up to the batch size, encoded with
+ * {@link ChangeEventCodec}, and the leader keeps sending while earlier
+ * batches are still being applied: the follower acknowledges the last change
+ * it applied on its own, and the acknowledgements are read on a separate
+ * thread. When there is nothing to send, a heartbeat carries the leader's
+ * latest sequence number so the follower always knows its lag.
+ *
+ * Run client operations through {@link #execute(AsyncBankApp.BankOperation)}
+ * to choose when the client gets its reply. In {@link AckMode#ASYNC} mode the
+ * reply is given as soon as the bank committed the change. In
+ * {@link AckMode#SYNC} mode the reply waits until the follower acknowledged
+ * the change, without holding the bank's monitor, so the changes of other
+ * clients keep flowing into the same batches.
+ *
+ * Only one follower is served at a time; a new connection replaces the
+ * previous one and starts again from a snapshot. Changes wait for the
+ * follower in a queue of bounded capacity. When a slow follower lets the
+ * queue fill up, the queued changes are dropped and the follower is sent a
+ * new snapshot on the same connection, which it loads in place of its state.
+ *
+ * Snapshots and change events carry the payment schedule of every loan
+ * granted with {@link LoanTerms}, in the form written by {@link AccountCodec},
+ * so the follower applies repayments against the same schedule and a
+ * promoted follower keeps charging the same interest.
+ */
+public class ReplicationLeader implements BalanceChangeListener, AutoCloseable {
+
+    /**
+     * When a client operation gets its reply.
+     */
+    public enum AckMode {
+        ASYNC, // Reply once the leader committed the change
+        SYNC // Reply once the follower acknowledged the change
+    }
+
+    // Frame types on the wire
+    static final byte SNAPSHOT = 1;
+    static final byte BATCH = 2;
+    static final byte HEARTBEAT = 3;
+
+    static final int DEFAULT_QUEUE_CAPACITY = 65536; // Changes queued for a follower before it is sent a snapshot
+
+    private final BankApp bank; // The bank whose changes are shipped
+    private final ServerSocket server; // Accepts the follower connection
+    private final AckMode ackMode; // When execute() replies
+    private final int batchSize; // Largest number of changes per batch
+    private final long heartbeatMillis; // Longest time without a frame to the follower
+    private final Duration syncTimeout; // Longest wait for an acknowledgement in SYNC mode
+    private final Thread acceptor; // Accepts followers and sends frames to them
+
+    private final LinkedBlockingQueue<BalanceChangeEvent> outbound; // Changes not yet sent, bounded
+    private final ThreadLocal<long[]> lastCommitted = ThreadLocal.withInitial(() -> new long[1]);
+    private final Object ackLock = new Object(); // Guards acknowledgedSequence waits
+    private volatile long acknowledgedSequence; // Last change the follower applied
+    private volatile long publishedSequence; // Last change committed by the bank
+    private volatile boolean streaming; // True while a follower receives changes
+    private volatile boolean overflowed; // True once the queue filled up, until the next snapshot
+    private volatile long snapshots; // Number of snapshots sent to followers
+    private volatile Socket follower; // The connected follower, or null
+    private volatile boolean closed;
+
+    /**
+     * Starts listening for a follower on the loopback interface.
+     *
+     * @param bank              the bank whose changes are shipped, the leader
+     *                          registers itself as its listener
+     * @param port              local port to listen on, 0 for any free port
+     * @param ackMode           when execute() replies
+     * @param batchSize         largest number of changes sent together
+     * @param heartbeatInterval longest time without a frame to the follower
+     * @param syncTimeout       longest wait for an acknowledgement in SYNC mode
+     */
+    public ReplicationLeader(BankApp bank, int port, AckMode ackMode, int batchSize, Duration heartbeatInterval,
+            Duration syncTimeout) throws IOException {
+        this(bank, port, ackMode, batchSize, heartbeatInterval, syncTimeout, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Starts listening for a follower on the loopback interface, queueing at
+     * most the given number of changes for it.
+     *
+     * @param queueCapacity largest number of changes waiting to be sent before
+     *                      the follower is sent a new snapshot instead
+     */
+    public ReplicationLeader(BankApp bank, int port, AckMode ackMode, int batchSize, Duration heartbeatInterval,
+            Duration syncTimeout, int queueCapacity) throws IOException {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive.");
+        }
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive.");
+        }
+        this.bank = bank;
+        this.outbound = new LinkedBlockingQueue<>(queueCapacity);
+        this.ackMode = ackMode;
+        this.batchSize = batchSize;
+        this.heartbeatMillis = Math.max(1, heartbeatInterval.toMillis());
+        this.syncTimeout = syncTimeout;
+        this.server = new ServerSocket();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        synchronized (bank) {
+            publishedSequence = bank.getBalanceChangeSequence();
+            bank.addBalanceChangeListener(this);
+        }
+        this.acceptor = new Thread(this::serve, "replication-leader");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Queues a committed change for the follower. Called by the bank.
+     */
+    @Override
+    public void onBalanceChange(BalanceChangeEvent event) {
+        publishedSequence = event.getSequence();
+        lastCommitted.get()[0] = event.getSequence();
+        if (streaming && !outbound.offer(event)) {
+            streaming = false; // Stop queueing, the sender falls back to a snapshot
+            overflowed = true;
+        }
+    }
+
+    /**
+     * Runs an operation against the bank and returns once it may be replied
+     * to, as chosen by the acknowledgement mode.
+     *
+     * @throws ReplicationTimeoutErrors in SYNC mode, if the follower did not
+     *                                  acknowledge the change in time, also
+     *                                  when no follower is connected; the
+     *                                  change is committed on the leader
+     */
+    public <T> T execute(AsyncBankApp.BankOperation<T> operation) throws Exception {
+        long[] committed = lastCommitted.get();
+        committed[0] = 0;
+        T result = operation.apply(bank);
+        if (ackMode == AckMode.SYNC && committed[0] > 0 && !awaitAcknowledged(committed[0], syncTimeout)) {
+            throw new ReplicationTimeoutErrors(committed[0], syncTimeout);
+        }
+        return result;
+    }
+
+    /**
+     * Waits until the follower acknowledged a change.
+     *
+     * @return true if the change was acknowledged within the timeout
+     */
+    public boolean awaitAcknowledged(long sequence, Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (ackLock) {
+            while (acknowledgedSequence < sequence) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    return false;
+                }
+                ackLock.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Retrieves the port the leader listens on.
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Retrieves the sequence number of the last change the follower applied.
+     */
+    public long getAcknowledgedSequence() {
+        return acknowledgedSequence;
+    }
+
+    /**
+     * Retrieves the sequence number of the last change committed by the bank.
+     */
+    public long getCommittedSequence() {
+        return publishedSequence;
+    }
+
+    /**
+     * Retrieves the number of committed changes the follower has not
+     * acknowledged yet, or -1 if no follower is connected.
+     */
+    public long getLag() {
+        return streaming ? publishedSequence - acknowledgedSequence : -1;
+    }
+
+    /**
+     * Returns true while a follower is connected and receiving changes.
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * Retrieves the number of snapshots sent to followers, one per connection
+     * and one more each time a follower fell too far behind.
+     */
+    public long getSnapshotCount() {
+        return snapshots;
+    }
+
+    /**
+     * Stops shipping changes and disconnects the follower.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        bank.removeBalanceChangeListener(this);
+        server.close();
+        Socket socket = follower;
+        if (socket != null) {
+            socket.close();
+        }
+        acceptor.interrupt();
+    }
+
+    // Accept followers one after the other and stream to each until it disconnects
+    private void serve() {
+        while (!closed) {
+            try (Socket socket = server.accept()) {
+                socket.setTcpNoDelay(true);
+                follower = socket;
+                stream(socket);
+            } catch (IOException e) {
+                if (!closed) {
+                    System.out.println("Replication follower disconnected: " + e.getMessage());
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                streaming = false;
+                overflowed = false;
+                follower = null;
+                outbound.clear();
+            }
+        }
+    }
+
+    private void stream(Socket socket) throws IOException, InterruptedException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+        sendSnapshot(out);
+
+        Thread acknowledgements = new Thread(() -> readAcknowledgements(in), "replication-acks");
+        acknowledgements.setDaemon(true);
+        acknowledgements.start();
+
+        List<BalanceChangeEvent> batch = new ArrayList<>(batchSize);
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        while (!closed && !socket.isClosed() && acknowledgements.isAlive()) {
+            if (overflowed) {
+                sendSnapshot(out); // Queued changes were dropped
+                continue;
+            }
+            BalanceChangeEvent first = outbound.poll(heartbeatMillis, TimeUnit.MILLISECONDS);
+            if (first == null) {
+                out.writeByte(HEARTBEAT);
+                out.writeLong(publishedSequence);
+                out.flush();
+                continue;
+            }
+            batch.add(first);
+            outbound.drainTo(batch, batchSize - 1);
+            buffer.clear();
+            for (BalanceChangeEvent event : batch) {
+                int size = ChangeEventCodec.encodedSize(event);
+                if (buffer.remaining() < size) {
+                    ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + size));
+                    buffer.flip();
+                    larger.put(buffer);
+                    buffer = larger;
+                }
+                ChangeEventCodec.encode(event.getSequence(), event, buffer);
+            }
+            out.writeByte(BATCH);
+            out.writeLong(publishedSequence);
+            out.writeInt(batch.size());
+            out.writeInt(buffer.position());
+            out.write(buffer.array(), 0, buffer.position());
+            out.flush();
+            batch.clear();
+        }
+    }
+
+    // Send every account and start queueing at the same point in the change order
+    private void sendSnapshot(DataOutputStream out) throws IOException {
+        List<BankAccount> accounts;
+        List<double[]> images = new ArrayList<>();
+        List<byte[]> schedules = new ArrayList<>(); // Encoded schedule per account, null without one
+        Map<String, Double> capital = new LinkedHashMap<>();
+        long sequence;
+        synchronized (bank) {
+            accounts = bank.getBankAccountOwners();
+            for (BankAccount account : accounts) {
+                images.add(new double[] { account.getCurrentBalance(), account.getCurrentOutstandingBalance() });
+                schedules.add(account.encodedSchedule());
+            }
+            for (String currency : bank.getCurrencies()) {
+                capital.put(currency, bank.getBankCapital(currency));
+            }
+            sequence = bank.getBalanceChangeSequence();
+            outbound.clear();
+            overflowed = false;
+            streaming = true;
+        }
+        out.writeByte(SNAPSHOT);
+        out.writeLong(sequence);
+        out.writeInt(capital.size());
+        for (Map.Entry<String, Double> entry : capital.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeDouble(entry.getValue());
+        }
+        out.writeInt(accounts.size());
+        for (int i = 0; i < accounts.size(); i++) {
+            out.writeUTF(accounts.get(i).getAccountOwner());
+            out.writeUTF(accounts.get(i).getCurrency());
+            out.writeDouble(images.get(i)[0]);
+            out.writeDouble(images.get(i)[1]);
+            byte[] schedule = schedules.get(i);
+            out.writeInt(schedule == null ? -1 : schedule.length); // -1 without a schedule
+            if (schedule != null) {
+                out.write(schedule);
+            }
+        }
+        out.flush();
+        snapshots++;
+    }
+
+    // Read the follower's acknowledgements until the connection ends
+    private void readAcknowledgements(DataInputStream in) {
+        try {
+            while (true) {
+                long applied = in.readLong();
+                synchronized (ackLock) {
+                    if (applied > acknowledgedSequence) {
+                        acknowledgedSequence = applied;
+                        ackLock.notifyAll();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            streaming = false; // The sender stops at its next frame
+        }
+    }
+
+    // Custom error class for replies whose change the follower did not acknowledge
+    // in time
+    public static class ReplicationTimeoutErrors extends Exception {
+        /**
+         * Constructor for ReplicationTimeoutErrors.
+         * This error is thrown in SYNC mode when the follower did not acknowledge
+         * a change before the timeout. The change is committed on the leader.
+         *
+         * @param sequence the sequence number of the change
+         * @param timeout  the time waited for the acknowledgement
+         */
+        public ReplicationTimeoutErrors(long sequence, Duration timeout) {
+            super("Change " + sequence + " was not acknowledged by the follower within " + timeout.toMillis()
+                    + " ms.");
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package Bank;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Amount rules checked before deposits, withdrawals and outstanding (Loan)
+ * grants.
+ *
+ * Rules are declared one per line, in the order they are checked:
+ *
+ * <pre>
+ * # operation  rule      condition        : message
+ * deposit      positive  amount &gt; 0       : Amount must be positive.
+ * deposit      limit     amount &lt;= limit  : Deposit amount exceeds the limit.
+ * </pre>
+ *
+ * Rules can only tighten what the bank accepts: it refuses an amount that is
+ * not positive before any rule is checked, so a rule set without the
+ * {@code positive} rules cannot let a negative amount mint money. That refusal
+ * is counted against the operation's rule named {@code positive}, or, in a
+ * set without one, in {@link #getUnruledRefusals(Operation)}.
+ *
+ * The operation is deposit, withdraw or outstanding. A condition compares the
+ * amount with a number or with {@code limit}, the bank's current maximum for
+ * the operation, using one of {@code > >= < <=}. The message of the first rule
+ * whose condition does not hold becomes the information of the error thrown.
+ *
+ * A rule set is compiled once into flat arrays per operation, so checking an
+ * amount is a loop over primitives without any parsing or allocation. Rule
+ * sets are immutable; to change the policy, load a new one and hand it to
+ * {@link BankApp#setValidationRules(ValidationRules)}, which swaps it in
+ * atomically. Every rule counts the amounts it rejected.
+ */
+public final class ValidationRules {
+
+    /**
+     * The operations that have amount rules.
+     */
+    public enum Operation {
+        DEPOSIT,
+        WITHDRAW,
+        OUTSTANDING
+    }
+
+    // Comparison codes of a compiled condition
+    private static final byte GREATER = 0;
+    private static final byte GREATER_OR_EQUAL = 1;
+    private static final byte LESS = 2;
+    private static final byte LESS_OR_EQUAL = 3;
+
+    // The rules the bank has always applied, with the same messages
+    private static final String DEFAULT_RULES = String.join("\n",
+            "deposit      positive  amount > 0       : Amount must be positive.",
+            "deposit      limit     amount <= limit  : Deposit amount exceeds the limit.",
+            "withdraw     positive  amount > 0       : Amount must be positive.",
+            "withdraw     limit     amount <= limit  : Withdrawal amount exceeds the limit.",
+            "outstanding  positive  amount > 0       : Amount must be positive.",
+            "outstanding  limit     amount <= limit  : Outstanding amount exceeds the limit.");
+
+    private final Chain[] chains; // Compiled rules per operation, indexed by ordinal
+    private final List<Rule> rules; // Every rule, in declaration order
+    private final LongAdder[] unruledRefusals; // Non-positive amounts refused without a positive rule, per operation
+
+    private ValidationRules(Chain[] chains, List<Rule> rules) {
+        this.chains = chains;
+        this.rules = Collections.unmodifiableList(rules);
+        this.unruledRefusals = new LongAdder[chains.length];
+        for (int i = 0; i < chains.length; i++) {
+            unruledRefusals[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Returns the rules the bank starts with: every amount must be positive and
+     * within the bank's limit for the operation. Each call compiles a new set
+     * with its own counters.
+     */
+    public static ValidationRules defaults() {
+        return parse(DEFAULT_RULES);
+    }
+
+    /**
+     * Reads and compiles a rule file.
+     *
+     * @throws IllegalArgumentException if a line is not a valid rule
+     */
+    public static ValidationRules load(Path file) throws IOException {
+        return parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Compiles rules given as text, in the same format as a rule file.
+     *
+     * @throws IllegalArgumentException if a line is not a valid rule
+     */
+    public static ValidationRules parse(String text) {
+        List<List<Rule>> perOperation = new ArrayList<>();
+        for (int i = 0; i < Operation.values().length; i++) {
+            perOperation.add(new ArrayList<>());
+        }
+        List<Rule> all = new ArrayList<>();
+        String[] lines = text.split("\r?\n");
+        for (int number = 1; number <= lines.length; number++) {
+            String line = lines[number - 1].trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            Rule rule = parseRule(line, number);
+            perOperation.get(rule.operation.ordinal()).add(rule);
+            all.add(rule);
+        }
+        Chain[] chains = new Chain[perOperation.size()];
+        for (int i = 0; i < chains.length; i++) {
+            chains[i] = new Chain(perOperation.get(i));
+        }
+        return new ValidationRules(chains, all);
+    }
+
+    /**
+     * Checks an amount against the rules of an operation.
+     *
+     * @param limit the bank's current maximum for the operation
+     * @return the first rule that rejects the amount, or null if it is valid
+     */
+    public Rule check(Operation operation, double amount, double limit) {
+        return chains[operation.ordinal()].check(amount, limit);
+    }
+
+    /**
+     * Counts an amount the bank refused for not being positive, before the
+     * rules were checked, against the operation's first rule named
+     * {@code positive}.
+     *
+     * @return that rule, or null if the operation has none and the refusal was
+     *         counted in {@link #getUnruledRefusals(Operation)}
+     */
+    public Rule refuseNonPositive(Operation operation) {
+        Rule positive = chains[operation.ordinal()].positive;
+        if (positive == null) {
+            unruledRefusals[operation.ordinal()].increment();
+        } else {
+            positive.hits.increment();
+        }
+        return positive;
+    }
+
+    /**
+     * Retrieves the number of non-positive amounts of an operation refused
+     * while the rule set had no {@code positive} rule for it.
+     */
+    public long getUnruledRefusals(Operation operation) {
+        return unruledRefusals[operation.ordinal()].sum();
+    }
+
+    /**
+     * Retrieves every rule, in the order they were declared.
+     */
+    public List<Rule> getRules() {
+        return rules;
+    }
+
+    // Parse "operation name condition : message"
+    private static Rule parseRule(String line, int number) {
+        int colon = line.indexOf(':');
+        if (colon < 0) {
+            throw invalid(number, "missing ':' before the message");
+        }
+        String message = line.substring(colon + 1).trim();
+        String[] parts = line.substring(0, colon).trim().split("\\s+");
+        if (parts.length != 5 || !parts[2].equals("amount")) {
+            throw invalid(number, "expected '<operation> <rule> amount <comparison> <bound>'");
+        }
+        Operation operation;
+        try {
+            operation = Operation.valueOf(parts[0].toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw invalid(number, "unknown operation '" + parts[0] + "'");
+        }
+        byte comparison;
+        switch (parts[3]) {
+            case ">":
+                comparison = GREATER;
+                break;
+            case ">=":
+                comparison = GREATER_OR_EQUAL;
+                break;
+            case "<":
+                comparison = LESS;
+                break;
+            case "<=":
+                comparison = LESS_OR_EQUAL;
+                break;
+            default:
+                throw invalid(number, "unknown comparison '" + parts[3] + "'");
+        }
+        boolean usesLimit = parts[4].equals("limit");
+        double bound = 0.0;
+        if (!usesLimit) {
+            try {
+                bound = Double.parseDouble(parts[4]);
+            } catch (NumberFormatException e) {
+                throw invalid(number, "bound must be a number or 'limit'");
+            }
+        }
+        return new Rule(operation, parts[1], parts[2] + " " + parts[3] + " " + parts[4], message, comparison,
+                bound, usesLimit);
+    }
+
+    private static IllegalArgumentException invalid(int line, String info) {
+        return new IllegalArgumentException("Invalid validation rule on line " + line + ": " + info);
+    }
+
+    /**
+     * The compiled rules of one operation, as parallel arrays checked in order.
+     */
+    private static final class Chain {
+        private final Rule[] rules;
+        private final byte[] comparisons;
+        private final double[] bounds;
+        private final boolean[] usesLimit;
+        private final Rule positive; // First rule named positive, counts the bank's own refusals
+
+        Chain(List<Rule> list) {
+            int size = list.size();
+            rules = list.toArray(new Rule[size]);
+            positive = list.stream().filter(rule -> rule.name.equals("positive")).findFirst().orElse(null);
+            comparisons = new byte[size];
+            bounds = new double[size];
+            usesLimit = new boolean[size];
+            for (int i = 0; i < size; i++) {
+                comparisons[i] = rules[i].comparison;
+                bounds[i] = rules[i].bound;
+                usesLimit[i] = rules[i].usesLimit;
+            }
+        }
+
+        Rule check(double amount, double limit) {
+            for (int i = 0; i < comparisons.length; i++) {
+                double bound = usesLimit[i] ? limit : bounds[i];
+                boolean holds;
+                switch (comparisons[i]) {
+                    case GREATER:
+                        holds = amount > bound;
+                        break;
+                    case GREATER_OR_EQUAL:
+                        holds = amount >= bound;
+                        break;
+                    case LESS:
+                        holds = amount < bound;
+                        break;
+                    default:
+                        holds = amount <= bound;
+                        break;
+                }
+                if (!holds) { // Also rejects NaN, as every comparison with it is false
+                    rules[i].hits.increment();
+                    return rules[i];
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A single compiled rule and the number of amounts it rejected.
+     */
+    public static final class Rule {
+        private final Operation operation;
+        private final String name;
+        private final String condition;
+        private final String message;
+        private final byte comparison;
+        private final double bound;
+        private final boolean usesLimit;
+        private final LongAdder hits = new LongAdder(); // Amounts rejected by this rule
+
+        Rule(Operation operation, String name, String condition, String message, byte comparison, double bound,
+                boolean usesLimit) {
+            this.operation = operation;
+            this.name = name;
+            this.condition = condition;
+            this.message = message;
+            this.comparison = comparison;
+            this.bound = bound;
+            this.usesLimit = usesLimit;
+        }
+
+        public Operation getOperation() {
+            return operation;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Retrieves the condition as written, for example "amount &gt; 0".
+         */
+        public String getCondition() {
+            return condition;
+        }
+
+        /**
+         * Retrieves the information given with the error when the rule rejects an
+         * amount.
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * Retrieves the number of amounts this rule has rejected.
+         */
+        public long getHits() {
+            return hits.sum();
+        }
+
+        @Override
+        public String toString() {
+            return operation.name().toLowerCase() + " " + name + " " + condition + " : " + message;
+        }
+    }
+}
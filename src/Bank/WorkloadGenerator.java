@@ -0,0 +1,504 @@
+package Bank;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Soak test harness that drives a {@link BankApp} with skewed traffic.
+ *
+ * The harness opens a number of accounts and then runs worker threads for a
+ * fixed duration. Each worker picks an operation from a weighted mix of
+ * deposits, withdrawals, outstanding grants and repayments, and an account
+ * from a Zipfian distribution, so a few accounts take most of the traffic
+ * the way merchant accounts do. Every call is made while holding the bank's
+ * monitor, the same lock {@link AsyncBankApp} uses.
+ *
+ * The report gives the throughput, latency percentiles, the share of declined
+ * operations per kind and a final {@link BankReconciler} run that checks the
+ * operating funds still balance. Only the bank's checked errors count as
+ * declines; a runtime error is a bug, it stops its worker and is reported
+ * as the run's failure.
+ */
+public class WorkloadGenerator {
+
+    /**
+     * The kinds of operation in the mix.
+     */
+    public enum OperationType {
+        DEPOSIT,
+        WITHDRAW,
+        GRANT,
+        REPAY
+    }
+
+    private final BankApp bank; // The bank under load
+
+    private int accounts = 1000; // Number of accounts opened by setUp
+    private double startingDeposit = 1000.0; // Balance each account is opened with
+    private int threads = 4; // Number of worker threads
+    private Duration duration = Duration.ofSeconds(10); // How long the workers run
+    private double zipfExponent = 0.99; // Skew of the account selection, 0 is uniform
+    private double maximumAmount = 500.0; // Largest amount of a single operation
+    private long seed = 42; // Seed for account names and the workers' random numbers
+    private final Map<OperationType, Double> mix = new EnumMap<>(OperationType.class);
+
+    private final List<String> owners = new ArrayList<>(); // Owners opened by setUp, most popular first
+
+    /**
+     * Creates a harness for the bank with the default mix of 50% deposits, 30%
+     * withdrawals, 10% grants and 10% repayments.
+     */
+    public WorkloadGenerator(BankApp bank) {
+        this.bank = bank;
+        mix.put(OperationType.DEPOSIT, 50.0);
+        mix.put(OperationType.WITHDRAW, 30.0);
+        mix.put(OperationType.GRANT, 10.0);
+        mix.put(OperationType.REPAY, 10.0);
+    }
+
+    /**
+     * Sets the number of accounts opened by setUp and their starting balance.
+     */
+    public void setAccounts(int accounts, double startingDeposit) {
+        if (accounts <= 0) {
+            throw new IllegalArgumentException("Number of accounts must be positive.");
+        }
+        this.accounts = accounts;
+        this.startingDeposit = startingDeposit;
+    }
+
+    public void setThreads(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Number of threads must be positive.");
+        }
+        this.threads = threads;
+    }
+
+    public void setDuration(Duration duration) {
+        this.duration = duration;
+    }
+
+    /**
+     * Sets the skew of the account selection. Zero spreads the traffic evenly,
+     * values around one give the usual heavy skew.
+     */
+    public void setZipfExponent(double zipfExponent) {
+        if (zipfExponent < 0) {
+            throw new IllegalArgumentException("Zipf exponent must not be negative.");
+        }
+        this.zipfExponent = zipfExponent;
+    }
+
+    /**
+     * Sets the largest amount of a single operation. Amounts are drawn evenly
+     * between one and this value, capped at the bank's limits.
+     */
+    public void setMaximumAmount(double maximumAmount) {
+        this.maximumAmount = maximumAmount;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Sets the relative weight of an operation in the mix. A weight of zero
+     * leaves the operation out.
+     */
+    public void setWeight(OperationType type, double weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must not be negative.");
+        }
+        mix.put(type, weight);
+    }
+
+    /**
+     * Opens the accounts the workload runs against.
+     * Account names are shuffled with the seed so the popular accounts are
+     * spread over the bank rather than being the first ones opened.
+     */
+    public void setUp() throws Exception {
+        List<String> names = new ArrayList<>(accounts);
+        for (int i = 0; i < accounts; i++) {
+            names.add(String.format("account-%07d", i));
+        }
+        Collections.shuffle(names, new Random(seed));
+        synchronized (bank) {
+            for (String name : names) {
+                bank.appendOwnerAccount(name, startingDeposit);
+            }
+        }
+        owners.clear();
+        owners.addAll(names);
+    }
+
+    /**
+     * Runs the workload for the configured duration and reports on it.
+     * setUp must have been called first.
+     */
+    public Report run() throws InterruptedException {
+        if (owners.isEmpty()) {
+            throw new IllegalStateException("Call setUp before running the workload.");
+        }
+        double totalWeight = 0;
+        for (double weight : mix.values()) {
+            totalWeight += weight;
+        }
+        if (totalWeight <= 0) {
+            throw new IllegalStateException("The operation mix is empty.");
+        }
+        double[] cumulativeMix = new double[OperationType.values().length];
+        double running = 0;
+        for (OperationType type : OperationType.values()) {
+            running += mix.getOrDefault(type, 0.0) / totalWeight;
+            cumulativeMix[type.ordinal()] = running;
+        }
+        String[] accountNames = owners.toArray(new String[0]);
+        Zipfian zipfian = new Zipfian(accountNames.length, zipfExponent);
+
+        BankReconciler reconciler = new BankReconciler(bank, ForkJoinPool.commonPool(), 1e-6);
+        Worker[] workers = new Worker[threads];
+        SplittableRandom seeds = new SplittableRandom(seed);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> started = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(seeds.split(), accountNames, zipfian, cumulativeMix, start);
+            Thread thread = new Thread(workers[i], "workload-" + i);
+            thread.start();
+            started.add(thread);
+        }
+        long begin = System.nanoTime();
+        long deadline = begin + duration.toNanos();
+        for (Worker worker : workers) {
+            worker.deadline = deadline;
+        }
+        start.countDown();
+        for (Thread thread : started) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+
+        Report report = new Report(elapsed);
+        for (Worker worker : workers) {
+            report.latencies.add(worker.latencies);
+            for (int i = 0; i < worker.attempted.length; i++) {
+                report.attempted[i] += worker.attempted[i];
+                report.declined[i] += worker.declined[i];
+            }
+            if (worker.failure != null && report.failure == null) {
+                report.failure = worker.failure;
+            }
+        }
+        report.reconciliation = reconciler.reconcile();
+        reconciler.close();
+        return report;
+    }
+
+    /**
+     * One worker thread. Counters are private to the worker and merged into
+     * the report once it has finished.
+     */
+    private final class Worker implements Runnable {
+        private final SplittableRandom random;
+        private final String[] accountNames;
+        private final Zipfian zipfian;
+        private final double[] cumulativeMix;
+        private final CountDownLatch start;
+        private volatile long deadline;
+
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private final long[] attempted = new long[OperationType.values().length];
+        private final long[] declined = new long[OperationType.values().length];
+        private Throwable failure; // Unexpected error that stopped the worker
+
+        Worker(SplittableRandom random, String[] accountNames, Zipfian zipfian, double[] cumulativeMix,
+                CountDownLatch start) {
+            this.random = random;
+            this.accountNames = accountNames;
+            this.zipfian = zipfian;
+            this.cumulativeMix = cumulativeMix;
+            this.start = start;
+        }
+
+        @Override
+        public void run() {
+            try {
+                start.await();
+                while (System.nanoTime() < deadline) {
+                    OperationType type = pickOperation(random.nextDouble());
+                    String owner = accountNames[zipfian.sample(random.nextDouble())];
+                    double amount = 1.0 + random.nextDouble() * Math.max(0.0, maximumAmount - 1.0);
+                    long begin = System.nanoTime();
+                    boolean accepted = perform(type, owner, amount);
+                    latencies.record(System.nanoTime() - begin);
+                    attempted[type.ordinal()]++;
+                    if (!accepted) {
+                        declined[type.ordinal()]++;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException | Error e) {
+                failure = e;
+            }
+        }
+
+        private OperationType pickOperation(double draw) {
+            OperationType[] types = OperationType.values();
+            for (int i = 0; i < types.length - 1; i++) {
+                if (draw < cumulativeMix[i]) {
+                    return types[i];
+                }
+            }
+            return types[types.length - 1];
+        }
+
+        // Run one operation, returns false if the bank declined it with one of
+        // its checked errors; runtime errors are thrown on to stop the worker
+        private boolean perform(OperationType type, String owner, double amount) {
+            synchronized (bank) {
+                try {
+                    switch (type) {
+                        case DEPOSIT:
+                            bank.deposit(owner, Math.min(amount, bank.getMaximunDepositLimit()));
+                            break;
+                        case WITHDRAW:
+                            bank.withdraw(owner, Math.min(amount, bank.getMaximumWithdrawLimit()));
+                            break;
+                        case GRANT:
+                            bank.grantOutstanding(owner, Math.min(amount, bank.getMaximumOutstandingLimit()));
+                            break;
+                        default: // Repay part of what is owed
+                            double owed = bank.getOutstandingBalance(owner);
+                            bank.repayOutstanding(owner, owed > 0 ? Math.min(amount, owed) : amount);
+                            break;
+                    }
+                    return true;
+                } catch (RuntimeException e) {
+                    throw e; // Not a decline
+                } catch (Exception e) {
+                    return false; // Declined by one of the bank's checks
+                }
+            }
+        }
+    }
+
+    /**
+     * Zipfian distribution over ranks 0 to n - 1, rank 0 being the most likely.
+     * The cumulative probabilities are computed once, and a sample is a binary
+     * search over them.
+     */
+    static final class Zipfian {
+        private final double[] cumulative;
+
+        Zipfian(int n, double exponent) {
+            cumulative = new double[n];
+            double total = 0;
+            for (int rank = 0; rank < n; rank++) {
+                total += 1.0 / Math.pow(rank + 1, exponent);
+                cumulative[rank] = total;
+            }
+            for (int rank = 0; rank < n; rank++) {
+                cumulative[rank] /= total;
+            }
+        }
+
+        /**
+         * Maps a uniform draw in [0, 1) to a rank.
+         */
+        int sample(double draw) {
+            int low = 0;
+            int high = cumulative.length - 1;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (cumulative[middle] <= draw) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Latency histogram with buckets that grow with the value, so every
+     * recorded latency is kept to within about 12% without storing the
+     * samples. Values below 16 nanoseconds have a bucket each; above that
+     * every power of two is split into eight buckets.
+     */
+    static final class LatencyHistogram {
+        private static final int BUCKETS = 8 * 60 + 16;
+
+        private final long[] counts = new long[BUCKETS];
+        private long total;
+        private long maximum;
+
+        void record(long nanos) {
+            long value = Math.max(0, nanos);
+            counts[index(value)]++;
+            total++;
+            maximum = Math.max(maximum, value);
+        }
+
+        void add(LatencyHistogram other) {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += other.counts[i];
+            }
+            total += other.total;
+            maximum = Math.max(maximum, other.maximum);
+        }
+
+        long getCount() {
+            return total;
+        }
+
+        long getMaximum() {
+            return maximum;
+        }
+
+        /**
+         * Returns the upper bound of the bucket holding the given percentile.
+         *
+         * @param percentile between 0 and 100
+         */
+        long percentile(double percentile) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), maximum);
+                }
+            }
+            return maximum;
+        }
+
+        static int index(long value) {
+            if (value < 16) {
+                return (int) value;
+            }
+            int shift = 60 - Long.numberOfLeadingZeros(value); // Keeps the top four bits
+            return 8 * shift + (int) (value >>> shift);
+        }
+
+        static long upperBound(int index) {
+            if (index < 16) {
+                return index;
+            }
+            int shift = index / 8 - 1;
+            long mantissa = index % 8 + 8;
+            return ((mantissa + 1) << shift) - 1;
+        }
+    }
+
+    /**
+     * Outcome of a workload run.
+     */
+    public static final class Report {
+        private final long elapsedNanos;
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private final long[] attempted = new long[OperationType.values().length];
+        private final long[] declined = new long[OperationType.values().length];
+        private BankReconciler.Result reconciliation;
+        private Throwable failure;
+
+        Report(long elapsedNanos) {
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * Retrieves the number of operations attempted, accepted or declined.
+         */
+        public long getOperations() {
+            return latencies.getCount();
+        }
+
+        /**
+         * Retrieves the operations attempted per second.
+         */
+        public double getThroughput() {
+            return elapsedNanos == 0 ? 0.0 : getOperations() * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * Retrieves a latency percentile in nanoseconds, including the time spent
+         * waiting for the bank's monitor.
+         *
+         * @param percentile between 0 and 100, for example 99.9
+         */
+        public long getLatencyPercentile(double percentile) {
+            return latencies.percentile(percentile);
+        }
+
+        public long getMaximumLatency() {
+            return latencies.getMaximum();
+        }
+
+        public long getAttempted(OperationType type) {
+            return attempted[type.ordinal()];
+        }
+
+        public long getDeclined(OperationType type) {
+            return declined[type.ordinal()];
+        }
+
+        /**
+         * Retrieves the share of attempts of the given kind the bank declined,
+         * between 0 and 1.
+         */
+        public double getDeclineRate(OperationType type) {
+            long count = attempted[type.ordinal()];
+            return count == 0 ? 0.0 : (double) declined[type.ordinal()] / count;
+        }
+
+        /**
+         * Retrieves the reconciliation run after the workload finished.
+         */
+        public BankReconciler.Result getReconciliation() {
+            return reconciliation;
+        }
+
+        /**
+         * Retrieves the first unexpected error a worker stopped on, or null.
+         */
+        public Throwable getFailure() {
+            return failure;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            text.append(String.format("%d operations in %.1f s, %.0f ops/s%n", getOperations(),
+                    elapsedNanos / 1e9, getThroughput()));
+            text.append(String.format("latency p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us%n",
+                    getLatencyPercentile(50) / 1e3, getLatencyPercentile(99) / 1e3,
+                    getLatencyPercentile(99.9) / 1e3, getMaximumLatency() / 1e3));
+            for (OperationType type : OperationType.values()) {
+                text.append(String.format("%s: %d attempted, %.1f%% declined%n", type.name().toLowerCase(),
+                        getAttempted(type), getDeclineRate(type) * 100));
+            }
+            if (failure != null) {
+                text.append("worker failed: ").append(failure).append(String.format("%n"));
+            }
+            text.append("invariant ").append(reconciliation != null && reconciliation.isConsistent()
+                    ? "holds" : "BROKEN, drift " + (reconciliation == null ? "unknown" : reconciliation.getDrift()));
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package BankStressTest;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Small actor/arbiter harness in the style of jcstress.
+ *
+ * Each iteration creates a fresh state, runs every actor on it, one thread per
+ * actor, and once they have all finished lets the arbiter look at the result.
+ * As in jcstress, iterations are run in batches: the actors are released
+ * together and then walk the same array of states, so they keep meeting on the
+ * same state without waiting for each other in between. The outcome of an iteration is the actors'
+ * results followed by the arbiter's, for example "ok,declined | 40.0", and
+ * the harness counts how often each outcome was seen. Tests then check that
+ * only the allowed outcomes occurred.
+ */
+final class ActorArbiter<S> {
+
+    /**
+     * One side of the race. Returns a short token describing what it observed.
+     */
+    @FunctionalInterface
+    interface Actor<S> {
+        String act(S state) throws Exception;
+    }
+
+    private static final long STEP_TIMEOUT_SECONDS = 10; // Longer than this means a deadlock
+    private static final int BATCH = 500; // States the actors walk through per release
+
+    private final Supplier<S> setup; // Creates the state of one iteration
+    private final List<Actor<S>> actors; // Run concurrently on the state
+    private final Function<S, String> arbiter; // Describes the state after the actors
+
+    ActorArbiter(Supplier<S> setup, List<Actor<S>> actors, Function<S, String> arbiter) {
+        this.setup = setup;
+        this.actors = actors;
+        this.arbiter = arbiter;
+    }
+
+    /**
+     * Runs at least the given number of iterations, rounded up to whole
+     * batches.
+     *
+     * @return how often each outcome was seen, sorted by outcome
+     * @throws TimeoutException if an iteration did not finish in time, which
+     *                          points to a deadlock
+     */
+    Map<String, Long> run(int iterations) throws InterruptedException, TimeoutException {
+        int count = actors.size();
+        int rounds = (iterations + BATCH - 1) / BATCH;
+        CyclicBarrier start = new CyclicBarrier(count + 1);
+        CyclicBarrier end = new CyclicBarrier(count + 1);
+        AtomicInteger arrived = new AtomicInteger(); // Actors spin on it so they start within nanoseconds
+        Object[] states = new Object[BATCH]; // States of the running batch, published by the barrier
+        String[][] results = new String[count][BATCH];
+        Thread[] threads = new Thread[count];
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    for (int round = 0; round < rounds; round++) {
+                        start.await(STEP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                        arrived.incrementAndGet();
+                        while (arrived.get() < count * (round + 1)) {
+                            Thread.onSpinWait(); // Waking from the barrier takes far longer than an action
+                        }
+                        for (int j = 0; j < BATCH; j++) {
+                            results[index][j] = act(actors.get(index), state(states, j));
+                        }
+                        end.await(STEP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                    }
+                } catch (InterruptedException | BrokenBarrierException | TimeoutException e) {
+                    // The main thread reports the failure
+                }
+            }, "actor-" + i);
+            threads[i].setDaemon(true); // A deadlocked actor must not keep the JVM alive
+            threads[i].start();
+        }
+
+        Map<String, Long> outcomes = new TreeMap<>();
+        String[] row = new String[count];
+        try {
+            for (int round = 0; round < rounds; round++) {
+                for (int j = 0; j < BATCH; j++) {
+                    states[j] = setup.get();
+                }
+                start.await(STEP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                end.await(STEP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                for (int j = 0; j < BATCH; j++) {
+                    for (int i = 0; i < count; i++) {
+                        row[i] = results[i][j];
+                    }
+                    String outcome = String.join(",", row) + " | " + arbiter.apply(state(states, j));
+                    outcomes.merge(outcome, 1L, Long::sum);
+                }
+            }
+        } catch (BrokenBarrierException e) {
+            throw new TimeoutException("An actor stopped before the iteration finished");
+        } finally {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+        }
+        System.out.println("Stress outcomes: " + outcomes);
+        return outcomes;
+    }
+
+    @SuppressWarnings("unchecked")
+    private S state(Object[] states, int index) {
+        return (S) states[index];
+    }
+
+    private static <S> String act(Actor<S> actor, S state) {
+        try {
+            return actor.act(state);
+        } catch (Exception e) {
+            return "error:" + e.getClass().getSimpleName();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package BankStressTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import Bank.BankAccount;
+import Bank.BankAccount.InadequateFundsErrors;
+import Bank.BankApp;
+import Bank.BankApp.InadequateBankOperatingFundsErrors;
+
+/**
+ * Actor/arbiter stress tests for the check-then-act paths of the bank.
+ *
+ * Each test races two operations that are only correct if the check and the
+ * change it guards happen as one step, and checks that no forbidden outcome
+ * was ever seen over many iterations.
+ */
+public class AtomicityStressTest {
+
+    private static final int ITERATIONS = 3000; // Races per test
+
+    /**
+     * State of one iteration: a bank with one funded account.
+     */
+    private static final class BankState {
+        final BankApp bank = new BankApp(6000.0, 10000.0, 20000.0);
+
+        BankState(double capital, String... owners) {
+            try {
+                bank.appendToBankOperatingFunds(capital);
+                for (String owner : owners) {
+                    bank.appendOwnerAccount(owner, 100.0);
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        // Operating funds, balances and outstanding of every account
+        String describe() {
+            StringBuilder text = new StringBuilder("fund=" + bank.getBankOperatingFunds());
+            for (BankAccount account : bank.getBankAccountOwners()) {
+                text.append(' ').append(account.getAccountOwner()).append('=').append(account.getCurrentBalance())
+                        .append('/').append(account.getCurrentOutstandingBalance());
+            }
+            return text.toString();
+        }
+    }
+
+    /**
+     * Two withdrawals of 60 from a balance of 100: exactly one may succeed, and
+     * the operating funds must drop by exactly that one withdrawal.
+     * Covers withdraw, checkAdequateBankOperatingFunds and the fund deduction.
+     */
+    @Test
+    @Timeout(120)
+    public void testConcurrentWithdrawalsNeverOverdraw() throws Exception {
+        ActorArbiter.Actor<BankState> withdraw = state -> {
+            try {
+                state.bank.withdraw("Bob", 60.0);
+                return "ok";
+            } catch (InadequateFundsErrors e) {
+                return "declined";
+            }
+        };
+        Map<String, Long> outcomes = new ActorArbiter<>(() -> new BankState(1000.0, "Bob"),
+                List.of(withdraw, withdraw), BankState::describe).run(ITERATIONS);
+
+        assertAllowed(outcomes, Set.of(
+                "ok,declined | fund=1040.0 Bob=40.0/0.0",
+                "declined,ok | fund=1040.0 Bob=40.0/0.0"));
+    }
+
+    /**
+     * Two grants of 60 against operating funds of 100: exactly one may succeed,
+     * and the funds must never go negative.
+     */
+    @Test
+    @Timeout(120)
+    public void testConcurrentGrantsRespectOperatingFunds() throws Exception {
+        ActorArbiter.Actor<BankState> grantBob = state -> grant(state, "Bob");
+        ActorArbiter.Actor<BankState> grantAlice = state -> grant(state, "Alice");
+        Map<String, Long> outcomes = new ActorArbiter<>(() -> {
+            BankState state = new BankState(0.0, "Bob", "Alice");
+            try {
+                state.bank.minusFromBankOperatingFunds(100.0); // Leave 100 in the fund
+            } catch (InadequateBankOperatingFundsErrors e) {
+                throw new IllegalStateException(e);
+            }
+            return state;
+        }, List.of(grantBob, grantAlice), BankState::describe).run(ITERATIONS);
+
+        assertAllowed(outcomes, Set.of(
+                "ok,declined | fund=40.0 Bob=100.0/60.0 Alice=100.0/0.0",
+                "declined,ok | fund=40.0 Bob=100.0/0.0 Alice=100.0/60.0"));
+    }
+
+    /**
+     * Two withdrawals straight from an account: checkCurrentAmountInAccount and
+     * the deduction must not interleave.
+     */
+    @Test
+    @Timeout(120)
+    public void testAccountWithdrawalIsAtomic() throws Exception {
+        ActorArbiter.Actor<BankAccount> withdraw = account -> {
+            try {
+                account.withdraw(60.0);
+                return "ok";
+            } catch (InadequateFundsErrors e) {
+                return "declined";
+            }
+        };
+        Map<String, Long> outcomes = new ActorArbiter<>(() -> new BankAccount("Bob", 100.0),
+                List.of(withdraw, withdraw), account -> String.valueOf(account.getCurrentBalance()))
+                .run(ITERATIONS);
+
+        assertAllowed(outcomes, Set.of("ok,declined | 40.0", "declined,ok | 40.0"));
+    }
+
+    /**
+     * A deposit racing a withdrawal on the same account must not lose either
+     * update.
+     */
+    @Test
+    @Timeout(120)
+    public void testDepositAndWithdrawKeepBothUpdates() throws Exception {
+        ActorArbiter.Actor<BankState> deposit = state -> {
+            state.bank.deposit("Bob", 50.0);
+            return "ok";
+        };
+        ActorArbiter.Actor<BankState> withdraw = state -> {
+            state.bank.withdraw("Bob", 30.0);
+            return "ok";
+        };
+        Map<String, Long> outcomes = new ActorArbiter<>(() -> new BankState(0.0, "Bob"),
+                List.of(deposit, withdraw), BankState::describe).run(ITERATIONS);
+
+        assertAllowed(outcomes, Set.of("ok,ok | fund=120.0 Bob=120.0/0.0"));
+    }
+
+    private static String grant(BankState state, String owner) throws Exception {
+        try {
+            state.bank.grantOutstanding(owner, 60.0);
+            return "ok";
+        } catch (InadequateBankOperatingFundsErrors e) {
+            return "declined";
+        }
+    }
+
+    // Fail with the unexpected outcomes if any were seen
+    private static void assertAllowed(Map<String, Long> outcomes, Set<String> allowed) {
+        for (Map.Entry<String, Long> outcome : outcomes.entrySet()) {
+            assertTrue(allowed.contains(outcome.getKey()),
+                    "Forbidden outcome seen " + outcome.getValue() + " times: " + outcome.getKey());
+        }
+        assertFalse(outcomes.isEmpty());
+    }
+}
@@ -0,0 +1,25 @@
+package BankStressTest;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.platform.suite.api.SelectClasses;
+import org.junit.platform.suite.api.Suite;
+
+/**
+ * Stress test suite for the Banking Application.
+ *
+ * These tests race the bank's operations from many threads and take longer
+ * than the unit tests in {@code BankTest}, so they are kept in their own suite.
+ */
+@Suite // Declares this class as a JUnit test suite.
+// Includes the actor/arbiter races and the randomized torture tests.
+@SelectClasses({
+        AtomicityStressTest.class,
+        TortureStressTest.class
+})
+@DisplayName("Banking App Stress Test Suite") // Gives the suite a name for display in reports.
+public class BankStressTestSuite {
+    /**
+     * This class does not contain any test logic.
+     * Its purpose is to group and run the selected test classes as a suite.
+     */
+}
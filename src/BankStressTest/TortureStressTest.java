@@ -0,0 +1,173 @@
+package BankStressTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import Bank.BalanceChangeEvent;
+import Bank.BankApp;
+import Bank.BankReconciler;
+
+/**
+ * Randomized many-thread torture tests for `BankApp`.
+ *
+ * Many threads fire random operations at a shared bank. A listener checks
+ * every committed change as it happens, and at the end the books must still
+ * balance and no thread may be stuck.
+ */
+public class TortureStressTest {
+
+    private static final int THREADS = 8; // Threads hammering the bank
+    private static final int OPERATIONS = 2000; // Operations per thread
+    private static final int ACCOUNTS = 16; // Shared accounts
+
+    private BankApp bank; // Bank under torture
+    private Queue<String> violations; // Problems seen by the listener
+    private long seed; // Seed of this run, printed so a failure can be replayed
+
+    /**
+     * Creates a funded bank with shared accounts and a listener that records
+     * every negative balance, outstanding or operating fund it sees.
+     */
+    @BeforeEach
+    public void setUp() throws Exception {
+        bank = new BankApp(6000.0, 10000.0, 20000.0);
+        bank.appendToBankOperatingFunds(50000.0);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            bank.appendOwnerAccount("owner-" + i, 1000.0);
+        }
+        violations = new ConcurrentLinkedQueue<>();
+        bank.addBalanceChangeListener(event -> {
+            if (event.getType() != BalanceChangeEvent.Type.CAPITAL
+                    && (event.getBalanceAfter() < 0 || event.getOutstandingAfter() < -1e-9)) {
+                violations.add("Negative account after " + event);
+            }
+            if (bank.getBankOperatingFunds() < 0) {
+                violations.add("Negative operating funds after " + event);
+            }
+        });
+        seed = System.nanoTime();
+        System.out.println("Torture seed: " + seed);
+    }
+
+    /**
+     * Verifies that random traffic never drives a balance or the operating
+     * funds negative, conserves the operating funds and never deadlocks.
+     */
+    @Test
+    @Timeout(120)
+    public void testRandomTrafficConservesFunds() throws Exception {
+        BankReconciler reconciler = new BankReconciler(bank, ForkJoinPool.commonPool(), 1e-6);
+        runThreads(index -> randomTraffic(new Random(seed + index), index));
+
+        assertTrue(violations.isEmpty(), () -> violations.peek());
+        BankReconciler.Result result = reconciler.reconcile();
+        assertTrue(result.isConsistent(), "Drift " + result.getDrift() + ", seed " + seed);
+        reconciler.close();
+    }
+
+    /**
+     * Verifies that readers taking the bank's monitor and then their own, such
+     * as the reconciler, never deadlock with writers that notify them, and that
+     * every incremental check made during the traffic sees consistent books.
+     */
+    @Test
+    @Timeout(120)
+    public void testReconcilerDuringTraffic() throws Exception {
+        BankReconciler reconciler = new BankReconciler(bank, ForkJoinPool.commonPool(), 1e-6);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Thread checker = new Thread(() -> {
+            while (writing.get()) {
+                if (!reconciler.verifyIncremental()) {
+                    violations.add("Incremental check failed during traffic");
+                }
+                if (!reconciler.reconcile().isConsistent()) {
+                    violations.add("Full reconciliation failed during traffic");
+                }
+            }
+        }, "checker");
+        checker.start();
+        runThreads(index -> randomTraffic(new Random(seed + index), index));
+        writing.set(false);
+        checker.join(TimeUnit.SECONDS.toMillis(30));
+
+        assertFalse(checker.isAlive(), "Checker is stuck");
+        assertTrue(violations.isEmpty(), () -> violations.peek() + ", seed " + seed);
+        reconciler.close();
+    }
+
+    // One thread's worth of random operations; declined operations are expected
+    private void randomTraffic(Random random, int index) {
+        String own = "private-" + index; // Opened and closed by this thread only
+        for (int i = 0; i < OPERATIONS; i++) {
+            String owner = "owner-" + random.nextInt(ACCOUNTS);
+            double amount = 1 + random.nextInt(3000);
+            try {
+                switch (random.nextInt(9)) {
+                    case 0, 1:
+                        bank.deposit(owner, amount);
+                        break;
+                    case 2, 3:
+                        bank.withdraw(owner, amount);
+                        break;
+                    case 4:
+                        bank.grantOutstanding(owner, amount);
+                        break;
+                    case 5:
+                        bank.repayOutstanding(owner, Math.min(amount, bank.getOutstandingBalance(owner)));
+                        break;
+                    case 6:
+                        bank.applyFee(owner, amount / 100);
+                        break;
+                    case 7:
+                        bank.applyInterest(owner, 1.0);
+                        break;
+                    default:
+                        if (random.nextBoolean()) {
+                            bank.appendOwnerAccount(own, amount);
+                        } else {
+                            bank.withdraw(own, bank.getOwnerAccountBalance(own));
+                            bank.removeOwnerAccount(own);
+                        }
+                        break;
+                }
+            } catch (Exception e) {
+                // Declined by one of the bank's checks
+            }
+        }
+    }
+
+    // Run the work on THREADS threads at once and fail if any is deadlocked
+    private void runThreads(java.util.function.IntConsumer work) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < THREADS; i++) {
+            int index = i;
+            Thread thread = new Thread(() -> work.accept(index), "torture-" + i);
+            thread.setUncaughtExceptionHandler((t, e) -> failures.add(e));
+            threads.add(thread);
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(60));
+        }
+        long[] deadlocked = ManagementFactory.getThreadMXBean().findDeadlockedThreads();
+        assertNull(deadlocked, "Deadlocked threads found, seed " + seed);
+        for (Thread thread : threads) {
+            assertFalse(thread.isAlive(), thread.getName() + " did not finish, seed " + seed);
+        }
+        assertTrue(failures.isEmpty(), () -> "Unexpected error: " + failures.peek());
+    }
+}
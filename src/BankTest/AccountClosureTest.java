@@ -0,0 +1,146 @@
+package BankTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import Bank.BankAccount;
+import Bank.BankAccount.AccountOwnerNotFoundErrors;
+import Bank.BankApp;
+
+/**
+ * Tests for closing accounts with tombstones in `BankApp`.
+ *
+ * These tests ensure that a closed account disappears from lookups at once,
+ * can be reopened within its grace period, and is removed from the store by
+ * compaction, also in the background while other accounts are in use.
+ * Without a grace period or compaction, closed accounts leave no tombstone.
+ */
+public class AccountClosureTest {
+
+    private BankApp bank; // Bank closing the accounts
+
+    /**
+     * Creates a bank with capital and two accounts.
+     */
+    @BeforeEach
+    public void setUp() throws Exception {
+        bank = new BankApp(6000.0, 10000.0, 20000.0);
+        bank.appendToBankOperatingFunds(50000.0);
+        bank.appendOwnerAccount("owner", 1000.0);
+        bank.appendOwnerAccount("other", 500.0);
+    }
+
+    /**
+     * Stops the background compaction after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        bank.stopClosedAccountCompaction();
+    }
+
+    /**
+     * Verifies that a closed account is hidden until it is reopened with its
+     * balance, and that opening a new account under the same owner replaces
+     * it.
+     */
+    @Test
+    public void testClosedAccountHiddenAndReopened() throws Exception {
+        bank.setClosureGracePeriod(Duration.ofHours(1));
+        bank.removeOwnerAccount("owner");
+        assertThrows(AccountOwnerNotFoundErrors.class, () -> bank.getOwnerAccount("owner"));
+        assertThrows(AccountOwnerNotFoundErrors.class, () -> bank.deposit("owner", 10.0));
+        assertEquals(1, bank.getAccountCount());
+        assertEquals(1, bank.getBankAccountOwners().size());
+        assertEquals(1, bank.getClosedAccountCount());
+        assertEquals(50500.0, bank.getBankOperatingFunds(), 1e-9);
+
+        bank.reopenOwnerAccount("owner");
+        assertEquals(1000.0, bank.getOwnerAccountBalance("owner"), 1e-9);
+        assertEquals(51500.0, bank.getBankOperatingFunds(), 1e-9);
+        assertEquals(2, bank.getAccountCount());
+        assertEquals(0, bank.getClosedAccountCount());
+
+        bank.removeOwnerAccount("owner");
+        bank.appendOwnerAccount("owner", 20.0); // A new account, the closed one is gone for good
+        assertEquals(20.0, bank.getOwnerAccountBalance("owner"), 1e-9);
+        assertEquals(0, bank.getClosedAccountCount());
+        assertThrows(AccountOwnerNotFoundErrors.class, () -> bank.reopenOwnerAccount("owner"));
+    }
+
+    /**
+     * Verifies that compaction leaves accounts within their grace period and
+     * removes them once it is over, after which they cannot be reopened.
+     */
+    @Test
+    public void testCompactionWaitsForGracePeriod() throws Exception {
+        bank.setClosureGracePeriod(Duration.ofMillis(200));
+        bank.removeOwnerAccount("owner");
+        assertEquals(0, bank.compactClosedAccounts());
+        assertEquals(1, bank.getClosedAccountCount());
+
+        Thread.sleep(250);
+        assertThrows(AccountOwnerNotFoundErrors.class, () -> bank.reopenOwnerAccount("owner"));
+        bank.removeOwnerAccount("other"); // Still within its grace period
+        assertEquals(1, bank.compactClosedAccounts());
+        assertEquals(1, bank.getClosedAccountCount());
+        bank.reopenOwnerAccount("other");
+        assertEquals(0, bank.getClosedAccountCount());
+        assertEquals(1, bank.getAccountCount());
+    }
+
+    /**
+     * Verifies that with the default grace period of zero and no background
+     * compaction a closed account is removed from the store at once.
+     */
+    @Test
+    public void testNoTombstoneWithoutGracePeriod() throws Exception {
+        assertEquals(Duration.ZERO, bank.getClosureGracePeriod());
+        bank.removeOwnerAccount("owner");
+        assertEquals(0, bank.getClosedAccountCount());
+        assertEquals(0, bank.compactClosedAccounts());
+        assertThrows(AccountOwnerNotFoundErrors.class, () -> bank.reopenOwnerAccount("owner"));
+        assertEquals(1, bank.getAccountCount());
+
+        bank.startClosedAccountCompaction(Duration.ofHours(1)); // Tombstones are removed by the compactor
+        bank.removeOwnerAccount("other");
+        assertEquals(1, bank.getClosedAccountCount());
+    }
+
+    /**
+     * Verifies that the background compaction removes a mass closure from the
+     * store while deposits into the remaining accounts carry on.
+     */
+    @Test
+    @Timeout(60)
+    public void testBackgroundCompactionOfMassClosure() throws Exception {
+        for (int i = 0; i < 5000; i++) {
+            bank.appendOwnerAccount(String.format("closing-%05d", i), 10.0);
+        }
+        bank.startClosedAccountCompaction(Duration.ofMillis(1));
+        for (int i = 0; i < 5000; i++) {
+            bank.removeOwnerAccount(String.format("closing-%05d", i));
+            if (i % 10 == 0) {
+                bank.deposit("owner", 1.0);
+            }
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (bank.getClosedAccountCount() > 0) {
+            assertTrue(System.nanoTime() < deadline, "Compaction did not finish.");
+            Thread.sleep(1);
+        }
+        assertEquals(2, bank.getAccountCount());
+        double balances = 0.0;
+        for (BankAccount account : bank.getBankAccountOwners()) {
+            balances += account.getCurrentBalance();
+        }
+        assertEquals(2000.0, balances, 1e-9);
+        assertEquals(50000.0 + balances, bank.getBankOperatingFunds(), 1e-6);
+    }
+}
@@ -0,0 +1,95 @@
+package BankTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import Bank.AccountFootprintBenchmark;
+import Bank.AccountFootprintBenchmark.Report;
+import Bank.BankAccount;
+import Bank.BankApp;
+import Bank.Outstanding.InadequateOutstandingAmountErrors;
+import Bank.Outstanding.OutstandingInterestError;
+
+/**
+ * Tests for the compact account layout and its `AccountFootprintBenchmark`.
+ *
+ * These tests ensure that an account only holds an outstanding (Loan) from
+ * its first grant until it is repaid to zero, that failed loan operations on
+ * an account that never borrowed do not allocate one, and that the benchmark
+ * only allocates outstandings for its borrowers.
+ */
+public class AccountFootprintTest {
+
+    private BankApp bank; // Bank holding the accounts
+
+    /**
+     * Creates a bank with capital and one account.
+     */
+    @BeforeEach
+    public void setUp() throws Exception {
+        bank = new BankApp(6000.0, 10000.0, 20000.0);
+        bank.appendToBankOperatingFunds(50000.0);
+        bank.appendOwnerAccount("owner", 1000.0);
+    }
+
+    /**
+     * Verifies that the outstanding is allocated on the first grant and
+     * released once repaid to zero.
+     */
+    @Test
+    public void testOutstandingAllocatedOnGrantAndReleasedWhenRepaid() throws Exception {
+        BankAccount account = bank.getOwnerAccount("owner");
+        assertFalse(account.hasOutstanding());
+        assertEquals(0.0, account.getCurrentOutstandingBalance(), 1e-9);
+        assertFalse(account.hasOutstanding(), "Reading the balance must not allocate the outstanding.");
+
+        bank.grantOutstanding("owner", 300.0);
+        assertTrue(account.hasOutstanding());
+        bank.repayOutstanding("owner", 100.0);
+        assertTrue(account.hasOutstanding());
+        bank.repayOutstanding("owner", 200.0);
+        assertFalse(account.hasOutstanding());
+        assertEquals(0.0, bank.getOutstandingBalance("owner"), 1e-9);
+
+        bank.grantOutstanding("owner", 50.0); // Borrowing again allocates a new one
+        assertEquals(50.0, bank.getOutstandingBalance("owner"), 1e-9);
+        assertEquals(50950.0, bank.getBankOperatingFunds(), 1e-9); // Capital and deposit, less the loan
+    }
+
+    /**
+     * Verifies that refused repayments and interest on an account that never
+     * borrowed leave it without an outstanding.
+     */
+    @Test
+    public void testFailedLoanOperationsDoNotAllocate() throws Exception {
+        assertThrows(InadequateOutstandingAmountErrors.class, () -> bank.repayOutstanding("owner", 10.0));
+        assertThrows(OutstandingInterestError.class, () -> bank.applyInterest("owner", 5.0));
+        BankAccount account = bank.getOwnerAccount("owner");
+        assertFalse(account.hasOutstanding());
+        assertThrows(InadequateOutstandingAmountErrors.class,
+                () -> account.checkCurrentAmountInOutstandingBalance(1.0));
+        assertFalse(account.hasOutstanding());
+        assertEquals(1000.0, bank.getOwnerAccountBalance("owner"), 1e-9);
+    }
+
+    /**
+     * Verifies that the benchmark only allocates outstandings for borrowers.
+     * The heap figures depend on the collector and whatever else the test JVM
+     * is running, so they are not checked here.
+     */
+    @Test
+    @Timeout(60)
+    public void testBenchmarkReport() throws Exception {
+        AccountFootprintBenchmark benchmark = new AccountFootprintBenchmark();
+        benchmark.setAccounts(20000);
+        benchmark.setBorrowerShare(0.1);
+        Report report = benchmark.run();
+
+        assertEquals(20000, report.getAccounts());
+        assertEquals(2000, report.getBorrowers());
+        assertEquals(2000, report.getOutstandings());
+    }
+}
@@ -0,0 +1,171 @@
+package BankTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import Bank.AccountIndex;
+import Bank.AccountIndex.Entry;
+import Bank.BankAccount;
+import Bank.BankApp;
+
+/**
+ * Tests for the sorted `AccountIndex` of `BankApp`.
+ *
+ * These tests ensure that range and top-K queries give the same accounts as a
+ * scan of every account after a random mix of operations, that closed
+ * accounts and other currencies are kept apart, and that queries can run while
+ * the bank is changing.
+ */
+public class AccountIndexTest {
+
+    private BankApp bank; // Indexed bank
+
+    /**
+     * Creates a bank with capital and a hundred accounts.
+     */
+    @BeforeEach
+    public void setUp() throws Exception {
+        bank = new BankApp(6000.0, 10000.0, 20000.0);
+        bank.appendToBankOperatingFunds(1000000.0);
+        for (int i = 0; i < 100; i++) {
+            bank.appendOwnerAccount(String.format("owner-%03d", i), 100.0 + i * 10);
+        }
+    }
+
+    /**
+     * Verifies that after random deposits, withdrawals, grants, repayments,
+     * transfers and closures the queries match a full scan.
+     */
+    @Test
+    public void testQueriesMatchScan() throws Exception {
+        AccountIndex index = bank.getAccountIndex();
+        Random random = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            String owner = String.format("owner-%03d", random.nextInt(100));
+            try {
+                switch (random.nextInt(6)) {
+                    case 0 -> bank.deposit(owner, 1 + random.nextInt(500));
+                    case 1 -> bank.withdraw(owner, 1 + random.nextInt(500));
+                    case 2 -> bank.grantOutstanding(owner, 1 + random.nextInt(2000));
+                    case 3 -> bank.repayOutstanding(owner, 1 + random.nextInt(500));
+                    case 4 -> bank.transfer(owner, String.format("owner-%03d", random.nextInt(100)), 25.0);
+                    default -> {
+                        if (random.nextInt(20) == 0) {
+                            bank.removeOwnerAccount(owner);
+                        }
+                    }
+                }
+            } catch (Exception declined) {
+                // Declined operations leave the accounts unchanged
+            }
+        }
+        List<BankAccount> accounts = bank.getBankAccountOwners();
+        assertEquals(accounts.size(), index.getIndexedAccounts());
+
+        assertEquals(owners(accounts.stream().filter(a -> a.getCurrentBalance() > 1000.0)
+                .sorted(Comparator.comparingDouble(BankAccount::getCurrentBalance)
+                        .thenComparing(BankAccount::getAccountOwner))),
+                names(index.getBalancesAbove(1000.0)));
+        assertEquals(owners(accounts.stream().sorted(Comparator.comparingDouble(BankAccount::getCurrentBalance)
+                .thenComparing(BankAccount::getAccountOwner).reversed()).limit(10)),
+                names(index.getTopBalances(10)));
+        assertEquals(owners(accounts.stream()
+                .filter(a -> a.getCurrentOutstandingBalance() >= 500.0 && a.getCurrentOutstandingBalance() <= 5000.0)
+                .sorted(Comparator.comparingDouble(BankAccount::getCurrentOutstandingBalance)
+                        .thenComparing(BankAccount::getAccountOwner))),
+                names(index.getOutstandingBetween(500.0, 5000.0)));
+        List<Entry> top = index.getTopBorrowers(5);
+        assertEquals(owners(accounts.stream().filter(a -> a.getCurrentOutstandingBalance() > 0)
+                .sorted(Comparator.comparingDouble(BankAccount::getCurrentOutstandingBalance)
+                        .thenComparing(BankAccount::getAccountOwner).reversed()).limit(5)),
+                names(top));
+        assertEquals(bank.getOutstandingBalance(top.get(0).getAccountOwner()), top.get(0).getValue(), 1e-9);
+    }
+
+    /**
+     * Verifies that closed accounts leave the index and reopened ones come
+     * back, and that accounts of another currency are only found by queries
+     * for that currency.
+     */
+    @Test
+    public void testClosuresAndCurrencies() throws Exception {
+        bank.setMaxDeposit("USD", 10000.0);
+        bank.appendOwnerAccount("dollars", 5000.0, "USD");
+        AccountIndex index = bank.getAccountIndex(); // Built from the accounts already open
+        assertEquals(101, index.getIndexedAccounts());
+        assertEquals(List.of("owner-099", "owner-098"), names(index.getTopBalances(2)));
+        assertEquals(List.of("dollars"), names(index.getTopBalances("USD", 5)));
+        assertEquals(List.of("dollars"), names(index.getBalancesBetween("USD", 5000.0, 5000.0)));
+        assertEquals(List.of("owner-098", "owner-099"), names(index.getBalancesAbove(1070.0)));
+
+        bank.setClosureGracePeriod(Duration.ofHours(1));
+        bank.removeOwnerAccount("owner-099");
+        assertEquals(List.of("owner-098"), names(index.getTopBalances(1)));
+        bank.reopenOwnerAccount("owner-099");
+        assertEquals(List.of("owner-099"), names(index.getTopBalances(1)));
+
+        assertTrue(index.getTopBorrowers(3).isEmpty());
+        bank.grantOutstanding("owner-005", 300.0);
+        bank.grantOutstanding("owner-006", 300.0);
+        assertEquals(List.of("owner-005", "owner-006"), names(index.getOutstandingBetween(0.0, 300.0)));
+        bank.repayOutstanding("owner-005", 300.0);
+        assertEquals(List.of("owner-006"), names(index.getTopBorrowers(3)));
+        assertEquals(1, index.getIndexedBorrowers());
+    }
+
+    /**
+     * Verifies that queries run without failing while other threads change
+     * the balances, and that the index is exact once they stop.
+     */
+    @Test
+    @Timeout(30)
+    public void testQueriesDuringUpdates() throws Exception {
+        AccountIndex index = bank.getAccountIndex();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            try {
+                while (running.get()) {
+                    assertTrue(index.getTopBalances(10).size() <= 10);
+                    index.getBalancesAbove(500.0);
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        reader.start();
+        for (int i = 0; i < 5000; i++) {
+            bank.deposit(String.format("owner-%03d", i % 100), 1.0);
+        }
+        running.set(false);
+        reader.join();
+        assertNull(failure.get());
+        assertEquals(100, index.getIndexedAccounts());
+        assertEquals(1140.0, index.getTopBalances(1).get(0).getValue(), 1e-9);
+    }
+
+    private static List<String> owners(Stream<BankAccount> accounts) {
+        return accounts.map(BankAccount::getAccountOwner).collect(Collectors.toList());
+    }
+
+    private static List<String> names(List<Entry> entries) {
+        List<String> names = new ArrayList<>();
+        for (Entry entry : entries) {
+            names.add(entry.getAccountOwner());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,132 @@
+package BankTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import Bank.AccountQuery;
+import Bank.AccountQuery.Group;
+import Bank.AccountQuery.GroupBy;
+import Bank.AccountQuery.Result;
+import Bank.BankAccount;
+import Bank.BankApp;
+
+/**
+ * Tests for `AccountQuery`, the ad-hoc filters and aggregates over the accounts
+ * of `BankApp`.
+ *
+ * These tests ensure that queries give the same aggregates as a scan of every
+ * account, that the textual form builds the same query as the builder, and
+ * that the account index narrows the accounts scanned without changing the
+ * results.
+ */
+public class AccountQueryTest {
+
+    private BankApp bank; // Bank with ten thousand accounts, a third of them borrowers
+
+    /**
+     * Creates a bank with capital and ten thousand accounts.
+     */
+    @BeforeEach
+    public void setUp() throws Exception {
+        bank = new BankApp(6000.0, 10000.0, 20000.0);
+        bank.appendToBankOperatingFunds(10000000.0);
+        for (int i = 0; i < 10000; i++) {
+            String owner = String.format("owner-%05d", i);
+            bank.appendOwnerAccount(owner, 10.0 + i % 1000);
+            if (i % 3 == 0) {
+                bank.grantOutstanding(owner, 100.0 + i % 500);
+            }
+        }
+    }
+
+    /**
+     * Verifies that a grouped query over several chunks matches a scan.
+     */
+    @Test
+    public void testGroupedQueryMatchesScan() throws Exception {
+        Result result = AccountQuery.builder().ownerPrefix("owner-0").balanceBetween(100.0, 500.0)
+                .hasOutstanding(true).groupBy(GroupBy.BALANCE, 100.0).build().run(bank, new ForkJoinPool(4));
+
+        long count = 0;
+        double balances = 0;
+        double outstanding = 0;
+        long firstBucket = 0; // Balances from 100 up to 200
+        for (BankAccount account : bank.getBankAccountOwners()) {
+            double balance = account.getCurrentBalance();
+            if (account.getAccountOwner().startsWith("owner-0") && balance >= 100.0 && balance <= 500.0
+                    && account.getCurrentOutstandingBalance() > 0) {
+                count++;
+                balances += balance;
+                outstanding += account.getCurrentOutstandingBalance();
+                if (balance < 200.0) {
+                    firstBucket++;
+                }
+            }
+        }
+        assertTrue(count > 0);
+        assertEquals(count, result.getTotal().getCount());
+        assertEquals(balances, result.getTotal().getBalanceSum(), 1e-6);
+        assertEquals(outstanding, result.getTotal().getOutstandingSum(), 1e-6);
+        assertEquals(outstanding / count, result.getTotal().getOutstandingAverage(), 1e-9);
+        List<Group> groups = result.getGroups();
+        assertEquals(5, groups.size()); // 100, 200, 300, 400 and 500 itself
+        assertEquals(100.0, groups.get(0).getBucket());
+        assertEquals(firstBucket, groups.get(0).getCount());
+        assertEquals(10000, result.getScanned());
+        assertFalse(result.isIndexed());
+    }
+
+    /**
+     * Verifies that the textual form builds the same query as the builder, and
+     * that invalid text is refused.
+     */
+    @Test
+    public void testParsedQueryMatchesBuilder() throws Exception {
+        Result parsed = AccountQuery.parse("WHERE owner starts with 'owner-00' and outstanding between 200 and 400 "
+                + "and balance >= 50 group by outstanding 50 currency eur").run(bank);
+        Result built = AccountQuery.builder().currency("EUR").ownerPrefix("owner-00").outstandingBetween(200.0, 400.0)
+                .balanceBetween(50.0, Double.POSITIVE_INFINITY).groupBy(GroupBy.OUTSTANDING, 50.0).build().run(bank);
+        assertEquals(built.toString(), parsed.toString());
+        assertEquals(5, parsed.getGroups().size()); // 200, 250, 300, 350 and 400 itself
+        assertEquals(10000, AccountQuery.parse("").run(bank).getTotal().getCount());
+        assertEquals(6666, AccountQuery.parse("where no outstanding").run(bank).getTotal().getCount());
+        assertEquals(0, AccountQuery.parse("where no outstanding and has outstanding").run(bank).getTotal()
+                .getCount());
+
+        assertThrows(IllegalArgumentException.class, () -> AccountQuery.parse("where balance between 5 and 1"));
+        assertThrows(IllegalArgumentException.class, () -> AccountQuery.parse("where owner starts with owner"));
+        assertThrows(IllegalArgumentException.class, () -> AccountQuery.parse("where balance = 5"));
+        assertThrows(IllegalArgumentException.class, () -> AccountQuery.parse("group by balance 0"));
+        assertThrows(IllegalArgumentException.class, () -> AccountQuery.parse("where has outstanding limit 5"));
+    }
+
+    /**
+     * Verifies that once the account index is built a bounded query only
+     * scans the accounts in range and gives the same results.
+     */
+    @Test
+    public void testIndexNarrowsScan() throws Exception {
+        AccountQuery borrowers = AccountQuery.parse("where outstanding >= 550 and owner starts with 'owner-01'");
+        AccountQuery balances = AccountQuery.parse("where balance between 1000 and 1009 group by balance 5");
+        Result borrowersScanned = borrowers.run(bank);
+        Result balancesScanned = balances.run(bank);
+
+        bank.getAccountIndex();
+        bank.deposit("owner-00989", 9.0); // 999 to 1008, kept up to date by the index
+        Result borrowersIndexed = borrowers.run(bank);
+        Result balancesIndexed = balances.run(bank);
+        assertTrue(borrowersIndexed.isIndexed());
+        assertEquals(borrowersScanned.toString(), borrowersIndexed.toString());
+        assertTrue(borrowersIndexed.getScanned() < 10000 / 3);
+        assertEquals(balancesScanned.getTotal().getCount() + 1, balancesIndexed.getTotal().getCount());
+        assertEquals(balancesIndexed.getTotal().getCount(), balancesIndexed.getScanned());
+        assertEquals(1000.0, balancesIndexed.getGroups().get(0).getBucket());
+        assertEquals(balancesScanned.getGroups().get(1).getCount() + 1,
+                balancesIndexed.getGroups().get(1).getCount());
+    }
+}
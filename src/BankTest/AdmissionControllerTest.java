@@ -0,0 +1,207 @@
+package BankTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import Bank.AdmissionController;
+import Bank.AdmissionController.BankOverloadedErrors;
+import Bank.AdmissionController.Priority;
+import Bank.AdmissionController.Stats;
+import Bank.BankApp;
+
+/**
+ * Tests for the `AdmissionController` in front of `BankApp`.
+ *
+ * These tests ensure that overloaded updates are refused at once with their
+ * own error while balance queries still get through, that waiting callers are
+ * bounded by the queue and its timeout, and that the concurrency limit follows
+ * the observed latency, cut at most once per window.
+ */
+public class AdmissionControllerTest {
+
+    private BankApp bank; // Protected bank
+    private ExecutorService callers; // Runs the callers that block in the controller
+
+    /**
+     * Creates a bank with one account.
+     */
+    @BeforeEach
+    public void setUp() throws Exception {
+        bank = new BankApp(6000.0, 10000.0, 20000.0);
+        bank.appendOwnerAccount("owner", 1000.0);
+        callers = Executors.newCachedThreadPool();
+    }
+
+    /**
+     * Stops the caller threads after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        callers.shutdownNow();
+    }
+
+    /**
+     * Verifies that with the only slot taken and no queue, an update is shed
+     * while a balance query is still admitted.
+     */
+    @Test
+    public void testUpdatesShedBeforeQueries() throws Exception {
+        AdmissionController controller = new AdmissionController(bank, 1, 1, 4, 0, Duration.ofSeconds(1),
+                Duration.ofMillis(10));
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> holder = hold(controller, release);
+
+        BankOverloadedErrors error = assertThrows(BankOverloadedErrors.class,
+                () -> controller.deposit("owner", 10.0));
+        assertEquals(Priority.UPDATE, error.getPriority());
+        assertEquals(1, error.getInFlight());
+        CompletableFuture<Double> query = CompletableFuture.supplyAsync(() -> {
+            try {
+                return controller.getOwnerAccountBalance("owner");
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }, callers);
+        waitUntil(() -> controller.getStats().getAdmitted(Priority.QUERY) == 1);
+        release.countDown();
+        holder.get(5, TimeUnit.SECONDS);
+        assertEquals(1000.0, query.get(5, TimeUnit.SECONDS), 1e-9);
+
+        Stats stats = controller.getStats();
+        assertEquals(1, stats.getRejectedQueueFull(Priority.UPDATE));
+        assertEquals(0, stats.getRejected(Priority.QUERY));
+        assertEquals(0, stats.getInFlight());
+    }
+
+    /**
+     * Verifies that a queued caller runs once the slot frees up, a caller that
+     * finds the queue full is refused at once, and a caller that waits too
+     * long is refused after the timeout.
+     */
+    @Test
+    public void testBoundedQueueAndTimeout() throws Exception {
+        AdmissionController controller = new AdmissionController(bank, 1, 1, 1, 2, Duration.ofSeconds(1),
+                Duration.ofSeconds(5));
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> holder = hold(controller, release);
+        CompletableFuture<Void> waiting = CompletableFuture.runAsync(() -> {
+            try {
+                controller.deposit("owner", 10.0);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }, callers);
+        waitUntil(() -> controller.getStats().getQueued() == 1);
+        // Updates may use three quarters of the queue of two, which one caller fills
+        BankOverloadedErrors full = assertThrows(BankOverloadedErrors.class, () -> controller.deposit("owner", 1.0));
+        assertEquals(1, full.getQueued());
+        release.countDown();
+        holder.get(5, TimeUnit.SECONDS);
+        waiting.get(5, TimeUnit.SECONDS);
+        assertEquals(1010.0, bank.getOwnerAccountBalance("owner"), 1e-9);
+        assertEquals(1, controller.getStats().getRejectedQueueFull(Priority.UPDATE));
+
+        AdmissionController impatient = new AdmissionController(bank, 1, 1, 1, 4, Duration.ofSeconds(1),
+                Duration.ofMillis(20));
+        CountDownLatch releaseAgain = new CountDownLatch(1);
+        CompletableFuture<Void> busy = hold(impatient, releaseAgain);
+        assertThrows(BankOverloadedErrors.class, () -> impatient.deposit("owner", 1.0));
+        releaseAgain.countDown();
+        busy.get(5, TimeUnit.SECONDS);
+        assertEquals(1, impatient.getStats().getRejectedTimeout(Priority.UPDATE));
+    }
+
+    /**
+     * Verifies that slow operations cut the limit down to the minimum and fast
+     * ones let it grow back.
+     */
+    @Test
+    public void testLimitFollowsLatency() throws Exception {
+        AdmissionController controller = new AdmissionController(bank, 8, 2, 16, 10, Duration.ofMillis(1),
+                Duration.ofSeconds(1));
+        for (int i = 0; i < 20; i++) {
+            controller.execute(Priority.UPDATE, b -> {
+                Thread.sleep(3); // Slower than the target
+                return null;
+            });
+        }
+        Stats slow = controller.getStats();
+        assertEquals(2.0, slow.getLimit(), 1e-9);
+        assertTrue(slow.getLimitDecreases() > 0);
+
+        for (int i = 0; i < 200; i++) {
+            controller.execute(Priority.UPDATE, b -> null); // Well within the target
+        }
+        assertTrue(controller.getStats().getLimit() > 10.0, "Fast operations should raise the limit again.");
+        assertEquals(220, controller.getStats().getAdmitted(Priority.UPDATE));
+    }
+
+    /**
+     * Verifies that slow operations which were in flight together cut the
+     * limit only once.
+     */
+    @Test
+    public void testLimitCutOncePerWindow() throws Exception {
+        AdmissionController controller = new AdmissionController(bank, 8, 2, 16, 10, Duration.ofMillis(1),
+                Duration.ofSeconds(1));
+        List<CompletableFuture<Void>> slow = new ArrayList<>();
+        synchronized (bank) { // Every admitted operation waits for the bank
+            for (int i = 0; i < 8; i++) {
+                slow.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        controller.deposit("owner", 1.0);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }, callers));
+            }
+            waitUntil(() -> controller.getStats().getInFlight() == 8);
+            Thread.sleep(5); // Slower than the target
+        }
+        for (CompletableFuture<Void> operation : slow) {
+            operation.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(1, controller.getStats().getLimitDecreases());
+        assertEquals(7.2, controller.getStats().getLimit(), 1e-9);
+    }
+
+    // Take the controller's slot until the latch is released
+    private CompletableFuture<Void> hold(AdmissionController controller, CountDownLatch release)
+            throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CompletableFuture<Void> holder = CompletableFuture.runAsync(() -> {
+            try {
+                controller.execute(Priority.UPDATE, b -> {
+                    running.countDown();
+                    release.await();
+                    return null;
+                });
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }, callers);
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        return holder;
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Timed out waiting for the controller.");
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package BankTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import Bank.AmortizationEngine;
+import Bank.AmortizationSchedule;
+import Bank.BalanceChangeEvent;
+import Bank.BankAccount;
+import Bank.BankApp;
+import Bank.BankApp.InadequateBankOperatingFundsErrors;
+import Bank.LoanTerms;
+import Bank.LoanTerms.PaymentFrequency;
+import Bank.Outstanding.InadequateOutstandingAmountErrors;
+import Bank.Outstanding.OutstandingInterestError;
+
+/**
+ * Tests for the amortization engine and scheduled repayments.
+ *
+ * These tests ensure that schedules pay the loan off exactly, that
+ * prepayments only re-amortize the later periods, and that the bank applies
+ * repayments against the schedule and refuses changes that bypass it.
+ */
+public class AmortizationTest {
+
+    private LoanTerms terms; // 12 monthly payments on 12000 at 12% a year
+
+    /**
+     * Creates the loan terms used by most tests.
+     */
+    @BeforeEach
+    public void setUp() throws InadequateOutstandingAmountErrors, OutstandingInterestError {
+        terms = new LoanTerms(12000.0, 12.0, 12, PaymentFrequency.MONTHLY);
+    }
+
+    /**
+     * Verifies that the level payment matches the annuity formula and that the
+     * schedule ends at a zero balance.
+     */
+    @Test
+    public void testLevelSchedule() {
+        AmortizationSchedule schedule = AmortizationEngine.schedule(terms);
+
+        assertEquals(12, schedule.getPeriods());
+        assertEquals(1066.19, schedule.getPayment(0), 0.01, "Payment should follow the annuity formula.");
+        assertEquals(120.0, schedule.getInterest(0), 1e-9, "First interest is 1% of the principal.");
+        assertEquals(0.0, schedule.getBalance(11), 1e-6, "The schedule should clear the loan.");
+    }
+
+    /**
+     * Verifies that a zero rate loan is split into equal payments.
+     */
+    @Test
+    public void testZeroRateSchedule() throws Exception {
+        AmortizationSchedule schedule = AmortizationEngine.schedule(
+                new LoanTerms(1200.0, 0.0, 4, PaymentFrequency.QUARTERLY));
+        for (int period = 0; period < 4; period++) {
+            assertEquals(300.0, schedule.getPayment(period), 1e-9);
+        }
+    }
+
+    /**
+     * Verifies that a prepayment keeps the earlier periods and lowers the later
+     * payments.
+     */
+    @Test
+    public void testPrepaymentReamortizes() throws InadequateOutstandingAmountErrors {
+        AmortizationSchedule schedule = AmortizationEngine.schedule(terms);
+        double scheduledPayment = schedule.getPayment(1);
+
+        schedule.recordPayment(schedule.getPayment(0)); // On schedule
+        double firstBalance = schedule.getBalance(0);
+        schedule.recordPayment(scheduledPayment + 3000.0); // Prepayment
+
+        assertEquals(2, schedule.getNextPeriod());
+        assertEquals(firstBalance, schedule.getBalance(0), 1e-9, "Earlier periods should not change.");
+        assertTrue(schedule.getPayment(2) < scheduledPayment, "Later payments should drop after a prepayment.");
+        assertEquals(0.0, schedule.getBalance(11), 1e-6);
+    }
+
+    /**
+     * Verifies that a payment below the interest due is rejected.
+     */
+    @Test
+    public void testPaymentBelowInterest() {
+        AmortizationSchedule schedule = AmortizationEngine.schedule(terms);
+        assertThrows(InadequateOutstandingAmountErrors.class, () -> schedule.recordPayment(50.0));
+        assertEquals(0, schedule.getNextPeriod(), "A rejected payment should not advance the schedule.");
+    }
+
+    /**
+     * Verifies that the last payment is refused unless it clears the balance,
+     * so the schedule is never paid off while money is still owed.
+     */
+    @Test
+    public void testLastPaymentMustClearBalance() throws Exception {
+        BankApp bank = new BankApp(6000.0, 10000.0, 20000.0);
+        bank.appendToBankOperatingFunds(100000.0);
+        bank.appendOwnerAccount("Bob", 5000.0);
+        bank.grantOutstanding("Bob", new LoanTerms(1200.0, 12.0, 2, PaymentFrequency.MONTHLY));
+        AmortizationSchedule schedule = bank.getOwnerAccount("Bob").getOutstanding().getSchedule();
+        bank.repayOutstanding("Bob", schedule.getPayment(0));
+        double owed = bank.getOutstandingBalance("Bob");
+
+        assertThrows(InadequateOutstandingAmountErrors.class, () -> bank.repayOutstanding("Bob", 100.0));
+        assertEquals(owed, bank.getOutstandingBalance("Bob"), 1e-9);
+        assertEquals(1, schedule.getNextPeriod());
+        assertTrue(bank.getOwnerAccount("Bob").getOutstanding().hasActiveSchedule());
+
+        bank.repayOutstanding("Bob", schedule.getPayment(1));
+        assertTrue(schedule.isPaidOff());
+        assertEquals(0.0, bank.getOutstandingBalance("Bob"), 1e-9);
+    }
+
+    /**
+     * Verifies that portfolio scheduling in parallel gives the same payments as
+     * the primitive level payment calculation.
+     */
+    @Test
+    public void testPortfolio() throws Exception {
+        List<LoanTerms> portfolio = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            portfolio.add(new LoanTerms(1000.0 * i, i % 20, 12 + i % 24, PaymentFrequency.MONTHLY));
+        }
+        List<AmortizationSchedule> schedules = AmortizationEngine.schedulePortfolio(portfolio);
+
+        double[] principals = new double[portfolio.size()];
+        double[] rates = new double[portfolio.size()];
+        int[] periods = new int[portfolio.size()];
+        double[] payments = new double[portfolio.size()];
+        for (int i = 0; i < portfolio.size(); i++) {
+            principals[i] = portfolio.get(i).getPrincipal();
+            rates[i] = portfolio.get(i).getPeriodicRate();
+            periods[i] = portfolio.get(i).getTermPeriods();
+        }
+        AmortizationEngine.levelPayments(principals, rates, periods, payments);
+
+        for (int i = 0; i < portfolio.size(); i++) {
+            assertEquals(payments[i], schedules.get(i).getPayment(0), 1e-9);
+        }
+    }
+
+    /**
+     * Verifies that the bank charges the period's interest and applies
+     * repayments against the schedule until the loan is repaid.
+     */
+    @Test
+    public void testBankRepaysAgainstSchedule() throws Exception {
+        BankApp bank = new BankApp(6000.0, 10000.0, 20000.0);
+        bank.appendToBankOperatingFunds(100000.0);
+        bank.appendOwnerAccount("Bob", 5000.0);
+        bank.grantOutstanding("Bob", terms);
+
+        AmortizationSchedule schedule = bank.getOwnerAccount("Bob").getOutstanding().getSchedule();
+        double payment = schedule.getPayment(0);
+        bank.repayOutstanding("Bob", payment);
+        assertEquals(12000.0 + 120.0 - payment, bank.getOutstandingBalance("Bob"), 1e-9,
+                "The repayment should cover the period's interest first.");
+
+        for (int period = 1; period < 12; period++) {
+            bank.repayOutstanding("Bob", schedule.getPayment(period));
+        }
+        assertEquals(0.0, bank.getOutstandingBalance("Bob"), "The loan should be repaid after the last period.");
+        assertTrue(schedule.isPaidOff());
+    }
+
+    /**
+     * Verifies that a plain grant or flat interest is refused while a schedule
+     * is active, so the schedule and the outstanding balance never diverge,
+     * and allowed again once it is paid off.
+     */
+    @Test
+    public void testScheduledLoanRefusesPlainChanges() throws Exception {
+        BankApp bank = new BankApp(6000.0, 10000.0, 20000.0);
+        bank.appendToBankOperatingFunds(100000.0);
+        bank.appendOwnerAccount("Bob", 5000.0);
+        bank.grantOutstanding("Bob", terms);
+        double funds = bank.getBankOperatingFunds();
+
+        assertThrows(InadequateOutstandingAmountErrors.class, () -> bank.grantOutstanding("Bob", 500.0));
+        assertThrows(OutstandingInterestError.class, () -> bank.applyInterest("Bob", 5.0));
+        assertEquals(12000.0, bank.getOutstandingBalance("Bob"), 1e-9);
+        assertEquals(funds, bank.getBankOperatingFunds(), 1e-9);
+
+        AmortizationSchedule schedule = bank.getOwnerAccount("Bob").getOutstanding().getSchedule();
+        for (int period = 0; period < 12; period++) {
+            bank.repayOutstanding("Bob", schedule.getPayment(period));
+        }
+        bank.grantOutstanding("Bob", 500.0); // Paid off, so a plain grant is allowed
+        bank.applyInterest("Bob", 10.0);
+        assertEquals(550.0, bank.getOutstandingBalance("Bob"), 1e-9);
+        // The new schedule would not know about the plain balance
+        assertThrows(InadequateOutstandingAmountErrors.class, () -> bank.grantOutstanding("Bob", terms));
+        assertEquals(550.0, bank.getOutstandingBalance("Bob"), 1e-9);
+        assertFalse(bank.getOwnerAccount("Bob").getOutstanding().hasActiveSchedule());
+    }
+
+    /**
+     * Verifies that a scheduled grant refused by the checks leaves no
+     * outstanding on the account, and that listeners see the GRANT only once
+     * the schedule is attached.
+     */
+    @Test
+    public void testScheduledGrantPublishesWithSchedule() throws Exception {
+        BankApp bank = new BankApp(6000.0, 10000.0, 20000.0);
+        bank.appendOwnerAccount("Bob", 5000.0);
+        assertThrows(InadequateBankOperatingFundsErrors.class, () -> bank.grantOutstanding("Bob", terms));
+        assertFalse(bank.getOwnerAccount("Bob").hasOutstanding());
+
+        bank.appendToBankOperatingFunds(100000.0);
+        BankAccount account = bank.getOwnerAccount("Bob"); // The in-memory store hands out the account itself
+        List<Boolean> scheduled = new ArrayList<>();
+        bank.addBalanceChangeListener(event -> {
+            if (event.getType() == BalanceChangeEvent.Type.GRANT) {
+                scheduled.add(account.getOutstanding().hasActiveSchedule());
+            }
+        });
+        bank.grantOutstanding("Bob", terms);
+        assertEquals(List.of(true), scheduled);
+    }
+}
@@ -0,0 +1,136 @@
+package BankTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import Bank.AsyncBankApp;
+import Bank.AsyncBankApp.BankOperation;
+import Bank.BankAccount.AccountOwnerNotFoundErrors;
+import Bank.BankAccount.InadequateFundsErrors;
+import Bank.BankApp;
+import Bank.BankApp.InadequateWithdrawAmountErrors;
+
+/**
+ * Tests for the `AsyncBankApp` facade.
+ *
+ * These tests ensure that the asynchronous operations update the bank the same
+ * way the synchronous methods do, and that errors complete the futures with the
+ * existing error types.
+ */
+public class AsyncBankAppTest {
+
+    private BankApp bank; // Bank the facade runs against
+    private AsyncBankApp asyncBank; // Facade under test
+
+    /**
+     * Creates a bank with one account and a virtual thread facade before each
+     * test.
+     */
+    @BeforeEach
+    public void setUp() throws Exception {
+        bank = new BankApp(6000.0, 10000.0, 20000.0);
+        bank.appendToBankOperatingFunds(100000.0);
+        bank.appendOwnerAccount("Bob", 5000.0);
+        asyncBank = AsyncBankApp.withVirtualThreads(bank);
+    }
+
+    /**
+     * Shuts down the facade's executor after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        asyncBank.close();
+    }
+
+    /**
+     * Verifies that an asynchronous deposit can be chained into a balance query.
+     */
+    @Test
+    @Timeout(5)
+    public void testDepositThenBalance() {
+        double balance = asyncBank.deposit("Bob", 1000.0)
+                .thenCompose(ignored -> asyncBank.getOwnerAccountBalance("Bob"))
+                .join();
+
+        assertEquals(6000.0, balance, "Balance should include the asynchronous deposit.");
+        assertEquals(106000.0, bank.getBankOperatingFunds(), "Operating funds should include the deposit.");
+    }
+
+    /**
+     * Verifies that a failed withdrawal completes the future with the original
+     * error type.
+     */
+    @Test
+    @Timeout(5)
+    public void testWithdrawCompletesExceptionally() {
+        CompletableFuture<Void> result = asyncBank.withdraw("Bob", 5500.0);
+
+        ExecutionException exception = assertThrows(ExecutionException.class, result::get);
+        assertInstanceOf(InadequateFundsErrors.class, exception.getCause(),
+                "The future should fail with the bank's own error type.");
+    }
+
+    /**
+     * Verifies that an unknown owner fails with AccountOwnerNotFoundErrors.
+     */
+    @Test
+    @Timeout(5)
+    public void testUnknownOwner() {
+        ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> asyncBank.getOwnerAccountBalance("Nobody").get());
+        assertInstanceOf(AccountOwnerNotFoundErrors.class, exception.getCause());
+    }
+
+    /**
+     * Verifies that a batch runs in order and that one failed operation does not
+     * fail the others.
+     */
+    @Test
+    @Timeout(5)
+    public void testSubmitBatch() {
+        List<BankOperation<Double>> batch = List.of(
+                b -> {
+                    b.deposit("Bob", 500.0);
+                    return b.getOwnerAccountBalance("Bob");
+                },
+                b -> {
+                    b.withdraw("Bob", 9000.0); // Exceeds the withdraw limit
+                    return b.getOwnerAccountBalance("Bob");
+                },
+                b -> b.getOwnerAccountBalance("Bob"));
+
+        List<CompletableFuture<Double>> results = asyncBank.submitBatch(batch);
+
+        assertEquals(5500.0, results.get(0).join());
+        CompletionException exception = assertThrows(CompletionException.class, results.get(1)::join,
+                "The invalid withdrawal should fail on its own.");
+        assertInstanceOf(InadequateWithdrawAmountErrors.class, exception.getCause());
+        assertEquals(5500.0, results.get(2).join());
+    }
+
+    /**
+     * Verifies that the bounded pool facade produces the same results.
+     */
+    @Test
+    @Timeout(5)
+    public void testBoundedPool() {
+        try (AsyncBankApp pooled = AsyncBankApp.withBoundedPool(bank, 2, 16)) {
+            CompletableFuture.allOf(
+                    pooled.deposit("Bob", 100.0),
+                    pooled.deposit("Bob", 200.0),
+                    pooled.grantOutstanding("Bob", 1000.0)).join();
+
+            assertEquals(5300.0, pooled.getOwnerAccountBalance("Bob").join());
+            assertEquals(1000.0, pooled.getOutstandingBalance("Bob").join());
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package BankTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import Bank.AmortizationEngine;
+import Bank.AmortizationSchedule;
+import Bank.BTreeAccountStore;
+import Bank.BankAccount;
+import Bank.BankApp;
+import Bank.LoanTerms;
+import Bank.LoanTerms.PaymentFrequency;
+
+/**
+ * Tests for the `BTreeAccountStore` on-disk account store.
+ *
+ * These tests use small pages and a small cache so that the tree grows
+ * several levels deep and pages are evicted, and ensure that the store
+ * behaves like a sorted map that survives being reopened.
+ */
+public class BTreeAccountStoreTest {
+
+    @TempDir
+    Path directory; // Holds the store file
+
+    /**
+     * Verifies that random inserts, updates and removals give the same result
+     * as a sorted map, while the cache stays within its bound.
+     */
+    @Test
+    public void testMatchesSortedMap() throws Exception {
+        Map<String, Double> expected = new TreeMap<>();
+        Random random = new Random(7);
+        try (BTreeAccountStore store = new BTreeAccountStore(directory.resolve("accounts.db"), 512, 16)) {
+            for (int i = 0; i < 20000; i++) {
+                String owner = "owner-" + random.nextInt(3000);
+                if (random.nextInt(4) == 0) {
+                    assertEquals(expected.remove(owner) != null, store.remove(owner));
+                } else {
+                    double balance = random.nextInt(100000) / 100.0;
+                    if (expected.put(owner, balance) == null) {
+                        store.insert(new BankAccount(owner, balance));
+                    } else {
+                        store.update(new BankAccount(owner, balance));
+                    }
+                }
+            }
+            assertEquals(expected.size(), store.size());
+            assertTrue(store.getCachedPages() <= 16);
+            assertTrue(store.getCacheMisses() > 0); // The tree does not fit in the cache
+
+            List<BankAccount> listed = store.list();
+            assertEquals(expected.size(), listed.size());
+            int index = 0;
+            for (Map.Entry<String, Double> entry : expected.entrySet()) {
+                assertEquals(entry.getKey(), listed.get(index).getAccountOwner()); // Listed in key order
+                assertEquals(entry.getValue(), listed.get(index).getCurrentBalance(), 1e-9);
+                index++;
+            }
+            assertNull(store.find("nobody"));
+        }
+    }
+
+    /**
+     * Verifies that accounts, including a long payment schedule stored in
+     * overflow pages, are read back after the store is reopened.
+     */
+    @Test
+    public void testReopenKeepsAccountsAndSchedules() throws Exception {
+        Path file = directory.resolve("accounts.db");
+        BTreeAccountStore accounts = new BTreeAccountStore(file, 1024, 8);
+        BankApp bank = new BankApp(6000.0, 10000.0, 500000.0, accounts);
+        bank.appendToBankOperatingFunds(1000000.0);
+        for (int i = 0; i < 500; i++) {
+            bank.appendOwnerAccount(String.format("owner-%04d", i), 100.0 + i);
+        }
+        bank.deposit("owner-0042", 58.0);
+        bank.grantOutstanding("owner-0007", new LoanTerms(240000.0, 6.0, 360, PaymentFrequency.MONTHLY));
+        double payment = bank.getOwnerAccount("owner-0007").getOutstanding().getSchedule().getPayment(0);
+        bank.repayOutstanding("owner-0007", payment);
+        bank.repayOutstanding("owner-0007", payment + 1000.0); // Re-amortizes the rest
+        double outstanding = bank.getOutstandingBalance("owner-0007");
+        AmortizationSchedule before = bank.getOwnerAccount("owner-0007").getOutstanding().getSchedule();
+        bank.removeOwnerAccount("owner-0499");
+        assertEquals(0, bank.getClosedAccountCount()); // Taken out of the store at once
+        accounts.close();
+
+        try (BTreeAccountStore store = new BTreeAccountStore(file, 1024, 8)) {
+            assertEquals(499, store.size());
+            assertNull(store.find("owner-0499"));
+            assertEquals(200.0, store.find("owner-0042").getCurrentBalance(), 1e-9);
+            BankAccount borrower = store.find("owner-0007");
+            assertEquals(outstanding, borrower.getCurrentOutstandingBalance(), 1e-9);
+            AmortizationSchedule after = borrower.getOutstanding().getSchedule();
+            assertEquals(2, after.getNextPeriod());
+            assertEquals(before.getPeriods(), after.getPeriods());
+            for (int period = 0; period < after.getPeriods(); period++) {
+                assertEquals(before.getPayment(period), after.getPayment(period), 1e-9);
+                assertEquals(before.getBalance(period), after.getBalance(period), 1e-9);
+            }
+        }
+    }
+
+    /**
+     * Verifies that the pages of a removed record are reused instead of
+     * growing the file.
+     */
+    @Test
+    public void testFreedPagesAreReused() throws Exception {
+        try (BTreeAccountStore store = new BTreeAccountStore(directory.resolve("accounts.db"), 512, 8)) {
+            BankAccount borrower = new BankAccount("Bob", 10.0);
+            borrower.getOutstanding().attachSchedule(
+                    AmortizationEngine.schedule(new LoanTerms(1000.0, 5.0, 60, PaymentFrequency.MONTHLY)));
+            store.insert(borrower);
+            int pages = store.getPageCount();
+            for (int i = 0; i < 20; i++) {
+                store.remove("Bob");
+                store.insert(borrower);
+                store.update(borrower);
+            }
+            assertEquals(pages, store.getPageCount());
+            assertEquals(60, store.find("Bob").getOutstanding().getSchedule().getPeriods());
+        }
+    }
+
+    /**
+     * Verifies that a store written to since its last flush cannot be opened,
+     * and that a bank refuses a store that already holds accounts.
+     */
+    @Test
+    public void testOnlyCleanEmptyStoresAreUsed() throws Exception {
+        Path file = directory.resolve("accounts.db");
+        BTreeAccountStore writer = new BTreeAccountStore(file, 512, 8);
+        for (int i = 0; i < 500; i++) {
+            writer.insert(new BankAccount(String.format("owner-%04d", i), i)); // Evicts pages to the file
+        }
+        assertThrows(IOException.class, () -> new BTreeAccountStore(file, 512, 8).close());
+        writer.close();
+
+        try (BTreeAccountStore store = new BTreeAccountStore(file, 512, 8)) {
+            assertEquals(500, store.size());
+            assertThrows(IllegalArgumentException.class, () -> new BankApp(6000.0, 10000.0, 500000.0, store));
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package BankTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import Bank.BalanceChangeEvent;
+import Bank.BalanceChangePublisher;
+import Bank.BalanceChangePublisher.OverflowPolicy;
+import Bank.BalanceChangePublisher.SubscriberOverflowErrors;
+import Bank.BankApp;
+
+/**
+ * Tests for the `BalanceChangePublisher` event stream.
+ *
+ * These tests ensure that every mutation made through the bank is published as
+ * a typed event, that events are only delivered on demand, and that the
+ * overflow policies handle slow subscribers.
+ */
+public class BalanceChangePublisherTest {
+
+    private final Executor direct = Runnable::run; // Runs the fan-out on the calling thread
+    private BankApp bank; // Bank that produces the events
+
+    /**
+     * Creates a bank with operating funds and one account before each test.
+     */
+    @BeforeEach
+    public void setUp() {
+        bank = new BankApp(6000.0, 10000.0, 20000.0);
+        bank.appendToBankOperatingFunds(100000.0);
+    }
+
+    /**
+     * Subscriber that records what it receives and requests a fixed number of
+     * events up front.
+     */
+    private static class RecordingSubscriber implements Flow.Subscriber<BalanceChangeEvent> {
+        final List<BalanceChangeEvent> received = new CopyOnWriteArrayList<>();
+        final CountDownLatch finished = new CountDownLatch(1);
+        final long initialDemand;
+        volatile Flow.Subscription subscription;
+        volatile Throwable error;
+
+        RecordingSubscriber(long initialDemand) {
+            this.initialDemand = initialDemand;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (initialDemand > 0) {
+                subscription.request(initialDemand);
+            }
+        }
+
+        @Override
+        public void onNext(BalanceChangeEvent item) {
+            received.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            finished.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            finished.countDown();
+        }
+    }
+
+    /**
+     * Verifies that each bank mutation produces one event of the right type with
+     * the account state after the change.
+     */
+    @Test
+    @Timeout(5)
+    public void testMutationsArePublished() throws Exception {
+        BalanceChangePublisher publisher = new BalanceChangePublisher(direct, 16, OverflowPolicy.DROP_OLDEST);
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(subscriber);
+        bank.addBalanceChangeListener(publisher);
+
+        bank.appendOwnerAccount("Bob", 5000.0);
+        bank.deposit("Bob", 1000.0);
+        bank.withdraw("Bob", 500.0);
+        bank.grantOutstanding("Bob", 2000.0);
+        bank.applyInterest("Bob", 10.0);
+        bank.repayOutstanding("Bob", 200.0);
+        publisher.close();
+        assertTrue(subscriber.finished.await(5, TimeUnit.SECONDS));
+
+        List<BalanceChangeEvent.Type> types = subscriber.received.stream().map(BalanceChangeEvent::getType).toList();
+        assertEquals(List.of(BalanceChangeEvent.Type.OPEN, BalanceChangeEvent.Type.DEPOSIT,
+                BalanceChangeEvent.Type.WITHDRAW, BalanceChangeEvent.Type.GRANT, BalanceChangeEvent.Type.INTEREST,
+                BalanceChangeEvent.Type.REPAY), types);
+
+        BalanceChangeEvent interest = subscriber.received.get(4);
+        assertEquals(200.0, interest.getAmount(), 1e-9, "Interest event should carry the accrued interest.");
+        assertEquals(2200.0, interest.getOutstandingAfter(), 1e-9);
+        assertEquals(5500.0, subscriber.received.get(2).getBalanceAfter());
+    }
+
+    /**
+     * Verifies that events are held in the buffer until the subscriber requests
+     * them.
+     */
+    @Test
+    @Timeout(5)
+    public void testDeliveryFollowsDemand() throws Exception {
+        BalanceChangePublisher publisher = new BalanceChangePublisher(direct, 16, OverflowPolicy.DROP_OLDEST);
+        RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        publisher.subscribe(subscriber);
+        bank.addBalanceChangeListener(publisher);
+
+        bank.appendOwnerAccount("Bob", 5000.0);
+        bank.deposit("Bob", 100.0);
+        bank.deposit("Bob", 100.0);
+        assertTrue(subscriber.received.isEmpty(), "Nothing should be delivered without demand.");
+
+        subscriber.subscription.request(2);
+        assertEquals(2, subscriber.received.size(), "Only the requested events should be delivered.");
+
+        subscriber.subscription.request(5);
+        assertEquals(3, subscriber.received.size());
+    }
+
+    /**
+     * Verifies that the DROP_OLDEST policy keeps the newest events for a slow
+     * subscriber.
+     */
+    @Test
+    @Timeout(5)
+    public void testDropOldestPolicy() throws Exception {
+        BalanceChangePublisher publisher = new BalanceChangePublisher(direct, 2, OverflowPolicy.DROP_OLDEST);
+        RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        publisher.subscribe(subscriber);
+        bank.addBalanceChangeListener(publisher);
+
+        bank.appendOwnerAccount("Bob", 5000.0);
+        bank.deposit("Bob", 1.0);
+        bank.deposit("Bob", 2.0);
+        subscriber.subscription.request(10);
+
+        assertEquals(2, subscriber.received.size());
+        assertEquals(2.0, subscriber.received.get(1).getAmount());
+        assertEquals(1, publisher.getDroppedEventCount());
+    }
+
+    /**
+     * Verifies that the CANCEL policy fails a slow subscriber with
+     * SubscriberOverflowErrors.
+     */
+    @Test
+    @Timeout(5)
+    public void testCancelPolicy() throws Exception {
+        BalanceChangePublisher publisher = new BalanceChangePublisher(direct, 1, OverflowPolicy.CANCEL);
+        RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        publisher.subscribe(subscriber);
+        bank.addBalanceChangeListener(publisher);
+
+        bank.appendOwnerAccount("Bob", 5000.0);
+        bank.deposit("Bob", 1.0);
+        subscriber.subscription.request(1);
+
+        assertTrue(subscriber.finished.await(5, TimeUnit.SECONDS));
+        assertInstanceOf(SubscriberOverflowErrors.class, subscriber.error);
+        assertEquals(0, publisher.getSubscriberCount(), "The overflowing subscriber should be removed.");
+    }
+}
@@ -0,0 +1,232 @@
+package BankTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import Bank.AmortizationSchedule;
+import Bank.BankAccount;
+import Bank.BankApp;
+import Bank.BankCheckpointer;
+import Bank.ChangeDataCaptureLog;
+import Bank.LoanTerms;
+import Bank.LoanTerms.PaymentFrequency;
+
+/**
+ * Tests for the `BankCheckpointer` incremental checkpoints and recovery.
+ *
+ * These tests ensure that incremental checkpoints only hold the accounts that
+ * changed, that compaction merges the chain and truncates the journal, and
+ * that a bank recovered from the checkpoints and the journal tail matches the
+ * bank it was taken from, payment schedules included, even when checkpoints
+ * run during deposits and withdrawals.
+ */
+public class BankCheckpointerTest {
+
+    @TempDir
+    Path directory; // Holds the checkpoints and the journal
+
+    private BankApp bank; // Bank being checkpointed
+
+    /**
+     * Creates a bank with capital and a hundred accounts.
+     */
+    @BeforeEach
+    public void setUp() throws Exception {
+        bank = new BankApp(6000.0, 10000.0, 20000.0);
+        bank.appendToBankOperatingFunds(100000.0);
+        for (int i = 0; i < 100; i++) {
+            bank.appendOwnerAccount("owner-" + i, 1000.0);
+        }
+    }
+
+    /**
+     * Verifies that an incremental checkpoint is written only when something
+     * changed, is much smaller than the full one, and restores closed accounts.
+     */
+    @Test
+    public void testIncrementalCheckpointHoldsChangedAccounts() throws Exception {
+        Path checkpoints = directory.resolve("checkpoints");
+        try (BankCheckpointer checkpointer = new BankCheckpointer(bank, checkpoints, null, Duration.ofHours(1), 10)) {
+            long base = checkpointer.getCheckpointSequence();
+            assertEquals(base, checkpointer.checkpoint()); // Nothing changed yet
+            assertEquals(1, listFiles(checkpoints).size());
+
+            bank.deposit("owner-3", 250.0);
+            bank.grantOutstanding("owner-7", 5000.0);
+            bank.removeOwnerAccount("owner-9");
+            assertTrue(checkpointer.checkpoint() > base);
+            assertEquals(1, checkpointer.getChainLength());
+
+            List<Path> files = listFiles(checkpoints);
+            assertEquals(2, files.size());
+            assertTrue(Files.size(files.get(1)) * 10 < Files.size(files.get(0)),
+                    "The incremental checkpoint should only hold the changed accounts.");
+        }
+
+        BankApp recovered = new BankApp(6000.0, 10000.0, 20000.0);
+        BankCheckpointer.recover(recovered, checkpoints, null);
+        assertSameBank(bank, recovered);
+        assertFalse(recovered.getBankAccountOwners().stream().anyMatch(account -> account.getAccountOwner().equals("owner-9")));
+    }
+
+    /**
+     * Verifies that compaction leaves one full checkpoint, truncates the
+     * journal, and that recovery replays only the tail written after it.
+     */
+    @Test
+    public void testCompactionTruncatesJournal() throws Exception {
+        Path checkpoints = directory.resolve("checkpoints");
+        Path journalDirectory = directory.resolve("journal");
+        try (ChangeDataCaptureLog journal = new ChangeDataCaptureLog(journalDirectory, 512, Duration.ofHours(1), 1,
+                Duration.ofMillis(50))) {
+            bank.addBalanceChangeListener(journal);
+            try (BankCheckpointer checkpointer = new BankCheckpointer(bank, checkpoints, journal,
+                    Duration.ofHours(1), 3)) {
+                for (int round = 0; round < 3; round++) {
+                    for (int i = 0; i < 40; i++) {
+                        bank.deposit("owner-" + i, 1.0 + round);
+                    }
+                    checkpointer.checkpoint();
+                }
+                assertEquals(0, checkpointer.getChainLength()); // The third checkpoint compacted the chain
+                List<Path> files = listFiles(checkpoints);
+                assertEquals(1, files.size());
+                assertTrue(files.get(0).getFileName().toString().endsWith("-full.ckpt"));
+                assertEquals(1, journal.getSegmentBaseOffsets().size(),
+                        "Every segment covered by the full checkpoint should be truncated.");
+
+                bank.removeBalanceChangeListener(checkpointer); // The tail is only in the journal
+                bank.withdraw("owner-1", 300.0);
+                bank.applyFee("owner-2", 25.0);
+                bank.appendOwnerAccount("newcomer", 42.0);
+                journal.flush();
+
+                BankApp recovered = new BankApp(6000.0, 10000.0, 20000.0);
+                BankCheckpointer.recover(recovered, checkpoints, journalDirectory);
+                assertSameBank(bank, recovered);
+            }
+        }
+    }
+
+    /**
+     * Verifies that checkpoints taken while deposits and withdrawals run give
+     * a consistent bank when recovered.
+     */
+    @Test
+    public void testCheckpointsDuringTraffic() throws Exception {
+        Path checkpoints = directory.resolve("checkpoints");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        long covered;
+        try (BankCheckpointer checkpointer = new BankCheckpointer(bank, checkpoints, null, Duration.ofMillis(1), 4)) {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int worker = t;
+                workers.add(executor.submit(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        String owner = "owner-" + ((i * 7 + worker) % 100);
+                        if (i % 2 == 0) {
+                            bank.deposit(owner, 3.0);
+                        } else {
+                            bank.withdraw(owner, 2.0);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get(30, TimeUnit.SECONDS);
+            }
+            assertTrue(checkpointer.getCheckpointSequence() > 0, "Checkpoints should be written during traffic.");
+            covered = checkpointer.checkpoint();
+            assertEquals(covered, checkpointer.getCheckpointSequence());
+        } finally {
+            executor.shutdown();
+        }
+
+        BankApp recovered = new BankApp(6000.0, 10000.0, 20000.0);
+        assertEquals(covered, BankCheckpointer.recover(recovered, checkpoints, null));
+        assertSameBank(bank, recovered);
+    }
+
+    /**
+     * Verifies that loans granted with loan terms keep their payment schedule
+     * when recovered from a full checkpoint, an incremental checkpoint and the
+     * journal tail.
+     */
+    @Test
+    public void testScheduledLoansSurviveRecovery() throws Exception {
+        LoanTerms terms = new LoanTerms(6000.0, 12.0, 12, PaymentFrequency.MONTHLY);
+        bank.grantOutstanding("owner-1", terms); // In the full checkpoint
+        Path checkpoints = directory.resolve("checkpoints");
+        Path journalDirectory = directory.resolve("journal");
+        try (ChangeDataCaptureLog journal = new ChangeDataCaptureLog(journalDirectory, 1 << 20, Duration.ofHours(1),
+                1, Duration.ofMillis(50))) {
+            bank.addBalanceChangeListener(journal);
+            try (BankCheckpointer checkpointer = new BankCheckpointer(bank, checkpoints, journal,
+                    Duration.ofHours(1), 10)) {
+                bank.grantOutstanding("owner-2", terms); // In an incremental checkpoint
+                bank.repayOutstanding("owner-1", scheduleOf(bank, "owner-1").getPayment(0));
+                checkpointer.checkpoint();
+
+                bank.removeBalanceChangeListener(checkpointer); // The tail is only in the journal
+                bank.repayOutstanding("owner-2", scheduleOf(bank, "owner-2").getPayment(0) + 500.0);
+                bank.grantOutstanding("owner-3", terms);
+                journal.flush();
+
+                BankApp recovered = new BankApp(6000.0, 10000.0, 20000.0);
+                BankCheckpointer.recover(recovered, checkpoints, journalDirectory);
+                assertSameBank(bank, recovered);
+                for (String owner : List.of("owner-1", "owner-2", "owner-3")) {
+                    assertTrue(recovered.getOwnerAccount(owner).getOutstanding().hasActiveSchedule(), owner);
+                    AmortizationSchedule expected = scheduleOf(bank, owner);
+                    AmortizationSchedule actual = scheduleOf(recovered, owner);
+                    assertEquals(expected.getNextPeriod(), actual.getNextPeriod(), owner);
+                    assertEquals(expected.getInterestDue(), actual.getInterestDue(), 1e-9, owner);
+                    assertEquals(expected.getPayment(expected.getPeriods() - 1),
+                            actual.getPayment(actual.getPeriods() - 1), 1e-9, owner);
+                }
+
+                double payment = scheduleOf(bank, "owner-2").getPayment(1);
+                bank.repayOutstanding("owner-2", payment);
+                recovered.repayOutstanding("owner-2", payment);
+                assertSameBank(bank, recovered);
+            }
+        }
+    }
+
+    private static AmortizationSchedule scheduleOf(BankApp bank, String owner) throws Exception {
+        return bank.getOwnerAccount(owner).getOutstanding().getSchedule();
+    }
+
+    private static void assertSameBank(BankApp expected, BankApp actual) throws Exception {
+        assertEquals(expected.getBankAccountOwners().size(), actual.getBankAccountOwners().size());
+        for (BankAccount account : expected.getBankAccountOwners()) {
+            String owner = account.getAccountOwner();
+            assertEquals(expected.getOwnerAccountBalance(owner), actual.getOwnerAccountBalance(owner), 1e-9, owner);
+            assertEquals(expected.getOutstandingBalance(owner), actual.getOutstandingBalance(owner), 1e-9, owner);
+        }
+        assertEquals(expected.getBankCapital(), actual.getBankCapital(), 1e-6);
+        assertEquals(expected.getBankOperatingFunds(), actual.getBankOperatingFunds(), 1e-6);
+    }
+
+    private static List<Path> listFiles(Path directory) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+}
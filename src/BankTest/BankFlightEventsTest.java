@@ -0,0 +1,199 @@
+package BankTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import Bank.BankAccount;
+import Bank.BankAccount.InadequateFundsErrors;
+import Bank.BankApp;
+import Bank.BankFlightEvents;
+import Bank.EndOfDayPipeline;
+import Bank.LoanTerms;
+import Bank.LoanTerms.PaymentFrequency;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Tests for the JDK Flight Recorder events of `BankApp`.
+ *
+ * These tests ensure that every operation is recorded with its owner, amount,
+ * duration and outcome when the events are enabled, that nothing is recorded
+ * while they are disabled, and that the shipped settings profiles load.
+ */
+public class BankFlightEventsTest {
+
+    @TempDir
+    Path directory; // Holds the recordings
+
+    private BankApp bank; // Recorded bank
+
+    /**
+     * Creates a bank with capital.
+     */
+    @BeforeEach
+    public void setUp() {
+        bank = new BankApp(6000.0, 10000.0, 20000.0);
+        bank.appendToBankOperatingFunds(50000.0);
+    }
+
+    /**
+     * Verifies that the operations, a declined withdrawal and the stages of an
+     * end-of-day run are recorded with the diagnostic profile.
+     */
+    @Test
+    public void testOperationsRecorded() throws Exception {
+        List<RecordedEvent> events = record(profile("bank-diagnostic.jfc"), () -> {
+            bank.appendOwnerAccount("owner", 1000.0);
+            bank.deposit("owner", 100.0);
+            assertThrows(InadequateFundsErrors.class, () -> bank.withdraw("owner", 5000.0));
+            bank.grantOutstanding("owner", 300.0);
+            bank.applyInterest("owner", 10.0);
+            bank.repayOutstanding("owner", 30.0);
+            EndOfDayPipeline pipeline = new EndOfDayPipeline(bank, directory.resolve("eod.ckpt"), 4,
+                    ForkJoinPool.commonPool());
+            pipeline.run();
+            bank.appendOwnerAccount("other", 50.0);
+            bank.removeOwnerAccount("other");
+        });
+
+        RecordedEvent deposit = only(events, "Bank.Deposit");
+        assertEquals("owner", deposit.getString("accountOwner"));
+        assertEquals(100.0, deposit.getDouble("amount"), 1e-9);
+        assertEquals("ok", deposit.getString("outcome"));
+        assertNull(deposit.getString("error"));
+        assertFalse(deposit.getDuration().isNegative());
+        assertNotNull(deposit.getStackTrace(), "The diagnostic profile records stack traces.");
+
+        RecordedEvent withdraw = only(events, "Bank.Withdraw");
+        assertEquals("declined", withdraw.getString("outcome"));
+        assertEquals("InadequateFundsErrors", withdraw.getString("error"));
+        assertEquals(5000.0, withdraw.getDouble("amount"), 1e-9);
+
+        assertEquals(300.0, only(events, "Bank.Grant").getDouble("amount"), 1e-9);
+        assertEquals(30.0, only(events, "Bank.Repay").getDouble("amount"), 1e-9);
+        RecordedEvent interest = only(events, "Bank.Interest");
+        assertEquals(30.0, interest.getDouble("amount"), 1e-9);
+        assertEquals(10.0, interest.getDouble("interestRate"), 1e-9);
+        assertEquals(2, named(events, "Bank.AccountOpen").size());
+        assertEquals(50.0, only(events, "Bank.AccountClose").getDouble("amount"), 1e-9);
+
+        List<String> stages = named(events, "Bank.BulkJob").stream().map(e -> e.getString("stage"))
+                .collect(Collectors.toList());
+        assertEquals(List.of("interest", "fees", "limits", "totals"), stages);
+    }
+
+    /**
+     * Verifies that the events are disabled unless a recording enables them,
+     * and that the low overhead profile leaves out fast money movements.
+     */
+    @Test
+    public void testDisabledAndThresholdedEvents() throws Exception {
+        List<RecordedEvent> none = record(null, () -> {
+            bank.appendOwnerAccount("owner", 1000.0);
+            bank.deposit("owner", 100.0);
+        });
+        assertTrue(named(none, "Bank.AccountOpen").isEmpty());
+        assertTrue(named(none, "Bank.Deposit").isEmpty());
+
+        List<RecordedEvent> low = record(profile("bank-low-overhead.jfc"), () -> {
+            bank.appendOwnerAccount("fast", 10.0);
+            bank.deposit("fast", 1.0); // Well under the 10 ms threshold
+        });
+        assertEquals("fast", only(low, "Bank.AccountOpen").getString("accountOwner"));
+        assertNull(only(low, "Bank.AccountOpen").getStackTrace());
+        assertTrue(named(low, "Bank.Deposit").isEmpty());
+    }
+
+    /**
+     * Verifies that currency deposits, transfers, scheduled grants and
+     * reopened accounts are recorded with their outcome.
+     */
+    @Test
+    public void testOtherOperationsRecorded() throws Exception {
+        bank.appendOwnerAccount("owner", 1000.0);
+        bank.appendOwnerAccount("other", 500.0);
+        bank.appendOwnerAccount("closed", 75.0);
+        bank.setClosureGracePeriod(Duration.ofHours(1));
+        bank.removeOwnerAccount("closed");
+        List<RecordedEvent> events = record(profile("bank-diagnostic.jfc"), () -> {
+            bank.deposit("owner", 40.0, BankAccount.DEFAULT_CURRENCY);
+            bank.transfer("owner", "other", 200.0);
+            assertThrows(InadequateFundsErrors.class, () -> bank.transfer("other", "owner", 5000.0));
+            bank.grantOutstanding("other", new LoanTerms(1200.0, 12.0, 12, PaymentFrequency.MONTHLY));
+            bank.reopenOwnerAccount("closed");
+        });
+
+        List<RecordedEvent> deposits = named(events, "Bank.Deposit");
+        assertEquals(3, deposits.size()); // The currency deposit and one per transfer
+        assertEquals(40.0, deposits.get(0).getDouble("amount"), 1e-9);
+        assertEquals("other", deposits.get(1).getString("accountOwner"));
+        assertEquals("ok", deposits.get(1).getString("outcome"));
+        List<RecordedEvent> withdrawals = named(events, "Bank.Withdraw");
+        assertEquals(2, withdrawals.size());
+        assertEquals("owner", withdrawals.get(0).getString("accountOwner"));
+        assertEquals("declined", withdrawals.get(1).getString("outcome"));
+        assertEquals("declined", deposits.get(2).getString("outcome"));
+
+        RecordedEvent grant = only(events, "Bank.Grant");
+        assertEquals(1200.0, grant.getDouble("amount"), 1e-9);
+        assertEquals("ok", grant.getString("outcome"));
+        RecordedEvent open = only(events, "Bank.AccountOpen");
+        assertEquals("closed", open.getString("accountOwner"));
+        assertEquals(75.0, open.getDouble("amount"), 1e-9);
+    }
+
+    // Work run while recording
+    private interface Recorded {
+        void run() throws Exception;
+    }
+
+    // Load a settings profile shipped next to BankFlightEvents on the classpath
+    private static Configuration profile(String name) throws Exception {
+        try (InputStream in = BankFlightEvents.class.getResourceAsStream("jfr/" + name)) {
+            assertNotNull(in, "Settings profile jfr/" + name + " is not on the classpath.");
+            return Configuration.create(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+    }
+
+    private List<RecordedEvent> record(Configuration configuration, Recorded work) throws Exception {
+        Path file = directory.resolve("bank-" + System.nanoTime() + ".jfr");
+        try (Recording recording = configuration == null ? new Recording() : new Recording(configuration)) {
+            recording.start();
+            work.run();
+            recording.stop();
+            recording.dump(file);
+        }
+        List<RecordedEvent> events = new ArrayList<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+            if (event.getEventType().getName().startsWith("Bank.")) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    private static List<RecordedEvent> named(List<RecordedEvent> events, String name) {
+        return events.stream().filter(e -> e.getEventType().getName().equals(name)).collect(Collectors.toList());
+    }
+
+    private static RecordedEvent only(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> matching = named(events, name);
+        assertEquals(1, matching.size(), name);
+        return matching.get(0);
+    }
+}
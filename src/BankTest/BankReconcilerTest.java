@@ -0,0 +1,96 @@
+package BankTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import Bank.BankApp;
+import Bank.BankReconciler;
+import Bank.BankReconciler.Result;
+
+/**
+ * Tests for the `BankReconciler` invariant checker.
+ *
+ * These tests ensure that normal bank operations keep the operating funds
+ * consistent with the accounts, and that changes made behind the bank's back
+ * are detected and traced to the right account.
+ */
+public class BankReconcilerTest {
+
+    private BankApp bank; // Bank being checked
+    private BankReconciler reconciler; // Checker under test
+
+    /**
+     * Creates a bank with capital, a few accounts and a reconciler.
+     */
+    @BeforeEach
+    public void setUp() throws Exception {
+        bank = new BankApp(6000.0, 10000.0, 20000.0);
+        bank.appendToBankOperatingFunds(100000.0);
+        bank.appendOwnerAccount("Bob", 5000.0);
+        reconciler = new BankReconciler(bank, ForkJoinPool.commonPool(), 1e-6);
+        bank.appendOwnerAccount("Alice", 3000.0);
+    }
+
+    /**
+     * Stops the reconciler after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        reconciler.close();
+    }
+
+    /**
+     * Verifies that every kind of bank operation keeps the books consistent.
+     */
+    @Test
+    public void testOperationsStayConsistent() throws Exception {
+        bank.deposit("Bob", 1000.0);
+        bank.withdraw("Alice", 500.0);
+        bank.grantOutstanding("Bob", 8000.0);
+        bank.applyInterest("Bob", 5.0);
+        bank.repayOutstanding("Bob", 2000.0);
+        bank.applyFee("Alice", 25.0);
+        bank.appendToBankOperatingFunds(1234.0);
+        bank.removeOwnerAccount("Alice");
+
+        assertTrue(reconciler.verifyIncremental(), "The running totals should match after normal operations.");
+        Result result = reconciler.reconcile();
+        assertTrue(result.isConsistent(), "A full run should find no drift: " + result.getDriftedAccounts());
+        assertEquals(1, result.getAccountsChecked());
+    }
+
+    /**
+     * Verifies that a balance changed directly on the account is pinpointed.
+     */
+    @Test
+    public void testPinpointsDriftedAccount() throws Exception {
+        bank.getOwnerAccount("Alice").deposit(250.0); // Bypasses the bank, operating funds are not updated
+
+        Result result = reconciler.reconcile();
+        assertFalse(result.isConsistent());
+        assertEquals(-250.0, result.getDrift(), 1e-9);
+        assertEquals(1, result.getDriftedAccounts().size());
+        assertEquals("Alice", result.getDriftedAccounts().get(0).getAccountOwner());
+        assertEquals(3000.0, result.getDriftedAccounts().get(0).getExpectedBalance());
+    }
+
+    /**
+     * Verifies that the incremental check notices a change to an outstanding
+     * balance made outside the bank only after the account is touched again,
+     * while the full run notices it straight away.
+     */
+    @Test
+    public void testIncrementalAndFullModes() throws Exception {
+        bank.getOwnerAccount("Bob").getOutstanding().setBalance(400.0); // Bypasses the bank
+        assertTrue(reconciler.verifyIncremental(), "The running totals have not seen the change yet.");
+        assertFalse(reconciler.reconcile().isConsistent(), "The full run compares every account.");
+
+        bank.deposit("Bob", 10.0); // The next event carries the changed outstanding balance
+        assertFalse(reconciler.verifyIncremental());
+    }
+}
@@ -16,14 +16,38 @@ import org.junit.platform.suite.api.Suite;
  * test reports or tools.
  */
 @Suite // Declares this class as a JUnit test suite.
-@SelectClasses({ AccountTest.class, OutstandingTest.class, BankAppTest.class, OutstandingInterestTest.class }) // Includes
-                                                                                                               // tests
-                                                                                                               // for
-                                                                                                               // individual
-                                                                                                               // account
-// functionality, oustanding balances,
-// related operations, overall bank
-// application operations and limits.
+// Includes tests for individual account functionality, oustanding balances,
+// related operations, overall bank application operations and limits, and the
+// services built on top of the bank.
+@SelectClasses({
+        AccountTest.class,
+        OutstandingTest.class,
+        BankAppTest.class,
+        OutstandingInterestTest.class,
+        AsyncBankAppTest.class,
+        BalanceChangePublisherTest.class,
+        ChangeDataCaptureLogTest.class,
+        AmortizationTest.class,
+        EndOfDayPipelineTest.class,
+        BankReconcilerTest.class,
+        ValidationRulesTest.class,
+        WorkloadGeneratorTest.class,
+        BTreeAccountStoreTest.class,
+        BankCheckpointerTest.class,
+        ReplicationTest.class,
+        ClusterTest.class,
+        MultiCurrencyTest.class,
+        EscrowFundTest.class,
+        PriorityBankSchedulerTest.class,
+        AdmissionControllerTest.class,
+        BankTracerTest.class,
+        BankFlightEventsTest.class,
+        AccountFootprintTest.class,
+        AccountClosureTest.class,
+        AccountIndexTest.class,
+        LoanStressEngineTest.class,
+        AccountQueryTest.class
+})
 @DisplayName("Banking App Test Suite") // Gives the suite a name for display in reports.
 public class BankTestSuite {
     /**
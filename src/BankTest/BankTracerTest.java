@@ -0,0 +1,118 @@
+package BankTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import Bank.BankAccount.InadequateFundsErrors;
+import Bank.BankApp;
+import Bank.BankTracer;
+
+/**
+ * Tests for the `BankTracer` attached to `BankApp`.
+ *
+ * These tests ensure that a traced operation writes one event per phase in
+ * the trace file with its outcome, that an unsampled operation and a full
+ * record pool leave no trace, and that the sample rate is respected.
+ */
+public class BankTracerTest {
+
+    @TempDir
+    Path directory; // Holds the trace file
+
+    private BankApp bank; // Traced bank
+
+    /**
+     * Creates a bank with capital and one account.
+     */
+    @BeforeEach
+    public void setUp() throws Exception {
+        bank = new BankApp(6000.0, 10000.0, 20000.0);
+        bank.appendToBankOperatingFunds(50000.0);
+        bank.appendOwnerAccount("owner", 1000.0);
+    }
+
+    /**
+     * Verifies that every traced operation writes its phases to the file, and
+     * that a failed withdrawal is written with an error outcome.
+     */
+    @Test
+    public void testTracedPhasesWritten() throws Exception {
+        Path file = directory.resolve("bank-trace.json");
+        BankTracer tracer = new BankTracer(file, 1.0, 16);
+        bank.setTracer(tracer);
+        bank.deposit("owner", 100.0);
+        bank.grantOutstanding("owner", 200.0);
+        bank.repayOutstanding("owner", 50.0);
+        assertThrows(InadequateFundsErrors.class, () -> bank.withdraw("owner", 5000.0));
+        assertEquals(4, tracer.getSampled());
+        assertEquals(4, tracer.flush());
+        tracer.close();
+
+        String trace = Files.readString(file);
+        assertTrue(trace.startsWith("[\n"));
+        assertTrue(trace.contains("{\"name\":\"deposit\",\"cat\":\"bank\",\"ph\":\"X\""));
+        assertTrue(trace.contains("\"args\":{\"owner\":\"owner\",\"outcome\":\"ok\"}"));
+        for (String phase : new String[] { "validate", "lookup", "mutate", "fund", "publish" }) {
+            assertTrue(trace.contains("{\"name\":\"" + phase + "\""), phase);
+        }
+        assertTrue(trace.contains("\"grantOutstanding\"") && trace.contains("\"repayOutstanding\""));
+        int withdraw = trace.indexOf("{\"name\":\"withdraw\"");
+        assertTrue(withdraw >= 0);
+        assertTrue(trace.indexOf("\"outcome\":\"error\"", withdraw) > withdraw);
+        assertEquals(1, trace.split("\"outcome\":\"error\"").length - 1);
+    }
+
+    /**
+     * Verifies that a rate of zero traces nothing, and that operations sampled
+     * while every record is in use are dropped.
+     */
+    @Test
+    public void testUnsampledAndDroppedOperations() throws Exception {
+        BankTracer tracer = new BankTracer(directory.resolve("off.json"), 0.0, 2);
+        bank.setTracer(tracer);
+        for (int i = 0; i < 10; i++) {
+            bank.deposit("owner", 1.0);
+        }
+        assertEquals(0, tracer.getSampled());
+        assertEquals(0, tracer.flush());
+
+        tracer.setSampleRate(1.0);
+        for (int i = 0; i < 3; i++) {
+            bank.deposit("owner", 1.0); // No flush, so the third finds no free record
+        }
+        assertEquals(2, tracer.getSampled());
+        assertEquals(1, tracer.getDropped());
+        assertEquals(2, tracer.flush());
+        bank.deposit("owner", 1.0); // The written records are free again
+        assertEquals(3, tracer.getSampled());
+        tracer.close();
+
+        bank.setTracer(null);
+        bank.deposit("owner", 1.0);
+        assertEquals(3, tracer.getSampled());
+        assertEquals(1015.0, bank.getOwnerAccountBalance("owner"), 1e-9);
+    }
+
+    /**
+     * Verifies that about a quarter of the operations are traced at a rate of
+     * 0.25.
+     */
+    @Test
+    public void testSampleRate() throws Exception {
+        BankTracer tracer = new BankTracer(directory.resolve("sampled.json"), 0.25, 4096);
+        bank.setTracer(tracer);
+        for (int i = 0; i < 4000; i++) {
+            bank.deposit("owner", 1.0);
+        }
+        long sampled = tracer.getSampled();
+        assertTrue(sampled > 800 && sampled < 1200, "Sampled " + sampled + " of 4000.");
+        assertEquals(sampled, tracer.flush());
+        tracer.close();
+    }
+}
@@ -0,0 +1,174 @@
+package BankTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import Bank.BalanceChangeEvent;
+import Bank.BankApp;
+import Bank.ChangeDataCaptureLog;
+import Bank.ChangeDataCaptureLog.Record;
+import Bank.ChangeDataCaptureReader;
+import Bank.ChangeEventCodec;
+
+/**
+ * Tests for the change data capture log and its reader.
+ *
+ * These tests ensure that committed mutations are written to segment files,
+ * that segments roll on size, that offsets stay stable across restarts of
+ * both the writer and the reader, and that a failed write stops the log
+ * without failing the bank.
+ */
+public class ChangeDataCaptureLogTest {
+
+    @TempDir
+    Path directory; // Fresh log directory for each test
+
+    private BankApp bank; // Bank whose changes are captured
+
+    /**
+     * Creates a bank with operating funds before each test.
+     */
+    @BeforeEach
+    public void setUp() {
+        bank = new BankApp(6000.0, 10000.0, 20000.0);
+        bank.appendToBankOperatingFunds(100000.0);
+    }
+
+    /**
+     * Verifies that every mutation is captured in order with increasing offsets.
+     */
+    @Test
+    public void testCapturesMutations() throws Exception {
+        try (ChangeDataCaptureLog log = new ChangeDataCaptureLog(directory, 1 << 20, Duration.ofHours(1), 4,
+                Duration.ofSeconds(10))) {
+            bank.addBalanceChangeListener(log);
+            bank.appendOwnerAccount("Bob", 5000.0);
+            bank.deposit("Bob", 100.0);
+            bank.grantOutstanding("Bob", 1000.0);
+            bank.removeBalanceChangeListener(log);
+        }
+
+        try (ChangeDataCaptureReader reader = new ChangeDataCaptureReader(directory, 0)) {
+            List<Record> records = reader.poll(100);
+            assertEquals(3, records.size());
+            assertEquals(0, records.get(0).getOffset());
+            assertEquals(BalanceChangeEvent.Type.OPEN, records.get(0).getEvent().getType());
+            assertEquals(BalanceChangeEvent.Type.GRANT, records.get(2).getEvent().getType());
+            assertEquals(1000.0, records.get(2).getEvent().getOutstandingAfter());
+            assertEquals(3, reader.getNextOffset());
+        }
+    }
+
+    /**
+     * Verifies that segments roll on size and that a reader follows the writer
+     * across segments and can resume from a stored offset.
+     */
+    @Test
+    public void testRollingAndResume() throws Exception {
+        try (ChangeDataCaptureLog log = new ChangeDataCaptureLog(directory, 200, Duration.ofHours(1), 1,
+                Duration.ofSeconds(10))) {
+            bank.addBalanceChangeListener(log);
+            bank.appendOwnerAccount("Bob", 5000.0);
+            for (int i = 0; i < 9; i++) {
+                bank.deposit("Bob", 10.0);
+            }
+            assertTrue(log.getSegmentBaseOffsets().size() > 1, "A small segment size should force rolls.");
+
+            try (ChangeDataCaptureReader reader = new ChangeDataCaptureReader(directory, 0)) {
+                assertEquals(4, reader.poll(4).size());
+                long resumeAt = reader.getNextOffset();
+
+                try (ChangeDataCaptureReader resumed = new ChangeDataCaptureReader(directory, resumeAt)) {
+                    List<Record> rest = resumed.poll(100);
+                    assertEquals(6, rest.size());
+                    assertEquals(resumeAt, rest.get(0).getOffset(), "The resumed reader should not skip records.");
+                }
+            }
+        }
+    }
+
+    /**
+     * Verifies that a reopened log continues the offsets of the previous run and
+     * cuts off a partly written record.
+     */
+    @Test
+    public void testOffsetsSurviveRestart() throws Exception {
+        try (ChangeDataCaptureLog log = new ChangeDataCaptureLog(directory, 1 << 20, Duration.ofHours(1), 1,
+                Duration.ofSeconds(10))) {
+            bank.addBalanceChangeListener(log);
+            bank.appendOwnerAccount("Bob", 5000.0);
+            bank.deposit("Bob", 10.0);
+            bank.removeBalanceChangeListener(log);
+        }
+        // Simulate a crash in the middle of writing a record
+        Path segment = directory.resolve(String.format("%020d", 0) + ".cdc");
+        Files.write(segment, new byte[] { 0, 0, 0, 60, 1, 2 }, StandardOpenOption.APPEND);
+
+        try (ChangeDataCaptureLog log = new ChangeDataCaptureLog(directory, 1 << 20, Duration.ofHours(1), 1,
+                Duration.ofSeconds(10))) {
+            assertEquals(2, log.getNextOffset(), "Offsets should continue after the last complete record.");
+            bank.addBalanceChangeListener(log);
+            bank.withdraw("Bob", 5.0);
+        }
+
+        try (ChangeDataCaptureReader reader = new ChangeDataCaptureReader(directory, 2)) {
+            List<Record> records = reader.poll(10);
+            assertEquals(1, records.size());
+            assertEquals(BalanceChangeEvent.Type.WITHDRAW, records.get(0).getEvent().getType());
+        }
+    }
+
+    /**
+     * Verifies that a write failing while a change is captured is recorded
+     * instead of thrown into the bank, and that later appends fail.
+     */
+    @Test
+    public void testFailedWriteStopsLog() throws Exception {
+        bank.appendOwnerAccount("Bob", 5000.0);
+        try (ChangeDataCaptureLog log = new ChangeDataCaptureLog(directory, 200, Duration.ofHours(1), 1,
+                Duration.ofSeconds(10))) {
+            bank.addBalanceChangeListener(log);
+            Files.delete(directory.resolve(String.format("%020d", 0) + ".cdc"));
+            Files.delete(directory); // The next segment cannot be created
+            for (int i = 0; i < 10; i++) {
+                bank.deposit("Bob", 1.0);
+            }
+            assertEquals(5010.0, bank.getOwnerAccountBalance("Bob"), 1e-9);
+            assertNotNull(log.getFailure());
+            long offset = log.getNextOffset();
+            assertThrows(IOException.class, () -> log.append(new BalanceChangeEvent(99,
+                    BalanceChangeEvent.Type.DEPOSIT, "Bob", 1.0, 5011.0, 0.0, 0L, "EUR")));
+            assertEquals(offset, log.getNextOffset());
+            bank.removeBalanceChangeListener(log);
+        }
+    }
+
+    /**
+     * Verifies that a change without an owner is read back without one, unlike
+     * a change whose owner is empty.
+     */
+    @Test
+    public void testOwnerlessChangeKeepsNoOwner() {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        ChangeEventCodec.encode(0, new BalanceChangeEvent(1, BalanceChangeEvent.Type.CAPITAL, null, 5.0, 0.0, 0.0,
+                0L, "EUR"), buffer);
+        int second = buffer.position();
+        ChangeEventCodec.encode(1, new BalanceChangeEvent(2, BalanceChangeEvent.Type.DEPOSIT, "", 5.0, 5.0, 0.0,
+                0L, "EUR"), buffer);
+        buffer.flip();
+        assertNull(ChangeEventCodec.decode(buffer).getEvent().getAccountOwner());
+        buffer.position(second);
+        assertEquals("", ChangeEventCodec.decode(buffer).getEvent().getAccountOwner());
+    }
+}
@@ -0,0 +1,168 @@
+package BankTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import Bank.BankAccount.AccountOwnerNotFoundErrors;
+import Bank.BankAccount.InadequateFundsErrors;
+import Bank.BankApp;
+import Bank.BankApp.InadequateBankOperatingFundsErrors;
+import Bank.BankApp.InadequateDepositAmountErrors;
+import Bank.ClusterClient;
+import Bank.ClusterFundCoordinator;
+import Bank.ClusterNode;
+
+/**
+ * Tests for cluster mode: `ClusterNode`, `ClusterClient` and
+ * `ClusterFundCoordinator`.
+ *
+ * These tests ensure that owners are routed to the node of their partition,
+ * including nodes running in separate processes, that the bank's errors come
+ * back with their own types, and that the coordinator moves capital between
+ * the nodes without creating or losing any.
+ */
+public class ClusterTest {
+
+    /**
+     * Verifies that accounts spread over three node processes by partition and
+     * that operations and errors are forwarded to the owning node.
+     */
+    @Test
+    public void testRoutingAcrossProcesses() throws Exception {
+        List<Process> processes = new ArrayList<>();
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        try {
+            for (int i = 0; i < 3; i++) {
+                Process process = startNode(i, 3);
+                processes.add(process);
+                addresses.add(new InetSocketAddress("127.0.0.1", readPort(process)));
+            }
+            try (ClusterClient client = new ClusterClient(addresses)) {
+                int[] expected = new int[3];
+                for (int i = 0; i < 60; i++) {
+                    String owner = "owner-" + i;
+                    client.appendOwnerAccount(owner, 100.0);
+                    expected[client.nodeOf(owner)]++;
+                }
+                for (int node = 0; node < 3; node++) {
+                    assertEquals(expected[node], client.getNodeAccountCount(node));
+                    assertTrue(expected[node] > 0, "Every node should hold some of the owners.");
+                }
+
+                client.deposit("owner-7", 50.0);
+                client.withdraw("owner-7", 30.0);
+                assertEquals(120.0, client.getOwnerAccountBalance("owner-7"), 1e-9);
+
+                InadequateFundsErrors funds = assertThrows(InadequateFundsErrors.class,
+                        () -> client.withdraw("owner-8", 500.0));
+                assertEquals("Inadequate funds for withdrawal. Requested: 500.0, Available: 100.0", funds.getMessage());
+                InadequateDepositAmountErrors deposit = assertThrows(InadequateDepositAmountErrors.class,
+                        () -> client.deposit("owner-8", 50000.0));
+                assertEquals("Deposit amount exceeds the limit.", deposit.getInfo());
+                assertThrows(AccountOwnerNotFoundErrors.class, () -> client.deposit("nobody", 1.0));
+                assertThrows(InadequateBankOperatingFundsErrors.class,
+                        () -> client.grantOutstanding("owner-9", 15000.0)); // Only the deposits, no capital
+                assertEquals(120.0, client.getOwnerAccountBalance("owner-7"), 1e-9); // Connections still usable
+            }
+        } finally {
+            for (Process process : processes) {
+                process.getOutputStream().close(); // Closing standard input stops the node
+                if (!process.waitFor(5, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            }
+        }
+    }
+
+    /**
+     * Verifies that the coordinator tops up and drains nodes around its water
+     * marks, funds grants refused by a node, and conserves the total.
+     */
+    @Test
+    public void testCoordinatorAllocatesOperatingFunds() throws Exception {
+        try (ClusterNode first = new ClusterNode(new BankApp(6000.0, 10000.0, 20000.0), 0, 0, 2);
+                ClusterNode second = new ClusterNode(new BankApp(6000.0, 10000.0, 20000.0), 0, 1, 2);
+                ClusterClient client = new ClusterClient(List.of(address(first), address(second)))) {
+            ClusterFundCoordinator coordinator = new ClusterFundCoordinator(client, 50000.0, 10000.0, 30000.0);
+            String borrower = ownerOnNode(client, 1);
+            client.appendOwnerAccount(borrower, 1.0); // The deposit is part of the node's operating funds
+            coordinator.rebalance();
+            assertEquals(10000.0, client.getNodeOperatingFunds(0), 1e-9);
+            assertEquals(10000.0, client.getNodeOperatingFunds(1), 1e-9);
+            assertEquals(30001.0, coordinator.getReserve(), 1e-9);
+
+            client.grantOutstanding(borrower, 15000.0); // The node lacks 5000, the coordinator supplies it
+            assertEquals(15000.0, client.getOutstandingBalance(borrower), 1e-9);
+            assertEquals(0.0, client.getNodeOperatingFunds(1), 1e-9);
+            assertEquals(25001.0, coordinator.getReserve(), 1e-9);
+
+            first.getBank().appendToBankOperatingFunds(40000.0); // Capital arriving on one node
+            coordinator.rebalance();
+            assertEquals(10000.0, client.getNodeOperatingFunds(0), 1e-9);
+            assertEquals(10000.0, client.getNodeOperatingFunds(1), 1e-9);
+            assertEquals(75001.0, coordinator.getTotalOperatingFunds(), 1e-9);
+
+            assertThrows(InadequateBankOperatingFundsErrors.class, () -> coordinator.allocate(0, 1e9));
+        }
+    }
+
+    /**
+     * Verifies that a node refuses an owner of another partition.
+     */
+    @Test
+    public void testWrongNodeRefused() throws Exception {
+        try (ClusterNode first = new ClusterNode(new BankApp(6000.0, 10000.0, 20000.0), 0, 0, 2);
+                ClusterNode second = new ClusterNode(new BankApp(6000.0, 10000.0, 20000.0), 0, 1, 2);
+                ClusterClient swapped = new ClusterClient(List.of(address(second), address(first)))) {
+            IOException error = assertThrows(IOException.class,
+                    () -> swapped.appendOwnerAccount(ownerOnNode(swapped, 0), 10.0));
+            assertTrue(error.getMessage().contains("wrong node"));
+            assertEquals(0, first.getBank().getAccountCount() + second.getBank().getAccountCount());
+        }
+    }
+
+    private static Process startNode(int index, int count) throws Exception {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        String classes = Path.of(ClusterNode.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+                .toString();
+        return new ProcessBuilder(java, "-cp", classes, "Bank.ClusterNode", String.valueOf(index),
+                String.valueOf(count)).redirectErrorStream(true).start();
+    }
+
+    // Read the port a node process prints once it listens
+    private static int readPort(Process process) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.contains("listening on port ")) {
+                Thread drain = new Thread(() -> reader.lines().forEach(ignored -> { }));
+                drain.setDaemon(true);
+                drain.start(); // Keep reading so the node never blocks on a full pipe
+                return Integer.parseInt(line.substring(line.lastIndexOf(' ') + 1));
+            }
+        }
+        throw new IOException("Cluster node process exited before listening.");
+    }
+
+    private static InetSocketAddress address(ClusterNode node) {
+        return new InetSocketAddress("127.0.0.1", node.getPort());
+    }
+
+    private static String ownerOnNode(ClusterClient client, int node) {
+        for (int i = 0;; i++) {
+            if (client.nodeOf("customer-" + i) == node) {
+                return "customer-" + i;
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package BankTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import Bank.BalanceChangeEvent;
+import Bank.BalanceChangeListener;
+import Bank.BankApp;
+import Bank.EndOfDayPipeline;
+import Bank.EndOfDayPipeline.Report;
+
+/**
+ * Tests for the end-of-day batch pipeline.
+ *
+ * These tests ensure that interest, fees, limit re-evaluation and totals are
+ * applied to every account, and that a crashed run resumes from its
+ * checkpoint without repeating finished chunks or recorded accounts, even
+ * when it is resumed with another chunk size.
+ */
+public class EndOfDayPipelineTest {
+
+    @TempDir
+    Path directory; // Holds the checkpoint file
+
+    private BankApp bank; // Bank processed by the pipeline
+
+    /**
+     * Creates a bank with six accounts, each with a balance of 1000 and an
+     * outstanding of 1000.
+     */
+    @BeforeEach
+    public void setUp() throws Exception {
+        bank = new BankApp(6000.0, 10000.0, 20000.0);
+        bank.appendToBankOperatingFunds(100000.0);
+        for (int i = 0; i < 6; i++) {
+            bank.appendOwnerAccount("Owner" + i, 1000.0);
+            bank.grantOutstanding("Owner" + i, 1000.0);
+        }
+    }
+
+    /**
+     * Verifies that a full run applies interest and fees, reports accounts over
+     * the limit and totals, and removes its checkpoint.
+     */
+    @Test
+    public void testFullRun() throws Exception {
+        bank.grantOutstanding("Owner5", 19500.0); // Push one account over the limit once interest is applied
+        EndOfDayPipeline pipeline = new EndOfDayPipeline(bank, directory.resolve("eod.ckpt"), 2,
+                ForkJoinPool.commonPool());
+        pipeline.setInterestRate(10.0);
+        pipeline.setAccountFee(5.0);
+
+        Report report = pipeline.run();
+
+        assertEquals(1100.0, bank.getOutstandingBalance("Owner0"), 1e-9);
+        assertEquals(995.0, bank.getOwnerAccountBalance("Owner0"), 1e-9);
+        assertEquals(List.of("Owner5"), report.getAccountsOverLimit());
+        assertEquals(6 * 995.0, report.getTotalBalances(), 1e-9);
+        assertEquals(4, report.getStages().size());
+        assertEquals(6, report.getStages().get(0).getProcessed());
+        assertFalse(pipeline.hasCheckpoint(), "The checkpoint should be removed after a full run.");
+    }
+
+    /**
+     * Verifies that a crash during the interest stage leaves a checkpoint and
+     * that the resumed run skips the chunks that had finished.
+     */
+    @Test
+    public void testResumeAfterCrash() throws Exception {
+        Path checkpoint = directory.resolve("eod.ckpt");
+        AtomicInteger interestEvents = new AtomicInteger();
+        BalanceChangeListener crashOnSecondAccount = event -> {
+            if (event.getType() == BalanceChangeEvent.Type.INTEREST && interestEvents.incrementAndGet() == 2) {
+                throw new IllegalStateException("Simulated crash");
+            }
+        };
+        bank.addBalanceChangeListener(crashOnSecondAccount);
+
+        ForkJoinPool singleThread = new ForkJoinPool(1);
+        EndOfDayPipeline pipeline = new EndOfDayPipeline(bank, checkpoint, 1, singleThread);
+        pipeline.setInterestRate(10.0);
+        assertThrows(RuntimeException.class, pipeline::run);
+        assertTrue(Files.exists(checkpoint), "A crashed run should leave its checkpoint.");
+
+        bank.removeBalanceChangeListener(crashOnSecondAccount);
+        EndOfDayPipeline restarted = new EndOfDayPipeline(bank, checkpoint, 1, singleThread);
+        restarted.setInterestRate(10.0);
+        Report resumed = restarted.run();
+        singleThread.shutdown();
+
+        // The first chunk finished before the crash and is not run again. The
+        // interrupted chunk is run again from its start.
+        assertEquals(5, resumed.getStages().get(0).getProcessed());
+        assertEquals(1100.0, bank.getOutstandingBalance("Owner0"), 1e-9);
+        for (int i = 2; i < 6; i++) {
+            assertEquals(1100.0, bank.getOutstandingBalance("Owner" + i), 1e-9);
+        }
+    }
+
+    /**
+     * Verifies that a chunk interrupted half way resumes after the last account
+     * it recorded, so the accounts before it are not charged twice.
+     */
+    @Test
+    public void testResumeWithinChunk() throws Exception {
+        Path checkpoint = directory.resolve("eod.ckpt");
+        AtomicInteger feeEvents = new AtomicInteger();
+        BalanceChangeListener crashOnThirdAccount = event -> {
+            if (event.getType() == BalanceChangeEvent.Type.FEE && feeEvents.incrementAndGet() == 3) {
+                throw new IllegalStateException("Simulated crash");
+            }
+        };
+        bank.addBalanceChangeListener(crashOnThirdAccount);
+
+        ForkJoinPool singleThread = new ForkJoinPool(1);
+        EndOfDayPipeline pipeline = new EndOfDayPipeline(bank, checkpoint, 6, singleThread);
+        pipeline.setAccountFee(5.0);
+        assertThrows(RuntimeException.class, pipeline::run);
+
+        bank.removeBalanceChangeListener(crashOnThirdAccount);
+        EndOfDayPipeline restarted = new EndOfDayPipeline(bank, checkpoint, 6, singleThread);
+        restarted.setAccountFee(5.0);
+        Report resumed = restarted.run();
+        singleThread.shutdown();
+
+        // Owner0 and Owner1 were recorded before the crash. Owner2's fee was
+        // applied but the crash came before it was recorded, so it is charged
+        // again; that is the one account a crash can repeat.
+        assertEquals(4, resumed.getStages().get(0).getProcessed()); // The fee stage, interest had finished
+        assertEquals(995.0, bank.getOwnerAccountBalance("Owner0"), 1e-9);
+        assertEquals(995.0, bank.getOwnerAccountBalance("Owner1"), 1e-9);
+        for (int i = 3; i < 6; i++) {
+            assertEquals(995.0, bank.getOwnerAccountBalance("Owner" + i), 1e-9);
+        }
+        assertFalse(restarted.hasCheckpoint());
+        assertFalse(Files.exists(directory.resolve("eod.ckpt.log")));
+    }
+
+    /**
+     * Verifies that a run resumed by a pipeline with another chunk size keeps
+     * the chunks it started with, so no recorded account is charged again.
+     */
+    @Test
+    public void testResumeWithOtherChunkSize() throws Exception {
+        Path checkpoint = directory.resolve("eod.ckpt");
+        AtomicInteger feeEvents = new AtomicInteger();
+        BalanceChangeListener crashOnThirdAccount = event -> {
+            if (event.getType() == BalanceChangeEvent.Type.FEE && feeEvents.incrementAndGet() == 3) {
+                throw new IllegalStateException("Simulated crash");
+            }
+        };
+        bank.addBalanceChangeListener(crashOnThirdAccount);
+
+        ForkJoinPool singleThread = new ForkJoinPool(1);
+        EndOfDayPipeline pipeline = new EndOfDayPipeline(bank, checkpoint, 2, singleThread);
+        pipeline.setAccountFee(5.0);
+        assertThrows(RuntimeException.class, pipeline::run);
+
+        bank.removeBalanceChangeListener(crashOnThirdAccount);
+        EndOfDayPipeline restarted = new EndOfDayPipeline(bank, checkpoint, 1, singleThread);
+        restarted.setAccountFee(5.0);
+        Report resumed = restarted.run();
+        singleThread.shutdown();
+
+        // The first chunk of two finished before the crash; only Owner2, applied
+        // but not recorded, is charged again.
+        assertEquals(4, resumed.getStages().get(0).getProcessed());
+        assertEquals(995.0, bank.getOwnerAccountBalance("Owner0"), 1e-9);
+        assertEquals(995.0, bank.getOwnerAccountBalance("Owner1"), 1e-9);
+        assertEquals(990.0, bank.getOwnerAccountBalance("Owner2"), 1e-9);
+        for (int i = 3; i < 6; i++) {
+            assertEquals(995.0, bank.getOwnerAccountBalance("Owner" + i), 1e-9);
+        }
+        assertFalse(restarted.hasCheckpoint());
+    }
+}
@@ -0,0 +1,157 @@
+package BankTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import Bank.BankApp.InadequateBankOperatingFundsErrors;
+import Bank.EscrowFund;
+
+/**
+ * Tests for the `EscrowFund` per-core slices of the operating funds.
+ *
+ * These tests ensure that a debit borrows from other slices when its own
+ * runs low, is refused only when the exact total cannot cover it, that
+ * borrowing triggers a background rebalance, that concurrent debits never
+ * take the total below zero, and that the total never misses money being
+ * borrowed.
+ */
+public class EscrowFundTest {
+
+    /**
+     * Verifies that money credited on one thread can be debited on another,
+     * and that the refusal reports the exact total.
+     */
+    @Test
+    public void testDebitBorrowsFromOtherSlices() throws Exception {
+        EscrowFund fund = new EscrowFund(8);
+        assertEquals(8, fund.getSliceCount());
+        Thread creditor = new Thread(() -> fund.credit(300.0));
+        creditor.start();
+        creditor.join();
+        fund.credit(200.0);
+
+        fund.debit(450.0); // More than this thread's own slice holds
+        assertEquals(50.0, fund.getTotal(), 1e-9);
+        InadequateBankOperatingFundsErrors error = assertThrows(InadequateBankOperatingFundsErrors.class,
+                () -> fund.debit(50.5));
+        assertEquals(50.0, error.getAvailableOperatingFunds(), 1e-9);
+        assertEquals(50.0, fund.getTotal(), 1e-9); // A refused debit changes nothing
+        assertThrows(InadequateBankOperatingFundsErrors.class, () -> fund.checkAdequate(60.0));
+        fund.checkAdequate(50.0);
+    }
+
+    /**
+     * Verifies that many threads debiting one unit at a time succeed exactly as
+     * often as the total allows, even while the slices are rebalanced.
+     */
+    @Test
+    public void testConcurrentDebitsNeverOverdraw() throws Exception {
+        EscrowFund fund = new EscrowFund(4);
+        fund.credit(1000.0);
+        fund.startRebalancing(Duration.ofMillis(1));
+        AtomicInteger granted = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            workers.add(executor.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    try {
+                        fund.debit(1.0);
+                        granted.incrementAndGet();
+                    } catch (InadequateBankOperatingFundsErrors e) {
+                        // The fund is empty
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        fund.close();
+        assertEquals(1000, granted.get());
+        assertEquals(0.0, fund.getTotal(), 1e-9);
+    }
+
+    /**
+     * Verifies that rebalancing spreads the total without changing it.
+     */
+    @Test
+    public void testRebalanceKeepsTotal() throws Exception {
+        EscrowFund fund = new EscrowFund(3); // Rounded up to four slices
+        assertEquals(4, fund.getSliceCount());
+        fund.credit(1000.0);
+        fund.rebalance();
+        assertEquals(1000.0, fund.getTotal(), 1e-9);
+        fund.debit(250.0); // Exactly one share, no borrowing needed
+        assertEquals(750.0, fund.getTotal(), 1e-9);
+    }
+
+    /**
+     * Verifies that a debit that had to borrow gets the slices rebalanced in
+     * the background, so the next debit of a share needs no borrowing.
+     */
+    @Test
+    public void testBorrowingRequestsRebalance() throws Exception {
+        EscrowFund fund = new EscrowFund(4);
+        for (int i = 0; i < 4; i++) { // Threads started one after another land on different slices
+            Thread creditor = new Thread(() -> fund.credit(250.0));
+            creditor.start();
+            creditor.join();
+        }
+        assertEquals(0, fund.getRebalances());
+
+        fund.debit(800.0); // More than any slice holds, so it borrows
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (fund.getRebalances() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(1, fund.getRebalances());
+        fund.debit(50.0); // One share of the 200 left
+        assertEquals(1, fund.getRebalances()); // Served from the local slice, nothing borrowed
+        assertEquals(150.0, fund.getTotal(), 1e-9);
+    }
+
+    /**
+     * Verifies that the total never misses the money a debit is borrowing
+     * from another slice.
+     */
+    @Test
+    public void testTotalSeesMoneyBeingBorrowed() throws Exception {
+        EscrowFund fund = new EscrowFund(8);
+        fund.credit(1024.0); // 128 per slice once rebalanced, exact in binary
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> borrower = executor.submit(() -> {
+            while (running.get()) {
+                fund.rebalance();
+                fund.debit(1000.0); // Has to borrow from every other slice
+                fund.credit(1000.0);
+            }
+            return null;
+        });
+        try {
+            for (int i = 0; i < 20000; i++) {
+                double total = fund.getTotal();
+                assertTrue(total == 1024.0 || total == 24.0, "Total missed money in flight: " + total);
+            }
+        } finally {
+            running.set(false);
+            borrower.get(10, TimeUnit.SECONDS);
+            executor.shutdown();
+        }
+        assertEquals(1024.0, fund.getTotal(), 1e-9);
+    }
+}
@@ -0,0 +1,163 @@
+package BankTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import Bank.BankApp;
+import Bank.LoanStressEngine;
+import Bank.LoanStressEngine.Result;
+import Bank.LoanStressEngine.Scenario;
+import Bank.LoanStressEngine.Snapshot;
+
+/**
+ * Tests for the `LoanStressEngine` scenarios.
+ *
+ * These tests check a small loan book against hand-computed projections,
+ * ensure the live bank is left untouched, and ensure that splitting the work
+ * into chunks does not change the results.
+ */
+public class LoanStressEngineTest {
+
+    private BankApp bank; // Bank whose loan book is stressed
+    private ForkJoinPool pool; // Runs the scenarios
+
+    /**
+     * Creates a bank with four accounts, two of them borrowers, and operating
+     * funds of 1250.
+     */
+    @BeforeEach
+    public void setUp() throws Exception {
+        bank = new BankApp(6000.0, 10000.0, 20000.0);
+        bank.appendToBankOperatingFunds(2500.0);
+        bank.appendOwnerAccount("saver", 1000.0);
+        bank.appendOwnerAccount("borrower", 200.0);
+        bank.appendOwnerAccount("stretched", 50.0);
+        bank.appendOwnerAccount("other", 500.0);
+        bank.grantOutstanding("borrower", 1000.0);
+        bank.grantOutstanding("stretched", 2000.0);
+        pool = new ForkJoinPool(4);
+    }
+
+    /**
+     * Shuts the pool down after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Verifies a rate hike and a bank run against hand-computed projections,
+     * and that the live bank does not change.
+     */
+    @Test
+    public void testProjectionsOfSmallBook() throws Exception {
+        Snapshot snapshot = LoanStressEngine.snapshot(bank);
+        assertEquals(4, snapshot.getAccounts());
+        assertEquals(1250.0, snapshot.getOperatingFunds(), 1e-9);
+        List<Result> results = new LoanStressEngine(pool, 2).run(snapshot, List.of(
+                new Scenario("hike", 10.0, 0.0, 0.5, 0.1, 0.2),
+                new Scenario("run", 10.0, 0.0, 0.5, 0.1, 1.0)));
+
+        // The borrower pays 100 interest and 100 principal; the stretched
+        // borrower keeps 40 after withdrawing, too little for 200 interest
+        Result hike = results.get(0);
+        assertEquals("hike", hike.getScenario().getName());
+        assertEquals(350.0, hike.getWithdrawals(), 1e-9);
+        assertEquals(200.0, hike.getRepayments(), 1e-9);
+        assertEquals(1100.0, hike.getProjectedOperatingFunds(), 1e-9);
+        assertEquals(0.0, hike.getShortfall(), 1e-9);
+        assertEquals(1, hike.getDefaults());
+        assertEquals(2, hike.getBorrowers());
+        assertEquals(1000.0, hike.getCreditLosses(), 1e-9); // Half of the 2000 owed
+        assertEquals(1600.0, hike.getProjectedCapital(), 1e-9);
+
+        // Everything withdrawn leaves no borrower able to pay
+        Result run = results.get(1);
+        assertEquals(2, run.getDefaults());
+        assertEquals(0.0, run.getRepayments(), 1e-9);
+        assertEquals(-500.0, run.getProjectedOperatingFunds(), 1e-9);
+        assertEquals(500.0, run.getShortfall(), 1e-9);
+        assertEquals(1000.0, run.getProjectedCapital(), 1e-9);
+
+        assertEquals(1250.0, bank.getBankOperatingFunds(), 1e-9);
+        assertEquals(3000.0, bank.getOutstandingBalance("borrower") + bank.getOutstandingBalance("stretched"),
+                1e-9);
+        assertEquals(50.0, bank.getOwnerAccountBalance("stretched"), 1e-9);
+    }
+
+    /**
+     * Verifies that a default rate of one defaults every borrower, and that
+     * scenarios are checked.
+     */
+    @Test
+    public void testEveryBorrowerDefaults() {
+        Result result = new LoanStressEngine(pool, 1).run(LoanStressEngine.snapshot(bank),
+                List.of(new Scenario("wipeout", 0.0, 1.0, 1.0, 0.5, 0.0))).get(0);
+        assertEquals(2, result.getDefaults());
+        assertEquals(3000.0, result.getCreditLosses(), 1e-9);
+        assertEquals(1250.0, result.getProjectedOperatingFunds(), 1e-9);
+        assertEquals(-500.0, result.getProjectedCapital(), 1e-9);
+
+        assertThrows(IllegalArgumentException.class, () -> new Scenario("bad", 1.0, 1.5, 0.5, 0.1, 0.1));
+        assertThrows(IllegalArgumentException.class, () -> new Scenario("bad", -1.0, 0.1, 0.5, 0.1, 0.1));
+    }
+
+    /**
+     * Verifies that a defaulted borrower costs the capital exactly the loss
+     * given default of its outstanding, without the unpaid interest.
+     */
+    @Test
+    public void testDefaultLosesOutstandingOnly() throws Exception {
+        BankApp single = new BankApp(6000.0, 10000.0, 20000.0);
+        single.appendToBankOperatingFunds(5000.0);
+        single.appendOwnerAccount("borrower", 100.0);
+        single.grantOutstanding("borrower", 4000.0);
+        Result result = new LoanStressEngine(pool, 1).run(LoanStressEngine.snapshot(single),
+                List.of(new Scenario("default", 12.0, 1.0, 0.25, 0.1, 0.0))).get(0);
+        assertEquals(1, result.getDefaults());
+        assertEquals(1000.0, result.getCreditLosses(), 1e-9);
+        assertEquals(4000.0, result.getProjectedCapital(), 1e-9);
+    }
+
+    /**
+     * Verifies that many scenarios over a large book give the same results in
+     * small chunks as in one, and that random defaults follow the default
+     * rate.
+     */
+    @Test
+    public void testChunkingDoesNotChangeResults() throws Exception {
+        BankApp large = new BankApp(6000.0, 10000.0, 20000.0);
+        large.appendToBankOperatingFunds(10000000.0);
+        for (int i = 0; i < 20000; i++) {
+            String owner = String.format("account-%05d", i);
+            large.appendOwnerAccount(owner, 5000.0 + i % 97);
+            if (i % 2 == 0) {
+                large.grantOutstanding(owner, 1000.0 + i % 13 * 100);
+            }
+        }
+        Snapshot snapshot = LoanStressEngine.snapshot(large);
+        List<Scenario> scenarios = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            scenarios.add(new Scenario("scenario-" + i, i * 2.0, i / 20.0, 0.4, 0.05, i / 16.0));
+        }
+        List<Result> chunked = new LoanStressEngine(pool, 64).run(snapshot, scenarios);
+        List<Result> whole = new LoanStressEngine(pool, Integer.MAX_VALUE).run(snapshot, scenarios);
+        for (int i = 0; i < scenarios.size(); i++) {
+            assertEquals(whole.get(i).getDefaults(), chunked.get(i).getDefaults());
+            assertEquals(whole.get(i).getProjectedOperatingFunds(), chunked.get(i).getProjectedOperatingFunds(),
+                    1e-3);
+            assertEquals(whole.get(i).getProjectedCapital(), chunked.get(i).getProjectedCapital(), 1e-3);
+        }
+        Result half = chunked.get(10); // Default rate of one half, balances cover the interest
+        assertEquals(10000, half.getBorrowers());
+        assertTrue(half.getDefaults() > 4700 && half.getDefaults() < 5300, half.toString());
+    }
+}
@@ -0,0 +1,189 @@
+package BankTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import Bank.BankAccount;
+import Bank.BankApp;
+import Bank.BankApp.InadequateBankOperatingFundsErrors;
+import Bank.BankApp.InadequateDepositAmountErrors;
+import Bank.BankCheckpointer;
+import Bank.BankReconciler;
+import Bank.FxRates;
+import Bank.ReplicationFollower;
+import Bank.ReplicationLeader;
+import Bank.ReplicationLeader.AckMode;
+
+/**
+ * Tests for multi-currency accounts and the `FxRates` cache.
+ *
+ * These tests ensure that conversions use the precomputed pair factors with
+ * the right minor units, that a changed rates file is picked up by a refresh,
+ * that every currency has its own operating funds and limits, and that
+ * checkpoints, replication and reconciliation keep the currencies apart.
+ */
+public class MultiCurrencyTest {
+
+    @TempDir
+    Path directory; // Holds the rates file and the checkpoints
+
+    private FxRates rates; // EUR based rates
+    private BankApp bank; // Bank with a EUR and a USD account
+
+    /**
+     * Creates a bank with a EUR account for alice and a USD account for bob.
+     */
+    @BeforeEach
+    public void setUp() throws Exception {
+        rates = new FxRates(writeRates("base EUR\nUSD 1.10\nJPY 160\n"));
+        bank = new BankApp(6000.0, 10000.0, 20000.0);
+        bank.setFxRates(rates);
+        bank.appendOwnerAccount("alice", 1000.0);
+        bank.appendOwnerAccount("bob", 500.0, "USD");
+    }
+
+    /**
+     * Verifies conversions between currencies with different minor units, and
+     * that a refresh only reloads a changed file and keeps the old rates when
+     * the new file is invalid.
+     */
+    @Test
+    public void testConversionAndRefresh() throws Exception {
+        assertEquals(110.0, rates.convert(100.0, "EUR", "USD"), 1e-9);
+        assertEquals(6.25, rates.convert(1000.0, "JPY", "EUR"), 1e-9);
+        assertEquals(1455.0, rates.convert(10.0, "USD", "JPY"), 1e-9); // 1454.545... rounded to whole yen
+        assertEquals(160.0 / 1.10, rates.getRate("USD", "JPY"), 1e-9);
+        IllegalArgumentException unknown = assertThrows(IllegalArgumentException.class,
+                () -> rates.convert(1.0, "EUR", "CHF"));
+        assertEquals("No FX rate for currency: CHF", unknown.getMessage());
+
+        assertFalse(rates.refresh(), "The file has not changed.");
+        writeRates("# Rates moved\nbase EUR\nUSD 1.2500\nJPY 160\n");
+        assertTrue(rates.refresh());
+        assertEquals(125.0, rates.convert(100.0, "EUR", "USD"), 1e-9);
+
+        writeRates("base EUR\nUSD one\n");
+        IllegalArgumentException invalid = assertThrows(IllegalArgumentException.class, rates::refresh);
+        assertEquals("Invalid FX rate on line 2: rate must be a number", invalid.getMessage());
+        assertEquals(125.0, rates.convert(100.0, "EUR", "USD"), 1e-9); // The old rates stay
+    }
+
+    /**
+     * Verifies that cross-currency deposits and transfers are converted and
+     * move money between the operating funds of the two currencies.
+     */
+    @Test
+    public void testCrossCurrencyDepositAndTransfer() throws Exception {
+        bank.deposit("bob", 100.0, "EUR");
+        assertEquals(610.0, bank.getOwnerAccountBalance("bob"), 1e-9);
+        assertEquals(610.0, bank.getBankOperatingFunds("USD"), 1e-9);
+        assertEquals(1000.0, bank.getBankOperatingFunds(), 1e-9); // The EUR funds are untouched
+
+        bank.transfer("alice", "bob", 200.0);
+        assertEquals(800.0, bank.getOwnerAccountBalance("alice"), 1e-9);
+        assertEquals(830.0, bank.getOwnerAccountBalance("bob"), 1e-9);
+        assertEquals(800.0, bank.getBankOperatingFunds("EUR"), 1e-9);
+        assertEquals(830.0, bank.getBankOperatingFunds("USD"), 1e-9);
+
+        assertThrows(IllegalArgumentException.class, () -> bank.transfer("bob", "bob", 1.0));
+        bank.appendToBankOperatingFunds(5000.0); // So the balance, not the funds, refuses the transfer
+        assertThrows(BankAccount.InadequateFundsErrors.class, () -> bank.transfer("alice", "bob", 900.0));
+        assertEquals(800.0, bank.getOwnerAccountBalance("alice"), 1e-9); // Nothing moved
+        assertEquals(830.0, bank.getBankOperatingFunds("USD"), 1e-9);
+
+        BankApp withoutRates = new BankApp(6000.0, 10000.0, 20000.0);
+        withoutRates.appendOwnerAccount("carol", 100.0);
+        withoutRates.appendOwnerAccount("dave", 100.0, "USD");
+        assertThrows(IllegalStateException.class, () -> withoutRates.transfer("carol", "dave", 10.0));
+    }
+
+    /**
+     * Verifies that each currency has its own limits and operating funds.
+     */
+    @Test
+    public void testPerCurrencyLimitsAndFunds() throws Exception {
+        assertEquals(11000.0, bank.getMaximumDepositLimit("USD"), 1e-9); // The EUR limit converted
+        bank.deposit("bob", 10500.0);
+        assertThrows(InadequateDepositAmountErrors.class, () -> bank.deposit("alice", 10500.0));
+
+        bank.setMaxDeposit("USD", 5000.0);
+        assertEquals(5000.0, bank.getMaximumDepositLimit("USD"), 1e-9);
+        assertEquals(10000.0, bank.getMaximumDepositLimit("EUR"), 1e-9);
+        assertThrows(InadequateDepositAmountErrors.class, () -> bank.deposit("bob", 6000.0));
+        bank.deposit("alice", 6000.0);
+
+        // The USD funds cannot pay for a loan in EUR
+        assertThrows(InadequateBankOperatingFundsErrors.class, () -> bank.grantOutstanding("alice", 9000.0));
+        bank.appendToBankOperatingFunds(5000.0, "EUR");
+        bank.grantOutstanding("alice", 9000.0);
+        assertEquals(3000.0, bank.getBankOperatingFunds("EUR"), 1e-9);
+        assertEquals(5000.0, bank.getBankCapital("EUR"), 1e-9);
+        assertEquals(0.0, bank.getBankCapital("USD"), 1e-9);
+        assertEquals(11000.0, bank.getBankOperatingFunds("USD"), 1e-9);
+        assertEquals("[EUR, USD]", bank.getCurrencies().toString());
+    }
+
+    /**
+     * Verifies that checkpoints, replication and reconciliation keep accounts
+     * and capital in their own currencies.
+     */
+    @Test
+    public void testCurrenciesSurviveRecoveryAndReplication() throws Exception {
+        bank.appendToBankOperatingFunds(2000.0, "USD");
+        try (BankReconciler reconciler = new BankReconciler(bank, ForkJoinPool.commonPool(), 1e-6);
+                ReplicationLeader leader = new ReplicationLeader(bank, 0, AckMode.ASYNC, 16,
+                        Duration.ofMillis(20), Duration.ofSeconds(5));
+                ReplicationFollower follower = new ReplicationFollower(new BankApp(6000.0, 10000.0, 20000.0),
+                        new InetSocketAddress("127.0.0.1", leader.getPort()))) {
+            Path checkpoints = directory.resolve("checkpoints");
+            try (BankCheckpointer checkpointer = new BankCheckpointer(bank, checkpoints, null,
+                    Duration.ofHours(1), 10)) {
+                bank.transfer("bob", "alice", 110.0);
+                bank.appendOwnerAccount("yuki", 50000.0, "JPY");
+                bank.grantOutstanding("bob", 1500.0);
+                bank.minusFromBankOperatingFunds(100.0, "USD");
+                checkpointer.checkpoint();
+            }
+            assertTrue(reconciler.verifyIncremental());
+            assertTrue(reconciler.reconcile().isConsistent());
+
+            BankApp recovered = new BankApp(6000.0, 10000.0, 20000.0);
+            BankCheckpointer.recover(recovered, checkpoints, null);
+            assertSameBank(bank, recovered);
+
+            assertTrue(follower.awaitApplied(leader.getCommittedSequence(), Duration.ofSeconds(10)));
+            assertSameBank(bank, follower.getBank());
+        }
+    }
+
+    private Path writeRates(String text) throws Exception {
+        Path file = directory.resolve("rates.txt");
+        Files.writeString(file, text);
+        return file;
+    }
+
+    private static void assertSameBank(BankApp expected, BankApp actual) throws Exception {
+        assertEquals(expected.getAccountCount(), actual.getAccountCount());
+        for (BankAccount account : expected.getBankAccountOwners()) {
+            String owner = account.getAccountOwner();
+            BankAccount copy = actual.getOwnerAccount(owner);
+            assertEquals(account.getCurrency(), copy.getCurrency(), owner);
+            assertEquals(account.getCurrentBalance(), copy.getCurrentBalance(), 1e-9, owner);
+            assertEquals(account.getCurrentOutstandingBalance(), copy.getCurrentOutstandingBalance(), 1e-9, owner);
+        }
+        assertEquals(expected.getCurrencies(), actual.getCurrencies());
+        for (String currency : expected.getCurrencies()) {
+            assertEquals(expected.getBankOperatingFunds(currency), actual.getBankOperatingFunds(currency), 1e-9);
+            assertEquals(expected.getBankCapital(currency), actual.getBankCapital(currency), 1e-9);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package BankTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import Bank.BankAccount.InadequateFundsErrors;
+import Bank.BankApp;
+import Bank.PriorityBankScheduler;
+import Bank.PriorityBankScheduler.Lane;
+import Bank.PriorityBankScheduler.LaneStats;
+
+/**
+ * Tests for the `PriorityBankScheduler` execution lanes.
+ *
+ * These tests ensure that the lanes are dispatched in proportion to their
+ * weights, also with several workers, that full lanes and a closed scheduler refuse operations, and that
+ * each lane keeps its own metrics.
+ */
+public class PriorityBankSchedulerTest {
+
+    private BankApp bank; // Bank behind the scheduler
+
+    /**
+     * Creates a bank with capital and one account.
+     */
+    @BeforeEach
+    public void setUp() throws Exception {
+        bank = new BankApp(6000.0, 10000.0, 20000.0);
+        bank.appendToBankOperatingFunds(50000.0);
+        bank.appendOwnerAccount("owner", 1000.0);
+    }
+
+    /**
+     * Verifies that with every lane backed up, one round of 12 dispatches
+     * follows the weights 8, 3 and 1, and that an idle lane's share goes to
+     * the others.
+     */
+    @Test
+    public void testWeightedDispatch() throws Exception {
+        PriorityBankScheduler scheduler = new PriorityBankScheduler(bank, 1, 100);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.submit(Lane.BATCH, b -> {
+            running.countDown();
+            release.await(); // Hold the only worker while the lanes fill up
+            return null;
+        });
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        List<Lane> order = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Object>> results = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            for (Lane lane : Lane.values()) {
+                results.add(scheduler.submit(lane, b -> order.add(lane)));
+            }
+        }
+        assertEquals(12, scheduler.getQueueDepth(Lane.LENDING));
+        release.countDown();
+        for (CompletableFuture<Object> result : results) {
+            result.get(5, TimeUnit.SECONDS);
+        }
+        scheduler.close();
+
+        List<Lane> round = order.subList(0, 12);
+        assertEquals(8, Collections.frequency(round, Lane.RETAIL));
+        assertEquals(3, Collections.frequency(round, Lane.LENDING));
+        assertEquals(1, Collections.frequency(round, Lane.BATCH));
+        // Retail drains within one and a half rounds, then lending and batch share the workers
+        assertEquals(17, order.lastIndexOf(Lane.RETAIL));
+        assertEquals(Lane.BATCH, order.get(order.size() - 1));
+    }
+
+    /**
+     * Verifies that several workers waiting for the bank still run the
+     * operations in the order the round robin picks them.
+     */
+    @Test
+    public void testWeightedDispatchWithSeveralWorkers() throws Exception {
+        PriorityBankScheduler scheduler = new PriorityBankScheduler(bank, 4, 100);
+        List<Lane> order = new ArrayList<>(); // Only changed under the bank's monitor
+        List<CompletableFuture<Object>> results = new ArrayList<>();
+        synchronized (bank) { // Every worker waits for the bank while the lanes fill up
+            for (int i = 0; i < 12; i++) {
+                for (Lane lane : Lane.values()) {
+                    results.add(scheduler.submit(lane, b -> order.add(lane)));
+                }
+            }
+        }
+        for (CompletableFuture<Object> result : results) {
+            result.get(5, TimeUnit.SECONDS);
+        }
+        scheduler.close();
+
+        List<Lane> round = order.subList(0, 12);
+        assertEquals(8, Collections.frequency(round, Lane.RETAIL));
+        assertEquals(3, Collections.frequency(round, Lane.LENDING));
+        assertEquals(1, Collections.frequency(round, Lane.BATCH));
+        assertEquals(17, order.lastIndexOf(Lane.RETAIL));
+        assertEquals(Lane.BATCH, order.get(order.size() - 1));
+    }
+
+    /**
+     * Verifies that a full lane refuses operations without affecting the other
+     * lanes, and that a closed scheduler refuses everything.
+     */
+    @Test
+    public void testFullLaneAndClosedSchedulerReject() throws Exception {
+        PriorityBankScheduler scheduler = new PriorityBankScheduler(bank, 1, 2);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.submit(Lane.BATCH, b -> {
+            running.countDown();
+            release.await();
+            return null;
+        });
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Void> first = scheduler.grantOutstanding("owner", 100.0);
+        CompletableFuture<Void> second = scheduler.repayOutstanding("owner", 50.0);
+        CompletableFuture<Void> third = scheduler.grantOutstanding("owner", 100.0);
+        ExecutionException full = assertThrows(ExecutionException.class, third::get);
+        assertInstanceOf(RejectedExecutionException.class, full.getCause());
+        CompletableFuture<Void> deposit = scheduler.deposit("owner", 10.0); // The retail lane still has room
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        deposit.get(5, TimeUnit.SECONDS);
+        assertEquals(50.0, bank.getOutstandingBalance("owner"), 1e-9);
+        assertEquals(1, scheduler.getStats(Lane.LENDING).getRejected());
+
+        scheduler.close();
+        ExecutionException closed = assertThrows(ExecutionException.class,
+                () -> scheduler.deposit("owner", 1.0).get());
+        assertInstanceOf(RejectedExecutionException.class, closed.getCause());
+    }
+
+    /**
+     * Verifies that the bank's errors reach the caller and that every lane
+     * counts and times its own operations.
+     */
+    @Test
+    public void testErrorsAndLaneMetrics() throws Exception {
+        PriorityBankScheduler scheduler = new PriorityBankScheduler(bank, 2, 100);
+        List<CompletableFuture<Void>> results = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            results.add(scheduler.deposit("owner", 5.0));
+            results.add(scheduler.withdraw("owner", 5.0));
+        }
+        for (int i = 0; i < 5; i++) {
+            results.add(scheduler.grantOutstanding("owner", 10.0));
+        }
+        results.add(scheduler.applyInterest("owner", 1.0));
+        for (CompletableFuture<Void> result : results) {
+            result.get(5, TimeUnit.SECONDS);
+        }
+        ExecutionException error = assertThrows(ExecutionException.class,
+                () -> scheduler.withdraw("owner", 5000.0).get(5, TimeUnit.SECONDS));
+        assertInstanceOf(InadequateFundsErrors.class, error.getCause());
+        scheduler.close();
+
+        LaneStats retail = scheduler.getStats(Lane.RETAIL);
+        assertEquals(41, retail.getCompleted());
+        assertEquals(0, retail.getQueueDepth());
+        assertTrue(retail.getMaximumQueueDepth() >= 1);
+        assertTrue(retail.getMaximumLatency() > 0);
+        assertTrue(retail.getMedianWait() <= retail.getMedianLatency());
+        assertEquals(5, scheduler.getStats(Lane.LENDING).getCompleted());
+        assertEquals(1, scheduler.getStats(Lane.BATCH).getCompleted());
+        double outstanding = bank.getOutstandingBalance("owner"); // Interest may run before some grants
+        assertTrue(outstanding > 50.0 && outstanding <= 50.5);
+    }
+}
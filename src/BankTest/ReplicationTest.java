@@ -0,0 +1,240 @@
+package BankTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import Bank.AmortizationSchedule;
+import Bank.BankAccount;
+import Bank.BankApp;
+import Bank.LoanTerms;
+import Bank.LoanTerms.PaymentFrequency;
+import Bank.ReplicationFollower;
+import Bank.ReplicationLeader;
+import Bank.ReplicationLeader.AckMode;
+import Bank.ReplicationLeader.ReplicationTimeoutErrors;
+
+/**
+ * Tests for hot-standby replication with `ReplicationLeader` and
+ * `ReplicationFollower`.
+ *
+ * These tests ensure that a follower starts from the leader's snapshot and
+ * then applies every change in order, that SYNC replies wait for the
+ * follower, that a promoted follower carries on where the leader stopped,
+ * that a follower which fell behind is sent a new snapshot, and that payment
+ * schedules are replicated with the loans.
+ */
+public class ReplicationTest {
+
+    private BankApp leaderBank; // Bank serving the clients
+
+    /**
+     * Creates a leader bank that already has capital and accounts.
+     */
+    @BeforeEach
+    public void setUp() throws Exception {
+        leaderBank = new BankApp(6000.0, 10000.0, 20000.0);
+        leaderBank.appendToBankOperatingFunds(100000.0);
+        for (int i = 0; i < 20; i++) {
+            leaderBank.appendOwnerAccount("owner-" + i, 1000.0);
+        }
+    }
+
+    /**
+     * Verifies that changes made from several threads in ASYNC mode reach the
+     * follower in order and leave it identical to the leader.
+     */
+    @Test
+    public void testAsyncFollowerMatchesLeader() throws Exception {
+        try (ReplicationLeader leader = new ReplicationLeader(leaderBank, 0, AckMode.ASYNC, 64,
+                Duration.ofMillis(20), Duration.ofSeconds(5));
+                ReplicationFollower follower = new ReplicationFollower(new BankApp(6000.0, 10000.0, 20000.0),
+                        new InetSocketAddress("127.0.0.1", leader.getPort()))) {
+            assertTrue(follower.awaitApplied(0, Duration.ofSeconds(5)));
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int worker = t;
+                workers.add(executor.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        String owner = "owner-" + ((i + worker * 5) % 20);
+                        leader.execute(bank -> {
+                            bank.deposit(owner, 5.0);
+                            bank.withdraw(owner, 3.0);
+                            return null;
+                        });
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get(30, TimeUnit.SECONDS);
+            }
+            executor.shutdown();
+            leaderBank.grantOutstanding("owner-4", 2000.0);
+            leaderBank.applyFee("owner-5", 12.5);
+            leaderBank.removeOwnerAccount("owner-6");
+            leaderBank.appendOwnerAccount("newcomer", 75.0);
+            leaderBank.minusFromBankOperatingFunds(500.0);
+
+            long sequence = leader.getCommittedSequence();
+            assertTrue(follower.awaitApplied(sequence, Duration.ofSeconds(10)));
+            assertSameBank(leaderBank, follower.getBank());
+            assertTrue(leader.awaitAcknowledged(sequence, Duration.ofSeconds(5)));
+            assertEquals(0, leader.getLag());
+        }
+    }
+
+    /**
+     * Verifies that a SYNC reply is only given once the follower applied the
+     * change, and that it times out without a follower.
+     */
+    @Test
+    public void testSyncWaitsForFollower() throws Exception {
+        try (ReplicationLeader leader = new ReplicationLeader(leaderBank, 0, AckMode.SYNC, 64,
+                Duration.ofMillis(20), Duration.ofMillis(200))) {
+            assertThrows(ReplicationTimeoutErrors.class, () -> leader.execute(bank -> {
+                bank.deposit("owner-1", 10.0);
+                return null;
+            }));
+            assertEquals(1010.0, leaderBank.getOwnerAccountBalance("owner-1"), 1e-9); // Committed on the leader
+
+            try (ReplicationFollower follower = new ReplicationFollower(new BankApp(6000.0, 10000.0, 20000.0),
+                    new InetSocketAddress("127.0.0.1", leader.getPort()))) {
+                assertTrue(follower.awaitApplied(0, Duration.ofSeconds(5)));
+                for (int i = 0; i < 50; i++) {
+                    leader.execute(bank -> {
+                        bank.deposit("owner-2", 1.0);
+                        return null;
+                    });
+                    // No waiting: the reply came after the follower applied the change
+                    assertEquals(leaderBank.getOwnerAccountBalance("owner-2"),
+                            follower.getBank().getOwnerAccountBalance("owner-2"), 1e-9);
+                }
+                assertEquals(1010.0, follower.getBank().getOwnerAccountBalance("owner-1"), 1e-9);
+            }
+        }
+    }
+
+    /**
+     * Verifies that a follower is promoted once it caught up, and that the
+     * promoted bank accepts changes that continue the leader's sequence.
+     */
+    @Test
+    public void testPromotionAfterLeaderStops() throws Exception {
+        BankApp standby = new BankApp(6000.0, 10000.0, 20000.0);
+        List<Long> sequences = new ArrayList<>();
+        standby.addBalanceChangeListener(event -> sequences.add(event.getSequence()));
+        ReplicationFollower follower;
+        try (ReplicationLeader leader = new ReplicationLeader(leaderBank, 0, AckMode.SYNC, 16,
+                Duration.ofMillis(20), Duration.ofSeconds(5))) {
+            follower = new ReplicationFollower(standby, new InetSocketAddress("127.0.0.1", leader.getPort()));
+            for (int i = 0; i < 100; i++) {
+                String owner = "owner-" + (i % 20);
+                leader.execute(bank -> {
+                    bank.deposit(owner, 2.0);
+                    return null;
+                });
+            }
+        } // The leader goes away
+
+        BankApp promoted = follower.promote(0, Duration.ofSeconds(5));
+        assertTrue(follower.isPromoted());
+        assertFalse(follower.isConnected());
+        assertEquals(0, follower.getLag());
+        assertSameBank(leaderBank, promoted);
+
+        long last = sequences.get(sequences.size() - 1);
+        promoted.deposit("owner-0", 1.0);
+        assertEquals(last + 1, (long) sequences.get(sequences.size() - 1));
+        for (int i = 1; i < sequences.size(); i++) {
+            assertEquals(sequences.get(i - 1) + 1, (long) sequences.get(i)); // Applied in order, no gaps
+        }
+    }
+
+    /**
+     * Verifies that a follower whose queue of changes filled up is sent a new
+     * snapshot and ends up identical to the leader.
+     */
+    @Test
+    public void testSlowFollowerIsSentSnapshot() throws Exception {
+        try (ReplicationLeader leader = new ReplicationLeader(leaderBank, 0, AckMode.ASYNC, 16,
+                Duration.ofMillis(20), Duration.ofSeconds(5), 64);
+                ReplicationFollower follower = new ReplicationFollower(new BankApp(6000.0, 10000.0, 20000.0),
+                        new InetSocketAddress("127.0.0.1", leader.getPort()))) {
+            assertTrue(follower.awaitApplied(0, Duration.ofSeconds(5)));
+            assertEquals(1, leader.getSnapshotCount());
+            synchronized (follower.getBank()) { // The follower cannot apply anything
+                for (int i = 0; leader.isStreaming() && i < 10000000; i++) {
+                    leaderBank.deposit("owner-" + (i % 20), 1.0);
+                }
+                assertFalse(leader.isStreaming()); // The queue filled up
+            }
+            leaderBank.removeOwnerAccount("owner-7");
+            leaderBank.appendOwnerAccount("newcomer", 75.0);
+
+            long sequence = leader.getCommittedSequence();
+            assertTrue(follower.awaitApplied(sequence, Duration.ofSeconds(10)));
+            assertEquals(2, leader.getSnapshotCount());
+            assertSameBank(leaderBank, follower.getBank());
+            assertThrows(Exception.class, () -> follower.getBank().getOwnerAccount("owner-7"));
+        }
+    }
+
+    /**
+     * Verifies that loans granted with a payment schedule reach the follower
+     * with the same schedule, whether they are in the snapshot or granted
+     * later, and that repayments keep both schedules in step.
+     */
+    @Test
+    public void testSchedulesAreReplicated() throws Exception {
+        leaderBank.grantOutstanding("owner-1", new LoanTerms(1200.0, 12.0, 12, PaymentFrequency.MONTHLY));
+        try (ReplicationLeader leader = new ReplicationLeader(leaderBank, 0, AckMode.ASYNC, 64,
+                Duration.ofMillis(20), Duration.ofSeconds(5));
+                ReplicationFollower follower = new ReplicationFollower(new BankApp(6000.0, 10000.0, 20000.0),
+                        new InetSocketAddress("127.0.0.1", leader.getPort()))) {
+            assertTrue(follower.awaitApplied(0, Duration.ofSeconds(5)));
+            leaderBank.grantOutstanding("owner-2", new LoanTerms(2400.0, 6.0, 24, PaymentFrequency.MONTHLY));
+            leaderBank.repayOutstanding("owner-1", scheduleOf(leaderBank, "owner-1").getPayment(0));
+            leaderBank.repayOutstanding("owner-2", scheduleOf(leaderBank, "owner-2").getPayment(0) + 300.0);
+            leaderBank.deposit("owner-2", 10.0);
+            assertTrue(follower.awaitApplied(leader.getCommittedSequence(), Duration.ofSeconds(5)));
+
+            assertSameBank(leaderBank, follower.getBank());
+            for (String owner : List.of("owner-1", "owner-2")) {
+                assertTrue(leaderBank.getOwnerAccount(owner).getOutstanding().hasActiveSchedule(), owner);
+                assertTrue(follower.getBank().getOwnerAccount(owner).getOutstanding().hasActiveSchedule(), owner);
+                AmortizationSchedule expected = scheduleOf(leaderBank, owner);
+                AmortizationSchedule actual = scheduleOf(follower.getBank(), owner);
+                assertEquals(expected.getNextPeriod(), actual.getNextPeriod(), owner);
+                assertEquals(expected.getInterestDue(), actual.getInterestDue(), 1e-9, owner);
+                assertEquals(expected.getPayment(1), actual.getPayment(1), 1e-9, owner);
+            }
+        }
+    }
+
+    private static AmortizationSchedule scheduleOf(BankApp bank, String owner) throws Exception {
+        return bank.getOwnerAccount(owner).getOutstanding().getSchedule();
+    }
+
+    private static void assertSameBank(BankApp expected, BankApp actual) throws Exception {
+        assertEquals(expected.getBankAccountOwners().size(), actual.getBankAccountOwners().size());
+        for (BankAccount account : expected.getBankAccountOwners()) {
+            String owner = account.getAccountOwner();
+            assertEquals(expected.getOwnerAccountBalance(owner), actual.getOwnerAccountBalance(owner), 1e-9, owner);
+            assertEquals(expected.getOutstandingBalance(owner), actual.getOutstandingBalance(owner), 1e-9, owner);
+        }
+        assertEquals(expected.getBankCapital(), actual.getBankCapital(), 1e-6);
+        assertEquals(expected.getBankOperatingFunds(), actual.getBankOperatingFunds(), 1e-6);
+    }
+}
@@ -0,0 +1,161 @@
+package BankTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import Bank.BankApp;
+import Bank.BankApp.InadequateDepositAmountErrors;
+import Bank.BankApp.InadequateWithdrawAmountErrors;
+import Bank.Outstanding.InadequateOutstandingAmountErrors;
+import Bank.ValidationRules;
+import Bank.ValidationRules.Operation;
+import Bank.ValidationRules.Rule;
+
+/**
+ * Tests for the `ValidationRules` engine behind the bank's amount checks.
+ *
+ * These tests ensure that the default rules behave exactly like the checks
+ * they replaced, that rule files are compiled and counted correctly, and that
+ * rules can be swapped while the bank is in use.
+ */
+public class ValidationRulesTest {
+
+    private BankApp bank; // Bank whose rules are tested
+
+    /**
+     * Creates a bank with one funded account.
+     */
+    @BeforeEach
+    public void setUp() throws Exception {
+        bank = new BankApp(6000.0, 10000.0, 20000.0);
+        bank.appendToBankOperatingFunds(100000.0);
+        bank.appendOwnerAccount("Bob", 5000.0);
+    }
+
+    /**
+     * Verifies that the default rules reject the same amounts with the same
+     * messages as before, and count the rejections per rule, the bank's own
+     * refusal of amounts that are not positive included.
+     */
+    @Test
+    public void testDefaultRulesKeepMessages() {
+        InadequateDepositAmountErrors deposit = assertThrows(InadequateDepositAmountErrors.class,
+                () -> bank.deposit("Bob", -5.0));
+        assertEquals("Invalid deposit amount: -5.0. Information: Amount must be positive.", deposit.getMessage());
+        InadequateWithdrawAmountErrors withdraw = assertThrows(InadequateWithdrawAmountErrors.class,
+                () -> bank.withdraw("Bob", 7000.0));
+        assertEquals("Invalid withdrawal amount: 7000.0. Information: Withdrawal amount exceeds the limit.",
+                withdraw.getMessage());
+        InadequateOutstandingAmountErrors outstanding = assertThrows(InadequateOutstandingAmountErrors.class,
+                () -> bank.grantOutstanding("Bob", 25000.0));
+        assertEquals("Invalid outstanding amount: 25000.0. Information Outstanding amount exceeds the limit.",
+                outstanding.getMessage());
+        assertThrows(InadequateDepositAmountErrors.class, () -> bank.deposit("Bob", Double.NaN));
+
+        List<Rule> rules = bank.getValidationRules().getRules();
+        assertEquals(6, rules.size());
+        assertEquals(2, rules.get(0).getHits()); // -5 and NaN, refused before the rules are checked
+        assertEquals(0, rules.get(1).getHits()); // deposit limit
+        assertEquals(1, rules.get(3).getHits()); // withdraw limit
+        assertEquals(1, rules.get(5).getHits()); // outstanding limit
+    }
+
+    /**
+     * Verifies that the limits set on the bank are read at check time.
+     */
+    @Test
+    public void testRulesFollowBankLimits() throws Exception {
+        assertThrows(InadequateDepositAmountErrors.class, () -> bank.deposit("Bob", 12000.0));
+        bank.setMaxDeposit(15000.0);
+        bank.deposit("Bob", 12000.0);
+        assertEquals(17000.0, bank.getOwnerAccountBalance("Bob"), 1e-9);
+    }
+
+    /**
+     * Verifies that a rule file is loaded, checked in order and rejected with a
+     * line number when it is malformed.
+     */
+    @Test
+    public void testLoadRuleFile(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("bank.rules");
+        Files.writeString(file, String.join("\n",
+                "# Stricter deposit policy",
+                "deposit   positive  amount > 0       : Amount must be positive.",
+                "deposit   minimum   amount >= 10     : Deposit must be at least 10.",
+                "deposit   limit     amount <= limit  : Deposit amount exceeds the limit.",
+                ""));
+        ValidationRules rules = ValidationRules.load(file);
+        assertEquals("minimum", rules.check(Operation.DEPOSIT, 5.0, 100.0).getName());
+        assertEquals("positive", rules.check(Operation.DEPOSIT, 0.0, 100.0).getName());
+        assertNull(rules.check(Operation.DEPOSIT, 10.0, 100.0));
+        assertNull(rules.check(Operation.WITHDRAW, -1.0, 100.0)); // No withdraw rules declared
+
+        bank.setValidationRules(rules);
+        InadequateDepositAmountErrors error = assertThrows(InadequateDepositAmountErrors.class,
+                () -> bank.deposit("Bob", 5.0));
+        assertTrue(error.getMessage().endsWith("Deposit must be at least 10."));
+        // Without withdraw rules a negative withdrawal is still refused
+        InadequateWithdrawAmountErrors negative = assertThrows(InadequateWithdrawAmountErrors.class,
+                () -> bank.withdraw("Bob", -1.0));
+        assertTrue(negative.getMessage().endsWith("Amount must be positive."));
+        assertEquals(1, rules.getUnruledRefusals(Operation.WITHDRAW));
+        assertEquals(0, rules.getUnruledRefusals(Operation.DEPOSIT));
+        assertThrows(InadequateDepositAmountErrors.class, () -> bank.deposit("Bob", 0.0));
+        assertEquals(2, rules.getRules().get(0).getHits()); // The check of 0 above, and this refusal
+        assertEquals(5000.0, bank.getOwnerAccountBalance("Bob"), 1e-9);
+
+        IllegalArgumentException invalid = assertThrows(IllegalArgumentException.class,
+                () -> ValidationRules.parse("deposit limit amount <= limit : ok\ndeposit bad amount ~ 3 : no"));
+        assertTrue(invalid.getMessage().contains("line 2"));
+    }
+
+    /**
+     * Verifies that rules can be swapped while deposits are running, and that
+     * every deposit sees one complete rule set.
+     */
+    @Test
+    public void testHotSwapUnderLoad() throws Exception {
+        ValidationRules strict = ValidationRules.parse(
+                "deposit positive amount > 0 : Amount must be positive.\n"
+                        + "deposit small amount <= 0.5 : Deposit amount exceeds the limit.");
+        ValidationRules relaxed = ValidationRules.defaults();
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            workers.add(executor.submit(() -> {
+                while (running.get()) {
+                    try {
+                        bank.checkAdequateDeposit(1.0);
+                    } catch (InadequateDepositAmountErrors e) {
+                        // Rejected by the strict rules
+                    }
+                }
+                return null;
+            }));
+        }
+        for (int i = 0; i < 200; i++) {
+            bank.setValidationRules(i % 2 == 0 ? strict : relaxed);
+        }
+        running.set(false);
+        for (Future<?> worker : workers) {
+            worker.get(10, TimeUnit.SECONDS); // Fails if a worker saw anything unexpected
+        }
+        executor.shutdown();
+        assertEquals(0, strict.getRules().get(0).getHits());
+        assertEquals(0, relaxed.getRules().get(1).getHits());
+    }
+}
@@ -0,0 +1,108 @@
+package BankTest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import Bank.BalanceChangeEvent;
+import Bank.BankApp;
+import Bank.WorkloadGenerator;
+import Bank.WorkloadGenerator.OperationType;
+import Bank.WorkloadGenerator.Report;
+
+/**
+ * Tests for the `WorkloadGenerator` soak test harness.
+ *
+ * These tests run short workloads and ensure that the report adds up, that
+ * the bank's books still balance afterwards, and that runtime errors are
+ * reported as failures rather than counted as declines.
+ */
+public class WorkloadGeneratorTest {
+
+    private BankApp bank; // Bank under load
+    private WorkloadGenerator generator; // Harness under test
+
+    /**
+     * Creates a funded bank and a small, short workload against it.
+     */
+    @BeforeEach
+    public void setUp() throws Exception {
+        bank = new BankApp(6000.0, 10000.0, 20000.0);
+        bank.appendToBankOperatingFunds(1000000.0);
+        generator = new WorkloadGenerator(bank);
+        generator.setAccounts(50, 1000.0);
+        generator.setThreads(3);
+        generator.setDuration(Duration.ofMillis(300));
+        generator.setUp();
+    }
+
+    /**
+     * Verifies that a mixed workload keeps the books balanced and reports
+     * consistent counts and latencies.
+     */
+    @Test
+    @Timeout(30)
+    public void testMixedWorkloadStaysConsistent() throws Exception {
+        Report report = generator.run();
+
+        assertNull(report.getFailure());
+        assertTrue(report.getOperations() > 0);
+        long attempted = 0;
+        for (OperationType type : OperationType.values()) {
+            attempted += report.getAttempted(type);
+            assertTrue(report.getDeclined(type) <= report.getAttempted(type));
+        }
+        assertEquals(report.getOperations(), attempted);
+        assertTrue(report.getLatencyPercentile(50) <= report.getLatencyPercentile(99));
+        assertTrue(report.getLatencyPercentile(99) <= report.getLatencyPercentile(99.9));
+        assertTrue(report.getLatencyPercentile(99.9) <= report.getMaximumLatency());
+        assertTrue(report.getReconciliation().isConsistent(), report.toString());
+        assertEquals(50, bank.getBankAccountOwners().size());
+    }
+
+    /**
+     * Verifies that operations with a zero weight are left out of the mix and
+     * that invalid amounts show up as declines.
+     */
+    @Test
+    @Timeout(30)
+    public void testMixWeights() throws Exception {
+        generator.setWeight(OperationType.DEPOSIT, 0.0);
+        generator.setWeight(OperationType.GRANT, 0.0);
+        generator.setWeight(OperationType.REPAY, 1.0);
+        generator.setWeight(OperationType.WITHDRAW, 0.0);
+        Report report = generator.run();
+
+        assertEquals(0, report.getAttempted(OperationType.DEPOSIT));
+        assertEquals(0, report.getAttempted(OperationType.WITHDRAW));
+        assertTrue(report.getAttempted(OperationType.REPAY) > 0);
+        assertEquals(1.0, report.getDeclineRate(OperationType.REPAY), 1e-9); // Nothing was ever granted
+        assertTrue(report.getReconciliation().isConsistent());
+    }
+
+    /**
+     * Verifies that a runtime error stops the workers and is reported as the
+     * failure, not counted as a decline.
+     */
+    @Test
+    @Timeout(30)
+    public void testRuntimeErrorIsNotDecline() throws Exception {
+        bank.addBalanceChangeListener(event -> {
+            if (event.getType() == BalanceChangeEvent.Type.WITHDRAW) {
+                throw new IllegalStateException("Listener broke");
+            }
+        });
+        generator.setWeight(OperationType.DEPOSIT, 0.0);
+        generator.setWeight(OperationType.GRANT, 0.0);
+        generator.setWeight(OperationType.REPAY, 0.0);
+        Report report = generator.run();
+
+        assertInstanceOf(IllegalStateException.class, report.getFailure());
+        assertEquals(0, report.getDeclined(OperationType.WITHDRAW));
+        assertTrue(report.toString().contains("Listener broke"));
+    }
+}